@@ -21,4 +21,6 @@ description = "Micronaut AOT API, for integration in build/CLI tools"
 
 dependencies {
     implementation(projects.micronautAotCore)
+
+    testImplementation(mnTest.micronaut.test.spock)
 }
@@ -25,4 +25,14 @@ public interface ConfigKeys {
     String GENERATED_PACKAGE = "package";
     String OUTPUT_DIRECTORY = "output.directory";
     String RUNTIME = "runtime";
+    String CACHE_DIRECTORY = "cache.directory";
+    String INCREMENTAL = "incremental";
+    String OUTPUT_SOURCES = "output.sources";
+    String GENERATORS_PARALLELISM = "generators.parallelism";
+    String ANALYZER_MODE = "analyzer.mode";
+    String ANALYZER_SNAPSHOT = "analyzer.snapshot";
+    String MERGE_STATIC_OPTIMIZATIONS = "static.optimizations.merge";
+    String MERGE_STATIC_OPTIMIZATIONS_DESCRIPTION = "Generates a single loader for all static optimizations, instead of one service implementation per optimization.";
+    String DIRECT_CLASS_FILES = "classfiles.direct";
+    String DIRECT_CLASS_FILES_DESCRIPTION = "Writes the class files of simple generated classes directly, instead of compiling their sources with javac.";
 }
@@ -25,34 +25,37 @@ import io.micronaut.aot.core.Runtime;
 import io.micronaut.aot.core.codegen.ApplicationContextConfigurerGenerator;
 import io.micronaut.aot.core.config.DefaultConfiguration;
 import io.micronaut.aot.core.config.MetadataUtils;
+import io.micronaut.aot.core.config.RuntimeConfiguration;
 import io.micronaut.aot.core.config.SourceGeneratorLoader;
+import io.micronaut.aot.core.context.AnalysisSnapshot;
 import io.micronaut.aot.core.context.ApplicationContextAnalyzer;
+import io.micronaut.aot.core.context.ClasspathIndex;
 import io.micronaut.aot.core.context.DefaultSourceGenerationContext;
+import io.micronaut.aot.core.diagnostics.JsonLinesDiagnosticsSink;
+import io.micronaut.aot.core.timing.Timings;
+import io.micronaut.aot.internal.Fingerprint;
+import io.micronaut.aot.internal.GeneratedSourcesCompiler;
+import io.micronaut.aot.internal.OutputSynchronizer;
 import io.micronaut.aot.internal.StreamHelper;
+import io.micronaut.context.ApplicationContextBuilder;
 import io.micronaut.core.annotation.Experimental;
 import io.micronaut.core.version.SemanticVersion;
 import io.micronaut.core.version.VersionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.tools.Diagnostic;
-import javax.tools.DiagnosticCollector;
-import javax.tools.JavaCompiler;
-import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -60,10 +63,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static io.micronaut.aot.core.config.MetadataUtils.toPropertiesSample;
 
@@ -96,6 +104,15 @@ import static io.micronaut.aot.core.config.MetadataUtils.toPropertiesSample;
 @Experimental
 public final class MicronautAotOptimizer implements ConfigKeys {
     public static final String OUTPUT_RESOURCES_FILE_NAME = "resource-filter.txt";
+    public static final String FINGERPRINT_FILE_NAME = "inputs.fingerprint";
+    public static final String TIMINGS_FILE_NAME = "timings.json";
+    public static final String CONTEXT_ANALYZER_MODE = "context";
+    public static final String METADATA_ANALYZER_MODE = "metadata";
+    private static final String SOURCES_DIRECTORY_NAME = "sources";
+    private static final String CLASSES_DIRECTORY_NAME = "classes";
+    private static final String LOGS_DIRECTORY_NAME = "logs";
+    private static final String STAGING_DIRECTORY_NAME = "staging";
+    private static final String MANIFEST_FILE_EXTENSION = ".manifest";
     private static final int MINIMAL_MAJOR = 3;
     private static final int MINIMAL_MINOR = 3;
 
@@ -117,38 +134,63 @@ public final class MicronautAotOptimizer implements ConfigKeys {
     }
 
     private void compileGeneratedSources(List<File> extraClasspath, List<JavaFile> javaFiles) {
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        var ds = new DiagnosticCollector<JavaFileObject>();
-        try (StandardJavaFileManager mgr = compiler.getStandardFileManager(ds, null, null)) {
-            var fullClasspath = new ArrayList<>(classpath);
-            fullClasspath.addAll(extraClasspath);
-            List<String> options = compilerOptions(outputClassesDirectory, fullClasspath);
-            List<File> filesToCompile = outputSourceFilesToSourceDir(outputSourcesDirectory, javaFiles);
-            if (outputClassesDirectory.exists() || outputClassesDirectory.mkdirs()) {
-                Iterable<? extends JavaFileObject> sources = mgr.getJavaFileObjectsFromFiles(filesToCompile);
-                JavaCompiler.CompilationTask task = compiler.getTask(null, mgr, ds, options, null, sources);
-                task.call();
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to compile generated classes", e);
+        var fullClasspath = new ArrayList<>(classpath);
+        fullClasspath.addAll(extraClasspath);
+        // Sources may reference the classes which were written directly
+        fullClasspath.add(outputClassesDirectory);
+        GeneratedSourcesCompiler.compile(fullClasspath, outputClassesDirectory, javaFiles)
+            .forEach(warning -> LOGGER.warn("Warning while compiling generated sources: {}", warning));
+    }
+
+    /**
+     * Generates and compiles the optimizations for a single runtime.
+     *
+     * @param generatedPackage the package of generated classes
+     * @param analyzer the application context analyzer, which may be shared between runtimes
+     * @param config the configuration, targeting a single runtime
+     * @param timings the timings
+     */
+    private void optimize(String generatedPackage, ApplicationContextAnalyzer analyzer, Configuration config, Timings timings) {
+        DefaultSourceGenerationContext context;
+        // Diagnostics are written as they are emitted, instead of being kept in memory
+        try (var diagnosticsSink = new JsonLinesDiagnosticsSink(logsDirectory)) {
+            context = new DefaultSourceGenerationContext(generatedPackage, analyzer, config, outputClassesDirectory.toPath(), timings, diagnosticsSink);
+            context.setMergeStaticOptimizations(config.booleanValue(MERGE_STATIC_OPTIMIZATIONS, false));
+            List<AOTCodeGenerator> sourceGenerators = SourceGeneratorLoader.load(config.getRuntime(), context);
+            int parallelism = config.optionalValue(GENERATORS_PARALLELISM, value -> value.map(Integer::parseInt)
+                .orElseGet(() -> java.lang.Runtime.getRuntime().availableProcessors()));
+            ApplicationContextConfigurerGenerator generator = new ApplicationContextConfigurerGenerator(
+                sourceGenerators,
+                parallelism
+            );
+            generator.generate(context);
         }
-        List<Diagnostic<? extends JavaFileObject>> diagnostics = ds.getDiagnostics().stream()
-            .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
-            .toList();
-        if (!diagnostics.isEmpty()) {
-            throwCompilationError(diagnostics);
+        if (config.booleanValue(OUTPUT_SOURCES, true)) {
+            timings.time("output", "sources", () -> writeGeneratedSources(context.getGeneratedJavaFiles()));
+        }
+        List<JavaFile> javaFiles = config.booleanValue(DIRECT_CLASS_FILES, true)
+            ? timings.time("compile", "class files", () -> writeClassFiles(context))
+            : context.getGeneratedJavaFiles();
+        if (!javaFiles.isEmpty()) {
+            timings.time("compile", "javac", () -> compileGeneratedSources(context.getExtraClasspath(), javaFiles));
         }
+        timings.time("output", "logs", () -> writeLogs(context));
     }
 
     /**
      * Scans the list of available optimization services and generates
      * a configuration file which includes all entries.
      *
-     * @param runtime the runtime for which to generate a properties file
+     * @param runtime the runtime, or comma separated runtimes, for which to generate a properties file
      * @param propertiesFile the generated properties file
      */
     public static void exportConfiguration(String runtime, File propertiesFile) {
-        List<AOTModule> list = SourceGeneratorLoader.list(Runtime.valueOf(runtime.toUpperCase(Locale.ENGLISH)));
+        // Several runtimes may be requested, in which case the modules of all runtimes are exported
+        List<AOTModule> list = Arrays.stream(runtime.split("[,;]\\s*"))
+            .map(r -> Runtime.valueOf(r.trim().toUpperCase(Locale.ENGLISH)))
+            .flatMap(r -> SourceGeneratorLoader.list(r).stream())
+            .distinct()
+            .toList();
         try (var wrt = new PrintWriter(new FileOutputStream(propertiesFile))) {
             var queue = new ArrayDeque<>(list);
             while (!queue.isEmpty()) {
@@ -173,6 +215,12 @@ public final class MicronautAotOptimizer implements ConfigKeys {
             // Add options which are generic to all AOT modules
             wrt.println("# " + Environments.TARGET_ENVIRONMENTS_DESCRIPTION);
             wrt.println(Environments.TARGET_ENVIRONMENTS_NAMES + " = " + Environments.TARGET_ENVIRONMENTS_SAMPLE);
+            wrt.println();
+            wrt.println("# " + MERGE_STATIC_OPTIMIZATIONS_DESCRIPTION);
+            wrt.println(MERGE_STATIC_OPTIMIZATIONS + " = false");
+            wrt.println();
+            wrt.println("# " + DIRECT_CLASS_FILES_DESCRIPTION);
+            wrt.println(DIRECT_CLASS_FILES + " = true");
 
         } catch (FileNotFoundException e) {
             throw new RuntimeException(e);
@@ -189,15 +237,32 @@ public final class MicronautAotOptimizer implements ConfigKeys {
      * @param props the configuration properties
      */
     public static void execute(Properties props) {
+        execute(props, System.getenv(), System.getProperties());
+    }
+
+    /**
+     * Executes an optimization requested by another process, for
+     * example a client of a daemon. The environment variables and
+     * system properties of that process are used to fingerprint the
+     * inputs of the optimizer.
+     *
+     * @param props the configuration properties
+     * @param environment the environment variables of the requesting process
+     * @param systemProperties the system properties of the requesting process
+     */
+    public static void execute(Properties props, Map<String, String> environment, Properties systemProperties) {
         var config = new DefaultConfiguration(props);
         String pkg = config.mandatoryValue(GENERATED_PACKAGE);
         var outputDir = new File(config.mandatoryValue(OUTPUT_DIRECTORY));
-        var sourcesDir = new File(outputDir, "sources");
-        var classesDir = new File(outputDir, "classes");
-        var logsDir = new File(outputDir, "logs");
+        var sourcesDir = new File(outputDir, SOURCES_DIRECTORY_NAME);
+        var classesDir = new File(outputDir, CLASSES_DIRECTORY_NAME);
+        var logsDir = new File(outputDir, LOGS_DIRECTORY_NAME);
+        var cacheDir = new File(config.optionalString(CACHE_DIRECTORY, new File(outputDir, "cache").getAbsolutePath()));
 
         runner(pkg, sourcesDir, classesDir, logsDir, config)
             .addClasspath(config.stringList(CLASSPATH).stream().map(File::new).collect(Collectors.toList()))
+            .cacheDirectory(cacheDir)
+            .environment(environment, systemProperties)
             .execute();
     }
 
@@ -209,58 +274,73 @@ public final class MicronautAotOptimizer implements ConfigKeys {
         return new Runner(generatedPackage, outputSourcesDirectory, outputClassesDirectory, logsDirectory, config);
     }
 
-    private static List<File> outputSourceFilesToSourceDir(File srcDir, List<JavaFile> javaFiles) {
-        var srcFiles = new ArrayList<File>(javaFiles.size());
-        if (srcDir.isDirectory() || srcDir.mkdirs()) {
+    /**
+     * Writes the generated sources to the sources directory. This is
+     * not required for compilation, which happens in memory, but it
+     * is useful to inspect the generated code.
+     *
+     * @param javaFiles the generated files
+     */
+    private void writeGeneratedSources(List<JavaFile> javaFiles) {
+        if (outputSourcesDirectory.isDirectory() || outputSourcesDirectory.mkdirs()) {
             StreamHelper.trying(() -> {
                 for (JavaFile javaFile : javaFiles) {
-                    javaFile.writeTo(srcDir);
+                    javaFile.writeTo(outputSourcesDirectory);
                 }
-                Files.walkFileTree(srcDir.toPath(), new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                        srcFiles.add(file.toFile());
-                        return super.visitFile(file, attrs);
-                    }
-                });
             });
         }
-        return srcFiles;
     }
 
-    private static void throwCompilationError(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
-        var sb = new StringBuilder("Compilation errors:\n");
-        for (Diagnostic<? extends JavaFileObject> d : diagnostics) {
-            JavaFileObject source = d.getSource();
-            String srcFile = source == null ? "unknown" : new File(source.toUri()).getName();
-            String diagLine = String.format("File %s, line: %d, %s", srcFile, d.getLineNumber(), d.getMessage(null));
-            sb.append(diagLine).append("\n");
+    /**
+     * Writes the class files which generators emit directly, which is
+     * much cheaper than compiling their sources. If a class file cannot
+     * be emitted, for example because a value is not supported, its
+     * source is compiled instead.
+     *
+     * @param context the source generation context
+     * @return the generated files which still need to be compiled
+     */
+    private List<JavaFile> writeClassFiles(DefaultSourceGenerationContext context) {
+        var javaFiles = new ArrayList<JavaFile>();
+        for (JavaFile javaFile : context.getGeneratedJavaFiles()) {
+            Optional<byte[]> classFile = context.findClassFile(javaFile).flatMap(supplier -> emitClassFile(javaFile, supplier));
+            if (classFile.isPresent()) {
+                Path path = outputClassesDirectory.toPath()
+                    .resolve(javaFile.packageName.replace('.', '/'))
+                    .resolve(javaFile.typeSpec.name + ".class");
+                StreamHelper.trying(() -> {
+                    Files.createDirectories(path.getParent());
+                    Files.write(path, classFile.get());
+                });
+            } else {
+                javaFiles.add(javaFile);
+            }
         }
-        throw new RuntimeException(sb.toString());
+        LOGGER.debug("Wrote {} class files directly, {} generated sources left to compile", context.getGeneratedJavaFiles().size() - javaFiles.size(), javaFiles.size());
+        return javaFiles;
     }
 
-    private static List<String> compilerOptions(File dstDir,
-                                                List<File> classPath) {
-        var options = new ArrayList<String>();
-        options.add("-source");
-        options.add("17");
-        options.add("-target");
-        options.add("17");
-        options.add("-classpath");
-        String cp = classPath.stream().map(File::getAbsolutePath).collect(Collectors.joining(File.pathSeparator));
-        options.add(cp);
-        options.add("-d");
-        options.add(dstDir.getAbsolutePath());
-        return options;
+    private static Optional<byte[]> emitClassFile(JavaFile javaFile, Supplier<byte[]> classFile) {
+        try {
+            return Optional.of(classFile.get());
+        } catch (RuntimeException | LinkageError e) {
+            LOGGER.debug("Compiling {}.{} because its class file cannot be emitted directly: {}", javaFile.packageName, javaFile.typeSpec.name, e.getMessage());
+            return Optional.empty();
+        }
     }
 
     private void writeLogs(DefaultSourceGenerationContext context) {
         if (logsDirectory.isDirectory() || logsDirectory.mkdirs()) {
             writeLines(new File(logsDirectory, OUTPUT_RESOURCES_FILE_NAME), context.getExcludedResources());
-            context.getDiagnostics().forEach((key, messages) -> {
-                var logFile = new File(logsDirectory, key.toLowerCase(Locale.US) + ".log");
-                writeLines(logFile, messages);
-            });
+        }
+        // Diagnostic messages themselves were already written by the diagnostics sink
+        context.getDiagnosticCounts().forEach((category, count) ->
+            LOGGER.debug("Wrote {} diagnostic messages in category {}", count, category));
+    }
+
+    private void writeTimings(Timings timings) {
+        if (logsDirectory.isDirectory() || logsDirectory.mkdirs()) {
+            timings.writeJson(new File(logsDirectory, TIMINGS_FILE_NAME));
         }
     }
 
@@ -292,6 +372,9 @@ public final class MicronautAotOptimizer implements ConfigKeys {
         private final File logsDirectory;
 
         private final Configuration config;
+        private File cacheDirectory;
+        private Map<String, String> environment = System.getenv();
+        private Properties systemProperties = System.getProperties();
 
         public Runner(String generatedPackage,
                       File outputSourcesDirectory,
@@ -317,32 +400,220 @@ public final class MicronautAotOptimizer implements ConfigKeys {
             return this;
         }
 
+        /**
+         * Sets the directory where the optimizer can store data
+         * which is reused between runs, for example the fingerprint
+         * of the inputs used by incremental runs.
+         *
+         * @param directory the cache directory
+         * @return this builder
+         */
+        public Runner cacheDirectory(File directory) {
+            this.cacheDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Sets the environment variables and system properties which
+         * are used to fingerprint the inputs of the optimizer. They
+         * default to the ones of the current process.
+         *
+         * @param environment the environment variables
+         * @param systemProperties the system properties
+         * @return this builder
+         */
+        public Runner environment(Map<String, String> environment, Properties systemProperties) {
+            this.environment = environment;
+            this.systemProperties = systemProperties;
+            return this;
+        }
+
         public Runner execute() {
+            File fingerprintFile = null;
+            String fingerprint = null;
+            if (config.booleanValue(INCREMENTAL, false) && cacheDirectory != null) {
+                fingerprintFile = new File(cacheDirectory, FINGERPRINT_FILE_NAME);
+                fingerprint = computeInputsFingerprint();
+                if (isUpToDate(fingerprintFile, fingerprint)) {
+                    LOGGER.info("Inputs of the AOT optimizer didn't change, reusing outputs from the previous run");
+                    return this;
+                }
+                // Make sure that an interrupted run is never considered up-to-date
+                fingerprintFile.delete();
+            }
+            // Outputs are generated in a staging directory, then only changed files are copied to the output directories
+            Path stagingDirectory = createStagingDirectory();
+            File stagingSources = stagingDirectory.resolve(SOURCES_DIRECTORY_NAME).toFile();
+            File stagingClasses = stagingDirectory.resolve(CLASSES_DIRECTORY_NAME).toFile();
+            File stagingLogs = stagingDirectory.resolve(LOGS_DIRECTORY_NAME).toFile();
             var optimizer = new MicronautAotOptimizer(
                 classpath,
-                outputSourcesDirectory,
-                outputClassesDirectory,
-                logsDirectory);
-            ApplicationContextAnalyzer analyzer = ApplicationContextAnalyzer.create(spec -> {
+                stagingSources,
+                stagingClasses,
+                stagingLogs);
+            var timings = new Timings();
+            Consumer<ApplicationContextBuilder> spec = builder -> {
                 if (config.containsKey(Environments.TARGET_ENVIRONMENTS_NAMES)) {
                     List<String> targetEnvs = config.stringList(Environments.TARGET_ENVIRONMENTS_NAMES);
                     LOGGER.info("Configuration has explicitly set environments: {} ", targetEnvs);
-                    spec.environments(targetEnvs.toArray(new String[0]));
+                    builder.environments(targetEnvs.toArray(new String[0]));
                 }
                 assertMinimalMicronautVersion();
-            });
+            };
+            String analyzerMode = config.optionalString(ANALYZER_MODE, CONTEXT_ANALYZER_MODE);
+            if (!CONTEXT_ANALYZER_MODE.equals(analyzerMode) && !METADATA_ANALYZER_MODE.equals(analyzerMode)) {
+                throw new IllegalArgumentException("Unknown analyzer mode '" + analyzerMode + "'. Possible values: " + CONTEXT_ANALYZER_MODE + ", " + METADATA_ANALYZER_MODE);
+            }
+            boolean metadataOnly = METADATA_ANALYZER_MODE.equals(analyzerMode);
+            Path snapshotFile = config.booleanValue(ANALYZER_SNAPSHOT, false) && cacheDirectory != null
+                ? cacheDirectory.toPath().resolve(AnalysisSnapshot.SNAPSHOT_FILE_NAME)
+                : null;
+            String snapshotFingerprint = snapshotFile == null ? null : computeSnapshotFingerprint(analyzerMode);
+            Optional<AnalysisSnapshot> snapshot = snapshotFile == null
+                ? Optional.empty()
+                : StreamHelper.trying(() -> AnalysisSnapshot.read(snapshotFile, snapshotFingerprint));
+            ApplicationContextAnalyzer analyzer = timings.time("analyzer", "boot", () -> snapshot.map(previous -> {
+                LOGGER.info("Reusing the analysis snapshot found in {}", snapshotFile);
+                return ApplicationContextAnalyzer.fromSnapshot(previous, metadataOnly, spec);
+            }).orElseGet(() -> metadataOnly ? ApplicationContextAnalyzer.createMetadataOnly(spec) : ApplicationContextAnalyzer.create(spec)));
+            if (!classpath.isEmpty()) {
+                ClasspathIndex classpathIndex = timings.time("analyzer", "classpath index", () -> StreamHelper.trying(() -> ClasspathIndex.load(
+                    classpath,
+                    Fingerprint.create().putFiles(classpath).toHexString(),
+                    cacheDirectory == null ? null : cacheDirectory.toPath().resolve(ClasspathIndex.INDEX_FILE_NAME)
+                )));
+                analyzer.getSharedState(ClasspathIndex.class, () -> classpathIndex);
+            }
             Set<String> environmentNames = analyzer.getEnvironmentNames();
             LOGGER.info("Analysis will be performed with active environments: {}", environmentNames);
-            var context = new DefaultSourceGenerationContext(generatedPackage, analyzer, config, outputClassesDirectory.toPath());
-            List<AOTCodeGenerator> sourceGenerators = SourceGeneratorLoader.load(config.getRuntime(), context);
-            ApplicationContextConfigurerGenerator generator = new ApplicationContextConfigurerGenerator(
-                sourceGenerators
-            );
-            generator.generate(context);
-            optimizer.compileGeneratedSources(context.getExtraClasspath(), context.getGeneratedJavaFiles());
-            optimizer.writeLogs(context);
+            List<Runtime> runtimes = config.getRuntimes();
+            if (runtimes.size() == 1) {
+                optimizer.optimize(generatedPackage, analyzer, new RuntimeConfiguration(config, runtimes.get(0)), timings);
+            } else {
+                // The analyzer is shared, each runtime writes its outputs to a dedicated subdirectory
+                for (Runtime runtime : runtimes) {
+                    LOGGER.info("Generating optimizations for runtime {}", runtime.displayName());
+                    String subdirectory = runtime.name().toLowerCase(Locale.ENGLISH);
+                    new MicronautAotOptimizer(
+                        classpath,
+                        new File(stagingSources, subdirectory),
+                        new File(stagingClasses, subdirectory),
+                        new File(stagingLogs, subdirectory)
+                    ).optimize(generatedPackage, analyzer, new RuntimeConfiguration(config, runtime), timings);
+                }
+            }
+            if (snapshotFile != null) {
+                timings.time("output", "analysis snapshot", () -> StreamHelper.trying(() -> analyzer.snapshot().write(snapshotFile, snapshotFingerprint)));
+            }
+            timings.time("output", "synchronize", () -> StreamHelper.trying(() -> {
+                synchronize(stagingSources, outputSourcesDirectory, SOURCES_DIRECTORY_NAME);
+                synchronize(stagingClasses, outputClassesDirectory, CLASSES_DIRECTORY_NAME);
+            }));
+            optimizer.writeTimings(timings);
+            StreamHelper.trying(() -> {
+                synchronize(stagingLogs, logsDirectory, LOGS_DIRECTORY_NAME);
+                OutputSynchronizer.deleteRecursively(stagingDirectory);
+            });
+            if (fingerprintFile != null) {
+                writeFingerprint(fingerprintFile, fingerprint);
+            }
             return this;
         }
+
+        private Path createStagingDirectory() {
+            return StreamHelper.trying(() -> {
+                if (cacheDirectory == null) {
+                    return Files.createTempDirectory("micronaut-aot-staging");
+                }
+                // Staging next to the outputs makes it possible to move files atomically
+                Path staging = cacheDirectory.toPath().resolve(STAGING_DIRECTORY_NAME);
+                OutputSynchronizer.deleteRecursively(staging);
+                return Files.createDirectories(staging);
+            });
+        }
+
+        private void synchronize(File staging, File output, String name) throws IOException {
+            Path manifest = cacheDirectory == null ? null : cacheDirectory.toPath().resolve(name + MANIFEST_FILE_EXTENSION);
+            OutputSynchronizer.Result result = OutputSynchronizer.synchronize(staging.toPath(), output.toPath(), manifest);
+            LOGGER.debug("Synchronized {} outputs: {} updated, {} unchanged, {} deleted", name, result.updated(), result.unchanged(), result.deleted());
+        }
+
+        /**
+         * Computes a fingerprint of everything which may affect the
+         * outcome of the optimizer: the optimizer itself, the application
+         * classpath (including the configuration resources it contains),
+         * the optimizer configuration, and all environment variables and
+         * system properties, which may change the active environments and
+         * the resolved configuration.
+         *
+         * @return the fingerprint
+         */
+        private String computeInputsFingerprint() {
+            var fingerprint = Fingerprint.create();
+            Stream.of(MicronautAotOptimizer.class, AOTCodeGenerator.class)
+                .map(Class::getProtectionDomain)
+                .map(ProtectionDomain::getCodeSource)
+                .filter(Objects::nonNull)
+                .map(CodeSource::getLocation)
+                .forEach(location -> fingerprint.putString(location.toString()).putFile(toFile(location)));
+            fingerprint.putFiles(classpath);
+            config.keys().stream()
+                .sorted()
+                .forEach(key -> fingerprint.putString(key).putString(config.optionalString(key, "")));
+            fingerprint.putEnvironment(environment, systemProperties);
+            return fingerprint.toHexString();
+        }
+
+        /**
+         * Computes a fingerprint of the inputs of the application context
+         * analysis: the application classpath (including the configuration
+         * resources it contains), the target environments, the analyzer mode
+         * and all environment variables and system properties, since the
+         * application configuration may read any of them.
+         *
+         * @param analyzerMode the analyzer mode
+         * @return the fingerprint
+         */
+        private String computeSnapshotFingerprint(String analyzerMode) {
+            return snapshotFingerprint(
+                analyzerMode,
+                config.optionalString(Environments.TARGET_ENVIRONMENTS_NAMES, ""),
+                classpath,
+                environment,
+                systemProperties
+            );
+        }
+
+        static String snapshotFingerprint(String analyzerMode,
+                                          String targetEnvironments,
+                                          List<File> classpath,
+                                          Map<String, String> environment,
+                                          Properties systemProperties) {
+            return Fingerprint.create()
+                .putString(analyzerMode)
+                .putString(targetEnvironments)
+                .putFiles(classpath)
+                .putEnvironment(environment, systemProperties)
+                .toHexString();
+        }
+
+        private boolean isUpToDate(File fingerprintFile, String fingerprint) {
+            if (!fingerprintFile.isFile() || !outputClassesDirectory.isDirectory()) {
+                return false;
+            }
+            return StreamHelper.trying(() -> Files.readString(fingerprintFile.toPath(), StandardCharsets.UTF_8).trim().equals(fingerprint));
+        }
+
+        private static void writeFingerprint(File fingerprintFile, String fingerprint) {
+            File parent = fingerprintFile.getParentFile();
+            if (parent.isDirectory() || parent.mkdirs()) {
+                StreamHelper.trying(() -> Files.writeString(fingerprintFile.toPath(), fingerprint, StandardCharsets.UTF_8));
+            }
+        }
+
+        private static File toFile(URL location) {
+            return StreamHelper.trying(() -> new File(location.toURI()));
+        }
     }
 
 }
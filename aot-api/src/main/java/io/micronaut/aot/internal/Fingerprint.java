@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Computes a stable hash of the inputs of an optimizer run.
+ * Regular files are hashed using their path, size and last
+ * modification time, which is cheap even for large classpaths.
+ * Configuration resources (application*.yml, logback.xml, ...)
+ * found in classpath directories are hashed using their contents,
+ * because they are small and frequently edited.
+ */
+public final class Fingerprint {
+    private static final Pattern CONTENT_HASHED_RESOURCES = Pattern.compile("(application|bootstrap)(-[^/]+)?\\.(yml|yaml|properties|json|toml|groovy)|logback(-test)?\\.xml");
+    private static final byte SEPARATOR = 0;
+
+    private final MessageDigest digest;
+
+    private Fingerprint(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    public static Fingerprint create() {
+        try {
+            return new Fingerprint(MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Fingerprint putString(String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update(SEPARATOR);
+        return this;
+    }
+
+    /**
+     * Adds a classpath entry to this fingerprint. Directories
+     * are walked recursively, in a stable order.
+     *
+     * @param file the file or directory
+     * @return this fingerprint
+     */
+    public Fingerprint putFile(File file) {
+        Path path = file.toPath().toAbsolutePath();
+        putString(path.toString());
+        if (Files.isDirectory(path)) {
+            StreamHelper.trying(() -> {
+                try (Stream<Path> files = Files.walk(path)) {
+                    List<Path> sorted = files.filter(Files::isRegularFile).sorted().toList();
+                    for (Path child : sorted) {
+                        putString(path.relativize(child).toString());
+                        if (CONTENT_HASHED_RESOURCES.matcher(child.getFileName().toString()).matches()) {
+                            putContents(child);
+                        } else {
+                            putMetadata(child.toFile());
+                        }
+                    }
+                }
+            });
+        } else if (file.isFile()) {
+            putMetadata(file);
+        } else {
+            putString("<missing>");
+        }
+        return this;
+    }
+
+    /**
+     * Adds a classpath entry to this fingerprint using the contents of
+     * its files only. Unlike {@link #putFile(File)}, timestamps are
+     * ignored, so an entry which is rebuilt with identical contents
+     * doesn't change the fingerprint.
+     *
+     * @param file the file or directory
+     * @return this fingerprint
+     */
+    public Fingerprint putFileContents(File file) {
+        Path path = file.toPath().toAbsolutePath();
+        putString(path.toString());
+        if (Files.isDirectory(path)) {
+            StreamHelper.trying(() -> {
+                try (Stream<Path> files = Files.walk(path)) {
+                    List<Path> sorted = files.filter(Files::isRegularFile).sorted().toList();
+                    for (Path child : sorted) {
+                        putString(path.relativize(child).toString());
+                        putContents(child);
+                    }
+                }
+            });
+        } else if (file.isFile()) {
+            StreamHelper.trying(() -> putContents(path));
+        } else {
+            putString("<missing>");
+        }
+        return this;
+    }
+
+    public Fingerprint putFiles(List<File> files) {
+        files.forEach(this::putFile);
+        return this;
+    }
+
+    /**
+     * Adds the names and values of all environment variables and system
+     * properties to this fingerprint. The application configuration may
+     * read any of them, either to deduce the active environments or to
+     * resolve placeholders.
+     *
+     * @param environment the environment variables
+     * @param systemProperties the system properties
+     * @return this fingerprint
+     */
+    public Fingerprint putEnvironment(Map<String, String> environment, Properties systemProperties) {
+        new TreeMap<>(environment).forEach((name, value) -> putString(name).putString(value));
+        systemProperties.stringPropertyNames()
+            .stream()
+            .sorted()
+            .forEach(name -> putString(name).putString(systemProperties.getProperty(name)));
+        return this;
+    }
+
+    public String toHexString() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void putMetadata(File file) {
+        putString(file.length() + ":" + file.lastModified());
+    }
+
+    private void putContents(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        digest.update(SEPARATOR);
+    }
+}
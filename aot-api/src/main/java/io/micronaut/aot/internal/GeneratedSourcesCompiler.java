@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.internal;
+
+import com.squareup.javapoet.JavaFile;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles generated sources with javac. Sources are compiled from
+ * memory: only class files are written to disk. Annotation processing
+ * is disabled and the source path is empty, so that javac neither scans
+ * the application classpath for processors nor looks up sources on it.
+ */
+public final class GeneratedSourcesCompiler {
+    private GeneratedSourcesCompiler() {
+    }
+
+    /**
+     * Compiles the supplied files.
+     *
+     * @param classpath the compile classpath
+     * @param outputDirectory the directory where class files are written
+     * @param javaFiles the files to compile
+     * @return the warnings reported by the compiler
+     * @throws RuntimeException if compilation fails
+     */
+    public static List<String> compile(List<File> classpath, File outputDirectory, List<JavaFile> javaFiles) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        var ds = new DiagnosticCollector<JavaFileObject>();
+        try (StandardJavaFileManager mgr = compiler.getStandardFileManager(ds, null, null)) {
+            mgr.setLocation(StandardLocation.SOURCE_PATH, Collections.emptyList());
+            if (outputDirectory.exists() || outputDirectory.mkdirs()) {
+                List<JavaFileObject> sources = javaFiles.stream()
+                    .map(JavaFile::toJavaFileObject)
+                    .toList();
+                JavaCompiler.CompilationTask task = compiler.getTask(null, mgr, ds, compilerOptions(outputDirectory, classpath), null, sources);
+                task.call();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to compile generated classes", e);
+        }
+        List<Diagnostic<? extends JavaFileObject>> errors = ds.getDiagnostics().stream()
+            .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+            .toList();
+        if (!errors.isEmpty()) {
+            var sb = new StringBuilder("Compilation errors:\n");
+            for (Diagnostic<? extends JavaFileObject> d : errors) {
+                sb.append(format(d)).append("\n");
+            }
+            throw new RuntimeException(sb.toString());
+        }
+        return ds.getDiagnostics().stream()
+            .filter(d -> d.getKind() == Diagnostic.Kind.WARNING || d.getKind() == Diagnostic.Kind.MANDATORY_WARNING)
+            .map(GeneratedSourcesCompiler::format)
+            .toList();
+    }
+
+    private static String format(Diagnostic<? extends JavaFileObject> d) {
+        JavaFileObject source = d.getSource();
+        String srcFile = source == null ? "unknown" : new File(source.getName()).getName();
+        return String.format("File %s, line: %d, %s", srcFile, d.getLineNumber(), d.getMessage(null));
+    }
+
+    private static List<String> compilerOptions(File dstDir, List<File> classPath) {
+        var options = new ArrayList<String>();
+        options.add("-source");
+        options.add("17");
+        options.add("-target");
+        options.add("17");
+        options.add("-classpath");
+        String cp = classPath.stream().map(File::getAbsolutePath).collect(Collectors.joining(File.pathSeparator));
+        options.add(cp);
+        options.add("-d");
+        options.add(dstDir.getAbsolutePath());
+        options.add("-proc:none");
+        options.add("-implicit:none");
+        return options;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Moves the files produced in a staging directory to an output
+ * directory, only replacing the files which content changed. Files
+ * which are unchanged are left untouched, which preserves their
+ * timestamps, so that downstream up-to-date checks and caches aren't
+ * invalidated when the optimizer produces the same outputs.
+ * <p>
+ * A manifest of the output files, including their content hashes, is
+ * kept between runs: files listed in the previous manifest which are
+ * not produced anymore are deleted. Files which were not produced by
+ * the optimizer are never deleted.
+ */
+public final class OutputSynchronizer {
+    private static final String TEMP_SUFFIX = ".aot-tmp";
+
+    private OutputSynchronizer() {
+    }
+
+    /**
+     * Synchronizes an output directory with a staging directory.
+     * Files of the staging directory are moved, so the staging
+     * directory should be discarded after this call.
+     *
+     * @param stagingDirectory the directory containing the new outputs
+     * @param outputDirectory the output directory
+     * @param manifestFile the manifest file, or null if orphaned outputs shouldn't be tracked
+     * @return the synchronization result
+     * @throws IOException if an I/O error occurs
+     */
+    public static Result synchronize(Path stagingDirectory, Path outputDirectory, Path manifestFile) throws IOException {
+        Map<String, Entry> previous = manifestFile == null ? Map.of() : readManifest(manifestFile);
+        var current = new TreeMap<String, Entry>();
+        int updated = 0;
+        int unchanged = 0;
+        for (Path staged : listFiles(stagingDirectory)) {
+            String relativePath = toRelativePath(stagingDirectory, staged);
+            Path output = outputDirectory.resolve(relativePath);
+            String hash = hash(staged);
+            if (isUnchanged(staged, hash, output, previous.get(relativePath))) {
+                unchanged++;
+            } else {
+                replace(staged, output);
+                updated++;
+            }
+            current.put(relativePath, new Entry(hash, Files.size(output), Files.getLastModifiedTime(output).toMillis()));
+        }
+        int deleted = 0;
+        for (String relativePath : previous.keySet()) {
+            if (!current.containsKey(relativePath)) {
+                Path orphan = outputDirectory.resolve(relativePath);
+                if (Files.deleteIfExists(orphan)) {
+                    deleted++;
+                    deleteEmptyParents(orphan.getParent(), outputDirectory);
+                }
+            }
+        }
+        if (manifestFile != null) {
+            writeManifest(manifestFile, current);
+        }
+        return new Result(updated, unchanged, deleted);
+    }
+
+    /**
+     * Deletes a directory and its contents, if it exists.
+     *
+     * @param directory the directory to delete
+     * @throws IOException if an I/O error occurs
+     */
+    public static void deleteRecursively(Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted((a, b) -> b.compareTo(a)).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static boolean isUnchanged(Path staged, String hash, Path output, Entry previous) throws IOException {
+        if (!Files.isRegularFile(output)) {
+            return false;
+        }
+        long size = Files.size(output);
+        if (size != Files.size(staged)) {
+            return false;
+        }
+        if (previous != null && previous.size() == size && previous.lastModified() == Files.getLastModifiedTime(output).toMillis()) {
+            // The output wasn't modified since the previous run: no need to read it
+            return previous.hash().equals(hash);
+        }
+        return Files.mismatch(staged, output) == -1;
+    }
+
+    private static void replace(Path staged, Path output) throws IOException {
+        Files.createDirectories(output.getParent());
+        try {
+            Files.move(staged, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Staging directory on another file system: copy next to the output, then rename
+            Path temp = output.resolveSibling(output.getFileName() + TEMP_SUFFIX);
+            Files.copy(staged, temp, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void deleteEmptyParents(Path directory, Path root) throws IOException {
+        Path current = directory;
+        while (current != null && !current.equals(root) && current.startsWith(root)) {
+            try {
+                Files.deleteIfExists(current);
+            } catch (DirectoryNotEmptyException e) {
+                return;
+            }
+            current = current.getParent();
+        }
+    }
+
+    private static List<Path> listFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private static String toRelativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static Map<String, Entry> readManifest(Path manifestFile) throws IOException {
+        var entries = new TreeMap<String, Entry>();
+        if (Files.isRegularFile(manifestFile)) {
+            for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+                // hash size lastModified path, where the path may contain spaces
+                String[] parts = line.split(" ", 4);
+                if (parts.length == 4) {
+                    try {
+                        entries.put(parts[3], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                    } catch (NumberFormatException e) {
+                        // corrupted line, the file will be considered as unknown
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void writeManifest(Path manifestFile, Map<String, Entry> entries) throws IOException {
+        var lines = new ArrayList<String>(entries.size());
+        entries.forEach((path, entry) -> lines.add(entry.hash() + " " + entry.size() + " " + entry.lastModified() + " " + path));
+        Files.createDirectories(manifestFile.getParent());
+        Path temp = manifestFile.resolveSibling(manifestFile.getFileName() + TEMP_SUFFIX);
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private record Entry(String hash, long size, long lastModified) {
+    }
+
+    /**
+     * The outcome of a synchronization.
+     *
+     * @param updated the number of files which were created or replaced
+     * @param unchanged the number of files which were left untouched
+     * @param deleted the number of orphaned files which were deleted
+     */
+    public record Result(int updated, int unchanged, int deleted) {
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot
+
+import io.micronaut.aot.core.context.AnalysisSnapshot
+import io.micronaut.aot.core.context.ApplicationContextAnalyzer
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Path
+
+class SnapshotFingerprintTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    def "changing an unrelated environment variable invalidates the analysis snapshot"() {
+        def snapshotFile = testDirectory.resolve(AnalysisSnapshot.SNAPSHOT_FILE_NAME)
+        def environment = [PATH: "/usr/bin", MICRONAUT_ENVIRONMENTS: "dev"]
+        def fingerprint = fingerprintOf(environment, new Properties())
+        ApplicationContextAnalyzer.create().snapshot().write(snapshotFile, fingerprint)
+
+        expect:
+        AnalysisSnapshot.read(snapshotFile, fingerprintOf(environment, new Properties())).present
+        !AnalysisSnapshot.read(snapshotFile, fingerprintOf(environment + [DATASOURCE_URL: "jdbc:h2:mem"], new Properties())).present
+        !AnalysisSnapshot.read(snapshotFile, fingerprintOf(environment + [PATH: "/bin"], new Properties())).present
+    }
+
+    def "changing any system property invalidates the analysis snapshot"() {
+        def properties = new Properties()
+        properties.setProperty("datasources.default.url", "jdbc:h2:mem")
+
+        expect:
+        fingerprintOf([:], properties) == fingerprintOf([:], properties.clone() as Properties)
+        fingerprintOf([:], properties) != fingerprintOf([:], new Properties())
+    }
+
+    private static String fingerprintOf(Map<String, String> environment, Properties systemProperties) {
+        MicronautAotOptimizer.Runner.snapshotFingerprint("context", "", [], environment, systemProperties)
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.internal
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class FingerprintTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    def "configuration resources are hashed using their contents"() {
+        def classes = testDirectory.resolve("classes")
+        def config = write(classes.resolve("application.yml"), "micronaut.server.port: 8080")
+        long lastModified = config.toFile().lastModified()
+
+        when:
+        def before = fingerprint(classes)
+        write(config, "micronaut.server.port: 8081")
+        config.toFile().setLastModified(lastModified)
+
+        then: "same size and timestamp, but the contents changed"
+        fingerprint(classes) != before
+    }
+
+    def "other files are hashed using their size and timestamp"() {
+        def classes = testDirectory.resolve("classes")
+        def clazz = write(classes.resolve("com/acme/Foo.class"), "before")
+        long lastModified = clazz.toFile().lastModified()
+
+        when:
+        def before = fingerprint(classes)
+        write(clazz, "after!")
+        clazz.toFile().setLastModified(lastModified)
+
+        then: "same size and timestamp, the change isn't seen"
+        fingerprint(classes) == before
+
+        when:
+        clazz.toFile().setLastModified(lastModified - 10_000)
+
+        then:
+        fingerprint(classes) != before
+
+        when:
+        clazz.toFile().setLastModified(lastModified)
+        write(clazz, "a longer contents")
+        clazz.toFile().setLastModified(lastModified)
+
+        then:
+        fingerprint(classes) != before
+    }
+
+    def "fingerprint depends on the directory layout"() {
+        def classes = testDirectory.resolve("classes")
+        def clazz = write(classes.resolve("com/acme/Foo.class"), "foo")
+
+        when:
+        def before = fingerprint(classes)
+        Files.move(clazz, classes.resolve("com/acme/Bar.class"))
+
+        then:
+        fingerprint(classes) != before
+
+        when:
+        write(classes.resolve("com/acme/Foo.class"), "foo")
+
+        then:
+        fingerprint(classes) != before
+    }
+
+    def "hashes jar files and missing entries"() {
+        def jar = write(testDirectory.resolve("lib.jar"), "not really a jar")
+        def missing = testDirectory.resolve("missing.jar").toFile()
+
+        expect:
+        Fingerprint.create().putFile(jar.toFile()).toHexString() == Fingerprint.create().putFile(jar.toFile()).toHexString()
+        Fingerprint.create().putFile(missing).toHexString() != Fingerprint.create().putFile(jar.toFile()).toHexString()
+        Fingerprint.create().putFiles([jar.toFile(), missing]).toHexString() != Fingerprint.create().putFiles([missing, jar.toFile()]).toHexString()
+    }
+
+    def "can hash entries using their contents only"() {
+        def classes = testDirectory.resolve("classes")
+        def clazz = write(classes.resolve("com/acme/Foo.class"), "before")
+        def jar = write(testDirectory.resolve("lib.jar"), "jar")
+
+        when:
+        def before = Fingerprint.create().putFileContents(classes.toFile()).putFileContents(jar.toFile()).toHexString()
+        clazz.toFile().setLastModified(clazz.toFile().lastModified() - 10_000)
+        jar.toFile().setLastModified(jar.toFile().lastModified() - 10_000)
+
+        then: "timestamps are ignored"
+        Fingerprint.create().putFileContents(classes.toFile()).putFileContents(jar.toFile()).toHexString() == before
+
+        when:
+        write(clazz, "after!")
+
+        then:
+        Fingerprint.create().putFileContents(classes.toFile()).putFileContents(jar.toFile()).toHexString() != before
+    }
+
+    def "strings are separated"() {
+        expect:
+        Fingerprint.create().putString("ab").putString("c").toHexString() != Fingerprint.create().putString("a").putString("bc").toHexString()
+    }
+
+    def "environment variables and system properties are hashed using their names and values"() {
+        def properties = new Properties()
+        properties.setProperty("datasources.default.url", "jdbc:h2:mem")
+
+        expect:
+        environment([MICRONAUT_ENVIRONMENTS: "dev", PATH: "/bin"], properties) == environment([PATH: "/bin", MICRONAUT_ENVIRONMENTS: "dev"], properties.clone() as Properties)
+        environment([MICRONAUT_ENVIRONMENTS: "dev"], properties) != environment([MICRONAUT_ENVIRONMENTS: "test"], properties)
+        environment([:], properties) != environment([:], new Properties())
+    }
+
+    private static String environment(Map<String, String> environment, Properties systemProperties) {
+        Fingerprint.create().putEnvironment(environment, systemProperties).toHexString()
+    }
+
+    private static String fingerprint(Path directory) {
+        Fingerprint.create().putFile(directory.toFile()).toHexString()
+    }
+
+    private static Path write(Path file, String contents) {
+        Files.createDirectories(file.parent)
+        Files.writeString(file, contents)
+        file
+    }
+}
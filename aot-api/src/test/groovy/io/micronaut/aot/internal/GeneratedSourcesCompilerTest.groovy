@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.internal
+
+import com.squareup.javapoet.ClassName
+import com.squareup.javapoet.JavaFile
+import com.squareup.javapoet.MethodSpec
+import com.squareup.javapoet.TypeSpec
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import javax.lang.model.element.Modifier
+import java.nio.file.Files
+import java.nio.file.Path
+
+class GeneratedSourcesCompilerTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    def "compiles sources from memory"() {
+        def classes = testDirectory.resolve("classes")
+
+        when:
+        def warnings = GeneratedSourcesCompiler.compile([], classes.toFile(), [
+                javaFile(TypeSpec.classBuilder("Foo")
+                        .addMethod(MethodSpec.methodBuilder("bar")
+                                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                                .returns(String)
+                                .addStatement('return $S', "bar")
+                                .build())
+                        .build())
+        ])
+
+        then:
+        warnings.empty
+        Files.exists(classes.resolve("io/micronaut/test/Foo.class"))
+        !Files.exists(classes.resolve("io/micronaut/test/Foo.java"))
+    }
+
+    def "reports compilation errors"() {
+        when:
+        GeneratedSourcesCompiler.compile([], testDirectory.toFile(), [
+                javaFile(TypeSpec.classBuilder("Broken")
+                        .addMethod(MethodSpec.methodBuilder("bar")
+                                .returns(String)
+                                .addStatement('return 42')
+                                .build())
+                        .build())
+        ])
+
+        then:
+        RuntimeException ex = thrown()
+        ex.message.startsWith("Compilation errors:")
+        ex.message.contains("File Broken.java, line: 7")
+    }
+
+    def "reports warnings"() {
+        when:
+        def warnings = GeneratedSourcesCompiler.compile([], testDirectory.toFile(), [
+                javaFile(TypeSpec.classBuilder("UsesDeprecatedApi")
+                        .addMethod(MethodSpec.methodBuilder("value")
+                                .returns(Object)
+                                .addStatement('return new $T(42)', Integer)
+                                .build())
+                        .build())
+        ])
+
+        then:
+        warnings.size() == 1
+        warnings[0].contains("File UsesDeprecatedApi.java")
+        warnings[0].contains("marked for removal")
+    }
+
+    def "compiles against the supplied classpath"() {
+        def library = testDirectory.resolve("library")
+        GeneratedSourcesCompiler.compile([], library.toFile(), [
+                javaFile(TypeSpec.classBuilder("Library").addModifiers(Modifier.PUBLIC).build())
+        ])
+        def consumer = JavaFile.builder("io.micronaut.other", TypeSpec.classBuilder("Consumer")
+                .superclass(ClassName.get("io.micronaut.test", "Library"))
+                .build()).build()
+
+        when:
+        GeneratedSourcesCompiler.compile([], testDirectory.resolve("without").toFile(), [consumer])
+
+        then:
+        thrown(RuntimeException)
+
+        when:
+        GeneratedSourcesCompiler.compile([library.toFile()], testDirectory.resolve("with").toFile(), [consumer])
+
+        then:
+        Files.exists(testDirectory.resolve("with/io/micronaut/other/Consumer.class"))
+    }
+
+    private static JavaFile javaFile(TypeSpec type) {
+        JavaFile.builder("io.micronaut.test", type).build()
+    }
+}
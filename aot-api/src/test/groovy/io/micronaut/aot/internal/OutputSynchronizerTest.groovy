@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.internal
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.util.stream.Collectors
+
+class OutputSynchronizerTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    Path staging
+    Path output
+    Path manifest
+
+    def setup() {
+        staging = testDirectory.resolve("staging")
+        output = testDirectory.resolve("output")
+        manifest = testDirectory.resolve("cache/output.manifest")
+    }
+
+    def "moves staged files to an empty output directory"() {
+        stage("com/acme/Foo.class", "foo")
+        stage("META-INF/services/com.acme.Service", "com.acme.Foo")
+
+        when:
+        def result = synchronize()
+
+        then:
+        result == new OutputSynchronizer.Result(2, 0, 0)
+        output.resolve("com/acme/Foo.class").text == "foo"
+        output.resolve("META-INF/services/com.acme.Service").text == "com.acme.Foo"
+
+        and: "files are moved, not copied"
+        !Files.exists(staging.resolve("com/acme/Foo.class"))
+
+        and: "a manifest of the outputs is written"
+        def lines = manifest.readLines()
+        lines.size() == 2
+        lines[0].endsWith(" META-INF/services/com.acme.Service")
+        lines[1].endsWith(" com/acme/Foo.class")
+        lines[1].split(" ")[1] == "3"
+
+        and: "no temporary file is left behind"
+        filesIn(output).every { !it.endsWith(".aot-tmp") }
+        filesIn(manifest.parent) == ["output.manifest"]
+    }
+
+    def "unchanged files keep their timestamps"() {
+        stage("com/acme/Foo.class", "foo")
+        synchronize()
+        def foo = output.resolve("com/acme/Foo.class")
+        def timestamp = FileTime.fromMillis(System.currentTimeMillis() - 60_000)
+        Files.setLastModifiedTime(foo, timestamp)
+
+        when:
+        stage("com/acme/Foo.class", "foo")
+        def result = synchronize()
+
+        then:
+        result == new OutputSynchronizer.Result(0, 1, 0)
+        Files.getLastModifiedTime(foo) == timestamp
+        foo.text == "foo"
+    }
+
+    def "unchanged files are detected without a manifest"() {
+        stage("com/acme/Foo.class", "foo")
+        OutputSynchronizer.synchronize(staging, output, null)
+        def foo = output.resolve("com/acme/Foo.class")
+        def timestamp = FileTime.fromMillis(System.currentTimeMillis() - 60_000)
+        Files.setLastModifiedTime(foo, timestamp)
+
+        when:
+        stage("com/acme/Foo.class", "foo")
+        def result = OutputSynchronizer.synchronize(staging, output, null)
+
+        then:
+        result == new OutputSynchronizer.Result(0, 1, 0)
+        Files.getLastModifiedTime(foo) == timestamp
+    }
+
+    def "replaces files which contents changed"() {
+        stage("com/acme/Foo.class", "foo")
+        stage("com/acme/Bar.class", "bar")
+        synchronize()
+
+        when:
+        stage("com/acme/Foo.class", "foo")
+        stage("com/acme/Bar.class", "baz")
+        def result = synchronize()
+
+        then:
+        result == new OutputSynchronizer.Result(1, 1, 0)
+        output.resolve("com/acme/Foo.class").text == "foo"
+        output.resolve("com/acme/Bar.class").text == "baz"
+    }
+
+    def "compares contents when an output was modified since the previous run"() {
+        stage("com/acme/Foo.class", "foo")
+        synchronize()
+        def foo = output.resolve("com/acme/Foo.class")
+        // Same size, so only the contents tell that the file changed
+        foo.text = "oof"
+        Files.setLastModifiedTime(foo, FileTime.fromMillis(System.currentTimeMillis() - 60_000))
+
+        when:
+        stage("com/acme/Foo.class", "foo")
+        def result = synchronize()
+
+        then:
+        result == new OutputSynchronizer.Result(1, 0, 0)
+        foo.text == "foo"
+    }
+
+    def "deletes orphaned outputs but keeps files it didn't produce"() {
+        stage("com/acme/Foo.class", "foo")
+        stage("com/acme/internal/Bar.class", "bar")
+        synchronize()
+        def userFile = output.resolve("com/acme/User.class")
+        userFile.text = "user"
+
+        when:
+        stage("com/acme/Foo.class", "foo")
+        def result = synchronize()
+
+        then:
+        result == new OutputSynchronizer.Result(0, 1, 1)
+        !Files.exists(output.resolve("com/acme/internal/Bar.class"))
+        !Files.exists(output.resolve("com/acme/internal"))
+        Files.exists(output.resolve("com/acme/Foo.class"))
+        userFile.text == "user"
+        manifest.readLines().size() == 1
+    }
+
+    def "doesn't delete outputs when no manifest is used"() {
+        stage("com/acme/Foo.class", "foo")
+        OutputSynchronizer.synchronize(staging, output, null)
+
+        when:
+        Files.createDirectories(staging)
+        def result = OutputSynchronizer.synchronize(staging, output, null)
+
+        then:
+        result == new OutputSynchronizer.Result(0, 0, 0)
+        Files.exists(output.resolve("com/acme/Foo.class"))
+    }
+
+    def "ignores corrupted manifest lines"() {
+        Files.createDirectories(manifest.parent)
+        manifest.text = "not a manifest line\nabc xyz 0 com/acme/Foo.class\n"
+        stage("com/acme/Foo.class", "foo")
+
+        when:
+        def result = synchronize()
+
+        then:
+        result == new OutputSynchronizer.Result(1, 0, 0)
+        manifest.readLines().size() == 1
+    }
+
+    private OutputSynchronizer.Result synchronize() {
+        OutputSynchronizer.synchronize(staging, output, manifest)
+    }
+
+    private void stage(String path, String contents) {
+        def file = staging.resolve(path)
+        Files.createDirectories(file.parent)
+        file.text = contents
+    }
+
+    private static List<String> filesIn(Path directory) {
+        Files.walk(directory).withCloseable { files ->
+            files.filter(Files::isRegularFile)
+                .map { directory.relativize(it).toString().replace('\\', '/') }
+                .sorted()
+                .collect(Collectors.toList())
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+plugins {
+    id("io.micronaut.build.internal.aot-project")
+    alias(libs.plugins.jmh)
+}
+
+description = "JMH benchmarks of the code generated by Micronaut AOT"
+
+// The benchmarked code is generated by the AOT optimizers themselves,
+// using the resources of this source set, before the benchmarks are compiled
+val benchmarkGenerator by sourceSets.creating {
+}
+
+dependencies {
+    "benchmarkGeneratorImplementation"(platform(mn.micronaut.core.bom))
+    "benchmarkGeneratorImplementation"(projects.micronautAotCore)
+    "benchmarkGeneratorImplementation"(projects.micronautAotStdOptimizers)
+    "benchmarkGeneratorImplementation"(mn.micronaut.context)
+    "benchmarkGeneratorImplementation"(mnLogging.logback.classic)
+    "benchmarkGeneratorRuntimeOnly"(mn.snakeyaml)
+
+    jmhImplementation(platform(mn.micronaut.core.bom))
+    jmhImplementation(benchmarkGenerator.output)
+    jmhImplementation(mn.micronaut.context)
+    jmhImplementation(mnLogging.logback.classic)
+    jmhRuntimeOnly(mn.snakeyaml)
+}
+
+val generatedBenchmarkSources = layout.buildDirectory.dir("generated/benchmark-sources")
+
+val generateBenchmarkSources = tasks.register<JavaExec>("generateBenchmarkSources") {
+    classpath = benchmarkGenerator.runtimeClasspath
+    mainClass.set("io.micronaut.aot.benchmarks.BenchmarkSourcesGenerator")
+    outputs.dir(generatedBenchmarkSources)
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(generatedBenchmarkSources.get().asFile.absolutePath)
+    })
+}
+
+sourceSets.named("jmh") {
+    java.srcDir(generateBenchmarkSources)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
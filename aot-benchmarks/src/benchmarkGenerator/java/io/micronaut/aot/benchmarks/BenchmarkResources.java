@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The inputs shared by the benchmark sources generator and the
+ * benchmarks, so that generated code and runtime code paths
+ * process the same data.
+ */
+public final class BenchmarkResources {
+    /**
+     * The YAML configuration, without extension.
+     */
+    public static final String YAML_CONFIGURATION = "application-benchmark";
+
+    /**
+     * The logback configuration file.
+     */
+    public static final String LOGBACK_CONFIGURATION = "logback-benchmark.xml";
+
+    /**
+     * A synthetic set of environment variables, which makes results
+     * independent of the environment of the machine.
+     */
+    public static final Map<String, String> ENVIRONMENT = createEnvironment();
+
+    private BenchmarkResources() {
+    }
+
+    private static Map<String, String> createEnvironment() {
+        var env = new TreeMap<String, String>();
+        String[] prefixes = {"MICRONAUT_SERVER", "DATASOURCES_DEFAULT", "MICRONAUT_HTTP_CLIENT", "KAFKA_CONSUMERS", "JAVA_TOOL"};
+        String[] suffixes = {"PORT", "URL", "READ_TIMEOUT", "MAX_POOL_SIZE", "OPTIONS"};
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < prefixes.length; j++) {
+                env.put(prefixes[j] + "_" + i + "_" + suffixes[(i + j) % suffixes.length], "value" + i);
+            }
+        }
+        env.put("HOME", "/home/benchmark");
+        env.put("PATH", "/usr/local/bin:/usr/bin:/bin");
+        return Collections.unmodifiableMap(env);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.benchmarks;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeSpec;
+import io.micronaut.aot.core.AOTCodeGenerator;
+import io.micronaut.aot.core.Runtime;
+import io.micronaut.aot.core.config.DefaultConfiguration;
+import io.micronaut.aot.core.context.ApplicationContextAnalyzer;
+import io.micronaut.aot.core.context.DefaultSourceGenerationContext;
+import io.micronaut.aot.std.sourcegen.EnvironmentPropertiesSourceGenerator;
+import io.micronaut.aot.std.sourcegen.JitStaticServiceLoaderSourceGenerator;
+import io.micronaut.aot.std.sourcegen.LogbackConfigurationSourceGenerator;
+import io.micronaut.aot.std.sourcegen.NativeStaticServiceLoaderSourceGenerator;
+import io.micronaut.aot.std.sourcegen.YamlPropertySourceGenerator;
+import io.micronaut.context.env.PropertySource;
+
+import javax.lang.model.element.Modifier;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Generates the sources which are benchmarked, using the
+ * standard optimizers.
+ */
+public final class BenchmarkSourcesGenerator {
+    public static final String GENERATED_PACKAGE = "io.micronaut.aot.benchmarks.generated";
+    public static final String CONFIG_PACKAGE = GENERATED_PACKAGE + ".config";
+    public static final String SERVICE_TYPES = "io.micronaut.core.convert.TypeConverterRegistrar,io.micronaut.inject.BeanDefinitionReference,io.micronaut.core.beans.BeanIntrospectionReference";
+
+    private BenchmarkSourcesGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path outputDirectory = Path.of(args[0]);
+        deleteRecursively(outputDirectory);
+        // Generated resources (service files, ...) aren't used by the benchmarks
+        Path resourcesDirectory = Files.createTempDirectory("aot-benchmarks");
+        try {
+            ApplicationContextAnalyzer analyzer = ApplicationContextAnalyzer.create();
+            generate(analyzer, Runtime.JIT, GENERATED_PACKAGE + ".jit", outputDirectory, resourcesDirectory,
+                new JitStaticServiceLoaderSourceGenerator());
+            generate(analyzer, Runtime.NATIVE, GENERATED_PACKAGE + ".nativeimage", outputDirectory, resourcesDirectory,
+                new NativeStaticServiceLoaderSourceGenerator());
+            generate(analyzer, Runtime.JIT, CONFIG_PACKAGE, outputDirectory, resourcesDirectory,
+                new YamlPropertySourceGenerator(List.of(BenchmarkResources.YAML_CONFIGURATION)),
+                new BenchmarkLogbackConfigurationSourceGenerator(),
+                new EnvironmentPropertiesSourceGenerator(BenchmarkResources.ENVIRONMENT));
+            writePropertySourceFactory(outputDirectory);
+        } finally {
+            deleteRecursively(resourcesDirectory);
+        }
+    }
+
+    private static void generate(ApplicationContextAnalyzer analyzer,
+                                 Runtime runtime,
+                                 String packageName,
+                                 Path outputDirectory,
+                                 Path resourcesDirectory,
+                                 AOTCodeGenerator... generators) throws IOException {
+        var props = new Properties();
+        props.put("runtime", runtime.name().toLowerCase(Locale.ENGLISH));
+        props.put(JitStaticServiceLoaderSourceGenerator.SERVICE_TYPES, SERVICE_TYPES);
+        var context = new DefaultSourceGenerationContext(packageName, analyzer, new DefaultConfiguration(props), resourcesDirectory);
+        for (AOTCodeGenerator generator : generators) {
+            generator.generate(context);
+        }
+        context.finish();
+        for (JavaFile javaFile : context.getGeneratedJavaFiles()) {
+            javaFile.writeTo(outputDirectory);
+        }
+    }
+
+    /**
+     * Generated property sources have a package-private constructor,
+     * so the benchmarks instantiate them through a factory which is
+     * generated in the same package.
+     *
+     * @param outputDirectory the generated sources directory
+     */
+    private static void writePropertySourceFactory(Path outputDirectory) throws IOException {
+        TypeSpec factory = TypeSpec.classBuilder("BenchmarkPropertySources")
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+            .addMethod(MethodSpec.methodBuilder("yamlConfiguration")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(PropertySource.class)
+                .addStatement("return new $T()", ClassName.get(CONFIG_PACKAGE, "Application_benchmarkStaticPropertySource"))
+                .build())
+            .build();
+        JavaFile.builder(CONFIG_PACKAGE, factory).build().writeTo(outputDirectory);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static final class BenchmarkLogbackConfigurationSourceGenerator extends LogbackConfigurationSourceGenerator {
+        @Override
+        protected String getLogbackFileName() {
+            return BenchmarkResources.LOGBACK_CONFIGURATION;
+        }
+    }
+}
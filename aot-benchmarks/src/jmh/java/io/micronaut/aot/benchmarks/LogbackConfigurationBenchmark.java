@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.benchmarks;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
+import io.micronaut.aot.benchmarks.generated.config.StaticLogbackConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares configuring logback from an XML file using Joran with
+ * the configuration generated from the same file.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class LogbackConfigurationBenchmark {
+
+    @Benchmark
+    public LoggerContext joranConfigurator() throws JoranException {
+        var loggerContext = new LoggerContext();
+        var configurator = new JoranConfigurator();
+        configurator.setContext(loggerContext);
+        configurator.doConfigure(LogbackConfigurationBenchmark.class.getClassLoader().getResource(BenchmarkResources.LOGBACK_CONFIGURATION));
+        return loggerContext;
+    }
+
+    @Benchmark
+    public LoggerContext staticLogbackConfiguration() {
+        var loggerContext = new LoggerContext();
+        var configurator = new StaticLogbackConfiguration();
+        configurator.setContext(loggerContext);
+        configurator.configure(loggerContext);
+        return loggerContext;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.benchmarks;
+
+import io.micronaut.core.beans.BeanIntrospectionReference;
+import io.micronaut.core.convert.TypeConverterRegistrar;
+import io.micronaut.core.io.service.SoftServiceLoader;
+import io.micronaut.core.optim.StaticOptimizations;
+import io.micronaut.inject.BeanDefinitionReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of loading services using the service
+ * files found on the classpath with the cost of loading them
+ * using the static service loaders generated for the JIT and
+ * native runtimes. Static optimizations can only be set once
+ * per JVM, which is why each variant uses its own state.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class ServiceLoaderBenchmark {
+
+    @Benchmark
+    public List<Object> softServiceLoader() {
+        return loadServices();
+    }
+
+    @Benchmark
+    public List<Object> jitStaticServiceLoader(JitOptimizations optimizations) {
+        return loadServices();
+    }
+
+    @Benchmark
+    public List<Object> nativeStaticServiceLoader(NativeOptimizations optimizations) {
+        return loadServices();
+    }
+
+    private static List<Object> loadServices() {
+        var services = new ArrayList<Object>();
+        collect(TypeConverterRegistrar.class, services);
+        collect(BeanDefinitionReference.class, services);
+        collect(BeanIntrospectionReference.class, services);
+        return services;
+    }
+
+    private static <S> void collect(Class<S> serviceType, List<Object> services) {
+        var values = new ArrayList<S>();
+        SoftServiceLoader.load(serviceType).collectAll(values);
+        services.addAll(values);
+    }
+
+    /**
+     * Registers the static service loaders generated for the JIT runtime.
+     */
+    @State(Scope.Benchmark)
+    public static class JitOptimizations {
+        @Setup
+        public void setup() {
+            StaticOptimizations.set(new io.micronaut.aot.benchmarks.generated.jit.StaticServicesLoader().load());
+        }
+    }
+
+    /**
+     * Registers the static service loaders generated for the native runtime.
+     */
+    @State(Scope.Benchmark)
+    public static class NativeOptimizations {
+        @Setup
+        public void setup() {
+            StaticOptimizations.set(new io.micronaut.aot.benchmarks.generated.nativeimage.StaticServicesLoader().load());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.benchmarks;
+
+import io.micronaut.aot.benchmarks.generated.config.BenchmarkPropertySources;
+import io.micronaut.context.env.PropertySource;
+import io.micronaut.context.env.yaml.YamlPropertySourceLoader;
+import io.micronaut.core.io.scan.DefaultClassPathResourceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a YAML configuration file with instantiating
+ * the property source generated from it.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class YamlConfigurationBenchmark {
+
+    @Benchmark
+    public PropertySource yamlPropertySourceLoader() {
+        return new YamlPropertySourceLoader()
+            .load(BenchmarkResources.YAML_CONFIGURATION, new DefaultClassPathResourceLoader(YamlConfigurationBenchmark.class.getClassLoader()))
+            .orElseThrow();
+    }
+
+    @Benchmark
+    public PropertySource generatedPropertySource() {
+        return BenchmarkPropertySources.yamlConfiguration();
+    }
+}
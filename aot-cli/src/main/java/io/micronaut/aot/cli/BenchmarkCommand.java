@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.cli;
+
+import io.micronaut.aot.ConfigKeys;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the startup of an application with and without the classes
+ * generated by Micronaut AOT. Each sample is measured in a fresh JVM,
+ * and samples of the different variants are interleaved, so that
+ * variations of the machine load affect all variants alike.
+ * <p>
+ * Optionally, the optimizations are regenerated with each optimization
+ * disabled in turn, which shows how much each optimization contributes.
+ */
+@Command(name = "benchmark",
+        mixinStandardHelpOptions = true,
+        versionProvider = VersionProvider.class,
+        description = "Compares the startup of an application with and without the classes generated by Micronaut AOT")
+public class BenchmarkCommand implements Runnable, ConfigKeys {
+    private static final String ENABLED_SUFFIX = ".enabled";
+
+    @Option(names = {"--classpath", "-cp"}, description = "The Micronaut application runtime classpath", required = true)
+    private String classpathString;
+
+    @Option(names = {"--aot-output"}, description = "The output directory of the AOT optimizer", required = true)
+    private File aotOutputDirectory;
+
+    @Option(names = {"--iterations", "-n"}, defaultValue = "10", description = "The number of measured startups per variant")
+    private int iterations = 10;
+
+    @Option(names = {"--warmup"}, defaultValue = "1", description = "The number of discarded startups per variant")
+    private int warmup = 1;
+
+    @Option(names = {"--java"}, description = "The java executable used to start the application")
+    private File javaExecutable;
+
+    @Option(names = {"--jvm-arg"}, description = "An argument of the JVMs starting the application")
+    private List<String> jvmArgs = new ArrayList<>();
+
+    @Option(names = {"--environments"}, split = ",", description = "The environments to activate")
+    private List<String> environments = new ArrayList<>();
+
+    @Option(names = {"--split-by-optimization"}, description = "Regenerates the optimizations with each one of them disabled, to measure their individual contribution")
+    private boolean splitByOptimization;
+
+    @Option(names = {"--optimizer-classpath"}, description = "The Micronaut AOT classpath, required to split by optimization")
+    private String optimizerClasspathString;
+
+    @Option(names = {"--config"}, description = "The configuration file (.properties) of the optimizer, required to split by optimization")
+    private File config;
+
+    @Option(names = {"--package", "-p"}, description = "The target package for generated classes, required to split by optimization")
+    private String packageName;
+
+    @Option(names = {"--runtime"}, description = "The target runtime. Possible values: jit, native")
+    private String runtime = "jit";
+
+    @Override
+    public void run() {
+        List<String> classpath = splitClasspath(classpathString);
+        String aotClasses = new File(aotOutputDirectory, "classes").getAbsolutePath();
+        var variants = new ArrayList<Variant>();
+        variants.add(new Variant("without AOT", null, classpath));
+        variants.add(new Variant("with AOT", null, prepend(aotClasses, classpath)));
+        Path workDirectory = null;
+        try {
+            if (splitByOptimization) {
+                workDirectory = Files.createTempDirectory("micronaut-aot-benchmark");
+                for (String id : enabledOptimizations()) {
+                    File output = workDirectory.resolve(id).toFile();
+                    System.out.println("Generating optimizations without " + id);
+                    regenerateWithout(id, classpath, output);
+                    variants.add(new Variant("with AOT, without " + id, id, prepend(new File(output, "classes").getAbsolutePath(), classpath)));
+                }
+            }
+            measure(variants);
+            report(variants);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (workDirectory != null) {
+                deleteRecursively(workDirectory);
+            }
+        }
+    }
+
+    private void measure(List<Variant> variants) throws IOException {
+        for (int i = 0; i < warmup + iterations; i++) {
+            boolean measured = i >= warmup;
+            System.out.println((measured ? "Iteration " + (i - warmup + 1) + "/" + iterations : "Warmup " + (i + 1) + "/" + warmup));
+            for (Variant variant : variants) {
+                Sample sample = probe(variant);
+                if (measured) {
+                    variant.samples.add(sample);
+                }
+            }
+        }
+    }
+
+    private Sample probe(Variant variant) throws IOException {
+        var command = new ArrayList<String>();
+        command.add(javaExecutable().getAbsolutePath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(String.join(File.pathSeparator, append(probeLocation(), variant.classpath)));
+        command.add(StartupProbe.class.getName());
+        command.addAll(environments);
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var output = new ArrayList<String>();
+        Sample sample = null;
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(StartupProbe.RESULT_PREFIX)) {
+                    sample = Sample.parse(line.substring(StartupProbe.RESULT_PREFIX.length()).trim());
+                } else {
+                    output.add(line);
+                }
+            }
+        }
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+            throw new IllegalStateException("Interrupted while measuring " + variant.name, e);
+        }
+        if (exitCode != 0 || sample == null) {
+            throw new IllegalStateException("Application startup failed (" + variant.name + ", exit code " + exitCode + "):\n"
+                + output.stream().skip(Math.max(0, output.size() - 50)).collect(Collectors.joining("\n")));
+        }
+        return sample;
+    }
+
+    private void report(List<Variant> variants) {
+        System.out.println();
+        System.out.printf(Locale.US, "%-50s %10s %10s %10s %12s %10s %14s %10s%n",
+            "Variant", "start p50", "start p90", "start max", "uptime p50", "classes", "allocated MB", "RSS MB");
+        for (Variant variant : variants) {
+            System.out.printf(Locale.US, "%-50s %10.1f %10.1f %10.1f %12d %10d %14.1f %10.1f%n",
+                variant.name,
+                variant.percentile(Sample::startNanos, 50) / 1_000_000d,
+                variant.percentile(Sample::startNanos, 90) / 1_000_000d,
+                variant.percentile(Sample::startNanos, 100) / 1_000_000d,
+                variant.percentile(Sample::uptimeMillis, 50),
+                variant.percentile(Sample::loadedClasses, 50),
+                megabytes(variant.percentile(Sample::allocatedBytes, 50)),
+                megabytes(variant.percentile(Sample::rssBytes, 50)));
+        }
+        Variant baseline = variants.get(0);
+        Variant aot = variants.get(1);
+        System.out.println();
+        System.out.printf(Locale.US, "AOT saves %.1f ms (median time to context start) and %d loaded classes%n",
+            (baseline.percentile(Sample::startNanos, 50) - aot.percentile(Sample::startNanos, 50)) / 1_000_000d,
+            baseline.percentile(Sample::loadedClasses, 50) - aot.percentile(Sample::loadedClasses, 50));
+        variants.stream()
+            .filter(variant -> variant.optimization != null)
+            .sorted(Comparator.comparingLong((Variant variant) -> variant.percentile(Sample::startNanos, 50)).reversed())
+            .forEach(variant -> System.out.printf(Locale.US, "  %-48s %8.1f ms %8d classes%n",
+                variant.optimization,
+                (variant.percentile(Sample::startNanos, 50) - aot.percentile(Sample::startNanos, 50)) / 1_000_000d,
+                variant.percentile(Sample::loadedClasses, 50) - aot.percentile(Sample::loadedClasses, 50)));
+    }
+
+    private List<String> enabledOptimizations() throws IOException {
+        Properties props = loadConfiguration();
+        var ids = new TreeSet<String>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.endsWith(ENABLED_SUFFIX) && Boolean.parseBoolean(props.getProperty(key).trim())) {
+                ids.add(key.substring(0, key.length() - ENABLED_SUFFIX.length()));
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private void regenerateWithout(String id, List<String> classpath, File output) throws IOException {
+        Properties props = loadConfiguration();
+        props.put(id + ENABLED_SUFFIX, "false");
+        List<String> fullClasspath = Stream.concat(classpath.stream(), splitClasspath(optimizerClasspathString).stream()).toList();
+        props.put(CLASSPATH, String.join(",", fullClasspath));
+        props.put(GENERATED_PACKAGE, packageName);
+        props.put(OUTPUT_DIRECTORY, output.getAbsolutePath());
+        props.put(RUNTIME, runtime);
+        props.put(OUTPUT_SOURCES, "false");
+        URL[] urls = Main.toURLs(String.join(File.pathSeparator, fullClasspath)).toArray(new URL[0]);
+        try (var cl = new URLClassLoader(urls, new Main.FilteringClassLoader(Thread.currentThread().getContextClassLoader()))) {
+            Main.invokeOptimizer(cl, "execute", new Class<?>[] {Properties.class}, props);
+        }
+    }
+
+    private Properties loadConfiguration() throws IOException {
+        if (config == null || packageName == null || optimizerClasspathString == null) {
+            throw new IllegalArgumentException("Splitting by optimization requires the --config, --package and --optimizer-classpath options");
+        }
+        var props = new Properties();
+        try (var reader = new InputStreamReader(new FileInputStream(config), StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        return props;
+    }
+
+    private File javaExecutable() {
+        if (javaExecutable != null) {
+            return javaExecutable;
+        }
+        return new File(System.getProperty("java.home"), "bin" + File.separator + "java");
+    }
+
+    private static String probeLocation() {
+        try {
+            return new File(StartupProbe.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<String> splitClasspath(String classpath) {
+        return Stream.of(classpath.split("[,;" + File.pathSeparator + "]"))
+            .filter(entry -> !entry.isEmpty())
+            .map(entry -> new File(entry).getAbsolutePath())
+            .toList();
+    }
+
+    private static List<String> prepend(String entry, List<String> classpath) {
+        var result = new ArrayList<String>(classpath.size() + 1);
+        result.add(entry);
+        result.addAll(classpath);
+        return result;
+    }
+
+    private static List<String> append(String entry, List<String> classpath) {
+        var result = new ArrayList<>(classpath);
+        result.add(entry);
+        return result;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes < 0 ? -1 : bytes / (1024d * 1024d);
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // temporary files, ignore
+        }
+    }
+
+    private static final class Variant {
+        private final String name;
+        private final String optimization;
+        private final List<String> classpath;
+        private final List<Sample> samples = new ArrayList<>();
+
+        private Variant(String name, String optimization, List<String> classpath) {
+            this.name = name;
+            this.optimization = optimization;
+            this.classpath = classpath;
+        }
+
+        /**
+         * Computes a percentile using the nearest rank method.
+         */
+        private long percentile(ToLongFunction<Sample> metric, int percentile) {
+            long[] values = samples.stream().mapToLong(metric).sorted().toArray();
+            if (values.length == 0) {
+                return -1;
+            }
+            int rank = (int) Math.ceil(percentile / 100d * values.length);
+            return values[Math.max(0, rank - 1)];
+        }
+    }
+
+    private record Sample(long startNanos, long uptimeMillis, long loadedClasses, long allocatedBytes, long rssBytes) {
+        private static Sample parse(String line) {
+            String[] parts = line.split(" ");
+            return new Sample(
+                Long.parseLong(parts[0]),
+                Long.parseLong(parts[1]),
+                Long.parseLong(parts[2]),
+                Long.parseLong(parts[3]),
+                Long.parseLong(parts[4])
+            );
+        }
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.cli;
+
+import io.micronaut.aot.ConfigKeys;
+import io.micronaut.aot.internal.Fingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-lived process which executes optimization requests sent by
+ * other invocations of the command line interface, through a Unix
+ * domain socket. The daemon keeps the classloaders it creates for the
+ * application classpaths, so that repeated requests benefit from
+ * already loaded and JIT-compiled classes. Classloaders are cached
+ * using a fingerprint of the contents of the classpath entries: an
+ * entry which is rebuilt with identical contents reuses the cached
+ * classloader, while modified contents result in a new classloader.
+ * <p>
+ * Requests carry the environment variables, system properties and
+ * working directory of the client. They are used to fingerprint the
+ * inputs of the optimizer, as an in-process execution would. Since the
+ * application context analysis reads the environment of the daemon
+ * process, the daemon refuses requests from clients with a different
+ * environment, which then run the optimizer in process.
+ * <p>
+ * The socket is only accessible by the user who started the daemon, and
+ * by default it is created in a directory private to that user, since
+ * requests contain the environment of the client.
+ * <p>
+ * Requests for the same classpath are executed sequentially, while
+ * requests for different classpaths may be executed concurrently.
+ * Classloaders are leased for the duration of a request: a classloader
+ * evicted from the cache is only closed once the requests using it
+ * have completed.
+ */
+final class Daemon {
+    private static final String OPTIMIZE = "optimize";
+    private static final String STOP = "stop";
+    private static final int SUCCESS = 0;
+    private static final int FAILURE = 1;
+    private static final int REFUSED = 2;
+    private static final String SOCKET_FILE_NAME = "daemon.sock";
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+    private final File socketFile;
+    private final int maxClassLoaders;
+    private final ClassLoader parentLoader;
+    private final PrintWriter out;
+    private final PrintWriter err;
+    // Guarded by itself, together with the leases of the cached classloaders
+    private final Map<String, CachedClassLoader> classLoaders = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, ContentHash> jarHashes = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        var thread = new Thread(r, "aot-daemon-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile ServerSocketChannel server;
+
+    Daemon(File socketFile, int maxClassLoaders, ClassLoader parentLoader, PrintWriter out, PrintWriter err) {
+        this.socketFile = socketFile;
+        this.maxClassLoaders = Math.max(1, maxClassLoaders);
+        this.parentLoader = parentLoader;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Returns the default socket, located in the runtime directory of the
+     * user if there is one, otherwise in the home directory of the user.
+     *
+     * @return the default socket file
+     */
+    static File defaultSocketFile() {
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDirectory != null && !runtimeDirectory.isEmpty()) {
+            return new File(new File(runtimeDirectory, "micronaut-aot"), SOCKET_FILE_NAME);
+        }
+        return new File(new File(System.getProperty("user.home"), ".micronaut-aot"), SOCKET_FILE_NAME);
+    }
+
+    /**
+     * Listens to requests until a stop request is received.
+     *
+     * @throws IOException if the socket cannot be created
+     */
+    void serve() throws IOException {
+        var address = UnixDomainSocketAddress.of(socketFile.toPath());
+        try (SocketChannel existing = connect(socketFile)) {
+            if (existing != null) {
+                throw new IllegalStateException("A daemon is already listening on " + socketFile);
+            }
+        }
+        createSocketDirectory(socketFile.getAbsoluteFile().getParentFile().toPath());
+        // A socket file which doesn't accept connections was left over by a daemon which didn't terminate cleanly
+        Files.deleteIfExists(socketFile.toPath());
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server = channel;
+            channel.bind(address);
+            if (isPosix()) {
+                Files.setPosixFilePermissions(socketFile.toPath(), OWNER_ONLY_FILE);
+            }
+            out.println("Micronaut AOT daemon listening on " + socketFile);
+            out.flush();
+            while (channel.isOpen()) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                executor.execute(() -> handle(client));
+            }
+        } finally {
+            executor.shutdown();
+            Files.deleteIfExists(socketFile.toPath());
+            var unused = new ArrayList<CachedClassLoader>();
+            synchronized (classLoaders) {
+                for (CachedClassLoader classLoader : classLoaders.values()) {
+                    if (classLoader.evict()) {
+                        unused.add(classLoader);
+                    }
+                }
+                classLoaders.clear();
+            }
+            unused.forEach(CachedClassLoader::close);
+        }
+        out.println("Micronaut AOT daemon stopped");
+        out.flush();
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+             var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)))) {
+            String action = readString(in);
+            switch (action) {
+                case OPTIMIZE -> {
+                    Properties props = readProperties(in);
+                    ProcessEnvironment environment = ProcessEnvironment.readFrom(in);
+                    String difference = ProcessEnvironment.current().differenceWith(environment);
+                    if (difference != null) {
+                        writeResponse(out, REFUSED, "The Micronaut AOT daemon runs with a different " + difference);
+                        return;
+                    }
+                    try {
+                        optimize(props, environment);
+                        writeResponse(out, SUCCESS, null);
+                    } catch (RuntimeException | LinkageError e) {
+                        writeResponse(out, FAILURE, stackTraceOf(e));
+                    }
+                }
+                case STOP -> {
+                    writeResponse(out, SUCCESS, null);
+                    server.close();
+                }
+                default -> writeResponse(out, FAILURE, "Unknown daemon request: " + action);
+            }
+        } catch (IOException e) {
+            err.println("Unable to process daemon request: " + e.getMessage());
+            err.flush();
+        }
+    }
+
+    private void optimize(Properties props, ProcessEnvironment environment) {
+        List<File> classpath = Arrays.stream(props.getProperty(ConfigKeys.CLASSPATH, "").split(","))
+            .filter(path -> !path.isEmpty())
+            .map(File::new)
+            .toList();
+        CachedClassLoader classLoader = acquire(classpath);
+        try {
+            synchronized (classLoader.requestLock) {
+                Main.invokeOptimizer(classLoader.loader, "execute", new Class<?>[] {Properties.class, Map.class, Properties.class},
+                    props, environment.variables(), environment.systemProperties());
+            }
+        } finally {
+            release(classLoader);
+        }
+    }
+
+    /**
+     * Returns a classloader for the supplied classpath, leased until
+     * {@link #release(CachedClassLoader)} is called.
+     *
+     * @param classpath the application classpath
+     * @return the leased classloader
+     */
+    private CachedClassLoader acquire(List<File> classpath) {
+        String key = fingerprintOf(classpath);
+        var unused = new ArrayList<CachedClassLoader>();
+        CachedClassLoader classLoader;
+        synchronized (classLoaders) {
+            classLoader = classLoaders.computeIfAbsent(key, k -> new CachedClassLoader(
+                new URLClassLoader(toURLs(classpath), new Main.FilteringClassLoader(parentLoader))
+            ));
+            classLoader.leases++;
+            Iterator<CachedClassLoader> eldest = classLoaders.values().iterator();
+            while (classLoaders.size() > maxClassLoaders) {
+                CachedClassLoader evicted = eldest.next();
+                eldest.remove();
+                if (evicted.evict()) {
+                    unused.add(evicted);
+                }
+            }
+        }
+        unused.forEach(CachedClassLoader::close);
+        return classLoader;
+    }
+
+    private void release(CachedClassLoader classLoader) {
+        boolean close;
+        synchronized (classLoaders) {
+            classLoader.leases--;
+            close = classLoader.evicted && classLoader.leases == 0;
+        }
+        if (close) {
+            classLoader.close();
+        }
+    }
+
+    /**
+     * Computes the cache key of a classpath from the contents of its
+     * entries. Hashing the contents of jars is costly, so their hashes
+     * are only recomputed when their size or timestamp changes.
+     *
+     * @param classpath the application classpath
+     * @return the cache key
+     */
+    private String fingerprintOf(List<File> classpath) {
+        var fingerprint = Fingerprint.create();
+        for (File entry : classpath) {
+            if (entry.isFile()) {
+                String path = entry.getAbsolutePath();
+                String metadata = entry.length() + ":" + entry.lastModified();
+                ContentHash hash = jarHashes.get(path);
+                if (hash == null || !hash.metadata().equals(metadata)) {
+                    hash = new ContentHash(metadata, Fingerprint.create().putFileContents(entry).toHexString());
+                    jarHashes.put(path, hash);
+                }
+                fingerprint.putString(hash.hash());
+            } else {
+                fingerprint.putFileContents(entry);
+            }
+        }
+        return fingerprint.toHexString();
+    }
+
+    /**
+     * Sends an optimization request to the daemon listening on the
+     * supplied socket.
+     *
+     * @param socketFile the daemon socket
+     * @param props the configuration of the optimizer
+     * @param err the writer used to report that the request falls back to an in-process execution
+     * @return false if no daemon could process the request
+     */
+    static boolean submit(File socketFile, Properties props, PrintWriter err) {
+        return submit(socketFile, props, ProcessEnvironment.current(), err);
+    }
+
+    static boolean submit(File socketFile, Properties props, ProcessEnvironment environment, PrintWriter err) {
+        if (socketFile.exists() && !isOwnedByCurrentUser(socketFile)) {
+            // Requests contain the environment of the client, which must not be sent to another user
+            err.println("The Micronaut AOT daemon socket " + socketFile + " belongs to another user, running in process");
+            err.flush();
+            return false;
+        }
+        try (SocketChannel channel = connect(socketFile)) {
+            if (channel == null) {
+                err.println("No Micronaut AOT daemon is listening on " + socketFile + ", running in process");
+                err.flush();
+                return false;
+            }
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            writeString(out, OPTIMIZE);
+            writeProperties(out, props);
+            environment.writeTo(out);
+            out.flush();
+            Response response = readResponse(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+            if (response.status() == REFUSED) {
+                err.println(response.message() + ", running in process");
+                err.flush();
+                return false;
+            }
+            if (response.status() != SUCCESS) {
+                throw new RuntimeException("The Micronaut AOT daemon failed to optimize the application:\n" + response.message());
+            }
+            return true;
+        } catch (IOException e) {
+            err.println("Lost connection with the Micronaut AOT daemon (" + e.getMessage() + "), running in process");
+            err.flush();
+            return false;
+        }
+    }
+
+    /**
+     * Stops the daemon listening on the supplied socket, if any.
+     *
+     * @param socketFile the daemon socket
+     * @param out the writer used to report that no daemon is running
+     */
+    static void stop(File socketFile, PrintWriter out) {
+        try (SocketChannel channel = connect(socketFile)) {
+            if (channel == null) {
+                out.println("No Micronaut AOT daemon is listening on " + socketFile);
+                out.flush();
+                return;
+            }
+            var request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            writeString(request, STOP);
+            request.flush();
+            readResponse(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates the directory of the socket, if missing, so that only the
+     * current user can access it.
+     *
+     * @param directory the directory of the socket
+     * @throws IOException if the directory cannot be created
+     */
+    private static void createSocketDirectory(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        if (isPosix()) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    private static boolean isOwnedByCurrentUser(File file) {
+        try {
+            UserPrincipal currentUser = file.toPath().getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+            return Files.getOwner(file.toPath()).equals(currentUser);
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static boolean isPosix() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static SocketChannel connect(File socketFile) {
+        if (!socketFile.exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socketFile.toPath()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static URL[] toURLs(List<File> files) {
+        return files.stream().map(file -> {
+            try {
+                return file.toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }).toArray(URL[]::new);
+    }
+
+    private static String stackTraceOf(Throwable e) {
+        var writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    private static void writeResponse(DataOutputStream out, int status, String message) throws IOException {
+        out.writeByte(status);
+        if (status != SUCCESS) {
+            writeString(out, message);
+        }
+        out.flush();
+    }
+
+    private static Response readResponse(DataInputStream in) throws IOException {
+        int status = in.readByte();
+        return new Response(status, status == SUCCESS ? null : readString(in));
+    }
+
+    private static void writeProperties(DataOutputStream out, Properties props) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        props.store(bytes, null);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static Properties readProperties(DataInputStream in) throws IOException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        var props = new Properties();
+        props.load(new ByteArrayInputStream(bytes));
+        return props;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record ContentHash(String metadata, String hash) {
+    }
+
+    private record Response(int status, String message) {
+    }
+
+    /**
+     * The environment of a process, which may change the outcome of the
+     * optimizer.
+     *
+     * @param variables the environment variables
+     * @param systemProperties the system properties
+     * @param commandLineProperties the names of the system properties set on the command line of the process
+     * @param workingDirectory the working directory
+     */
+    record ProcessEnvironment(Map<String, String> variables,
+                              Properties systemProperties,
+                              Set<String> commandLineProperties,
+                              String workingDirectory) {
+
+        static ProcessEnvironment current() {
+            var commandLineProperties = new TreeSet<String>();
+            for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (argument.startsWith("-D")) {
+                    int separator = argument.indexOf('=');
+                    commandLineProperties.add(separator < 0 ? argument.substring(2) : argument.substring(2, separator));
+                }
+            }
+            var systemProperties = new Properties();
+            systemProperties.putAll(System.getProperties());
+            return new ProcessEnvironment(
+                new TreeMap<>(System.getenv()),
+                systemProperties,
+                commandLineProperties,
+                System.getProperty("user.dir")
+            );
+        }
+
+        /**
+         * Describes how the environment of another process differs
+         * from this one. System properties are only compared if they
+         * were set on the command line of either process, since the
+         * other ones describe the JVM rather than the application.
+         *
+         * @param other the environment of the other process
+         * @return the description of the difference, or null if the environments match
+         */
+        String differenceWith(ProcessEnvironment other) {
+            if (!workingDirectory.equals(other.workingDirectory)) {
+                return "working directory (" + workingDirectory + ")";
+            }
+            if (!variables.equals(other.variables)) {
+                return "set of environment variables";
+            }
+            var names = new TreeSet<>(commandLineProperties);
+            names.addAll(other.commandLineProperties);
+            for (String name : names) {
+                if (!Objects.equals(systemProperties.getProperty(name), other.systemProperties.getProperty(name))) {
+                    return "value of the system property " + name;
+                }
+            }
+            return null;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(variables.size());
+            for (Map.Entry<String, String> variable : variables.entrySet()) {
+                writeString(out, variable.getKey());
+                writeString(out, variable.getValue());
+            }
+            writeProperties(out, systemProperties);
+            out.writeInt(commandLineProperties.size());
+            for (String name : commandLineProperties) {
+                writeString(out, name);
+            }
+            writeString(out, workingDirectory);
+        }
+
+        static ProcessEnvironment readFrom(DataInputStream in) throws IOException {
+            var variables = new TreeMap<String, String>();
+            for (int i = in.readInt(); i > 0; i--) {
+                variables.put(readString(in), readString(in));
+            }
+            Properties systemProperties = readProperties(in);
+            var commandLineProperties = new TreeSet<String>();
+            for (int i = in.readInt(); i > 0; i--) {
+                commandLineProperties.add(readString(in));
+            }
+            return new ProcessEnvironment(variables, systemProperties, commandLineProperties, readString(in));
+        }
+    }
+
+    private static final class CachedClassLoader {
+        private final URLClassLoader loader;
+        private final Object requestLock = new Object();
+        // Guarded by the classloaders cache
+        private int leases;
+        private boolean evicted;
+
+        private CachedClassLoader(URLClassLoader loader) {
+            this.loader = loader;
+        }
+
+        /**
+         * Marks this classloader as evicted from the cache.
+         *
+         * @return true if the classloader can be closed immediately
+         */
+        private boolean evict() {
+            evicted = true;
+            return leases == 0;
+        }
+
+        private void close() {
+            try {
+                loader.close();
+            } catch (IOException e) {
+                // the loader is discarded anyway
+            }
+        }
+    }
+}
@@ -19,11 +19,14 @@ import io.micronaut.aot.ConfigKeys;
 import io.micronaut.aot.MicronautAotOptimizer;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.Spec;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
@@ -42,26 +45,68 @@ import java.util.stream.Collectors;
 @Command(name = "micronaut-aot",
         mixinStandardHelpOptions = true,
         versionProvider = VersionProvider.class,
-        description = "Generates classes for Micronaut AOT (build time optimizations)")
+        description = "Generates classes for Micronaut AOT (build time optimizations)",
+        subcommands = BenchmarkCommand.class)
 public class Main implements Runnable, ConfigKeys {
 
-    @Option(names = {"--classpath", "-cp"}, description = "The Micronaut application classpath", required = true)
+    @Spec
+    private CommandSpec spec;
+
+    @Option(names = {"--classpath", "-cp"}, description = "The Micronaut application classpath")
     private String classpathString;
 
-    @Option(names = {"--package", "-p"}, description = "The target package for generated classes", required = true)
+    @Option(names = {"--package", "-p"}, description = "The target package for generated classes")
     private String packageName;
 
-    @Option(names = {"--runtime"}, description = "The target runtime. Possible values: jit, native")
+    @Option(names = {"--runtime"}, description = "The target runtime. Possible values: jit, native, or a comma separated list of runtimes")
     private String runtime = "jit";
 
-    @Option(names = {"--config"}, description = "The configuration file (.properties)", required = true)
+    @Option(names = {"--config"}, description = "The configuration file (.properties)")
     private File config;
 
     @Option(names = {"--output", "-o"}, description = "The output directory", required = false)
     private File outputDirectory;
 
+    @Option(names = {"--incremental"}, description = "Reuses the outputs of the previous run if the classpath and configuration didn't change")
+    private boolean incremental;
+
+    @Option(names = {"--sources"}, negatable = true, defaultValue = "true", fallbackValue = "true", description = "Writes the generated sources to the output directory, for inspection")
+    private boolean writeSources = true;
+
+    @Option(names = {"--daemon"}, description = "Starts a daemon which executes the optimizations requested by other invocations using --use-daemon")
+    private boolean daemon;
+
+    @Option(names = {"--use-daemon"}, description = "Sends the optimization request to the daemon, if one is running")
+    private boolean useDaemon;
+
+    @Option(names = {"--daemon-stop"}, description = "Stops the running daemon")
+    private boolean daemonStop;
+
+    @Option(names = {"--daemon-socket"}, description = "The Unix domain socket used to communicate with the daemon")
+    private File daemonSocket;
+
+    @Option(names = {"--daemon-max-classloaders"}, defaultValue = "4", description = "The maximum number of application classloaders kept by the daemon")
+    private int daemonMaxClassLoaders = 4;
+
     @Override
     public void run() {
+        File socketFile = daemonSocket != null ? daemonSocket : Daemon.defaultSocketFile();
+        if (daemonStop) {
+            Daemon.stop(socketFile, spec.commandLine().getOut());
+            return;
+        }
+        if (daemon) {
+            try {
+                new Daemon(socketFile, daemonMaxClassLoaders, Thread.currentThread().getContextClassLoader(),
+                    spec.commandLine().getOut(), spec.commandLine().getErr()).serve();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        requireOption(classpathString, "--classpath");
+        requireOption(packageName, "--package");
+        requireOption(config, "--config");
         List<URL> classpath = toURLs(classpathString);
         var props = new Properties();
         if (config.exists()) {
@@ -83,6 +128,13 @@ public class Main implements Runnable, ConfigKeys {
             props.put(OUTPUT_DIRECTORY, outputDirectory.getAbsolutePath());
         }
         props.put(RUNTIME, runtime);
+        if (incremental) {
+            props.put(INCREMENTAL, "true");
+        }
+        props.put(OUTPUT_SOURCES, String.valueOf(writeSources));
+        if (useDaemon && outputDirectory != null && Daemon.submit(socketFile, props, spec.commandLine().getErr())) {
+            return;
+        }
         URL[] urls = classpath.toArray(new URL[0]);
         executeInIsolatedLoader(props, urls, Thread.currentThread().getContextClassLoader());
     }
@@ -98,17 +150,29 @@ public class Main implements Runnable, ConfigKeys {
      */
     private void executeInIsolatedLoader(Properties props, URL[] urls, ClassLoader ctxClassLoader) {
         var cl = new URLClassLoader(urls, new FilteringClassLoader(ctxClassLoader));
+        if (outputDirectory != null) {
+            invokeOptimizer(cl, "execute", new Class<?>[] {Properties.class}, props);
+        } else {
+            invokeOptimizer(cl, "exportConfiguration", new Class<?>[] {String.class, File.class}, runtime, config);
+        }
+    }
+
+    /**
+     * Invokes a static method of the optimizer found in the supplied
+     * classloader, using that loader as the context classloader.
+     * @param cl the isolated classloader
+     * @param method the name of the method to invoke
+     * @param parameterTypes the parameter types of the method
+     * @param args the arguments of the method
+     */
+    static void invokeOptimizer(ClassLoader cl, String method, Class<?>[] parameterTypes, Object... args) {
+        ClassLoader ctxClassLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(cl);
             Class<?> runnerClass = cl.loadClass("io.micronaut.aot.MicronautAotOptimizer");
             assert runnerClass != MicronautAotOptimizer.class;
-            if (outputDirectory != null) {
-                runnerClass.getDeclaredMethod("execute", Properties.class)
-                        .invoke(null, props);
-            } else {
-                runnerClass.getDeclaredMethod("exportConfiguration", String.class, File.class)
-                        .invoke(null, runtime, config);
-            }
+            runnerClass.getDeclaredMethod(method, parameterTypes)
+                    .invoke(null, args);
         } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
             throw new RuntimeException(e);
         } finally {
@@ -116,7 +180,13 @@ public class Main implements Runnable, ConfigKeys {
         }
     }
 
-    private static List<URL> toURLs(String classpathString) {
+    private void requireOption(Object value, String name) {
+        if (value == null) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Missing required option: '" + name + "'");
+        }
+    }
+
+    static List<URL> toURLs(String classpathString) {
         return Arrays.stream(classpathString.split("[,;" + File.pathSeparator + "]"))
                 .map(File::new)
                 .map(File::toURI).map(uri -> {
@@ -138,7 +208,7 @@ public class Main implements Runnable, ConfigKeys {
         System.exit(execute(args));
     }
 
-    private static class FilteringClassLoader extends ClassLoader {
+    static class FilteringClassLoader extends ClassLoader {
         public FilteringClassLoader(ClassLoader ctxClassLoader) {
             super(ctxClassLoader);
         }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.cli;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Entry point of the JVMs spawned by the startup benchmark. It boots
+ * the application context of the application found on the classpath,
+ * then prints a single line with its measurements. Micronaut types are
+ * accessed reflectively, since this class is compiled independently of
+ * the application.
+ */
+public final class StartupProbe {
+    static final String RESULT_PREFIX = "micronaut-aot-probe:";
+
+    private StartupProbe() {
+    }
+
+    /**
+     * Boots the application context.
+     *
+     * @param args the environments to activate
+     * @throws Exception if the context cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        Class<?> contextType = Class.forName("io.micronaut.context.ApplicationContext");
+        Class<?> builderType = Class.forName("io.micronaut.context.ApplicationContextBuilder");
+        Object builder = contextType.getMethod("builder").invoke(null);
+        if (args.length > 0) {
+            builderType.getMethod("environments", String[].class).invoke(builder, (Object) args);
+        }
+        Object context = builderType.getMethod("start").invoke(builder);
+        long startNanos = System.nanoTime() - start;
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        long loadedClasses = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+        long allocatedBytes = allocatedBytes();
+        long rss = residentSetSize();
+        System.out.println(RESULT_PREFIX + " " + startNanos + " " + uptime + " " + loadedClasses + " " + allocatedBytes + " " + rss);
+        System.out.flush();
+        ((AutoCloseable) context).close();
+        // Applications may have started non-daemon threads
+        System.exit(0);
+    }
+
+    /**
+     * Returns the number of bytes allocated by the live threads,
+     * or -1 if the JVM doesn't support allocation measurement.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean allocations && allocations.isThreadAllocatedMemorySupported()) {
+            long total = 0;
+            for (long bytes : allocations.getThreadAllocatedBytes(allocations.getAllThreadIds())) {
+                if (bytes > 0) {
+                    total += bytes;
+                }
+            }
+            return total;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the resident set size of the process, or -1 if it cannot
+     * be determined (only Linux is supported).
+     */
+    private static long residentSetSize() {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            List<String> lines = Files.readAllLines(status);
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    String[] parts = line.substring(6).trim().split("\\s+");
+                    return Long.parseLong(parts[0]) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // ignore, not reported
+        }
+        return -1;
+    }
+}
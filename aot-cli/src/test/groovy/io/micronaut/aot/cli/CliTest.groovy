@@ -1,6 +1,8 @@
 package io.micronaut.aot.cli
 
 import groovy.transform.CompileStatic
+import io.micronaut.aot.ConfigKeys
+import io.micronaut.aot.MicronautAotOptimizer
 import io.micronaut.aot.core.AOTCodeGenerator
 import io.micronaut.aot.core.config.MetadataUtils
 import io.micronaut.aot.std.sourcegen.AbstractStaticServiceLoaderSourceGenerator
@@ -22,6 +24,7 @@ import spock.lang.Unroll
 
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.attribute.PosixFilePermissions
 
 class CliTest extends Specification {
     @TempDir
@@ -62,7 +65,13 @@ ${toPropertiesSample(NettyPropertiesSourceGenerator, NettyPropertiesSourceGenera
 ${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES)}
 ${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, AbstractStaticServiceLoaderSourceGenerator.REJECTED_CLASSES)}
 ${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, AbstractStaticServiceLoaderSourceGenerator.FORCE_INCLUDE)}
-${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, Environments.POSSIBLE_ENVIRONMENTS_NAMES)}"""],
+${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, AbstractStaticServiceLoaderSourceGenerator.DISCOVER_SERVICE_TYPES)}
+${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, AbstractStaticServiceLoaderSourceGenerator.REJECTED_SERVICE_TYPES)}
+${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, AbstractStaticServiceLoaderSourceGenerator.ANALYSIS_PARALLELISM)}
+${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, Environments.POSSIBLE_ENVIRONMENTS_NAMES)}${runtime == 'jit' ? """
+${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, JitStaticServiceLoaderSourceGenerator.PRELOAD_STRATEGY)}
+${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, JitStaticServiceLoaderSourceGenerator.PRELOAD_THREADS)}
+${toPropertiesSample(JitStaticServiceLoaderSourceGenerator, JitStaticServiceLoaderSourceGenerator.DIRECT_INSTANTIATION)}""" : ''}"""],
                 [YamlPropertySourceGenerator.DESCRIPTION, 'yaml.to.java.config.enabled = true'],
                 [ConstantPropertySourcesSourceGenerator.DESCRIPTION, "sealed.property.source.enabled = true"],
         ].findAll().collect { desc, c ->
@@ -74,6 +83,12 @@ $c
 
 # ${Environments.TARGET_ENVIRONMENTS_DESCRIPTION}
 ${Environments.TARGET_ENVIRONMENTS_NAMES} = ${Environments.TARGET_ENVIRONMENTS_SAMPLE}
+
+# ${ConfigKeys.MERGE_STATIC_OPTIMIZATIONS_DESCRIPTION}
+${ConfigKeys.MERGE_STATIC_OPTIMIZATIONS} = false
+
+# ${ConfigKeys.DIRECT_CLASS_FILES_DESCRIPTION}
+${ConfigKeys.DIRECT_CLASS_FILES} = true
 """.trim()
 
         println config
@@ -83,6 +98,218 @@ ${Environments.TARGET_ENVIRONMENTS_NAMES} = ${Environments.TARGET_ENVIRONMENTS_S
         runtime << ['jit', 'native']
     }
 
+    def "can start and stop a daemon"() {
+        def socket = newSocketFile()
+
+        when:
+        def daemon = startDaemon(socket)
+
+        then: "only the current user can access the socket"
+        socket.exists()
+        Files.getPosixFilePermissions(socket.parentFile.toPath()) == PosixFilePermissions.fromString("rwx------")
+        Files.getPosixFilePermissions(socket.toPath()) == PosixFilePermissions.fromString("rw-------")
+
+        when:
+        def exitCode = Main.execute('--daemon-stop', '--daemon-socket', socket.toString())
+        daemon.join(10_000)
+
+        then:
+        exitCode == 0
+        !daemon.alive
+        !socket.exists()
+    }
+
+    def "can run optimizations through the daemon"() {
+        def classpath = System.getProperty('aot.runtime')
+        def socket = newSocketFile()
+        def daemon = startDaemon(socket)
+        def output = testDirectory.resolve("aot")
+        def props = new Properties()
+        props.put(ConfigKeys.CLASSPATH, Main.toURLs(classpath).collect { new File(it.toURI()).absolutePath }.join(','))
+        props.put(ConfigKeys.GENERATED_PACKAGE, 'dummy')
+        props.put(ConfigKeys.OUTPUT_DIRECTORY, output.toString())
+        props.put(ConfigKeys.RUNTIME, 'jit')
+        def err = new StringWriter()
+
+        when:
+        boolean submitted = Daemon.submit(socket, props, new PrintWriter(err))
+
+        then: "the request was executed by the daemon"
+        submitted
+        err.toString().empty
+        Files.exists(output.resolve("sources/dummy/AOTApplicationContextConfigurer.java"))
+        Files.exists(output.resolve("classes/dummy/AOTApplicationContextConfigurer.class"))
+
+        when: "the command line sends a second request, which reuses the cached classloader"
+        output.toFile().deleteDir()
+        def exitCode = Main.execute(
+                '--classpath', classpath,
+                '--package', 'dummy',
+                '--config', testDirectory.resolve("jit.properties").toString(),
+                '--output', output.toString(),
+                '--use-daemon',
+                '--daemon-socket', socket.toString()
+        )
+
+        then:
+        exitCode == 0
+        Files.exists(output.resolve("classes/dummy/AOTApplicationContextConfigurer.class"))
+
+        cleanup:
+        Main.execute('--daemon-stop', '--daemon-socket', socket.toString())
+        daemon?.join(10_000)
+    }
+
+    def "refuses requests from clients with a different environment"() {
+        def socket = newSocketFile()
+        def daemon = startDaemon(socket)
+        def current = Daemon.ProcessEnvironment.current()
+        def systemProperties = new Properties()
+        systemProperties.putAll(current.systemProperties())
+        systemProperties.put('aot.test', 'client')
+        def err = new StringWriter()
+
+        when:
+        boolean submitted = Daemon.submit(socket, new Properties(), new Daemon.ProcessEnvironment(
+                current.variables() + [AOT_DAEMON_TEST: 'client'],
+                current.systemProperties(),
+                current.commandLineProperties(),
+                current.workingDirectory()
+        ), new PrintWriter(err))
+
+        then:
+        !submitted
+        err.toString().trim() == 'The Micronaut AOT daemon runs with a different set of environment variables, running in process'
+
+        when:
+        err = new StringWriter()
+        submitted = Daemon.submit(socket, new Properties(), new Daemon.ProcessEnvironment(
+                current.variables(),
+                systemProperties,
+                current.commandLineProperties() + 'aot.test',
+                current.workingDirectory()
+        ), new PrintWriter(err))
+
+        then:
+        !submitted
+        err.toString().trim() == 'The Micronaut AOT daemon runs with a different value of the system property aot.test, running in process'
+
+        cleanup:
+        Main.execute('--daemon-stop', '--daemon-socket', socket.toString())
+        daemon?.join(10_000)
+    }
+
+    def "requires the classpath unless a daemon is started or stopped"() {
+        expect:
+        Main.execute('--package', 'dummy', '--config', testDirectory.resolve("jit.properties").toString()) != 0
+    }
+
+    def "can benchmark the startup of an application"() {
+        def classpath = System.getProperty('aot.runtime')
+        def aotOutput = testDirectory.resolve("aot")
+        Files.createDirectories(aotOutput.resolve("classes"))
+
+        when:
+        def exitCode = Main.execute(
+                'benchmark',
+                '--classpath', classpath,
+                '--aot-output', aotOutput.toString(),
+                '--iterations', '1',
+                '--warmup', '0'
+        )
+
+        then:
+        exitCode == 0
+    }
+
+    def "compiles generated sources without writing them to disk"() {
+        def classpath = System.getProperty('aot.runtime')
+        def output = testDirectory.resolve("aot")
+
+        when:
+        def exitCode = Main.execute(
+                '--classpath', classpath,
+                '--package', 'dummy',
+                '--config', testDirectory.resolve("jit.properties").toString(),
+                '--output', output.toString(),
+                '--no-sources'
+        )
+
+        then:
+        exitCode == 0
+        Files.exists(output.resolve("classes/dummy/AOTApplicationContextConfigurer.class"))
+        !Files.exists(output.resolve("sources/dummy/AOTApplicationContextConfigurer.java"))
+
+        when: "a source file is left in the sources directory"
+        Files.createDirectories(output.resolve("sources/dummy"))
+        Files.writeString(output.resolve("sources/dummy/Stale.java"), "package dummy; class Stale { does not compile }")
+        exitCode = Main.execute(
+                '--classpath', classpath,
+                '--package', 'dummy',
+                '--config', testDirectory.resolve("jit.properties").toString(),
+                '--output', output.toString()
+        )
+
+        then: "only the generated sources are compiled"
+        exitCode == 0
+        Files.exists(output.resolve("sources/dummy/AOTApplicationContextConfigurer.java"))
+        !Files.exists(output.resolve("classes/dummy/Stale.class"))
+    }
+
+    def "skips incremental runs when the inputs didn't change"() {
+        def classpath = System.getProperty('aot.runtime')
+        def configFile = testDirectory.resolve("jit.properties")
+        def output = testDirectory.resolve("aot")
+        def sources = output.resolve("sources")
+        String[] args = [
+                '--classpath', classpath,
+                '--package', 'dummy',
+                '--config', configFile.toString(),
+                '--output', output.toString(),
+                '--incremental'
+        ]
+
+        when:
+        def exitCode = Main.execute(args)
+
+        then:
+        exitCode == 0
+        Files.exists(output.resolve("cache/${MicronautAotOptimizer.FINGERPRINT_FILE_NAME}"))
+        Files.isDirectory(sources)
+
+        when: "the outputs are modified but not the inputs"
+        sources.toFile().deleteDir()
+        exitCode = Main.execute(args)
+
+        then: "the run is skipped"
+        exitCode == 0
+        !Files.exists(sources)
+
+        when: "the configuration changes"
+        configFile.toFile().text = "cached.environment.enabled = true\n"
+        exitCode = Main.execute(args)
+
+        then:
+        exitCode == 0
+        Files.isDirectory(sources)
+    }
+
+    private static File newSocketFile() {
+        // Unix domain socket paths are limited in length, so the test directory cannot be used
+        new File(Files.createTempDirectory("aot").toFile(), "daemon/daemon.sock")
+    }
+
+    private static Thread startDaemon(File socket) {
+        def daemon = Thread.start {
+            Main.execute('--daemon', '--daemon-socket', socket.toString())
+        }
+        def deadline = System.currentTimeMillis() + 10_000
+        while (!socket.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50)
+        }
+        daemon
+    }
+
     static String normalize(Object input) {
         input.toString().trim().replaceAll("\\r", "")
     }
@@ -20,6 +20,7 @@ import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.TypeSpec;
 import io.micronaut.aot.core.context.ApplicationContextAnalyzer;
+import io.micronaut.aot.core.timing.Timings;
 import io.micronaut.core.annotation.NonNull;
 
 import java.io.File;
@@ -28,6 +29,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * The source generation context is used by source generators
@@ -66,6 +68,22 @@ public interface AOTContext {
      */
     void registerGeneratedSourceFile(@NonNull JavaFile javaFile);
 
+    /**
+     * Registers a generated source file, together with a function which
+     * emits its class file directly. The optimizer may write the class
+     * file instead of compiling the source, in which case the source is
+     * only an artifact for inspection. If the function fails, the source
+     * is compiled instead. The class file must be equivalent to the
+     * compiled source and must not require other generated classes.
+     * Contexts which don't support class files register the source only.
+     *
+     * @param javaFile the file to be added
+     * @param classFile the function which emits the class file
+     */
+    default void registerGeneratedSourceFile(@NonNull JavaFile javaFile, @NonNull Supplier<byte[]> classFile) {
+        registerGeneratedSourceFile(javaFile);
+    }
+
     /**
      * Registers a code block to be executed statically when
      * the optimized binary is loaded.
@@ -150,6 +168,20 @@ public interface AOTContext {
     @NonNull
     void addDiagnostics(String category, String message);
 
+    /**
+     * Adds a diagnostic message about a particular class, which is
+     * going to be written in a log file. The class name is recorded
+     * separately from the message, so that diagnostics can be queried.
+     *
+     * @param category a category for the message, typically corresponding
+     * to the source generator type
+     * @param className the name of the class the message is about
+     * @param message a message to log
+     */
+    default void addDiagnostics(String category, String className, String message) {
+        addDiagnostics(category, message);
+    }
+
     /**
      * Stores an entry in the context. The entry may be read by other
      * processors, as long as they are executed in the proper order.
@@ -193,6 +225,19 @@ public interface AOTContext {
      */
     Set<String> getBuildTimeInitClasses();
 
+    /**
+     * Returns the timings of the optimizer phases, which
+     * generators may use to time expensive operations.
+     * Contexts which don't record timings return timings
+     * which don't record anything.
+     *
+     * @return the timings
+     */
+    @NonNull
+    default Timings getTimings() {
+        return Timings.noop();
+    }
+
     /**
      * Performs actions which have to be done as late as possible during
      * source generation.
@@ -75,4 +75,13 @@ public @interface AOTModule {
      */
     Runtime[] enabledOn() default {Runtime.JIT, Runtime.NATIVE};
 
+    /**
+     * Returns true if this source generator can be executed concurrently
+     * with other source generators. Generators which are not thread safe
+     * are never executed while another generator is running.
+     *
+     * @return true if this generator is thread safe
+     */
+    boolean threadSafe() default false;
+
 }
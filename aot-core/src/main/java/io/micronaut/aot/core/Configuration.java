@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -39,6 +40,16 @@ public interface Configuration {
      */
     boolean containsKey(String key);
 
+    /**
+     * Returns all the keys defined in this configuration. Incremental
+     * runs use them to fingerprint the configuration, so implementations
+     * must return every key for which a value is available.
+     *
+     * @return the set of keys
+     */
+    @NonNull
+    Set<String> keys();
+
     /**
      * Returns the value of the configuration for the requested
      * key or fails if not available.
@@ -137,4 +148,17 @@ public interface Configuration {
      */
     @NonNull
     Runtime getRuntime();
+
+    /**
+     * Returns the target runtimes for optimizations. A single
+     * optimizer run may target several runtimes, in which case
+     * the analysis is shared and code is generated for each of
+     * the runtimes.
+     *
+     * @return the target runtimes
+     */
+    @NonNull
+    default List<Runtime> getRuntimes() {
+        return List.of(getRuntime());
+    }
 }
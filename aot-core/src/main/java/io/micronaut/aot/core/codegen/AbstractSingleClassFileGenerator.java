@@ -19,6 +19,9 @@ import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.TypeSpec;
 import io.micronaut.aot.core.AOTContext;
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+
+import java.util.function.Supplier;
 
 /**
  * Base class for source generators which generate a single class file.
@@ -29,11 +32,28 @@ public abstract class AbstractSingleClassFileGenerator extends AbstractCodeGener
 
     protected abstract JavaFile generate();
 
+    /**
+     * Returns a function which emits the class file of the type generated
+     * by the last call to {@link #generate()} directly, if this generator
+     * supports it. Otherwise, the generated source is compiled.
+     *
+     * @return the function which emits the class file, or null
+     */
+    @Nullable
+    protected Supplier<byte[]> classFile() {
+        return null;
+    }
+
     @Override
     public void generate(@NonNull AOTContext context) {
         this.context = context;
         JavaFile javaFile = generate();
-        context.registerGeneratedSourceFile(javaFile);
+        Supplier<byte[]> classFile = classFile();
+        if (classFile == null) {
+            context.registerGeneratedSourceFile(javaFile);
+        } else {
+            context.registerGeneratedSourceFile(javaFile, classFile);
+        }
         context.registerBuildTimeInit(javaFile.packageName + "." + javaFile.typeSpec.name);
         context.registerBuildTimeInit(javaFile.packageName + "." + javaFile.typeSpec.name + "$1");
     }
@@ -23,6 +23,7 @@ import io.micronaut.aot.core.AOTCodeGenerator;
 import io.micronaut.aot.core.AOTContext;
 import io.micronaut.aot.core.AOTModule;
 import io.micronaut.aot.core.config.MetadataUtils;
+import io.micronaut.aot.core.diagnostics.GeneratorScope;
 import io.micronaut.context.ApplicationContextBuilder;
 import io.micronaut.context.ApplicationContextConfigurer;
 import io.micronaut.core.annotation.NonNull;
@@ -50,9 +51,23 @@ public class ApplicationContextConfigurerGenerator extends AbstractCodeGenerator
     public static final String CUSTOMIZER_CLASS_NAME = "AOTApplicationContextConfigurer";
 
     private final List<AOTCodeGenerator> sourceGenerators;
+    private final int parallelism;
 
     public ApplicationContextConfigurerGenerator(List<AOTCodeGenerator> sourceGenerators) {
+        this(sourceGenerators, 1);
+    }
+
+    /**
+     * Creates a generator which executes the source generators concurrently.
+     * Generators only start once the generators they depend on have completed.
+     * The generated code is independent of the parallelism.
+     *
+     * @param sourceGenerators the source generators
+     * @param parallelism the maximum number of generators executed concurrently
+     */
+    public ApplicationContextConfigurerGenerator(List<AOTCodeGenerator> sourceGenerators, int parallelism) {
         this.sourceGenerators = sourceGenerators;
+        this.parallelism = parallelism;
     }
 
     @Override
@@ -62,14 +77,25 @@ public class ApplicationContextConfigurerGenerator extends AbstractCodeGenerator
             .addModifiers(PUBLIC);
         CodeBlock.Builder staticInitializer = CodeBlock.builder();
         var capturer = new StaticInitializerCapturingContext(context, optimizedEntryPoint, staticInitializer);
-        for (AOTCodeGenerator sourceGenerator : sourceGenerators) {
-            sourceGenerator.generate(capturer);
+        if (parallelism > 1 && sourceGenerators.size() > 1) {
+            new ConcurrentGenerators(sourceGenerators).generate(capturer, Math.min(parallelism, sourceGenerators.size()));
+        } else {
+            for (AOTCodeGenerator sourceGenerator : sourceGenerators) {
+                String id = idOf(sourceGenerator);
+                context.getTimings().time("generator", id, () -> GeneratorScope.run(id, () -> sourceGenerator.generate(capturer)));
+            }
         }
         addDiagnostics(context, optimizedEntryPoint);
         optimizedEntryPoint.addStaticBlock(staticInitializer.build());
         context.registerGeneratedSourceFile(context.javaFile(optimizedEntryPoint.build()));
         context.registerServiceImplementation(ApplicationContextConfigurer.class, CUSTOMIZER_CLASS_NAME);
-        context.finish();
+        context.getTimings().time("finish", "deferred operations", context::finish);
+    }
+
+    static String idOf(AOTCodeGenerator generator) {
+        return MetadataUtils.findMetadata(generator.getClass())
+            .map(AOTModule::id)
+            .orElseGet(() -> generator.getClass().getName());
     }
 
     private void addDiagnostics(AOTContext context, TypeSpec.Builder optimizedEntryPoint) {
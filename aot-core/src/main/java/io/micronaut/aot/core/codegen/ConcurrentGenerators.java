@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.codegen;
+
+import io.micronaut.aot.core.AOTCodeGenerator;
+import io.micronaut.aot.core.AOTContext;
+import io.micronaut.aot.core.AOTModule;
+import io.micronaut.aot.core.config.MetadataUtils;
+import io.micronaut.aot.core.diagnostics.GeneratorScope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Executes code generators concurrently on a bounded pool. The
+ * dependency graph is built from {@link AOTModule#dependencies()}:
+ * a generator only starts once all the generators it depends on
+ * have completed. Dependencies on generators which are not enabled
+ * are ignored.
+ * <p>
+ * Only generators which declare {@link AOTModule#threadSafe()} are
+ * executed concurrently. Other generators are executed exclusively:
+ * no other generator runs at the same time.
+ */
+final class ConcurrentGenerators {
+    private final List<AOTCodeGenerator> generators;
+    private final Map<String, List<AOTCodeGenerator>> generatorsById = new HashMap<>();
+    private final Map<AOTCodeGenerator, RecordingSourceGenerationContext> recordings = new IdentityHashMap<>();
+    private final Map<AOTCodeGenerator, CompletableFuture<Void>> scheduled = new IdentityHashMap<>();
+    private final Set<AOTCodeGenerator> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Thread safe generators share the read lock, other generators take the write lock
+    private final ReadWriteLock exclusion = new ReentrantReadWriteLock(true);
+
+    ConcurrentGenerators(List<AOTCodeGenerator> generators) {
+        this.generators = generators;
+        for (AOTCodeGenerator generator : generators) {
+            MetadataUtils.findMetadata(generator.getClass())
+                .ifPresent(module -> generatorsById.computeIfAbsent(module.id(), id -> new ArrayList<>()).add(generator));
+        }
+    }
+
+    /**
+     * Executes all generators then replays their registrations on the
+     * target context, in the order of the generator list.
+     *
+     * @param context the target context
+     * @param parallelism the maximum number of generators executed concurrently
+     */
+    void generate(AOTContext context, int parallelism) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new GeneratorThreadFactory());
+        try {
+            for (AOTCodeGenerator generator : generators) {
+                recordings.put(generator, new RecordingSourceGenerationContext(context));
+            }
+            for (AOTCodeGenerator generator : generators) {
+                schedule(generator, executor);
+            }
+            await(CompletableFuture.allOf(scheduled.values().toArray(new CompletableFuture[0])));
+            for (AOTCodeGenerator generator : generators) {
+                recordings.get(generator).replay(context);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Void> schedule(AOTCodeGenerator generator, ExecutorService executor) {
+        CompletableFuture<Void> future = scheduled.get(generator);
+        if (future != null) {
+            return future;
+        }
+        if (!visiting.add(generator)) {
+            throw new IllegalStateException("Cycle detected in the dependencies of code generator " + generator.getClass().getName());
+        }
+        var dependencies = new LinkedHashSet<CompletableFuture<Void>>();
+        for (AOTCodeGenerator dependency : dependenciesOf(generator)) {
+            dependencies.add(schedule(dependency, executor));
+        }
+        RecordingSourceGenerationContext recording = recordings.get(generator);
+        String id = ApplicationContextConfigurerGenerator.idOf(generator);
+        Lock lock = isThreadSafe(generator) ? exclusion.readLock() : exclusion.writeLock();
+        future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+            .thenRunAsync(() -> {
+                lock.lock();
+                try {
+                    recording.getTimings().time("generator", id, () -> GeneratorScope.run(id, () -> generator.generate(recording)));
+                } finally {
+                    lock.unlock();
+                }
+            }, executor);
+        scheduled.put(generator, future);
+        visiting.remove(generator);
+        return future;
+    }
+
+    private static boolean isThreadSafe(AOTCodeGenerator generator) {
+        return MetadataUtils.findMetadata(generator.getClass())
+            .map(AOTModule::threadSafe)
+            .orElse(false);
+    }
+
+    private List<AOTCodeGenerator> dependenciesOf(AOTCodeGenerator generator) {
+        return MetadataUtils.findMetadata(generator.getClass())
+            .map(module -> Arrays.stream(module.dependencies())
+                .filter(id -> !id.equals(module.id()))
+                .flatMap(id -> generatorsById.getOrDefault(id, Collections.emptyList()).stream())
+                .toList())
+            .orElse(Collections.emptyList());
+    }
+
+    private static void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Creates the threads used to execute generators. The context
+     * classloader of the thread which creates the pool is propagated,
+     * since generators rely on it to analyze the application.
+     */
+    private static final class GeneratorThreadFactory implements ThreadFactory {
+        private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            var thread = new Thread(r, "aot-generator-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        }
+    }
+}
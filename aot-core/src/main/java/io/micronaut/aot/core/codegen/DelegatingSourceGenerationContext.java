@@ -23,6 +23,7 @@ import io.micronaut.aot.core.AOTContext;
 import io.micronaut.aot.core.Configuration;
 import io.micronaut.aot.core.Runtime;
 import io.micronaut.aot.core.context.ApplicationContextAnalyzer;
+import io.micronaut.aot.core.timing.Timings;
 import io.micronaut.core.annotation.NonNull;
 
 import java.io.File;
@@ -31,6 +32,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Base class for source generation context which need to delegate
@@ -66,6 +68,11 @@ public abstract class DelegatingSourceGenerationContext implements AOTContext {
         delegate.registerGeneratedSourceFile(javaFile);
     }
 
+    @Override
+    public void registerGeneratedSourceFile(@NonNull JavaFile javaFile, @NonNull Supplier<byte[]> classFile) {
+        delegate.registerGeneratedSourceFile(javaFile, classFile);
+    }
+
     @Override
     public void registerStaticInitializer(MethodSpec staticInitializer) {
         delegate.registerStaticInitializer(staticInitializer);
@@ -129,6 +136,11 @@ public abstract class DelegatingSourceGenerationContext implements AOTContext {
         delegate.addDiagnostics(category, message);
     }
 
+    @Override
+    public void addDiagnostics(String category, String className, String message) {
+        delegate.addDiagnostics(category, className, message);
+    }
+
     @Override
     public <T> void put(@NonNull Class<T> type, @NonNull T value) {
         delegate.put(type, value);
@@ -157,6 +169,12 @@ public abstract class DelegatingSourceGenerationContext implements AOTContext {
         return delegate.getBuildTimeInitClasses();
     }
 
+    @Override
+    @NonNull
+    public Timings getTimings() {
+        return delegate.getTimings();
+    }
+
     @Override
     public void finish() {
         delegate.finish();
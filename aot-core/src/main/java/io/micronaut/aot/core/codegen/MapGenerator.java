@@ -17,9 +17,13 @@ package io.micronaut.aot.core.codegen;
 
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
+import io.micronaut.core.util.CollectionUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -35,20 +39,127 @@ import static javax.lang.model.element.Modifier.STATIC;
 public class MapGenerator {
     private int methodCount = 0;
 
+    /**
+     * Generates an expression which creates a map with the supplied
+     * values. Large maps are populated by helper methods, which are
+     * added to the supplied type builder.
+     *
+     * @param builder the type builder
+     * @param values the values of the map
+     * @return the map expression
+     */
     public final CodeBlock generateMap(TypeSpec.Builder builder, Map<String, Object> values) {
-        CodeBlock.Builder mapBuilder = CodeBlock.builder();
-        mapBuilder.add("new $T() {{\n", HashMap.class);
+        ParameterizedTypeName mapType = ParameterizedTypeName.get(Map.class, String.class, Object.class);
+        var entries = new ArrayList<CodeBlock>(values.size());
         for (Map.Entry<String, Object> entry : values.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-            mapBuilder.add("$L", CodeBlock.of("put($S, $L)", key, convertValueToSource(value, builder)));
-            mapBuilder.add(";\n");
+            entries.add(CodeBlock.of("put($S, $L)", entry.getKey(), convertValueToSource(entry.getValue(), builder)));
         }
-        mapBuilder.add("}}");
-        return mapBuilder.build();
+        var chunker = new MethodChunker("map" + methodCount + "Part", ParameterSpec.builder(mapType, "result").build()).staticMethods();
+        entries.forEach(entry -> chunker.addStatement("result.$L", entry));
+        if (chunker.isSingleChunk()) {
+            CodeBlock.Builder mapBuilder = CodeBlock.builder();
+            mapBuilder.add("new $T() {{\n", HashMap.class);
+            for (CodeBlock entry : entries) {
+                mapBuilder.add("$L", entry);
+                mapBuilder.add(";\n");
+            }
+            mapBuilder.add("}}");
+            return mapBuilder.build();
+        }
+        String methodName = "map" + methodCount++;
+        builder.addMethod(MethodSpec.methodBuilder(methodName)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(mapType)
+            .addStatement("$T result = new $T<>($L)", mapType, HashMap.class, values.size())
+            .addCode(chunker.build(builder))
+            .addStatement("return result")
+            .build());
+        return CodeBlock.of("$N()", methodName);
+    }
+
+    /**
+     * Generates an expression for the supplied configuration value in
+     * which nested lists and maps are unmodifiable collections. Like the
+     * collections created by {@link #generateMap(TypeSpec.Builder, Map)},
+     * lists accept null elements and maps preserve the order of their
+     * entries. Small collections are created inline, while collections
+     * which would exceed the size of a method chunk are populated by
+     * helper methods, which are added to the supplied type builder, so
+     * that the expression can be used in a chunked method.
+     *
+     * @param value the value
+     * @param builder the type builder
+     * @return the value expression
+     */
+    public final CodeBlock generateImmutableValue(Object value, TypeSpec.Builder builder) {
+        if (value instanceof List<?> list) {
+            if (list.isEmpty()) {
+                return CodeBlock.of("$T.emptyList()", Collections.class);
+            }
+            var elements = new ArrayList<CodeBlock>(list.size());
+            for (Object element : list) {
+                elements.add(generateImmutableValue(element, builder));
+            }
+            if (sizeOf(elements) <= MethodChunker.DEFAULT_MAX_CHUNK_SIZE) {
+                return CodeBlock.of("$T.unmodifiableList($T.asList($L))", Collections.class, Arrays.class, CodeBlock.join(elements, ", "));
+            }
+            ParameterizedTypeName listType = ParameterizedTypeName.get(List.class, Object.class);
+            String methodName = "list" + methodCount++;
+            var chunker = new MethodChunker(methodName + "Part", ParameterSpec.builder(listType, "result").build()).staticMethods();
+            elements.forEach(element -> chunker.addStatement("result.add($L)", element));
+            builder.addMethod(MethodSpec.methodBuilder(methodName)
+                .addModifiers(PRIVATE, STATIC)
+                .returns(listType)
+                .addStatement("$T result = new $T<>($L)", listType, ArrayList.class, list.size())
+                .addCode(chunker.build(builder))
+                .addStatement("return $T.unmodifiableList(result)", Collections.class)
+                .build());
+            return CodeBlock.of("$N()", methodName);
+        } else if (value instanceof Map<?, ?> map) {
+            if (map.isEmpty()) {
+                return CodeBlock.of("$T.emptyMap()", Collections.class);
+            }
+            var entries = new ArrayList<CodeBlock>(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                entries.add(CodeBlock.of("$L, $L", generateImmutableValue(entry.getKey(), builder), generateImmutableValue(entry.getValue(), builder)));
+            }
+            if (sizeOf(entries) <= MethodChunker.DEFAULT_MAX_CHUNK_SIZE) {
+                return CodeBlock.of("$T.unmodifiableMap($T.mapOf($L))", Collections.class, CollectionUtils.class, CodeBlock.join(entries, ", "));
+            }
+            ParameterizedTypeName mapType = ParameterizedTypeName.get(Map.class, Object.class, Object.class);
+            String methodName = "map" + methodCount++;
+            var chunker = new MethodChunker(methodName + "Part", ParameterSpec.builder(mapType, "result").build()).staticMethods();
+            entries.forEach(entry -> chunker.addStatement("result.put($L)", entry));
+            builder.addMethod(MethodSpec.methodBuilder(methodName)
+                .addModifiers(PRIVATE, STATIC)
+                .returns(mapType)
+                .addStatement("$T result = new $T<>($L)", mapType, LinkedHashMap.class, map.size())
+                .addCode(chunker.build(builder))
+                .addStatement("return $T.unmodifiableMap(result)", Collections.class)
+                .build());
+            return CodeBlock.of("$N()", methodName);
+        }
+        return CodeBlock.of("$L", convertScalarToSource(value));
+    }
+
+    private static int sizeOf(List<CodeBlock> code) {
+        int size = 0;
+        for (CodeBlock block : code) {
+            size += block.toString().length();
+        }
+        return size;
     }
 
     private String convertValueToSource(Object value, TypeSpec.Builder builder) {
+        if (value instanceof List<?> list) {
+            return generateListMethod(list, builder);
+        } else if (value instanceof Map<?, ?> map) {
+            return generateMapMethod(map, builder);
+        }
+        return convertScalarToSource(value);
+    }
+
+    private String convertScalarToSource(Object value) {
         if (value == null) {
             return "null";
         }
@@ -57,10 +168,6 @@ public class MapGenerator {
             return CodeBlock.of("$S", value).toString();
         } else if (Number.class.isAssignableFrom(valueClass) || Boolean.class.isAssignableFrom(valueClass)) {
             return convertNumberOrBoolean(valueClass, value);
-        } else if (List.class.isAssignableFrom(valueClass)) {
-            return generateListMethod((List<?>) value, builder);
-        } else if (Map.class.isAssignableFrom(valueClass)) {
-            return generateMapMethod((Map<?, ?>) value, builder);
         } else {
             throw new UnsupportedOperationException("Configuration map contains an entry of type " + valueClass + " which is not supported yet. Please file a bug report.");
         }
@@ -95,9 +202,11 @@ public class MapGenerator {
             listMethod.addStatement("return $T.singletonList($L)", Collections.class, convertValueToSource(value.get(0), builder));
         } else {
             listMethod.addStatement("$T result = new $T<>($L)", List.class, ArrayList.class, value.size());
+            var chunker = new MethodChunker(methodName + "Part", ParameterSpec.builder(List.class, "result").build()).staticMethods();
             for (Object o : value) {
-                listMethod.addCode("result.add($L);\n", convertValueToSource(o, builder));
+                chunker.add(CodeBlock.of("result.add($L);\n", convertValueToSource(o, builder)));
             }
+            listMethod.addCode(chunker.build(builder));
             listMethod.addStatement("return result");
         }
         builder.addMethod(listMethod.build());
@@ -110,15 +219,17 @@ public class MapGenerator {
                 .addModifiers(PRIVATE, STATIC)
                 .returns(Map.class);
         if (value.isEmpty()) {
-            mapMethod.addStatement("return $.emptyMap()", Collections.class);
+            mapMethod.addStatement("return $T.emptyMap()", Collections.class);
         } else if (value.size() == 1) {
             Map.Entry<?, ?> entry = value.entrySet().iterator().next();
             mapMethod.addStatement("return $T.singletonMap($L, $L)", Collections.class, convertValueToSource(entry.getKey(), builder), convertValueToSource(entry.getValue(), builder));
         } else {
             mapMethod.addStatement("$T result = new $T<>($L)", Map.class, LinkedHashMap.class, value.size());
+            var chunker = new MethodChunker(methodName + "Part", ParameterSpec.builder(Map.class, "result").build()).staticMethods();
             for (Map.Entry<?, ?> entry : value.entrySet()) {
-                mapMethod.addCode("result.put($L, $L);\n", convertValueToSource(entry.getKey(), builder), convertValueToSource(entry.getValue(), builder));
+                chunker.add(CodeBlock.of("result.put($L, $L);\n", convertValueToSource(entry.getKey(), builder), convertValueToSource(entry.getValue(), builder)));
             }
+            mapMethod.addCode(chunker.build(builder));
             mapMethod.addStatement("return result");
         }
         builder.addMethod(mapMethod.build());
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.codegen;
+
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.STATIC;
+
+/**
+ * Splits a list of statements into private helper methods of bounded
+ * size. The JVM refuses to load methods with more than 64KB of
+ * bytecode, and the JIT compiler never compiles methods larger than
+ * 8000 bytes of bytecode, which makes large generated methods either
+ * fail or run interpreted.
+ * <p>
+ * The size of a statement is estimated using the length of its source.
+ * For the statements emitted by code generators (array stores, method
+ * calls with literal arguments), javac produces between 0.5 and 1 byte
+ * of bytecode per character of source, so a chunk of the default size
+ * compiles to at most about 8000 bytes: a margin of 8 against the 64KB
+ * limit, which absorbs statements with an unusually dense encoding.
+ * The estimate doesn't hold for a single statement which is larger than
+ * a chunk: it gets a helper method of its own, so code generators must
+ * not emit unbounded expressions as one statement.
+ * <p>
+ * If all statements fit in a single chunk, no helper method is generated
+ * and the statements are inlined in the calling method.
+ */
+public final class MethodChunker {
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 8_000;
+
+    private final String methodPrefix;
+    private final List<ParameterSpec> parameters;
+    private final List<CodeBlock> statements = new ArrayList<>();
+    private boolean staticMethods;
+    private int maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+    private int size;
+
+    /**
+     * Creates a new chunker.
+     *
+     * @param methodPrefix the prefix of the generated helper methods, which are suffixed with their index
+     * @param parameters the parameters of the helper methods, which the calling method passes through
+     */
+    public MethodChunker(String methodPrefix, ParameterSpec... parameters) {
+        this.methodPrefix = methodPrefix;
+        this.parameters = Arrays.asList(parameters);
+    }
+
+    /**
+     * Generates static helper methods, for use from static methods.
+     *
+     * @return this chunker
+     */
+    public MethodChunker staticMethods() {
+        this.staticMethods = true;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size of a chunk, measured in characters of
+     * generated source code.
+     *
+     * @param maxChunkSize the maximum chunk size
+     * @return this chunker
+     */
+    public MethodChunker maxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+        return this;
+    }
+
+    /**
+     * Adds a single statement, using the {@link CodeBlock} format syntax.
+     *
+     * @param format the statement format
+     * @param args the format arguments
+     * @return this chunker
+     */
+    public MethodChunker addStatement(String format, Object... args) {
+        return add(CodeBlock.builder().addStatement(format, args).build());
+    }
+
+    /**
+     * Adds code which must not be split, typically one or more
+     * complete statements.
+     *
+     * @param code the code to add
+     * @return this chunker
+     */
+    public MethodChunker add(CodeBlock code) {
+        statements.add(code);
+        size += code.toString().length();
+        return this;
+    }
+
+    /**
+     * Returns true if the statements fit in a single chunk, in which
+     * case {@link #build(TypeSpec.Builder)} inlines them.
+     *
+     * @return true if no helper method is required
+     */
+    public boolean isSingleChunk() {
+        return size <= maxChunkSize;
+    }
+
+    /**
+     * Adds the helper methods to the supplied type, if required, and
+     * returns the code which executes all statements, in order.
+     *
+     * @param type the type to which helper methods are added
+     * @return the code to add to the calling method
+     */
+    public CodeBlock build(TypeSpec.Builder type) {
+        CodeBlock.Builder code = CodeBlock.builder();
+        if (isSingleChunk()) {
+            statements.forEach(code::add);
+            return code.build();
+        }
+        CodeBlock arguments = parameters.stream()
+            .map(parameter -> CodeBlock.of("$N", parameter))
+            .collect(CodeBlock.joining(", "));
+        int index = 0;
+        MethodSpec.Builder chunk = null;
+        int chunkSize = 0;
+        for (CodeBlock statement : statements) {
+            int statementSize = statement.toString().length();
+            if (chunk != null && chunkSize + statementSize > maxChunkSize) {
+                type.addMethod(chunk.build());
+                chunk = null;
+            }
+            if (chunk == null) {
+                String name = methodPrefix + index++;
+                chunk = createChunk(name);
+                code.addStatement("$L($L)", name, arguments);
+                chunkSize = 0;
+            }
+            chunk.addCode(statement);
+            chunkSize += statementSize;
+        }
+        if (chunk != null) {
+            type.addMethod(chunk.build());
+        }
+        return code.build();
+    }
+
+    private MethodSpec.Builder createChunk(String name) {
+        MethodSpec.Builder method = MethodSpec.methodBuilder(name)
+            .addModifiers(PRIVATE)
+            .addParameters(parameters);
+        if (staticMethods) {
+            method.addModifiers(STATIC);
+        }
+        return method;
+    }
+}
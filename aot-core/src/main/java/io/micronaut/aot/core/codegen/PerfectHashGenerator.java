@@ -0,0 +1,389 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.codegen;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import io.micronaut.core.annotation.Generated;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
+
+/**
+ * Generates immutable sets and maps of strings backed by a minimal
+ * perfect hash table, computed at build time using the "hash and
+ * displace" algorithm. Keys are first distributed into buckets, then
+ * each bucket is assigned a seed which maps all of its keys to free
+ * slots of a table which has exactly one slot per key. Buckets with a
+ * single key directly record their slot.
+ * <p>
+ * The generated collections store the seeds and keys in constant
+ * arrays: creating them doesn't require hashing, resizing or
+ * allocating entries, and a lookup costs hashing the key, two array
+ * accesses and a string comparison. For small key sets, a
+ * {@link java.util.HashMap} is as fast and doesn't require an
+ * additional class, which is why callers should only use this
+ * generator above {@link #RECOMMENDED_MIN_SIZE} keys.
+ */
+public final class PerfectHashGenerator {
+    public static final int RECOMMENDED_MIN_SIZE = 32;
+
+    private static final int KEYS_PER_BUCKET = 4;
+    private static final int MAX_SEED = 100_000;
+
+    private final String[] keys;
+    private final int[] seeds;
+
+    private PerfectHashGenerator(String[] keys, int[] seeds) {
+        this.keys = keys;
+        this.seeds = seeds;
+    }
+
+    /**
+     * Computes a minimal perfect hash table for the supplied keys.
+     *
+     * @param keys the keys
+     * @return the generator, or an empty optional if the keys cannot
+     * be hashed, which happens when distinct keys have the same hash code
+     */
+    public static Optional<PerfectHashGenerator> of(Collection<String> keys) {
+        List<String> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        int size = distinctKeys.size();
+        if (size == 0) {
+            return Optional.empty();
+        }
+        int bucketCount = (size + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET;
+        List<List<String>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (String key : distinctKeys) {
+            buckets.get(Math.floorMod(mix(hash(key), 0), bucketCount)).add(key);
+        }
+        String[] slots = new String[size];
+        int[] seeds = new int[bucketCount];
+        // Large buckets are placed first, while the table is mostly empty
+        List<Integer> bucketOrder = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            bucketOrder.add(i);
+        }
+        bucketOrder.sort(Comparator.comparingInt((Integer bucket) -> buckets.get(bucket).size()).reversed());
+        int freeSlot = 0;
+        for (int bucket : bucketOrder) {
+            List<String> bucketKeys = buckets.get(bucket);
+            if (bucketKeys.size() > 1) {
+                int seed = findSeed(bucketKeys, slots);
+                if (seed < 0) {
+                    return Optional.empty();
+                }
+                seeds[bucket] = seed;
+                for (String key : bucketKeys) {
+                    slots[Math.floorMod(mix(hash(key), seed), size)] = key;
+                }
+            } else if (bucketKeys.size() == 1) {
+                while (slots[freeSlot] != null) {
+                    freeSlot++;
+                }
+                slots[freeSlot] = bucketKeys.get(0);
+                seeds[bucket] = -freeSlot - 1;
+            }
+        }
+        return Optional.of(new PerfectHashGenerator(slots, seeds));
+    }
+
+    private static int findSeed(List<String> bucketKeys, String[] slots) {
+        Set<Long> hashes = new HashSet<>();
+        for (String key : bucketKeys) {
+            if (!hashes.add(hash(key))) {
+                // No seed can separate keys with the same hash
+                return -1;
+            }
+        }
+        var used = new HashSet<Integer>();
+        for (int seed = 1; seed < MAX_SEED; seed++) {
+            used.clear();
+            boolean found = true;
+            for (String key : bucketKeys) {
+                int slot = Math.floorMod(mix(hash(key), seed), slots.length);
+                if (slots[slot] != null || !used.add(slot)) {
+                    found = false;
+                    break;
+                }
+            }
+            if (found) {
+                return seed;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of a key. {@link String#hashCode()}
+     * isn't used because distinct keys frequently share the same 32-bit
+     * hash code in large key sets. The generated collections contain the
+     * same function, see {@link #hashMethod()}.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * Mixes the hash of a key with a seed. The generated collections
+     * contain the same function, see {@link #mixMethod()}.
+     *
+     * @param hash the hash of a key
+     * @param seed the seed
+     * @return the mixed hash
+     */
+    static int mix(long hash, int seed) {
+        long h = hash ^ (seed * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Returns the slot of the supplied key, the same way the generated
+     * lookup routine does.
+     *
+     * @param key the key
+     * @return the slot of the key, or -1 if it isn't part of the table
+     */
+    int indexOf(String key) {
+        long hash = hash(key);
+        int seed = seeds[Math.floorMod(mix(hash, 0), seeds.length)];
+        int index = seed < 0 ? -seed - 1 : Math.floorMod(mix(hash, seed), keys.length);
+        return keys[index].equals(key) ? index : -1;
+    }
+
+    /**
+     * Returns the keys in the order of the slots of the table.
+     *
+     * @return the keys
+     */
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /**
+     * Generates an immutable {@code Set<String>} containing the keys.
+     *
+     * @param className the simple name of the generated class
+     * @return the generated type
+     */
+    public TypeSpec generateSet(String className) {
+        TypeSpec.Builder type = TypeSpec.classBuilder(className)
+            .addModifiers(PUBLIC, FINAL)
+            .addAnnotation(Generated.class)
+            .superclass(ParameterizedTypeName.get(AbstractSet.class, String.class));
+        addTable(type);
+        type.addMethod(MethodSpec.methodBuilder("contains")
+                .addModifiers(PUBLIC)
+                .addAnnotation(Override.class)
+                .addParameter(Object.class, "o")
+                .returns(boolean.class)
+                .addStatement("return o instanceof $T && indexOf(($T) o) >= 0", String.class, String.class)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("iterator")
+                .addModifiers(PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(ParameterizedTypeName.get(Iterator.class, String.class))
+                .addStatement("return $T.asList(KEYS).iterator()", Arrays.class)
+                .build())
+            .addMethod(sizeMethod())
+            .addMethod(indexOfMethod())
+            .addMethod(hashMethod())
+            .addMethod(mixMethod());
+        return type.build();
+    }
+
+    /**
+     * Generates an immutable {@code Map<String, V>}. The values are
+     * created when the map is instantiated.
+     *
+     * @param className the simple name of the generated class
+     * @param valueType the type of the values
+     * @param values the code which creates the value of each key
+     * @return the generated type
+     */
+    public TypeSpec generateMap(String className, TypeName valueType, Map<String, CodeBlock> values) {
+        ParameterizedTypeName entryType = ParameterizedTypeName.get(ClassName.get(Map.Entry.class), ClassName.get(String.class), valueType);
+        AnnotationSpec unchecked = AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+        TypeSpec.Builder type = TypeSpec.classBuilder(className)
+            .addModifiers(PUBLIC, FINAL)
+            .addAnnotation(Generated.class)
+            .superclass(ParameterizedTypeName.get(ClassName.get(AbstractMap.class), ClassName.get(String.class), valueType));
+        addTable(type);
+        type.addField(FieldSpec.builder(Object[].class, "values", PRIVATE, FINAL)
+            .initializer("new $T[$L]", Object.class, keys.length)
+            .build());
+        var chunker = new MethodChunker("createValues", ParameterSpec.builder(Object[].class, "values").build()).staticMethods();
+        for (int i = 0; i < keys.length; i++) {
+            chunker.addStatement("values[$L] = $L", i, values.get(keys[i]));
+        }
+        type.addMethod(MethodSpec.constructorBuilder()
+                .addModifiers(PUBLIC)
+                .addCode(chunker.build(type))
+                .build())
+            .addMethod(MethodSpec.methodBuilder("get")
+                .addModifiers(PUBLIC)
+                .addAnnotation(Override.class)
+                .addAnnotation(unchecked)
+                .addParameter(Object.class, "key")
+                .returns(valueType)
+                .addStatement("int index = key instanceof $T ? indexOf(($T) key) : -1", String.class, String.class)
+                .addStatement("return index < 0 ? null : ($T) values[index]", valueType)
+                .build())
+            .addMethod(MethodSpec.methodBuilder("containsKey")
+                .addModifiers(PUBLIC)
+                .addAnnotation(Override.class)
+                .addParameter(Object.class, "key")
+                .returns(boolean.class)
+                .addStatement("return key instanceof $T && indexOf(($T) key) >= 0", String.class, String.class)
+                .build())
+            .addMethod(sizeMethod())
+            .addMethod(MethodSpec.methodBuilder("entrySet")
+                .addModifiers(PUBLIC)
+                .addAnnotation(Override.class)
+                .addAnnotation(unchecked)
+                .returns(ParameterizedTypeName.get(ClassName.get(Set.class), entryType))
+                .addStatement("$T entries = new $T<>(KEYS.length)", ParameterizedTypeName.get(ClassName.get(List.class), entryType), ArrayList.class)
+                .beginControlFlow("for (int i = 0; i < KEYS.length; i++)")
+                .addStatement("entries.add(new $T<>(KEYS[i], ($T) values[i]))", AbstractMap.SimpleImmutableEntry.class, valueType)
+                .endControlFlow()
+                .addStatement("return $T.unmodifiableSet(new $T<>(entries))", Collections.class, LinkedHashSet.class)
+                .build())
+            .addMethod(indexOfMethod())
+            .addMethod(hashMethod())
+            .addMethod(mixMethod());
+        return type.build();
+    }
+
+    private void addTable(TypeSpec.Builder type) {
+        type.addField(FieldSpec.builder(int[].class, "SEEDS", PRIVATE, STATIC, FINAL)
+                .initializer("new int[$L]", seeds.length)
+                .build())
+            .addField(FieldSpec.builder(String[].class, "KEYS", PRIVATE, STATIC, FINAL)
+                .initializer("new $T[$L]", String.class, keys.length)
+                .build());
+        var chunker = new MethodChunker("createTable").staticMethods();
+        for (int i = 0; i < seeds.length; i++) {
+            if (seeds[i] != 0) {
+                chunker.addStatement("SEEDS[$L] = $L", i, seeds[i]);
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            chunker.addStatement("KEYS[$L] = $S", i, keys[i]);
+        }
+        type.addStaticBlock(chunker.build(type));
+    }
+
+    private static MethodSpec sizeMethod() {
+        return MethodSpec.methodBuilder("size")
+            .addModifiers(PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(int.class)
+            .addStatement("return KEYS.length")
+            .build();
+    }
+
+    private static MethodSpec indexOfMethod() {
+        return MethodSpec.methodBuilder("indexOf")
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(String.class, "key")
+            .returns(int.class)
+            .addStatement("long hash = hash(key)")
+            .addStatement("int seed = SEEDS[$T.floorMod(mix(hash, 0), SEEDS.length)]", Math.class)
+            .addStatement("int index = seed < 0 ? -seed - 1 : $T.floorMod(mix(hash, seed), KEYS.length)", Math.class)
+            .addStatement("return KEYS[index].equals(key) ? index : -1")
+            .build();
+    }
+
+    /**
+     * Generates the equivalent of {@link #hash(String)}.
+     *
+     * @return the hash method
+     */
+    private static MethodSpec hashMethod() {
+        return MethodSpec.methodBuilder("hash")
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(String.class, "key")
+            .returns(long.class)
+            .addStatement("long h = 0xCBF29CE484222325L")
+            .beginControlFlow("for (int i = 0; i < key.length(); i++)")
+            .addStatement("h ^= key.charAt(i)")
+            .addStatement("h *= 0x100000001B3L")
+            .endControlFlow()
+            .addStatement("return h")
+            .build();
+    }
+
+    /**
+     * Generates the equivalent of {@link #mix(long, int)}.
+     *
+     * @return the mix method
+     */
+    private static MethodSpec mixMethod() {
+        return MethodSpec.methodBuilder("mix")
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(long.class, "hash")
+            .addParameter(int.class, "seed")
+            .returns(int.class)
+            .addStatement("long h = hash ^ (seed * 0x9E3779B97F4A7C15L)")
+            .addStatement("h ^= h >>> 33")
+            .addStatement("h *= 0xFF51AFD7ED558CCDL")
+            .addStatement("h ^= h >>> 33")
+            .addStatement("h *= 0xC4CEB9FE1A85EC53L")
+            .addStatement("h ^= h >>> 33")
+            .addStatement("return (int) h")
+            .build();
+    }
+}
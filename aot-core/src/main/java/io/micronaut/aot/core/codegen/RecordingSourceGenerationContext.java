@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.codegen;
+
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import io.micronaut.aot.core.AOTContext;
+import io.micronaut.core.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A context which records the registrations of a single code generator,
+ * so that they can be replayed later on another context. This is used
+ * when generators are executed concurrently: replaying the recordings in
+ * the execution order makes the generated code independent of the order
+ * in which generators completed.
+ * <p>
+ * Registrations which are order independent (excluded resources, build
+ * time initialized classes, diagnostics, ...) as well as context entries
+ * are passed through immediately.
+ */
+final class RecordingSourceGenerationContext extends DelegatingSourceGenerationContext {
+    private final List<Consumer<? super AOTContext>> recorded = new ArrayList<>();
+
+    RecordingSourceGenerationContext(AOTContext delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void registerGeneratedSourceFile(@NonNull JavaFile javaFile) {
+        recorded.add(context -> context.registerGeneratedSourceFile(javaFile));
+    }
+
+    @Override
+    public void registerGeneratedSourceFile(@NonNull JavaFile javaFile, @NonNull Supplier<byte[]> classFile) {
+        recorded.add(context -> context.registerGeneratedSourceFile(javaFile, classFile));
+    }
+
+    @Override
+    public void registerStaticInitializer(MethodSpec staticInitializer) {
+        recorded.add(context -> context.registerStaticInitializer(staticInitializer));
+    }
+
+    @Override
+    public <T> void registerStaticOptimization(String className, Class<T> optimizationKind, Consumer<? super CodeBlock.Builder> bodyBuilder) {
+        // The body is computed eagerly, so that the work it involves is done concurrently too
+        CodeBlock.Builder body = CodeBlock.builder();
+        bodyBuilder.accept(body);
+        CodeBlock code = body.build();
+        recorded.add(context -> context.registerStaticOptimization(className, optimizationKind, builder -> builder.add(code)));
+    }
+
+    @Override
+    public void registerServiceImplementation(Class<?> serviceType, String simpleServiceName) {
+        recorded.add(context -> context.registerServiceImplementation(serviceType, simpleServiceName));
+    }
+
+    @Override
+    public void registerGeneratedResource(@NonNull String path, Consumer<? super File> consumer) {
+        recorded.add(context -> context.registerGeneratedResource(path, consumer));
+    }
+
+    /**
+     * Replays the recorded registrations on the supplied context.
+     *
+     * @param context the target context
+     */
+    void replay(AOTContext context) {
+        recorded.forEach(registration -> registration.accept(context));
+    }
+}
@@ -19,16 +19,21 @@ import io.micronaut.aot.core.Configuration;
 import io.micronaut.aot.core.Runtime;
 import io.micronaut.core.annotation.NonNull;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * An implementation of configuration which uses properties
  * as the backing store.
  */
 public class DefaultConfiguration implements Configuration {
+    private static final String RUNTIME = "runtime";
+
     private final Properties config;
 
     public DefaultConfiguration(Properties backingProperties) {
@@ -47,6 +52,15 @@ public class DefaultConfiguration implements Configuration {
         return config.containsKey(key);
     }
 
+    @NonNull
+    @Override
+    public Set<String> keys() {
+        return config.keySet()
+            .stream()
+            .map(String::valueOf)
+            .collect(Collectors.toSet());
+    }
+
     @NonNull
     @Override
     public String mandatoryValue(String key) {
@@ -72,7 +86,21 @@ public class DefaultConfiguration implements Configuration {
     @NonNull
     @Override
     public Runtime getRuntime() {
-        return optionalValue("runtime", v -> v.map(r -> Runtime.valueOf(r.toUpperCase(Locale.ENGLISH))).orElse(Runtime.JIT));
+        List<Runtime> runtimes = getRuntimes();
+        if (runtimes.size() > 1) {
+            invalidConfiguration(RUNTIME, "targets several runtimes " + runtimes + ", a single one was expected");
+        }
+        return runtimes.get(0);
+    }
+
+    @NonNull
+    @Override
+    public List<Runtime> getRuntimes() {
+        List<Runtime> runtimes = stringList(RUNTIME).stream()
+            .map(r -> Runtime.valueOf(r.trim().toUpperCase(Locale.ENGLISH)))
+            .distinct()
+            .toList();
+        return runtimes.isEmpty() ? List.of(Runtime.JIT) : runtimes;
     }
 
     private static void invalidConfiguration(String key, String message) {
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.config;
+
+import io.micronaut.aot.core.Configuration;
+import io.micronaut.aot.core.Runtime;
+import io.micronaut.core.annotation.NonNull;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A view of a configuration which targets a single runtime. This is
+ * used when an optimizer run targets several runtimes: code generation
+ * is performed once per runtime, each time with a different view.
+ */
+public final class RuntimeConfiguration implements Configuration {
+    private final Configuration delegate;
+    private final Runtime runtime;
+
+    public RuntimeConfiguration(Configuration delegate, Runtime runtime) {
+        this.delegate = delegate;
+        this.runtime = runtime;
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return delegate.containsKey(key);
+    }
+
+    @NonNull
+    @Override
+    public Set<String> keys() {
+        return delegate.keys();
+    }
+
+    @NonNull
+    @Override
+    public String mandatoryValue(String key) {
+        return delegate.mandatoryValue(key);
+    }
+
+    @Override
+    public <T> T optionalValue(String key, Function<Optional<String>, T> producer) {
+        return delegate.optionalValue(key, producer);
+    }
+
+    @NonNull
+    @Override
+    public Runtime getRuntime() {
+        return runtime;
+    }
+
+    @NonNull
+    @Override
+    public List<Runtime> getRuntimes() {
+        return List.of(runtime);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.context;
+
+import io.micronaut.core.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The results of the analysis of an application which are expensive to
+ * compute, because they require an application context. A snapshot can
+ * be stored in a file, so that subsequent runs for the same inputs can
+ * avoid booting an application context.
+ *
+ * @param environmentNames the active environment names
+ * @param packages the packages of the application
+ * @param deduceEnvironments if environments are deduced by the application context
+ * @param requirementOutcomes the outcome of requirements, by component class name
+ * @param classAvailability whether classes could be loaded, by class name
+ */
+public record AnalysisSnapshot(
+    Set<String> environmentNames,
+    List<String> packages,
+    boolean deduceEnvironments,
+    Map<String, Boolean> requirementOutcomes,
+    Map<String, Boolean> classAvailability
+) {
+    public static final String SNAPSHOT_FILE_NAME = "analysis.snapshot";
+
+    private static final int MAGIC = 0x4D414153;
+    private static final int VERSION = 1;
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param file the snapshot file
+     * @param fingerprint the fingerprint of the inputs of the analysis
+     * @return the snapshot, or an empty optional if the file doesn't exist or was written for different inputs
+     * @throws IOException if the file cannot be read
+     */
+    @NonNull
+    public static Optional<AnalysisSnapshot> read(@NonNull Path file, @NonNull String fingerprint) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !fingerprint.equals(in.readUTF())) {
+                return Optional.empty();
+            }
+            var environmentNames = new LinkedHashSet<String>();
+            for (int i = in.readInt(); i > 0; i--) {
+                environmentNames.add(in.readUTF());
+            }
+            var packages = new ArrayList<String>();
+            for (int i = in.readInt(); i > 0; i--) {
+                packages.add(in.readUTF());
+            }
+            boolean deduceEnvironments = in.readBoolean();
+            return Optional.of(new AnalysisSnapshot(environmentNames, packages, deduceEnvironments, readOutcomes(in), readOutcomes(in)));
+        }
+    }
+
+    /**
+     * Writes this snapshot to a file.
+     *
+     * @param file the snapshot file
+     * @param fingerprint the fingerprint of the inputs of the analysis
+     * @throws IOException if the file cannot be written
+     */
+    public void write(@NonNull Path file, @NonNull String fingerprint) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, SNAPSHOT_FILE_NAME, ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+            out.writeInt(environmentNames.size());
+            for (String environmentName : environmentNames) {
+                out.writeUTF(environmentName);
+            }
+            out.writeInt(packages.size());
+            for (String packageName : packages) {
+                out.writeUTF(packageName);
+            }
+            out.writeBoolean(deduceEnvironments);
+            writeOutcomes(out, requirementOutcomes);
+            writeOutcomes(out, classAvailability);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Map<String, Boolean> readOutcomes(DataInputStream in) throws IOException {
+        var outcomes = new LinkedHashMap<String, Boolean>();
+        for (int i = in.readInt(); i > 0; i--) {
+            outcomes.put(in.readUTF(), in.readBoolean());
+        }
+        return outcomes;
+    }
+
+    private static void writeOutcomes(DataOutputStream out, Map<String, Boolean> outcomes) throws IOException {
+        // Sorted so that the same analysis always produces the same file
+        var sorted = new TreeMap<>(outcomes);
+        out.writeInt(sorted.size());
+        for (Map.Entry<String, Boolean> entry : sorted.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeBoolean(entry.getValue());
+        }
+    }
+}
@@ -17,30 +17,40 @@ package io.micronaut.aot.core.context;
 
 import io.micronaut.context.ApplicationContext;
 import io.micronaut.context.ApplicationContextBuilder;
+import io.micronaut.context.ApplicationContextConfiguration;
 import io.micronaut.context.BeanContext;
 import io.micronaut.context.BeanResolutionContext;
 import io.micronaut.context.DefaultBeanContext;
 import io.micronaut.context.DefaultBeanResolutionContext;
 import io.micronaut.context.Qualifier;
 import io.micronaut.context.RequiresCondition;
+import io.micronaut.context.annotation.Requires;
 import io.micronaut.context.condition.ConditionContext;
 import io.micronaut.context.condition.Failure;
 import io.micronaut.context.env.Environment;
+import io.micronaut.core.annotation.AnnotationMetadata;
 import io.micronaut.core.annotation.AnnotationMetadataProvider;
+import io.micronaut.core.annotation.AnnotationValue;
 import io.micronaut.core.convert.ArgumentConversionContext;
+import io.micronaut.core.reflect.ClassUtils;
 import io.micronaut.core.type.Argument;
 import io.micronaut.inject.BeanDefinition;
+import io.micronaut.inject.BeanDefinitionReference;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -55,18 +65,110 @@ import java.util.stream.Stream;
  */
 @SuppressWarnings("unused")
 public final class ApplicationContextAnalyzer {
-    private final ApplicationContext applicationContext;
-
-    private ApplicationContextAnalyzer(ApplicationContext applicationContext) {
-        this.applicationContext = applicationContext;
+    private static final String REQUIRED_CLASSES = "classes";
+    private static final List<String> COMPONENT_DEPENDENT_MEMBERS = List.of("condition", "beans", "missingBeans");
+    private static final List<String> BEAN_DEPENDENT_MEMBERS = List.of("condition", "beans", "missingBeans", "bean");
+
+    private final Supplier<ApplicationContext> contextFactory;
+    private final Supplier<ApplicationContext> fullContextFactory;
+    private final boolean metadataOnly;
+    private final AnalysisSnapshot snapshot;
+    private final Map<Class<?>, Object> sharedState = new ConcurrentHashMap<>();
+    private final Map<RequirementsKey, Boolean> requirementOutcomes = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> classPresence = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> componentOutcomes = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> classAvailability = new ConcurrentHashMap<>();
+    private volatile ApplicationContext applicationContext;
+    private volatile ApplicationContext fullContext;
+
+    private ApplicationContextAnalyzer(Supplier<ApplicationContext> contextFactory,
+                                       Supplier<ApplicationContext> fullContextFactory,
+                                       boolean metadataOnly,
+                                       AnalysisSnapshot snapshot) {
+        this.contextFactory = contextFactory;
+        this.fullContextFactory = fullContextFactory;
+        this.metadataOnly = metadataOnly;
+        this.snapshot = snapshot;
+        if (snapshot != null) {
+            componentOutcomes.putAll(snapshot.requirementOutcomes());
+            classAvailability.putAll(snapshot.classAvailability());
+        }
     }
 
     public Set<String> getEnvironmentNames() {
-        return applicationContext.getEnvironment().getActiveNames();
+        if (snapshot != null) {
+            return snapshot.environmentNames();
+        }
+        return getApplicationContext().getEnvironment().getActiveNames();
+    }
+
+    /**
+     * Returns the packages of the analyzed application.
+     *
+     * @return the packages
+     */
+    public Collection<String> getPackages() {
+        if (snapshot != null) {
+            return snapshot.packages();
+        }
+        return getApplicationContext().getEnvironment().getPackages();
     }
 
+    /**
+     * Returns true if the analyzed application context deduces its environments.
+     *
+     * @return true if environments are deduced
+     */
+    public boolean isDeducingEnvironments() {
+        if (snapshot != null) {
+            return snapshot.deduceEnvironments();
+        }
+        return getApplicationContext().getContextConfiguration() instanceof ApplicationContextConfiguration configuration
+            && configuration.getDeduceEnvironments().orElse(true);
+    }
+
+    /**
+     * Returns the application context used for the analysis. If this
+     * analyzer was created from a snapshot, the application context is
+     * created on first access.
+     *
+     * @return the application context
+     */
     public ApplicationContext getApplicationContext() {
-        return applicationContext;
+        ApplicationContext context = applicationContext;
+        if (context == null) {
+            synchronized (this) {
+                context = applicationContext;
+                if (context == null) {
+                    context = contextFactory.get();
+                    applicationContext = context;
+                }
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Returns an application context which bean definitions were read.
+     * It is the analyzed application context, unless this analyzer is
+     * metadata only, in which case a separate context is created the
+     * first time it is needed.
+     */
+    private ApplicationContext getFullContext() {
+        if (!metadataOnly) {
+            return getApplicationContext();
+        }
+        ApplicationContext context = fullContext;
+        if (context == null) {
+            synchronized (this) {
+                context = fullContext;
+                if (context == null) {
+                    context = fullContextFactory.get();
+                    fullContext = context;
+                }
+            }
+        }
+        return context;
     }
 
     /**
@@ -87,11 +189,114 @@ public final class ApplicationContextAnalyzer {
      * @return the analyzer
      */
     public static ApplicationContextAnalyzer create(Consumer<? super ApplicationContextBuilder> spec) {
+        var analyzer = new ApplicationContextAnalyzer(() -> bootContext(spec), () -> bootContext(spec), false, null);
+        analyzer.getApplicationContext();
+        return analyzer;
+    }
+
+    /**
+     * Instantiates an application context analyzer which only loads the
+     * property sources of the application. Bean definitions and bean
+     * configurations are not read upfront and no singleton is registered.
+     * This answers the same property and environment queries as an analyzer
+     * created with {@link #create(Consumer)}, at a lower cost.
+     * <p>
+     * Requirements which depend on beans (bean presence or absence, bean
+     * properties and custom conditions) cannot be answered from metadata,
+     * so they are evaluated against a fully analyzed application context,
+     * created the first time such a requirement is met. Their outcome is
+     * then the same as with {@link #create(Consumer)}.
+     *
+     * @param spec the spec to configure the application context
+     * @return the analyzer
+     */
+    public static ApplicationContextAnalyzer createMetadataOnly(Consumer<? super ApplicationContextBuilder> spec) {
+        var analyzer = new ApplicationContextAnalyzer(() -> bootMetadataOnlyContext(spec), () -> bootContext(spec), true, null);
+        analyzer.getApplicationContext();
+        return analyzer;
+    }
+
+    /**
+     * Instantiates an application context analyzer which answers from a
+     * snapshot of a previous analysis. The application context is only
+     * created if a generator needs it, or if a component which isn't part
+     * of the snapshot is analyzed.
+     *
+     * @param snapshot the snapshot of a previous analysis of the same application
+     * @param metadataOnly if the application context should be created like in {@link #createMetadataOnly(Consumer)}
+     * @param spec the spec to configure the application context
+     * @return the analyzer
+     */
+    public static ApplicationContextAnalyzer fromSnapshot(AnalysisSnapshot snapshot, boolean metadataOnly, Consumer<? super ApplicationContextBuilder> spec) {
+        return new ApplicationContextAnalyzer(
+            () -> metadataOnly ? bootMetadataOnlyContext(spec) : bootContext(spec),
+            () -> bootContext(spec),
+            metadataOnly,
+            snapshot
+        );
+    }
+
+    /**
+     * Returns a snapshot of the results of the analysis so far, including the
+     * ones of the snapshot this analyzer was created from, if any.
+     *
+     * @return a snapshot
+     */
+    public AnalysisSnapshot snapshot() {
+        return new AnalysisSnapshot(
+            new LinkedHashSet<>(getEnvironmentNames()),
+            new ArrayList<>(getPackages()),
+            isDeducingEnvironments(),
+            Map.copyOf(componentOutcomes),
+            Map.copyOf(classAvailability)
+        );
+    }
+
+    /**
+     * Returns true if this analyzer was created with {@link #createMetadataOnly(Consumer)}.
+     *
+     * @return true if the analyzer doesn't read bean definitions upfront
+     */
+    public boolean isMetadataOnly() {
+        return metadataOnly;
+    }
+
+    /**
+     * Records whether a class could be loaded, so that it is part
+     * of the snapshots of this analyzer.
+     *
+     * @param className the class name
+     * @param available true if the class could be loaded
+     */
+    public void recordClassAvailability(String className, boolean available) {
+        classAvailability.put(className, available);
+    }
+
+    /**
+     * Returns whether a class could be loaded, if it was recorded by
+     * this analyzer or by the snapshot it was created from.
+     *
+     * @param className the class name
+     * @return the availability of the class, or an empty optional if unknown
+     */
+    public Optional<Boolean> findClassAvailability(String className) {
+        return Optional.ofNullable(classAvailability.get(className));
+    }
+
+    private static ApplicationContext bootContext(Consumer<? super ApplicationContextBuilder> spec) {
         ApplicationContextBuilder builder = ApplicationContext.builder();
         spec.accept(builder);
         ApplicationContext context = builder.build();
         finalizeConfiguration(context);
-        return new ApplicationContextAnalyzer(context);
+        return context;
+    }
+
+    private static ApplicationContext bootMetadataOnlyContext(Consumer<? super ApplicationContextBuilder> spec) {
+        ApplicationContextBuilder builder = ApplicationContext.builder();
+        spec.accept(builder);
+        ApplicationContext context = builder.build();
+        context.getEnvironment().start();
+        return context;
     }
 
     private static void finalizeConfiguration(ApplicationContext context) {
@@ -117,9 +322,38 @@ public final class ApplicationContextAnalyzer {
         context.registerSingleton(Environment.class, environment);
     }
 
+    /**
+     * Returns the state of the requested type which is attached to this
+     * analyzer, creating it if absent. Because a single analyzer may be
+     * used to generate code for several runtimes, generators can use it
+     * to share results which only depend on the analyzed application,
+     * for example the outcome of loading and analyzing classes.
+     *
+     * @param type the type of the state
+     * @param producer the producer of the state when absent
+     * @param <T> the type of the state
+     * @return the shared state
+     */
+    public <T> T getSharedState(Class<T> type, Supplier<? extends T> producer) {
+        return type.cast(sharedState.computeIfAbsent(type, t -> producer.get()));
+    }
+
+    /**
+     * Returns the state of the requested type which is attached to this
+     * analyzer, if present.
+     *
+     * @param type the type of the state
+     * @param <T> the type of the state
+     * @return the shared state, or an empty optional
+     */
+    public <T> Optional<T> findSharedState(Class<T> type) {
+        return Optional.ofNullable(type.cast(sharedState.get(type)));
+    }
+
     /**
      * Returns a predicate which can be used to determine, from annotation metadata,
-     * if a bean matches requirements.
+     * if a bean matches requirements. The outcome of requirements is cached by
+     * this analyzer, so the predicates it returns can be shared by threads.
      *
      * @return a predicate
      */
@@ -127,12 +361,14 @@ public final class ApplicationContextAnalyzer {
         return new AnnotationMetadataProviderPredicate();
     }
 
-    private final class ShallowConditionContext<T extends AnnotationMetadataProvider> implements ConditionContext<T> {
+    private static final class ShallowConditionContext<T extends AnnotationMetadataProvider> implements ConditionContext<T> {
         private final T component;
+        private final ApplicationContext applicationContext;
         private List<Failure> failures;
 
-        private ShallowConditionContext(T component) {
+        private ShallowConditionContext(T component, ApplicationContext applicationContext) {
             this.component = component;
+            this.applicationContext = applicationContext;
         }
 
         @Override
@@ -225,13 +461,103 @@ public final class ApplicationContextAnalyzer {
         }
     }
 
+    /**
+     * A predicate which evaluates requirements using a {@link RequiresCondition}.
+     * Since many components share the same requirements, the outcome of the
+     * evaluation is cached using the requirements and the kind of component
+     * as a key. Requirements which may depend on the component itself (custom
+     * conditions, presence or absence of beans) are always evaluated.
+     * <p>
+     * Classes required by the {@code classes} member are looked up in a cache
+     * shared by all components, so that a missing class is only searched once.
+     */
     private class AnnotationMetadataProviderPredicate implements Predicate<AnnotationMetadataProvider> {
 
         @Override
         public boolean test(AnnotationMetadataProvider component) {
-            var context = new ShallowConditionContext<>(component);
-            return new RequiresCondition(component.getAnnotationMetadata()).matches(context);
+            String componentName = component.getClass().getName();
+            Boolean recorded = componentOutcomes.get(componentName);
+            if (recorded != null) {
+                return recorded;
+            }
+            boolean outcome = evaluateRequirements(component);
+            componentOutcomes.put(componentName, outcome);
+            return outcome;
+        }
+
+        private boolean evaluateRequirements(AnnotationMetadataProvider component) {
+            AnnotationMetadata annotationMetadata = component.getAnnotationMetadata();
+            List<AnnotationValue<Requires>> requirements = annotationMetadata.getAnnotationValuesByType(Requires.class);
+            for (AnnotationValue<Requires> requirement : requirements) {
+                for (String className : requirement.stringValues(REQUIRED_CLASSES)) {
+                    if (!isClassPresent(className)) {
+                        return false;
+                    }
+                }
+            }
+            if (!isCacheable(requirements)) {
+                return evaluate(component, annotationMetadata, requirements);
+            }
+            var key = new RequirementsKey(ComponentKind.of(component), requirements);
+            Boolean outcome = requirementOutcomes.get(key);
+            if (outcome == null) {
+                outcome = evaluate(component, annotationMetadata, requirements);
+                requirementOutcomes.putIfAbsent(key, outcome);
+            }
+            return outcome;
+        }
+
+        private boolean evaluate(AnnotationMetadataProvider component, AnnotationMetadata annotationMetadata, List<AnnotationValue<Requires>> requirements) {
+            ApplicationContext applicationContext = dependsOnBeans(requirements) ? getFullContext() : getApplicationContext();
+            var context = new ShallowConditionContext<>(component, applicationContext);
+            return new RequiresCondition(annotationMetadata).matches(context);
+        }
+
+        private boolean isClassPresent(String className) {
+            return classPresence.computeIfAbsent(className, name -> ClassUtils.isPresent(name, getApplicationContext().getClassLoader()));
+        }
+
+        private static boolean isCacheable(List<AnnotationValue<Requires>> requirements) {
+            return !containsAny(requirements, COMPONENT_DEPENDENT_MEMBERS);
+        }
+
+        private static boolean dependsOnBeans(List<AnnotationValue<Requires>> requirements) {
+            return containsAny(requirements, BEAN_DEPENDENT_MEMBERS);
+        }
+
+        private static boolean containsAny(List<AnnotationValue<Requires>> requirements, List<String> members) {
+            for (AnnotationValue<Requires> requirement : requirements) {
+                for (String member : members) {
+                    if (requirement.contains(member)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
         }
 
     }
+
+    /**
+     * Requirements are not evaluated in the same way for bean references,
+     * bean definitions and other components.
+     */
+    private enum ComponentKind {
+        BEAN_REFERENCE,
+        BEAN_DEFINITION,
+        OTHER;
+
+        static ComponentKind of(AnnotationMetadataProvider component) {
+            if (component instanceof BeanDefinitionReference) {
+                return BEAN_REFERENCE;
+            }
+            if (component instanceof BeanDefinition) {
+                return BEAN_DEFINITION;
+            }
+            return OTHER;
+        }
+    }
+
+    private record RequirementsKey(ComponentKind kind, List<AnnotationValue<Requires>> requirements) {
+    }
 }
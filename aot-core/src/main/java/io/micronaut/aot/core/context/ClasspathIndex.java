@@ -0,0 +1,366 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.context;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the resources found on the analyzed classpath, which
+ * can be used to check for the existence of classes, or to find the
+ * classpath entries which provide a resource, without going through
+ * a classloader, which searches every classpath entry in order.
+ * <p>
+ * The index is stored in a file which is memory mapped, so that it
+ * can be reused by subsequent runs as long as the classpath doesn't
+ * change. It consists of a package table, mapping each package to
+ * the classpath entries which contain it, followed by a table of
+ * all resource paths sorted by their UTF-8 representation, which is
+ * searched using binary search. Lookups first go through the package
+ * table, so that a resource in a package which is absent from the
+ * classpath is rejected without searching the resource table.
+ * <p>
+ * Classes of the platform (JDK) are not indexed: they are looked up
+ * using the platform classloader.
+ */
+public final class ClasspathIndex {
+    public static final String INDEX_FILE_NAME = "classpath.index";
+
+    private static final int MAGIC = 0x4D414349;
+    private static final int VERSION = 1;
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final String SERVICES_DIRECTORY = "META-INF/services/";
+    private static final int[] NO_ENTRIES = new int[0];
+
+    private final List<File> entries;
+    private final Map<String, int[]> packages;
+    private final ByteBuffer resources;
+    private final int resourceCount;
+
+    private ClasspathIndex(List<File> entries, Map<String, int[]> packages, ByteBuffer resources, int resourceCount) {
+        this.entries = entries;
+        this.packages = packages;
+        this.resources = resources;
+        this.resourceCount = resourceCount;
+    }
+
+    /**
+     * Loads the index of the supplied classpath from the index file, if it
+     * exists and was created for the same classpath, or creates it.
+     *
+     * @param classpath the classpath entries
+     * @param fingerprint a fingerprint of the classpath, used to determine if the index file is up-to-date
+     * @param indexFile the file where the index is stored, or null to keep it in memory
+     * @return the index
+     * @throws IOException if the classpath or the index file cannot be read
+     */
+    @NonNull
+    public static ClasspathIndex load(@NonNull List<File> classpath, @NonNull String fingerprint, @Nullable Path indexFile) throws IOException {
+        if (indexFile != null && Files.isRegularFile(indexFile)) {
+            ByteBuffer buffer = map(indexFile);
+            if (isIndexOf(buffer, fingerprint)) {
+                return read(buffer);
+            }
+        }
+        byte[] bytes = build(classpath, fingerprint);
+        if (indexFile == null) {
+            return read(ByteBuffer.wrap(bytes));
+        }
+        Files.createDirectories(indexFile.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), INDEX_FILE_NAME, ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return read(map(indexFile));
+    }
+
+    /**
+     * Returns true if the class file of the supplied class is found
+     * on the classpath or in the platform. A class which is found may
+     * still fail to load, for example if its superclass is missing, and
+     * a class which isn't found may still be provided by a class loader
+     * which isn't indexed, so a negative answer must be confirmed.
+     *
+     * @param className the binary name of the class
+     * @return true if the class file exists
+     */
+    public boolean containsClass(@NonNull String className) {
+        String path = className.replace('.', '/') + CLASS_FILE_SUFFIX;
+        return containsResource(path) || ClassLoader.getPlatformClassLoader().getResource(path) != null;
+    }
+
+    /**
+     * Returns true if a resource with the supplied path is found on the
+     * indexed classpath.
+     *
+     * @param path the path of the resource, without leading slash
+     * @return true if the resource exists
+     */
+    public boolean containsResource(@NonNull String path) {
+        if (packages.get(packageOf(path)) == null) {
+            return false;
+        }
+        byte[] target = path.getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(target);
+        return index < resourceCount && compareAt(index, target) == 0;
+    }
+
+    /**
+     * Returns the classpath entries which provide the supplied resource,
+     * in classpath order.
+     *
+     * @param path the path of the resource, without leading slash
+     * @return the jars or directories which contain the resource
+     */
+    @NonNull
+    public List<File> findResourceProviders(@NonNull String path) {
+        if (packages.get(packageOf(path)) == null) {
+            return Collections.emptyList();
+        }
+        byte[] target = path.getBytes(StandardCharsets.UTF_8);
+        var providers = new ArrayList<File>();
+        for (int index = lowerBound(target); index < resourceCount && compareAt(index, target) == 0; index++) {
+            providers.add(entries.get(resources.getInt(recordPosition(index))));
+        }
+        return providers;
+    }
+
+    /**
+     * Returns the classpath entries which contain resources in the supplied
+     * package, in classpath order.
+     *
+     * @param packageName the package name, for example {@code io.micronaut.core}
+     * @return the jars or directories which contain the package
+     */
+    @NonNull
+    public List<File> findPackageProviders(@NonNull String packageName) {
+        int[] providers = packages.getOrDefault(packageName.replace('.', '/'), NO_ENTRIES);
+        return Arrays.stream(providers).mapToObj(entries::get).toList();
+    }
+
+    /**
+     * Returns the names of the service types for which a service
+     * descriptor exists in {@code META-INF/services}.
+     *
+     * @return the service type names
+     */
+    @NonNull
+    public Set<String> getServiceTypes() {
+        byte[] prefix = SERVICES_DIRECTORY.getBytes(StandardCharsets.UTF_8);
+        var serviceTypes = new TreeSet<String>();
+        for (int index = lowerBound(prefix); index < resourceCount; index++) {
+            String path = pathAt(index);
+            if (!path.startsWith(SERVICES_DIRECTORY)) {
+                break;
+            }
+            String name = path.substring(SERVICES_DIRECTORY.length());
+            if (!name.isEmpty() && name.indexOf('/') < 0) {
+                serviceTypes.add(name);
+            }
+        }
+        return serviceTypes;
+    }
+
+    private static String packageOf(String path) {
+        int separator = path.lastIndexOf('/');
+        return separator < 0 ? "" : path.substring(0, separator);
+    }
+
+    private int lowerBound(byte[] target) {
+        int low = 0;
+        int high = resourceCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareAt(middle, target) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int recordPosition(int index) {
+        return resources.getInt(resources.position() + 4 * index);
+    }
+
+    private int compareAt(int index, byte[] target) {
+        int position = recordPosition(index);
+        int length = resources.getInt(position + 4);
+        int start = position + 8;
+        int common = Math.min(length, target.length);
+        for (int i = 0; i < common; i++) {
+            int diff = Byte.compareUnsigned(resources.get(start + i), target[i]);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - target.length;
+    }
+
+    private String pathAt(int index) {
+        int position = recordPosition(index);
+        var bytes = new byte[resources.getInt(position + 4)];
+        resources.get(position + 8, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer map(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static boolean isIndexOf(ByteBuffer buffer, String fingerprint) {
+        ByteBuffer header = buffer.duplicate();
+        if (header.remaining() < 12 || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return false;
+        }
+        int length = header.getInt();
+        if (length < 0 || length > header.remaining()) {
+            return false;
+        }
+        return fingerprint.equals(readString(header, length));
+    }
+
+    private static ClasspathIndex read(ByteBuffer buffer) {
+        ByteBuffer data = buffer.duplicate();
+        data.position(8);
+        readString(data, data.getInt());
+        int entryCount = data.getInt();
+        var entries = new ArrayList<File>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(new File(readString(data, data.getInt())));
+        }
+        int packageCount = data.getInt();
+        var packages = new HashMap<String, int[]>(2 * packageCount);
+        for (int i = 0; i < packageCount; i++) {
+            String name = readString(data, data.getInt());
+            var providers = new int[data.getInt()];
+            for (int j = 0; j < providers.length; j++) {
+                providers[j] = data.getInt();
+            }
+            packages.put(name, providers);
+        }
+        int resourceCount = data.getInt();
+        // The position of the resource buffer is the start of the record offsets table
+        return new ClasspathIndex(Collections.unmodifiableList(entries), packages, data.slice(0, data.limit()).position(data.position()), resourceCount);
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] build(List<File> classpath, String fingerprint) throws IOException {
+        var records = new ArrayList<Resource>();
+        for (int entry = 0; entry < classpath.size(); entry++) {
+            for (String path : listResources(classpath.get(entry))) {
+                records.add(new Resource(path.getBytes(StandardCharsets.UTF_8), entry));
+            }
+        }
+        records.sort(Comparator.<Resource, byte[]>comparing(Resource::path, Arrays::compareUnsigned).thenComparingInt(Resource::entry));
+        var packages = new TreeMap<String, Set<Integer>>();
+        for (Resource record : records) {
+            packages.computeIfAbsent(packageOf(new String(record.path(), StandardCharsets.UTF_8)), p -> new LinkedHashSet<>()).add(record.entry());
+        }
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, fingerprint);
+            out.writeInt(classpath.size());
+            for (File file : classpath) {
+                writeString(out, file.getAbsolutePath());
+            }
+            out.writeInt(packages.size());
+            for (Map.Entry<String, Set<Integer>> entry : packages.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (int provider : entry.getValue().stream().sorted().toList()) {
+                    out.writeInt(provider);
+                }
+            }
+            out.writeInt(records.size());
+            int position = out.size() + 4 * records.size();
+            for (Resource record : records) {
+                out.writeInt(position);
+                position += 8 + record.path().length;
+            }
+            for (Resource record : records) {
+                out.writeInt(record.entry());
+                out.writeInt(record.path().length);
+                out.write(record.path());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Set<String> listResources(File entry) throws IOException {
+        var paths = new LinkedHashSet<String>();
+        if (entry.isDirectory()) {
+            Path root = entry.toPath();
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .forEach(paths::add);
+            }
+        } else if (entry.isFile()) {
+            try (var zip = new ZipFile(entry)) {
+                zip.stream()
+                    .filter(zipEntry -> !zipEntry.isDirectory())
+                    .map(ZipEntry::getName)
+                    .forEach(paths::add);
+            }
+        }
+        return paths;
+    }
+
+    private record Resource(byte[] path, int entry) {
+    }
+}
@@ -15,6 +15,7 @@
  */
 package io.micronaut.aot.core.context;
 
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
@@ -23,6 +24,10 @@ import com.squareup.javapoet.TypeSpec;
 import io.micronaut.aot.core.AOTContext;
 import io.micronaut.aot.core.Configuration;
 import io.micronaut.aot.core.Runtime;
+import io.micronaut.aot.core.diagnostics.DiagnosticRecord;
+import io.micronaut.aot.core.diagnostics.DiagnosticsSink;
+import io.micronaut.aot.core.diagnostics.GeneratorScope;
+import io.micronaut.aot.core.timing.Timings;
 import io.micronaut.core.annotation.NonNull;
 import io.micronaut.core.optim.StaticOptimizations;
 import org.slf4j.Logger;
@@ -38,16 +43,19 @@ import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * The source generation context.
@@ -64,29 +72,83 @@ import java.util.function.Consumer;
  * which are written to log files during code generation.
  */
 public final class DefaultSourceGenerationContext implements AOTContext {
+    public static final String MERGED_LOADER_CLASS_NAME = "AotStaticOptimizationsLoader";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultSourceGenerationContext.class);
+    private static final int RETAINED_DIAGNOSTICS_PER_CATEGORY = 100;
 
     private final String packageName;
     private final ApplicationContextAnalyzer analyzer;
-    private final Set<String> excludedResources = new TreeSet<>();
+    private final Set<String> excludedResources = new ConcurrentSkipListSet<>();
     private final Map<String, List<String>> diagnostics = new ConcurrentHashMap<>();
-    private final Set<Class<?>> classesRequiredAtCompilation = new HashSet<>();
+    private final Set<Class<?>> classesRequiredAtCompilation = ConcurrentHashMap.newKeySet();
     private final Configuration configuration;
-    private final Map<Class<?>, Object> context = new HashMap<>();
-    private final List<JavaFile> generatedJavaFiles = new ArrayList<>();
-    private final List<MethodSpec> initializers = new ArrayList<>();
+    private final Map<Class<?>, Object> context = new ConcurrentHashMap<>();
+    private final List<JavaFile> generatedJavaFiles = new CopyOnWriteArrayList<>();
+    private final Map<JavaFile, Supplier<byte[]>> classFiles = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final List<MethodSpec> initializers = new CopyOnWriteArrayList<>();
     private final Path generatedResourcesDirectory;
-    private final Set<String> buildTimeInitClasses = new HashSet<>();
-    private final List<Runnable> deferredOperations = new ArrayList<>();
+    private final Set<String> buildTimeInitClasses = new ConcurrentSkipListSet<>();
+    private final List<Runnable> deferredOperations = Collections.synchronizedList(new ArrayList<>());
+    private final Timings timings;
+    private final DiagnosticsSink diagnosticsSink;
+    private final int retainedDiagnostics;
+    private final Map<String, AtomicInteger> diagnosticCounts = new ConcurrentHashMap<>();
+    private final List<MergedOptimization> mergedOptimizations = new CopyOnWriteArrayList<>();
+    private volatile boolean mergeStaticOptimizations;
 
     public DefaultSourceGenerationContext(String packageName,
                                           ApplicationContextAnalyzer analyzer,
                                           Configuration configuration,
                                           Path generatedResourcesDirectory) {
+        this(packageName, analyzer, configuration, generatedResourcesDirectory, new Timings());
+    }
+
+    public DefaultSourceGenerationContext(String packageName,
+                                          ApplicationContextAnalyzer analyzer,
+                                          Configuration configuration,
+                                          Path generatedResourcesDirectory,
+                                          Timings timings) {
+        this(packageName, analyzer, configuration, generatedResourcesDirectory, timings, DiagnosticsSink.NONE);
+    }
+
+    /**
+     * Creates a context which streams diagnostics to the supplied sink.
+     * When a sink is provided, only the first {@value #RETAINED_DIAGNOSTICS_PER_CATEGORY}
+     * messages of each category are kept in memory, the remaining ones
+     * being only counted.
+     *
+     * @param packageName the package of generated classes
+     * @param analyzer the application context analyzer
+     * @param configuration the configuration
+     * @param generatedResourcesDirectory the directory of generated resources
+     * @param timings the timings
+     * @param diagnosticsSink the sink of diagnostic messages
+     */
+    public DefaultSourceGenerationContext(String packageName,
+                                          ApplicationContextAnalyzer analyzer,
+                                          Configuration configuration,
+                                          Path generatedResourcesDirectory,
+                                          Timings timings,
+                                          DiagnosticsSink diagnosticsSink) {
         this.packageName = packageName;
         this.analyzer = analyzer;
         this.configuration = configuration;
         this.generatedResourcesDirectory = generatedResourcesDirectory;
+        this.timings = timings;
+        this.diagnosticsSink = diagnosticsSink;
+        this.retainedDiagnostics = diagnosticsSink == DiagnosticsSink.NONE ? Integer.MAX_VALUE : RETAINED_DIAGNOSTICS_PER_CATEGORY;
+    }
+
+    /**
+     * Configures whether the static optimizations are registered by a
+     * single generated loader, named {@value #MERGED_LOADER_CLASS_NAME},
+     * instead of one service implementation per optimization.
+     *
+     * @param mergeStaticOptimizations true to merge the static optimizations
+     */
+    public void setMergeStaticOptimizations(boolean mergeStaticOptimizations) {
+        this.mergeStaticOptimizations = mergeStaticOptimizations;
     }
 
     @NonNull
@@ -130,10 +192,27 @@ public final class DefaultSourceGenerationContext implements AOTContext {
         generatedJavaFiles.add(javaFile);
     }
 
+    @Override
+    public void registerGeneratedSourceFile(@NonNull JavaFile javaFile, @NonNull Supplier<byte[]> classFile) {
+        classFiles.put(javaFile, classFile);
+        registerGeneratedSourceFile(javaFile);
+    }
+
     public List<JavaFile> getGeneratedJavaFiles() {
         return Collections.unmodifiableList(generatedJavaFiles);
     }
 
+    /**
+     * Returns the function which emits the class file of a generated
+     * source file, if one was registered.
+     *
+     * @param javaFile the generated source file
+     * @return the function which emits the class file, if any
+     */
+    public Optional<Supplier<byte[]>> findClassFile(JavaFile javaFile) {
+        return Optional.ofNullable(classFiles.get(javaFile));
+    }
+
     @Override
     public void registerStaticInitializer(MethodSpec staticInitializer) {
         initializers.add(staticInitializer);
@@ -153,6 +232,17 @@ public final class DefaultSourceGenerationContext implements AOTContext {
     public <T> void registerStaticOptimization(String className, Class<T> optimizationKind, Consumer<? super CodeBlock.Builder> bodyBuilder) {
         CodeBlock.Builder body = CodeBlock.builder();
         bodyBuilder.accept(body);
+        if (isMergingStaticOptimizations()) {
+            // The body becomes a method of the merged loader, generated when finishing
+            MethodSpec method = MethodSpec.methodBuilder("load" + className)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(optimizationKind)
+                .addCode(body.build())
+                .build();
+            mergedOptimizations.add(new MergedOptimization(CodeBlock.of("$N()", method), method));
+            registerBuildTimeInit(optimizationKind.getName());
+            return;
+        }
         MethodSpec method = MethodSpec.methodBuilder("load")
             .addModifiers(Modifier.PUBLIC)
             .addAnnotation(Override.class)
@@ -177,6 +267,11 @@ public final class DefaultSourceGenerationContext implements AOTContext {
      */
     @Override
     public void registerServiceImplementation(Class<?> serviceType, String simpleServiceName) {
+        if (isMergingStaticOptimizations() && serviceType == StaticOptimizations.Loader.class && !MERGED_LOADER_CLASS_NAME.equals(simpleServiceName)) {
+            // A generator which generated its own loader: it is called by the merged loader instead of the service loader
+            mergedOptimizations.add(new MergedOptimization(CodeBlock.of("new $T().load()", ClassName.get(packageName, simpleServiceName)), null));
+            return;
+        }
         registerGeneratedResource("META-INF/services/" + serviceType.getName(), serviceFile -> {
             try (var wrt = new PrintWriter(new FileWriter(serviceFile, true))) {
                 wrt.println(getPackageName() + "." + simpleServiceName);
@@ -247,7 +342,30 @@ public final class DefaultSourceGenerationContext implements AOTContext {
 
     @Override
     public void addDiagnostics(String category, String message) {
-        diagnostics.computeIfAbsent(category, c -> Collections.synchronizedList(new ArrayList<>())).add(message);
+        addDiagnostics(category, null, message);
+    }
+
+    @Override
+    public void addDiagnostics(String category, String className, String message) {
+        diagnosticsSink.accept(new DiagnosticRecord(category, GeneratorScope.current(), className, message));
+        int count = diagnosticCounts.computeIfAbsent(category, c -> new AtomicInteger()).incrementAndGet();
+        List<String> messages = diagnostics.computeIfAbsent(category, c -> Collections.synchronizedList(new ArrayList<>()));
+        if (count <= retainedDiagnostics) {
+            messages.add(message);
+        }
+    }
+
+    /**
+     * Returns the number of diagnostic messages per category, including
+     * the messages which were not retained in memory.
+     *
+     * @return the number of messages per category
+     */
+    @NonNull
+    public Map<String, Integer> getDiagnosticCounts() {
+        var counts = new TreeMap<String, Integer>();
+        diagnosticCounts.forEach((category, count) -> counts.put(category, count.get()));
+        return counts;
     }
 
     @Override
@@ -263,6 +381,13 @@ public final class DefaultSourceGenerationContext implements AOTContext {
         return Optional.ofNullable(o);
     }
 
+    /**
+     * Returns the diagnostic messages per category. When diagnostics are
+     * streamed to a sink, only the first messages of each category are
+     * returned.
+     *
+     * @return the diagnostics
+     */
     @NonNull
     @Override
     public Map<String, List<String>> getDiagnostics() {
@@ -274,8 +399,66 @@ public final class DefaultSourceGenerationContext implements AOTContext {
         return Collections.unmodifiableSet(buildTimeInitClasses);
     }
 
+    @NonNull
+    @Override
+    public Timings getTimings() {
+        return timings;
+    }
+
     @Override
     public void finish() {
-        deferredOperations.forEach(Runnable::run);
+        if (!mergedOptimizations.isEmpty()) {
+            registerMergedStaticOptimizations();
+        }
+        List<Runnable> operations;
+        synchronized (deferredOperations) {
+            operations = new ArrayList<>(deferredOperations);
+        }
+        operations.forEach(Runnable::run);
+    }
+
+    private boolean isMergingStaticOptimizations() {
+        return mergeStaticOptimizations;
+    }
+
+    /**
+     * Generates a single loader for all the registered static optimizations.
+     * The loader registers all optimizations but the last one itself, then
+     * returns the last one to {@link StaticOptimizations}, so that only one
+     * service implementation has to be loaded at startup.
+     */
+    private void registerMergedStaticOptimizations() {
+        List<MergedOptimization> optimizations = new ArrayList<>(mergedOptimizations);
+        mergedOptimizations.clear();
+        MethodSpec.Builder load = MethodSpec.methodBuilder("load")
+            .addModifiers(Modifier.PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(Object.class);
+        TypeSpec.Builder generatedType = TypeSpec.classBuilder(MERGED_LOADER_CLASS_NAME)
+            .addModifiers(Modifier.PUBLIC)
+            .addSuperinterface(ParameterizedTypeName.get(StaticOptimizations.Loader.class, Object.class));
+        for (int i = 0; i < optimizations.size(); i++) {
+            MergedOptimization optimization = optimizations.get(i);
+            if (i < optimizations.size() - 1) {
+                load.addStatement("$T.set($L)", StaticOptimizations.class, optimization.expression());
+            } else {
+                load.addStatement("return $L", optimization.expression());
+            }
+            if (optimization.method() != null) {
+                generatedType.addMethod(optimization.method());
+            }
+        }
+        generatedType.addMethod(load.build());
+        registerGeneratedSourceFile(javaFile(generatedType.build()));
+        registerServiceImplementation(StaticOptimizations.Loader.class, MERGED_LOADER_CLASS_NAME);
+    }
+
+    /**
+     * A static optimization which is loaded by the merged loader.
+     *
+     * @param expression the expression which creates the optimization
+     * @param method the method which creates the optimization, or null if generated in a separate class
+     */
+    private record MergedOptimization(CodeBlock expression, MethodSpec method) {
     }
 }
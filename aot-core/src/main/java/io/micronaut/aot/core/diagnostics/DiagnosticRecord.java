@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.diagnostics;
+
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+
+/**
+ * A diagnostic message emitted during code generation.
+ *
+ * @param category the category of the message, typically corresponding to a source generator type
+ * @param generator the id of the generator which emitted the message, if known
+ * @param className the name of the class the message is about, if any
+ * @param reason the message
+ */
+public record DiagnosticRecord(@NonNull String category,
+                               @Nullable String generator,
+                               @Nullable String className,
+                               @NonNull String reason) {
+}
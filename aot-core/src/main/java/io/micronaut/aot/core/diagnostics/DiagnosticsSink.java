@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.diagnostics;
+
+import io.micronaut.core.annotation.NonNull;
+
+/**
+ * Receives diagnostic messages as they are emitted, which makes it
+ * possible to write them without keeping them in memory until the
+ * end of code generation. Implementations must be thread safe.
+ */
+public interface DiagnosticsSink extends AutoCloseable {
+    /**
+     * A sink which discards all messages.
+     */
+    DiagnosticsSink NONE = record -> {
+    };
+
+    /**
+     * Receives a diagnostic message.
+     *
+     * @param record the message
+     */
+    void accept(@NonNull DiagnosticRecord record);
+
+    @Override
+    default void close() {
+    }
+}
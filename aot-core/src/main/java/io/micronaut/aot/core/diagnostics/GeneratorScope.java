@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.diagnostics;
+
+import io.micronaut.core.annotation.Nullable;
+
+/**
+ * Tracks the code generator executed by the current thread, so
+ * that diagnostic messages can be attributed to the generator
+ * which emitted them.
+ */
+public final class GeneratorScope {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private GeneratorScope() {
+    }
+
+    /**
+     * Executes an operation on behalf of a generator.
+     *
+     * @param generatorId the id of the generator
+     * @param operation the operation
+     */
+    public static void run(String generatorId, Runnable operation) {
+        String previous = CURRENT.get();
+        CURRENT.set(generatorId);
+        try {
+            operation.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the generator executed by the current thread.
+     *
+     * @return the generator id, or null if no generator is executed
+     */
+    @Nullable
+    public static String current() {
+        return CURRENT.get();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.diagnostics;
+
+import io.micronaut.core.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A diagnostics sink which writes messages to a logs directory as they
+ * arrive. Each message is written as a JSON record to a
+ * {@value #JSONL_FILE_NAME} file, with the category, generator, class and
+ * reason fields, and as a plain line to a log file named after the
+ * category.
+ */
+public final class JsonLinesDiagnosticsSink implements DiagnosticsSink {
+    public static final String JSONL_FILE_NAME = "diagnostics.jsonl";
+
+    private final File logsDirectory;
+    private final Map<String, Writer> categoryWriters = new HashMap<>();
+    private Writer jsonWriter;
+    private boolean closed;
+
+    public JsonLinesDiagnosticsSink(@NonNull File logsDirectory) {
+        this.logsDirectory = logsDirectory;
+    }
+
+    @Override
+    public synchronized void accept(@NonNull DiagnosticRecord record) {
+        if (closed) {
+            throw new IllegalStateException("Diagnostics sink is closed");
+        }
+        try {
+            if (jsonWriter == null) {
+                jsonWriter = open(JSONL_FILE_NAME);
+            }
+            jsonWriter.write("{\"category\": " + JsonStrings.quote(record.category())
+                + ", \"generator\": " + JsonStrings.quote(record.generator())
+                + ", \"class\": " + JsonStrings.quote(record.className())
+                + ", \"reason\": " + JsonStrings.quote(record.reason()) + "}\n");
+            Writer categoryWriter = categoryWriters.get(record.category());
+            if (categoryWriter == null) {
+                categoryWriter = open(record.category().toLowerCase(Locale.US) + ".log");
+                categoryWriters.put(record.category(), categoryWriter);
+            }
+            categoryWriter.write(record.reason());
+            categoryWriter.write(System.lineSeparator());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write diagnostics to " + logsDirectory, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        if (jsonWriter != null) {
+            failure = close(jsonWriter, null);
+        }
+        for (Writer writer : categoryWriters.values()) {
+            failure = close(writer, failure);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Unable to write diagnostics to " + logsDirectory, failure);
+        }
+    }
+
+    private Writer open(String fileName) throws IOException {
+        Files.createDirectories(logsDirectory.toPath());
+        return Files.newBufferedWriter(logsDirectory.toPath().resolve(fileName), StandardCharsets.UTF_8);
+    }
+
+    private static IOException close(Writer writer, IOException failure) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.timing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event emitted for each timed phase of the optimizer.
+ */
+@Name("io.micronaut.aot.Phase")
+@Label("AOT Phase")
+@Category({"Micronaut", "AOT"})
+@Description("A phase of the Micronaut AOT optimizer")
+final class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Name")
+    String name;
+}
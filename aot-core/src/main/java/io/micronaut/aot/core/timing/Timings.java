@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.timing;
+
+import io.micronaut.aot.core.diagnostics.JsonStrings;
+import io.micronaut.core.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Records how long the phases of the optimizer take. Each phase
+ * is also reported as a JFR event, so that recordings of the
+ * optimizer show where time is spent. This class is thread safe.
+ */
+public final class Timings {
+    private static final Timings NOOP = new Timings(false);
+
+    private final long origin = System.nanoTime();
+    private final List<Timing> timings = Collections.synchronizedList(new ArrayList<>());
+    private final boolean enabled;
+
+    public Timings() {
+        this(true);
+    }
+
+    private Timings(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns timings which execute operations without recording them.
+     *
+     * @return the no-op timings
+     */
+    @NonNull
+    public static Timings noop() {
+        return NOOP;
+    }
+
+    /**
+     * Times the execution of an operation.
+     *
+     * @param phase the phase the operation belongs to, for example "generator"
+     * @param name the name of the operation within the phase
+     * @param operation the operation
+     */
+    public void time(@NonNull String phase, @NonNull String name, @NonNull Runnable operation) {
+        time(phase, name, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Times the execution of an operation which produces a value.
+     *
+     * @param phase the phase the operation belongs to, for example "generator"
+     * @param name the name of the operation within the phase
+     * @param operation the operation
+     * @param <T> the type of the value
+     * @return the value produced by the operation
+     */
+    public <T> T time(@NonNull String phase, @NonNull String name, @NonNull Supplier<T> operation) {
+        if (!enabled) {
+            return operation.get();
+        }
+        var event = new PhaseEvent();
+        event.phase = phase;
+        event.name = name;
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            long end = System.nanoTime();
+            event.commit();
+            timings.add(new Timing(phase, name, Thread.currentThread().getName(), start - origin, end - start));
+        }
+    }
+
+    /**
+     * Records the cumulated duration of operations which were timed
+     * separately, for example operations which ran concurrently on
+     * several threads. Since such a timing doesn't correspond to a
+     * single span of time, it isn't reported as a JFR event.
+     *
+     * @param phase the phase the operations belong to
+     * @param name the name of the operations within the phase
+     * @param start the start of the operations, as returned by {@link System#nanoTime()}
+     * @param durationNanos the cumulated duration of the operations
+     */
+    public void record(@NonNull String phase, @NonNull String name, long start, long durationNanos) {
+        if (enabled) {
+            timings.add(new Timing(phase, name, Thread.currentThread().getName(), start - origin, durationNanos));
+        }
+    }
+
+    /**
+     * Returns the recorded timings, ordered by start time.
+     *
+     * @return the timings
+     */
+    @NonNull
+    public List<Timing> getTimings() {
+        synchronized (timings) {
+            var copy = new ArrayList<>(timings);
+            copy.sort((a, b) -> Long.compare(a.startNanos(), b.startNanos()));
+            return copy;
+        }
+    }
+
+    /**
+     * Writes the timings as JSON.
+     *
+     * @param outputFile the JSON file
+     */
+    public void writeJson(@NonNull File outputFile) {
+        List<Timing> all = getTimings();
+        try (var writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+            writer.println("{");
+            writer.println("  \"timings\": [");
+            for (int i = 0; i < all.size(); i++) {
+                Timing timing = all.get(i);
+                writer.print("    {\"phase\": " + JsonStrings.quote(timing.phase())
+                    + ", \"name\": " + JsonStrings.quote(timing.name())
+                    + ", \"thread\": " + JsonStrings.quote(timing.thread())
+                    + ", \"startMillis\": " + millis(timing.startNanos())
+                    + ", \"durationMillis\": " + millis(timing.durationNanos()) + "}");
+                writer.println(i < all.size() - 1 ? "," : "");
+            }
+            writer.println("  ]");
+            writer.println("}");
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write timings to " + outputFile, e);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1_000_000d);
+    }
+
+    /**
+     * A timed operation.
+     *
+     * @param phase the phase of the operation
+     * @param name the name of the operation
+     * @param thread the thread which executed the operation
+     * @param startNanos the start of the operation, relative to the creation of the timings
+     * @param durationNanos the duration of the operation
+     */
+    public record Timing(String phase, String name, String thread, long startNanos, long durationNanos) {
+    }
+}
@@ -20,15 +20,21 @@ import com.squareup.javapoet.TypeSpec
 import io.micronaut.aot.core.AOTModule
 import io.micronaut.aot.core.AOTCodeGenerator
 import io.micronaut.aot.core.AOTContext
+import io.micronaut.aot.core.context.DefaultSourceGenerationContext
 import io.micronaut.context.ApplicationContextConfigurer
 import io.micronaut.core.annotation.NonNull
+import io.micronaut.core.optim.StaticOptimizations
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 class ApplicationContextConfigurerGeneratorTest extends AbstractSourceGeneratorSpec {
     private List<AOTCodeGenerator> generators = []
+    private int parallelism = 1
 
     @Override
     AOTCodeGenerator newGenerator() {
-        new ApplicationContextConfigurerGenerator(generators)
+        new ApplicationContextConfigurerGenerator(generators, parallelism)
     }
 
     def "generates an application context builder service"() {
@@ -146,6 +152,128 @@ class SomeClass {
         }
     }
 
+    def "generated code doesn't depend on the order in which concurrent generators complete"() {
+        parallelism = 4
+        // Each generator waits for the next one to complete, so they complete in reverse order
+        def initializer4 = new LatchedGeneratorWithStaticInit("initializer4", null)
+        def initializer3 = new LatchedGeneratorWithStaticInit("initializer3", initializer4.done)
+        def initializer2 = new LatchedGeneratorWithStaticInit("initializer2", initializer3.done)
+        def initializer1 = new LatchedGeneratorWithStaticInit("initializer1", initializer2.done)
+        generators << initializer1 << initializer2 << initializer3 << initializer4
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            hasInitializers(4)
+            hasClass('AOTApplicationContextConfigurer') {
+                containingSources '''  static {
+    initializer1();
+    initializer2();
+    initializer3();
+    initializer4();
+  }'''
+            }
+        }
+    }
+
+    def "concurrent generators are executed after their dependencies"() {
+        parallelism = 4
+        generators << new DependentGenerator()
+        generators << new LatchedGeneratorWithStaticInit("initializer", null)
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            hasInitializers(2)
+            hasClass('AOTApplicationContextConfigurer') {
+                containingSources '''  static {
+    dependent();
+    initializer();
+  }'''
+            }
+        }
+    }
+
+    def "thread safe generators are executed concurrently"() {
+        parallelism = 2
+        // Both generators wait for each other, which only completes if they run concurrently
+        def rendezvous = new CountDownLatch(2)
+        generators << new RendezvousGenerator("first", rendezvous, 10_000)
+        generators << new RendezvousGenerator("second", rendezvous, 10_000)
+
+        when:
+        generate()
+
+        then:
+        generators.every { it.met }
+        assertThatGeneratedSources {
+            hasInitializers(2)
+        }
+    }
+
+    def "generators which are not declared thread safe are executed exclusively"() {
+        parallelism = 3
+        def rendezvous = new CountDownLatch(3)
+        generators << new ExclusiveGenerator("exclusive1", rendezvous)
+        generators << new RendezvousGenerator("threadSafe", rendezvous, 100)
+        generators << new ExclusiveGenerator("exclusive2", rendezvous)
+
+        when:
+        generate()
+
+        then: "no generator met another one"
+        generators.every { !it.met }
+        assertThatGeneratedSources {
+            hasInitializers(3)
+            hasClass('AOTApplicationContextConfigurer') {
+                containingSources '''  static {
+    exclusive1();
+    threadSafe();
+    exclusive2();
+  }'''
+            }
+        }
+    }
+
+    def "can merge static optimizations into a single loader"() {
+        context.mergeStaticOptimizations = true
+        generators << new StaticOptimizationGenerator("FirstLoader", String, '"first"')
+        generators << new LoaderGenerating()
+        generators << new StaticOptimizationGenerator("SecondLoader", Integer, '2')
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass(DefaultSourceGenerationContext.MERGED_LOADER_CLASS_NAME) {
+                containingSources '''  private static String loadFirstLoader() {
+    return "first";
+  }'''
+                containingSources '''  private static Integer loadSecondLoader() {
+    return 2;
+  }'''
+                containingSources '''  public Object load() {
+    StaticOptimizations.set(loadFirstLoader());
+    StaticOptimizations.set(new CustomLoader().load());
+    return loadSecondLoader();
+  }'''
+            }
+            hasClass('CustomLoader') {
+                containingSources('class CustomLoader')
+            }
+            hasClass('AOTApplicationContextConfigurer') {
+                containingSources('class AOTApplicationContextConfigurer')
+            }
+            generatesServiceFile(StaticOptimizations.Loader, "io.micronaut.test.${DefaultSourceGenerationContext.MERGED_LOADER_CLASS_NAME}")
+        }
+    }
+
     @AOTModule(id = "static-init")
     private static class GeneratorWithStaticInit extends AbstractCodeGenerator {
         private final String name
@@ -172,4 +300,123 @@ class SomeClass {
                     .build()
         }
     }
+
+    @AOTModule(id = "latched-static-init", threadSafe = true)
+    private static class LatchedGeneratorWithStaticInit extends AbstractCodeGenerator {
+        private final String name
+        private final CountDownLatch waitFor
+        final CountDownLatch done = new CountDownLatch(1)
+
+        protected LatchedGeneratorWithStaticInit(String name, CountDownLatch waitFor) {
+            this.name = name
+            this.waitFor = waitFor
+        }
+
+        @Override
+        void generate(@NonNull AOTContext context) {
+            if (waitFor != null && !waitFor.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Generators were not executed concurrently")
+            }
+            context.put(LatchedGeneratorWithStaticInit, this)
+            context.registerStaticInitializer(
+                staticMethod(name) {
+
+                }
+            )
+            done.countDown()
+        }
+    }
+
+    @AOTModule(id = "rendezvous", threadSafe = true)
+    private static class RendezvousGenerator extends AbstractCodeGenerator {
+        private final String name
+        private final CountDownLatch rendezvous
+        private final long timeoutMillis
+        boolean met
+
+        RendezvousGenerator(String name, CountDownLatch rendezvous, long timeoutMillis) {
+            this.name = name
+            this.rendezvous = rendezvous
+            this.timeoutMillis = timeoutMillis
+        }
+
+        @Override
+        void generate(@NonNull AOTContext context) {
+            rendezvous.countDown()
+            met = rendezvous.await(timeoutMillis, TimeUnit.MILLISECONDS)
+            context.registerStaticInitializer(
+                staticMethod(name) {
+
+                }
+            )
+        }
+    }
+
+    @AOTModule(id = "exclusive")
+    private static class ExclusiveGenerator extends AbstractCodeGenerator {
+        private final String name
+        private final CountDownLatch rendezvous
+        boolean met
+
+        ExclusiveGenerator(String name, CountDownLatch rendezvous) {
+            this.name = name
+            this.rendezvous = rendezvous
+        }
+
+        @Override
+        void generate(@NonNull AOTContext context) {
+            rendezvous.countDown()
+            // Another generator running concurrently would count down the latch
+            met = rendezvous.await(100, TimeUnit.MILLISECONDS)
+            context.registerStaticInitializer(
+                staticMethod(name) {
+
+                }
+            )
+        }
+    }
+
+    @AOTModule(id = "static-optimization")
+    private static class StaticOptimizationGenerator extends AbstractCodeGenerator {
+        private final String className
+        private final Class<?> kind
+        private final String value
+
+        StaticOptimizationGenerator(String className, Class<?> kind, String value) {
+            this.className = className
+            this.kind = kind
+            this.value = value
+        }
+
+        @Override
+        void generate(@NonNull AOTContext context) {
+            context.registerStaticOptimization(className, kind) { body ->
+                body.addStatement('return $L', value)
+            }
+        }
+    }
+
+    @AOTModule(id = "loader-generating")
+    private static class LoaderGenerating extends AbstractCodeGenerator {
+        @Override
+        void generate(@NonNull AOTContext context) {
+            context.registerGeneratedSourceFile(context.javaFile(TypeSpec.classBuilder("CustomLoader").build()))
+            context.registerServiceImplementation(StaticOptimizations.Loader, "CustomLoader")
+        }
+    }
+
+    @AOTModule(id = "dependent", dependencies = "latched-static-init", threadSafe = true)
+    private static class DependentGenerator extends AbstractCodeGenerator {
+        @Override
+        void generate(@NonNull AOTContext context) {
+            if (!context.get(LatchedGeneratorWithStaticInit).isPresent()) {
+                throw new IllegalStateException("Dependency wasn't executed first")
+            }
+            context.registerStaticInitializer(
+                staticMethod("dependent") {
+
+                }
+            )
+        }
+    }
 }
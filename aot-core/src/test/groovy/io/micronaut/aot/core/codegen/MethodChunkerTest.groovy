@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.codegen
+
+import com.squareup.javapoet.CodeBlock
+import com.squareup.javapoet.JavaFile
+import com.squareup.javapoet.MethodSpec
+import com.squareup.javapoet.ParameterSpec
+import com.squareup.javapoet.TypeSpec
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import javax.lang.model.element.Modifier
+import javax.tools.ToolProvider
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.spi.ToolProvider as CommandLineTool
+
+class MethodChunkerTest extends Specification {
+    private final TypeSpec.Builder type = TypeSpec.classBuilder("Test")
+
+    @TempDir
+    Path testDirectory
+
+    def "inlines statements which fit in a single chunk"() {
+        def chunker = new MethodChunker("fill", ParameterSpec.builder(List, "list").build())
+        chunker.addStatement('list.add($S)', 'a')
+        chunker.addStatement('list.add($S)', 'b')
+
+        when:
+        CodeBlock code = chunker.build(type)
+
+        then:
+        chunker.singleChunk
+        code.toString() == '''list.add("a");
+list.add("b");
+'''
+        type.build().methodSpecs.empty
+    }
+
+    def "splits statements into helper methods"() {
+        def chunker = new MethodChunker("fill", ParameterSpec.builder(List, "list").build())
+            .staticMethods()
+            .maxChunkSize(40)
+        5.times {
+            chunker.addStatement('list.add($S)', "item$it".toString())
+        }
+
+        when:
+        CodeBlock code = chunker.build(type)
+        def methods = type.build().methodSpecs
+
+        then:
+        !chunker.singleChunk
+        code.toString() == '''fill0(list);
+fill1(list);
+fill2(list);
+'''
+        methods*.name == ['fill0', 'fill1', 'fill2']
+        methods[0].toString() == '''private static void fill0(java.util.List list) {
+  list.add("item0");
+  list.add("item1");
+}
+'''
+        methods[2].code.toString() == '''list.add("item4");
+'''
+    }
+
+    def "chunks stay below the bytecode limits of the JVM"() {
+        def statements = (0..<20_000).collect { CodeBlock.of('values.add($S)', "value$it".toString()) }
+
+        when: "the statements are not chunked"
+        def error = compile(statements, Integer.MAX_VALUE)
+
+        then: "the method exceeds the 64KB limit"
+        error.contains("code too large")
+
+        when:
+        error = compile(statements, MethodChunker.DEFAULT_MAX_CHUNK_SIZE)
+        def sizes = bytecodeSizes()
+
+        then:
+        error.empty
+        sizes.size() > 1
+        sizes.values().every { it <= MethodChunker.DEFAULT_MAX_CHUNK_SIZE }
+    }
+
+    private String compile(List<CodeBlock> statements, int maxChunkSize) {
+        def type = TypeSpec.classBuilder("Chunked").addModifiers(Modifier.PUBLIC)
+        def chunker = new MethodChunker("fill", ParameterSpec.builder(List, "values").build())
+            .staticMethods()
+            .maxChunkSize(maxChunkSize)
+        statements.each { chunker.add(CodeBlock.builder().addStatement(it).build()) }
+        type.addMethod(MethodSpec.methodBuilder("fill")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addParameter(List, "values")
+            .addCode(chunker.build(type))
+            .build())
+        def sources = testDirectory.resolve("sources")
+        JavaFile.builder("test", type.build()).build().writeTo(sources)
+        def classes = Files.createDirectories(testDirectory.resolve("classes"))
+        def errors = new ByteArrayOutputStream()
+        ToolProvider.systemJavaCompiler.run(null, null, errors, "-nowarn", "-d", classes.toString(), sources.resolve("test/Chunked.java").toString())
+        errors.toString()
+    }
+
+    /**
+     * Returns the size of the bytecode of each method of the compiled
+     * class, that is to say the offset of its last instruction, which
+     * is a one byte return.
+     */
+    private Map<String, Integer> bytecodeSizes() {
+        def output = new StringWriter()
+        CommandLineTool.findFirst("javap").get().run(new PrintWriter(output), new PrintWriter(new StringWriter()), "-c", "-p", testDirectory.resolve("classes/test/Chunked.class").toString())
+        def sizes = [:]
+        String method = null
+        output.toString().eachLine { line ->
+            def signature = line =~ /^  \S.* (\w+)\(.*\);$/
+            def instruction = line =~ /^\s+(\d+): \w+/
+            if (signature.find()) {
+                method = signature.group(1)
+            } else if (method != null && instruction.find()) {
+                sizes[method] = (instruction.group(1) as int) + 1
+            }
+        }
+        sizes
+    }
+}
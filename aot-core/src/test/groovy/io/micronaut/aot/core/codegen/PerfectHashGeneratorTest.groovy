@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.codegen
+
+import com.squareup.javapoet.ClassName
+import com.squareup.javapoet.CodeBlock
+import io.micronaut.aot.core.AOTCodeGenerator
+import io.micronaut.aot.core.AOTContext
+
+class PerfectHashGeneratorTest extends AbstractSourceGeneratorSpec {
+    private List<String> keys = (0..<1000).collect { "io.micronaut.some.Type$it".toString() }
+
+    @Override
+    AOTCodeGenerator newGenerator() {
+        return { AOTContext context ->
+            def generator = PerfectHashGenerator.of(keys).get()
+            context.registerGeneratedSourceFile(context.javaFile(generator.generateSet("GeneratedSet")))
+            def values = keys.collectEntries { [it, CodeBlock.of('$S', it.toUpperCase())] }
+            context.registerGeneratedSourceFile(context.javaFile(generator.generateMap("GeneratedMap", ClassName.get(String), values)))
+        } as AOTCodeGenerator
+    }
+
+    def "computes a minimal perfect hash table"() {
+        when:
+        def generator = PerfectHashGenerator.of(keys + keys).get()
+
+        then:
+        generator.keys.size() == keys.size()
+        generator.keys as Set == keys as Set
+        keys.every { generator.keys[generator.indexOf(it)] == it }
+        generator.indexOf("io.micronaut.some.Missing") == -1
+    }
+
+    def "cannot create a table without keys"() {
+        expect:
+        !PerfectHashGenerator.of([]).present
+    }
+
+    def "generated collections find all keys"() {
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            hasClass("GeneratedSet") {
+                containingSources 'public final class GeneratedSet extends AbstractSet<String> {'
+            }
+            hasClass("GeneratedMap") {
+                containingSources 'public final class GeneratedMap extends AbstractMap<String, String> {'
+            }
+            compiles()
+        }
+
+        when:
+        def loader = new URLClassLoader([testDirectory.resolve("compiled").toUri().toURL()] as URL[], getClass().classLoader)
+        Set<String> set = loader.loadClass("io.micronaut.test.GeneratedSet").getConstructor().newInstance() as Set<String>
+        Map<String, String> map = loader.loadClass("io.micronaut.test.GeneratedMap").getConstructor().newInstance() as Map<String, String>
+
+        then:
+        set.size() == keys.size()
+        keys.every { set.contains(it) }
+        !set.contains("io.micronaut.some.Missing")
+        !set.contains(42)
+        map.size() == keys.size()
+        keys.every { map.get(it) == it.toUpperCase() }
+        map.get("io.micronaut.some.Missing") == null
+        map == keys.collectEntries { [it, it.toUpperCase()] }
+
+        cleanup:
+        loader?.close()
+    }
+}
@@ -0,0 +1,48 @@
+package io.micronaut.aot.core.config
+
+import io.micronaut.aot.core.Runtime
+import spock.lang.Specification
+
+class DefaultConfigurationTest extends Specification {
+
+    def "reads the target runtimes"() {
+        def props = new Properties()
+        if (runtime != null) {
+            props.put("runtime", runtime)
+        }
+
+        when:
+        def config = new DefaultConfiguration(props)
+
+        then:
+        config.runtimes == expected
+
+        where:
+        runtime        | expected
+        null           | [Runtime.JIT]
+        'jit'          | [Runtime.JIT]
+        'native'       | [Runtime.NATIVE]
+        'jit,native'   | [Runtime.JIT, Runtime.NATIVE]
+        'NATIVE; jit'  | [Runtime.NATIVE, Runtime.JIT]
+    }
+
+    def "a single runtime is expected when several are configured"() {
+        def props = new Properties()
+        props.put("runtime", "jit,native")
+        def config = new DefaultConfiguration(props)
+
+        when:
+        config.runtime
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        def runtimeConfig = new RuntimeConfiguration(config, Runtime.NATIVE)
+
+        then:
+        runtimeConfig.runtime == Runtime.NATIVE
+        runtimeConfig.runtimes == [Runtime.NATIVE]
+        runtimeConfig.mandatoryValue("runtime") == "jit,native"
+    }
+}
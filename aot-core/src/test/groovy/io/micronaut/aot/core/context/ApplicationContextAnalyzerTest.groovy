@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.context
+
+import io.micronaut.context.ApplicationContextBuilder
+import io.micronaut.context.annotation.Requires
+import io.micronaut.context.condition.Condition
+import io.micronaut.context.condition.ConditionContext
+import io.micronaut.context.env.Environment
+import io.micronaut.context.env.PropertySource
+import io.micronaut.core.annotation.AnnotationMetadata
+import io.micronaut.core.annotation.AnnotationMetadataProvider
+import io.micronaut.core.annotation.AnnotationValue
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.util.concurrent.atomic.AtomicInteger
+
+class ApplicationContextAnalyzerTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    def "metadata only analyzer loads properties without reading bean definitions"() {
+        when:
+        def analyzer = ApplicationContextAnalyzer.createMetadataOnly {
+            it.environments("test-env")
+            it.properties(["some.property": "value"])
+        }
+
+        then:
+        analyzer.metadataOnly
+        analyzer.environmentNames.contains("test-env")
+        analyzer.applicationContext.getProperty("some.property", String).get() == "value"
+        analyzer.applicationContext.environment.running
+        !analyzer.applicationContext.running
+    }
+
+    def "default analyzer is not metadata only"() {
+        when:
+        def analyzer = ApplicationContextAnalyzer.create {
+            it.environments("test-env")
+        }
+
+        then:
+        !analyzer.metadataOnly
+        analyzer.environmentNames.contains("test-env")
+    }
+
+    def "snapshots can be written and reused without creating an application context"() {
+        def file = testDirectory.resolve(AnalysisSnapshot.SNAPSHOT_FILE_NAME)
+        def analyzer = ApplicationContextAnalyzer.create {
+            it.environments("test-env")
+        }
+        analyzer.recordClassAvailability("com.acme.Missing", false)
+        analyzer.snapshot().write(file, "fingerprint")
+
+        when:
+        def snapshot = AnalysisSnapshot.read(file, "fingerprint").get()
+        def restored = ApplicationContextAnalyzer.fromSnapshot(snapshot, false) {
+            throw new AssertionError("The application context shouldn't be created")
+        }
+
+        then:
+        restored.environmentNames.contains("test-env")
+        restored.findClassAvailability("com.acme.Missing") == Optional.of(false)
+        !restored.findClassAvailability("com.acme.Other").present
+        !AnalysisSnapshot.read(file, "other").present
+    }
+
+    def "identical requirements are only evaluated once"() {
+        def analyzer = ApplicationContextAnalyzer.create()
+        def predicate = analyzer.annotationMetadataPredicate
+
+        expect:
+        !predicate.test(new FirstComponent(annotationMetadata: requires(property: "feature.enabled")))
+
+        when: "the property is added after the requirements were evaluated"
+        analyzer.applicationContext.environment.addPropertySource(PropertySource.of("test", ["feature.enabled": "true"]))
+
+        then: "a component with the same requirements reuses the outcome"
+        !predicate.test(new SecondComponent(annotationMetadata: requires(property: "feature.enabled")))
+
+        and: "a component with different requirements is evaluated"
+        predicate.test(new ThirdComponent(annotationMetadata: requires(property: "feature.enabled", value: "true")))
+    }
+
+    def "requirements on conditions are evaluated for each component"() {
+        def analyzer = ApplicationContextAnalyzer.create()
+        def predicate = analyzer.annotationMetadataPredicate
+        CountingCondition.EVALUATIONS.set(0)
+
+        when:
+        predicate.test(new FirstComponent(annotationMetadata: requires(condition: CountingCondition)))
+        predicate.test(new SecondComponent(annotationMetadata: requires(condition: CountingCondition)))
+
+        then:
+        CountingCondition.EVALUATIONS.get() == 2
+    }
+
+    def "requirements on beans are evaluated for each component"() {
+        def analyzer = ApplicationContextAnalyzer.create()
+        def predicate = analyzer.annotationMetadataPredicate
+
+        expect:
+        !predicate.test(new FirstComponent(annotationMetadata: requires(beans: Marker)))
+
+        when:
+        analyzer.applicationContext.registerSingleton(Marker, new Marker())
+
+        then:
+        predicate.test(new SecondComponent(annotationMetadata: requires(beans: Marker)))
+    }
+
+    def "required classes are only looked up once"() {
+        def loader = new CountingClassLoader(this.class.classLoader)
+        def analyzer = ApplicationContextAnalyzer.create {
+            it.classLoader(loader)
+        }
+        def predicate = analyzer.annotationMetadataPredicate
+
+        expect:
+        !predicate.test(new FirstComponent(annotationMetadata: requires(classes: "com.acme.Missing")))
+        !predicate.test(new SecondComponent(annotationMetadata: requires(classes: "com.acme.Missing", property: "other")))
+        loader.lookups("com.acme.Missing") == 1
+    }
+
+    def "metadata only analyzer evaluates requirements like the default analyzer (#requirements)"() {
+        def spec = { ApplicationContextBuilder builder ->
+            builder.environments("test-env")
+            builder.properties(["feature.enabled": "true"])
+        }
+        def full = ApplicationContextAnalyzer.create(spec).annotationMetadataPredicate
+        def metadataOnly = ApplicationContextAnalyzer.createMetadataOnly(spec).annotationMetadataPredicate
+
+        expect:
+        metadataOnly.test(new FirstComponent(annotationMetadata: requires(requirements))) == full.test(new FirstComponent(annotationMetadata: requires(requirements)))
+
+        where:
+        requirements << [
+            [property: "feature.enabled"],
+            [property: "feature.enabled", value: "false"],
+            [env: "test-env"],
+            [notEnv: "test-env"],
+            [beans: Environment],
+            [beans: Marker],
+            [missingBeans: Environment],
+            [missingBeans: Marker],
+            [condition: EnvironmentBeanCondition]
+        ]
+    }
+
+    private AnnotationMetadata requires(Map<String, Object> members) {
+        def builder = AnnotationValue.builder(Requires)
+        members.each { name, value -> builder.member(name, value) }
+        List<AnnotationValue<Requires>> requirements = [builder.build()]
+        Stub(AnnotationMetadata) {
+            getAnnotationValuesByType(Requires) >> requirements
+        }
+    }
+
+    static class Component implements AnnotationMetadataProvider {
+        AnnotationMetadata annotationMetadata
+    }
+
+    static class FirstComponent extends Component {
+    }
+
+    static class SecondComponent extends Component {
+    }
+
+    static class ThirdComponent extends Component {
+    }
+
+    static class Marker {
+    }
+
+    static class CountingCondition implements Condition {
+        static final AtomicInteger EVALUATIONS = new AtomicInteger()
+
+        @Override
+        boolean matches(ConditionContext context) {
+            EVALUATIONS.incrementAndGet()
+            true
+        }
+    }
+
+    static class EnvironmentBeanCondition implements Condition {
+        @Override
+        boolean matches(ConditionContext context) {
+            context.beanContext.containsBean(Environment)
+        }
+    }
+
+    static class CountingClassLoader extends ClassLoader {
+        private final Map<String, Integer> lookups = [:].asSynchronized()
+
+        CountingClassLoader(ClassLoader parent) {
+            super(parent)
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            lookups.merge(name, 1) { a, b -> a + b }
+            super.loadClass(name, resolve)
+        }
+
+        int lookups(String name) {
+            lookups.getOrDefault(name, 0)
+        }
+    }
+}
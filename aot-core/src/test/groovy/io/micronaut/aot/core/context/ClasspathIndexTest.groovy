@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.context
+
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class ClasspathIndexTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    def "indexes classes and resources of directories and jars"() {
+        def classes = testDirectory.resolve("classes")
+        touch(classes.resolve("com/acme/Foo.class"))
+        touch(classes.resolve("META-INF/services/com.acme.Service"))
+        def jar = testDirectory.resolve("lib.jar")
+        new JarOutputStream(Files.newOutputStream(jar)).withCloseable {
+            it.putNextEntry(new JarEntry("com/acme/"))
+            it.putNextEntry(new JarEntry("com/acme/Bar.class"))
+            it.putNextEntry(new JarEntry("META-INF/services/com.acme.Service"))
+            it.putNextEntry(new JarEntry("application.yml"))
+        }
+        def classpath = [classes.toFile(), jar.toFile()]
+
+        when:
+        def index = ClasspathIndex.load(classpath, "fingerprint", null)
+
+        then:
+        index.containsClass("com.acme.Foo")
+        index.containsClass("com.acme.Bar")
+        index.containsClass("java.lang.String")
+        !index.containsClass("com.acme.Baz")
+        !index.containsClass("org.acme.Foo")
+        index.containsResource("application.yml")
+        index.findResourceProviders("META-INF/services/com.acme.Service") == classpath
+        index.findResourceProviders("com/acme/Bar.class") == [jar.toFile()]
+        index.findPackageProviders("com.acme") == classpath
+        index.serviceTypes == ["com.acme.Service"] as Set
+    }
+
+    def "reuses the index file when the fingerprint matches"() {
+        def classes = testDirectory.resolve("classes")
+        touch(classes.resolve("com/acme/Foo.class"))
+        def indexFile = testDirectory.resolve("cache/${ClasspathIndex.INDEX_FILE_NAME}")
+
+        when:
+        ClasspathIndex.load([classes.toFile()], "v1", indexFile)
+        touch(classes.resolve("com/acme/Bar.class"))
+        def index = ClasspathIndex.load([classes.toFile()], "v1", indexFile)
+
+        then: "the stale index is reused because the fingerprint didn't change"
+        Files.exists(indexFile)
+        index.containsClass("com.acme.Foo")
+        !index.containsClass("com.acme.Bar")
+
+        when:
+        index = ClasspathIndex.load([classes.toFile()], "v2", indexFile)
+
+        then:
+        index.containsClass("com.acme.Bar")
+    }
+
+    private static void touch(Path file) {
+        Files.createDirectories(file.parent)
+        Files.write(file, new byte[0])
+    }
+}
@@ -3,7 +3,11 @@ package io.micronaut.aot.core.context
 import io.micronaut.aot.core.AOTCodeGenerator
 import io.micronaut.aot.core.codegen.AbstractSourceGeneratorSpec
 import io.micronaut.aot.core.codegen.ApplicationContextConfigurerGenerator
+import io.micronaut.aot.core.diagnostics.GeneratorScope
+import io.micronaut.aot.core.diagnostics.JsonLinesDiagnosticsSink
+import io.micronaut.aot.core.timing.Timings
 
+import java.nio.file.Files
 import java.util.concurrent.Callable
 import java.util.concurrent.Executors
 
@@ -39,6 +43,30 @@ class DefaultSourceGenerationContextTest extends AbstractSourceGeneratorSpec {
         context.diagnostics.category3.size() == 50
     }
 
+    def "streams diagnostics to a sink and only retains the first messages"() {
+        def logsDir = testDirectory.resolve("logs")
+        def sink = new JsonLinesDiagnosticsSink(logsDir.toFile())
+        def streamingContext = new DefaultSourceGenerationContext(packageName, context.analyzer, config, resourcesDir, new Timings(), sink)
+
+        when:
+        GeneratorScope.run("my.generator") {
+            500.times {
+                streamingContext.addDiagnostics("category", "com.acme.Service$it", "message $it")
+            }
+        }
+        streamingContext.addDiagnostics("other", "message")
+        sink.close()
+
+        then:
+        streamingContext.diagnostics.category.size() < 500
+        streamingContext.diagnosticCounts == [category: 500, other: 1]
+        def records = Files.readAllLines(logsDir.resolve(JsonLinesDiagnosticsSink.JSONL_FILE_NAME))
+        records.size() == 501
+        records[0] == '{"category": "category", "generator": "my.generator", "class": "com.acme.Service0", "reason": "message 0"}'
+        records[500] == '{"category": "other", "generator": null, "class": null, "reason": "message"}'
+        Files.readAllLines(logsDir.resolve("category.log")).size() == 500
+    }
+
     Callable<Object> addDiagnostics(String category, String message) {
         return Executors.callable(() -> {
             context.addDiagnostics(category, message)
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.diagnostics
+
+import spock.lang.Specification
+
+class JsonStringsTest extends Specification {
+
+    def "quotes #value as #json"() {
+        expect:
+        JsonStrings.quote(value) == json
+
+        where:
+        value           | json
+        null            | 'null'
+        ''              | '""'
+        'plain'         | '"plain"'
+        'a "quoted" \\' | '"a \\"quoted\\" \\\\"'
+        'l1\nl2\r\t'    | '"l1\\nl2\\r\\t"'
+        'bell\u0007'    | '"bell\\u0007"'
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.core.timing
+
+import io.micronaut.aot.core.AOTContext
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.util.function.Supplier
+
+class TimingsTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    def "records timings and writes them as JSON"() {
+        def timings = new Timings()
+
+        when:
+        def value = timings.time("analyzer", "boot", { 42 } as Supplier<Integer>)
+        timings.time("generator", "some \"quoted\" id", { Thread.sleep(10) } as Runnable)
+
+        then:
+        value == 42
+        timings.timings*.phase == ["analyzer", "generator"]
+        timings.timings[1].durationNanos() >= 10_000_000
+
+        when:
+        def json = testDirectory.resolve("timings.json").toFile()
+        timings.writeJson(json)
+        def lines = json.readLines()
+
+        then:
+        lines.size() == 6
+        lines[2].startsWith('    {"phase": "analyzer", "name": "boot", "thread": ')
+        lines[3].startsWith('    {"phase": "generator", "name": "some \\"quoted\\" id", "thread": ')
+    }
+
+    def "records cumulated durations"() {
+        def timings = new Timings()
+        def start = System.nanoTime()
+
+        when:
+        timings.record("service analysis", "some.Service", start, 5_000_000)
+        Timings.noop().record("service analysis", "some.Service", start, 5_000_000)
+
+        then:
+        timings.timings.size() == 1
+        timings.timings[0].name() == "some.Service"
+        timings.timings[0].durationNanos() == 5_000_000
+        timings.timings[0].startNanos() >= 0
+        Timings.noop().timings.empty
+    }
+
+    def "no-op timings execute operations without recording them"() {
+        def timings = Timings.noop()
+
+        when:
+        def value = timings.time("analyzer", "boot", { 42 } as Supplier<Integer>)
+
+        then:
+        value == 42
+        timings.timings.empty
+    }
+
+    def "contexts which don't record timings don't need to implement it"() {
+        expect:
+        AOTContext.getMethod("getTimings").isDefault()
+    }
+}
@@ -30,6 +30,7 @@ dependencies {
 
     compileOnlyApi(projects.micronautAotCore)
     compileOnly(mnLogging.logback.classic)
+    implementation(libs.asm)
 
     testImplementation(testFixtures(projects.micronautAotCore))
     testImplementation(mn.micronaut.context)
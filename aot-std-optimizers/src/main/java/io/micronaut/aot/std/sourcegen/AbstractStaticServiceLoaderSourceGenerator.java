@@ -18,6 +18,8 @@ package io.micronaut.aot.std.sourcegen;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.WildcardTypeName;
@@ -25,34 +27,50 @@ import io.micronaut.aot.core.AOTContext;
 import io.micronaut.aot.core.Environments;
 import io.micronaut.aot.core.codegen.AbstractCodeGenerator;
 import io.micronaut.aot.core.codegen.DelegatingSourceGenerationContext;
+import io.micronaut.aot.core.codegen.MethodChunker;
+import io.micronaut.aot.core.codegen.PerfectHashGenerator;
 import io.micronaut.aot.core.config.MetadataUtils;
+import io.micronaut.aot.core.context.ClasspathIndex;
 import io.micronaut.context.env.PropertySourceLoader;
 import io.micronaut.context.env.yaml.YamlPropertySourceLoader;
 import io.micronaut.core.annotation.AnnotationMetadataProvider;
 import io.micronaut.core.annotation.Generated;
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.io.service.SoftServiceLoader;
 import io.micronaut.inject.BeanConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static io.micronaut.aot.core.config.MetadataUtils.findOption;
+import static javax.lang.model.element.Modifier.PRIVATE;
 import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
 
 /**
  * Base class for generation of service loader classes. Because service loading
@@ -65,11 +83,15 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
     public static final String SERVICE_TYPES = "service.types";
     public static final String REJECTED_CLASSES = "serviceloading.rejected.impls";
     public static final String FORCE_INCLUDE = "serviceloading.force.include.impls";
+    public static final String DISCOVER_SERVICE_TYPES = "serviceloading.discover.types";
+    public static final String REJECTED_SERVICE_TYPES = "serviceloading.rejected.types";
+    public static final String ANALYSIS_PARALLELISM = "serviceloading.analysis.parallelism";
 
     protected static final String DEFAULT_SERVICE_TYPES = "io.micronaut.context.env.PropertySourceLoader,io.micronaut.inject.BeanConfiguration,io.micronaut.inject.BeanDefinitionReference,io.micronaut.http.HttpRequestFactory,io.micronaut.http.HttpResponseFactory,io.micronaut.core.beans.BeanIntrospectionReference,io.micronaut.core.convert.TypeConverterRegistrar,io.micronaut.context.env.PropertyExpressionResolver";
     public static final List<String> DEFAULT_SERVICE_TYPES_LIST = Arrays.stream(DEFAULT_SERVICE_TYPES.split(",")).toList();
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractStaticServiceLoaderSourceGenerator.class);
+    private static final String STATIC_SERVICES_CLASS_NAME = "StaticServices";
 
     protected AOTContext context;
 
@@ -78,9 +100,11 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
     private Predicate<String> rejectedClasses;
     private Map<String, AbstractCodeGenerator> substitutions;
     private Set<String> forceInclude;
+    private Integer parallelism;
+    private ServiceCandidates candidates;
     private final Substitutes substitutes = new Substitutes();
     private final Map<String, GeneratedType> staticServiceClasses = new HashMap<>();
-    private final Set<BeanConfiguration> disabledConfigurations = Collections.synchronizedSet(new HashSet<>());
+    private final Set<BeanConfiguration> disabledConfigurations = new LinkedHashSet<>();
     private final Map<String, List<Class<?>>> serviceClasses = new HashMap<>();
     private final Set<Class<?>> disabledServices = new HashSet<>();
 
@@ -89,6 +113,9 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
         this.context = context;
         if (serviceNames == null) {
             serviceNames = context.getConfiguration().stringList(findOption(this.getClass(), SERVICE_TYPES).key());
+            if (context.getConfiguration().booleanValue(findOption(this.getClass(), DISCOVER_SERVICE_TYPES).key(), false)) {
+                serviceNames = withDiscoveredServiceTypes(serviceNames);
+            }
         }
         if (substitutions == null) {
             var resourceNames = new LinkedHashSet<String>();
@@ -123,17 +150,27 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
         if (forceInclude == null) {
             forceInclude = new HashSet<>(context.getConfiguration().stringList(findOption(this.getClass(), FORCE_INCLUDE).key()));
         }
+        if (parallelism == null) {
+            parallelism = context.getConfiguration().optionalValue(findOption(this.getClass(), ANALYSIS_PARALLELISM).key(), value -> value.map(Integer::parseInt)
+                .orElseGet(() -> java.lang.Runtime.getRuntime().availableProcessors()));
+        }
+        if (candidates == null) {
+            int threads = parallelism;
+            candidates = context.getAnalyzer().getSharedState(ServiceCandidates.class, () -> new ServiceCandidates(threads));
+        }
+        var candidateNames = new LinkedHashMap<String, List<String>>();
         for (String serviceName : serviceNames) {
             LOGGER.debug("Processing service type {}", serviceName);
-            collectServiceImplementations(serviceName);
+            context.getTimings().time("service discovery", serviceName, () -> candidateNames.put(serviceName, findCandidateNames(serviceName)));
         }
+        context.getTimings().time("service discovery", "candidate analysis", () -> analyzeCandidates(candidateNames));
         context.put(Substitutes.class, substitutes);
 
         for (BeanConfiguration beanConfiguration : disabledConfigurations) {
             for (List<Class<?>> classList : serviceClasses.values()) {
                 for (Class<?> clazz : classList) {
                     if (beanConfiguration.isWithin(clazz)) {
-                        context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Disabling " + clazz.getName() + " because it belongs to " + beanConfiguration.getName() + " which is disabled (" + beanConfiguration.getClass() + ")");
+                        context.addDiagnostics(SERVICE_LOADING_CATEGORY, clazz.getName(), "Disabling " + clazz.getName() + " because it belongs to " + beanConfiguration.getName() + " which is disabled (" + beanConfiguration.getClass() + ")");
                         disabledServices.add(clazz);
                     }
                 }
@@ -142,14 +179,47 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
         generateServiceLoader();
         LOGGER.debug("Generated static service loader classes: {}", staticServiceClasses.keySet());
         LOGGER.debug("Generated static {} service loader substitutions", substitutes.values().size());
-        staticServiceClasses.values()
-            .stream()
-            .map(generatedType -> {
-                context.registerBuildTimeInit(generatedType.className());
-                return context.javaFile(generatedType.typeSpec());
-            })
-            .forEach(context::registerGeneratedSourceFile);
-        context.registerStaticOptimization("StaticServicesLoader", SoftServiceLoader.Optimizations.class, this::buildOptimization);
+        staticServiceClasses.values().forEach(generatedType -> {
+            context.registerBuildTimeInit(generatedType.className());
+            JavaFile javaFile = context.javaFile(generatedType.typeSpec());
+            if (generatedType.classFile() == null) {
+                context.registerGeneratedSourceFile(javaFile);
+            } else {
+                context.registerGeneratedSourceFile(javaFile, generatedType.classFile());
+            }
+        });
+        Optional<PerfectHashGenerator> perfectHash = staticServiceClasses.size() >= PerfectHashGenerator.RECOMMENDED_MIN_SIZE
+            ? PerfectHashGenerator.of(staticServiceClasses.keySet())
+            : Optional.empty();
+        if (perfectHash.isPresent()) {
+            var loaders = new HashMap<String, CodeBlock>();
+            staticServiceClasses.forEach((serviceName, generatedType) -> loaders.put(serviceName, CodeBlock.of("new $T()", ClassName.bestGuess(generatedType.className()))));
+            ClassName staticServices = ClassName.get(context.getPackageName(), STATIC_SERVICES_CLASS_NAME);
+            context.registerBuildTimeInit(staticServices.reflectionName());
+            context.registerGeneratedSourceFile(context.javaFile(perfectHash.get().generateMap(STATIC_SERVICES_CLASS_NAME, serviceLoaderType(), loaders)));
+            context.registerStaticOptimization("StaticServicesLoader", SoftServiceLoader.Optimizations.class, body ->
+                body.addStatement("return new $T(new $T())", SoftServiceLoader.Optimizations.class, staticServices));
+        } else {
+            context.registerStaticOptimization("StaticServicesLoader", SoftServiceLoader.Optimizations.class, this::buildOptimization);
+        }
+    }
+
+    private List<String> withDiscoveredServiceTypes(List<String> serviceTypes) {
+        var rejectedTypes = new HashSet<>(context.getConfiguration().stringList(findOption(this.getClass(), REJECTED_SERVICE_TYPES).key()));
+        var allTypes = new LinkedHashSet<>(serviceTypes);
+        ServiceTypeDiscovery discovery = context.getAnalyzer().getSharedState(ServiceTypeDiscovery.class, () -> new ServiceTypeDiscovery(
+            this.getClass().getClassLoader(),
+            context.getAnalyzer().findSharedState(ClasspathIndex.class).orElse(null)
+        ));
+        for (String serviceType : discovery.getServiceTypes()) {
+            if (rejectedTypes.contains(serviceType)) {
+                context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Ignoring discovered service type " + serviceType + " because it is rejected");
+            } else if (allTypes.add(serviceType)) {
+                context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Discovered service type " + serviceType);
+            }
+        }
+        allTypes.removeAll(rejectedTypes);
+        return new ArrayList<>(allTypes);
     }
 
     private void generateServiceLoader() {
@@ -164,69 +234,170 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
                 throw new RuntimeException(e);
             }
             TypeSpec.Builder factory = prepareServiceLoaderType(serviceName, serviceType);
+            List<Class<?>> enabledImplementations = implementations.stream()
+                .filter(clazz -> !rejectedClasses.test(clazz.getName()) && !disabledServices.contains(clazz))
+                .toList();
             generateFindAllMethod(
-                implementations.stream().filter(clazz -> !rejectedClasses.test(clazz.getName()) && !disabledServices.contains(clazz)),
+                enabledImplementations.stream(),
                 serviceName,
                 serviceType,
                 factory);
-            staticServiceClasses.put(serviceName, new GeneratedType(context.getPackageName() + "." + factoryNameFor(serviceName), factory.build()));
+            String className = context.getPackageName() + "." + factoryNameFor(serviceName);
+            staticServiceClasses.put(serviceName, new GeneratedType(className, factory.build(), factoryClassFile(className, serviceType, enabledImplementations)));
         }
     }
 
-    private void collectServiceImplementations(String serviceName) {
+    /**
+     * Lists the implementations of a service type which are declared on the
+     * classpath, excluding the rejected ones and the ones which are substituted.
+     */
+    private List<String> findCandidateNames(String serviceName) {
         context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Starting service discovery for type " + serviceName);
         ClassLoader cl = this.getClass().getClassLoader();
-        var seen = Collections.synchronizedSet(new HashSet<String>());
-        SoftServiceLoader.ServiceCollector<Class<?>> availableClasses = SoftServiceLoader.newCollector(serviceName, s -> !s.isEmpty(), cl, className -> {
-            if (rejectedClasses.test(className) || !seen.add(className)) {
-                return null;
+        var classNames = new LinkedHashSet<String>();
+        SoftServiceLoader.newCollector(serviceName, s -> !s.isEmpty(), cl, Function.identity()).collect(classNames::add);
+        var candidateNames = new ArrayList<String>(classNames.size());
+        for (String className : classNames) {
+            if (!rejectedClasses.test(className) && !substitute(serviceName, className)) {
+                candidateNames.add(className);
             }
-            AbstractCodeGenerator substitution = substitutions.get(className);
-            if (substitution != null) {
-                var javaFiles = new ArrayList<JavaFile>();
-                var tracker = new DelegatingSourceGenerationContext(context) {
-                    @Override
-                    public void registerGeneratedSourceFile(@NonNull JavaFile javaFile) {
-                        super.registerGeneratedSourceFile(javaFile);
-                        javaFiles.add(javaFile);
-                    }
-                };
-                substitution.generate(tracker);
-                javaFiles.forEach(substitute -> substitutes.computeIfAbsent(serviceName, k -> new ArrayList<>()).add(substitute));
-                if (!javaFiles.isEmpty()) {
-                    return null;
-                }
+        }
+        return candidateNames;
+    }
+
+    private boolean substitute(String serviceName, String className) {
+        AbstractCodeGenerator substitution = substitutions.get(className);
+        if (substitution == null) {
+            return false;
+        }
+        var javaFiles = new ArrayList<JavaFile>();
+        var tracker = new DelegatingSourceGenerationContext(context) {
+            @Override
+            public void registerGeneratedSourceFile(@NonNull JavaFile javaFile) {
+                super.registerGeneratedSourceFile(javaFile);
+                javaFiles.add(javaFile);
             }
-            Class<?> clazz;
-            try {
-                clazz = cl.loadClass(className);
-                DeepAnalyzer deepAnalyzer = deepAnalyzerFor(clazz, serviceName);
-                boolean available = deepAnalyzer.isAvailable(clazz);
-                if (!available && forceInclude.contains(className)) {
-                    context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Forcing inclusion of " + clazz + " despite it not matching bean requirements");
-                    available = true;
-                }
-                if (!available) {
-                    if (BeanConfiguration.class.isAssignableFrom(clazz)) {
-                        disabledConfigurations.add((BeanConfiguration) clazz.getConstructor().newInstance());
-                    }
-                    context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Skipping " + clazz + " because it doesn't match bean requirements");
-                    return null;
+
+            @Override
+            public void registerGeneratedSourceFile(@NonNull JavaFile javaFile, @NonNull Supplier<byte[]> classFile) {
+                super.registerGeneratedSourceFile(javaFile, classFile);
+                javaFiles.add(javaFile);
+            }
+        };
+        substitution.generate(tracker);
+        javaFiles.forEach(substitute -> substitutes.computeIfAbsent(serviceName, k -> new ArrayList<>()).add(substitute));
+        return !javaFiles.isEmpty();
+    }
+
+    /**
+     * Analyzes the candidates of all service types concurrently, on the bounded
+     * pool shared by the service loader generators. Each analysis collects its
+     * own diagnostics, which are only reported once all analyses are complete,
+     * in the order of the candidates, so that the outcome doesn't depend on the
+     * parallelism. The time spent analyzing the candidates of each service type
+     * is recorded as the sum of the durations of its analyses, excluding the
+     * analyses which were shared with another runtime.
+     */
+    private void analyzeCandidates(Map<String, List<String>> candidateNames) {
+        ClassLoader cl = this.getClass().getClassLoader();
+        long start = System.nanoTime();
+        var analysisNanos = new LinkedHashMap<String, AtomicLong>();
+        var pending = new ArrayList<PendingCandidate>();
+        for (Map.Entry<String, List<String>> entry : candidateNames.entrySet()) {
+            String serviceName = entry.getKey();
+            var duration = new AtomicLong();
+            analysisNanos.put(serviceName, duration);
+            for (String className : entry.getValue()) {
+                pending.add(new PendingCandidate(serviceName, className,
+                    candidates.analyzeAsync(serviceName, className, () -> {
+                        long begin = System.nanoTime();
+                        try {
+                            return analyzeCandidate(cl, serviceName, className);
+                        } finally {
+                            duration.addAndGet(System.nanoTime() - begin);
+                        }
+                    })
+                ));
+            }
+            serviceClasses.put(serviceName, new ArrayList<>());
+        }
+        for (PendingCandidate candidate : pending) {
+            ServiceCandidates.Candidate result = await(candidate.result());
+            result.diagnostics().forEach(message -> context.addDiagnostics(SERVICE_LOADING_CATEGORY, candidate.className(), message));
+            if (result.disabledConfiguration() != null) {
+                disabledConfigurations.add(result.disabledConfiguration());
+            }
+            if (result.isAvailable()) {
+                serviceClasses.get(candidate.serviceName()).add(result.clazz());
+            }
+        }
+        analysisNanos.forEach((serviceName, duration) -> context.getTimings().record("service analysis", serviceName, start, duration.get()));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Loads a service implementation candidate and checks its requirements.
+     * This only depends on the analyzed application, which is why the outcome
+     * is shared with the generators of other runtimes.
+     */
+    private ServiceCandidates.Candidate analyzeCandidate(ClassLoader cl, String serviceName, String className) {
+        var diagnostics = new ArrayList<String>();
+        boolean knownMissing = context.getAnalyzer().findClassAvailability(className).map(available -> !available).orElse(false);
+        if (knownMissing) {
+            diagnostics.add("Skipping service " + serviceName + " implementation " + className + " because of missing dependencies: " + className);
+            return ServiceCandidates.Candidate.unavailable(null, diagnostics);
+        }
+        try {
+            Class<?> clazz = loadCandidate(cl, className);
+            DeepAnalyzer deepAnalyzer = deepAnalyzerFor(clazz, serviceName, diagnostics);
+            boolean available = deepAnalyzer.isAvailable(clazz);
+            if (!available && forceInclude.contains(className)) {
+                diagnostics.add("Forcing inclusion of " + clazz + " despite it not matching bean requirements");
+                available = true;
+            }
+            if (!available) {
+                BeanConfiguration disabledConfiguration = null;
+                if (BeanConfiguration.class.isAssignableFrom(clazz)) {
+                    disabledConfiguration = (BeanConfiguration) clazz.getConstructor().newInstance();
                 }
-            } catch (ClassNotFoundException | NoClassDefFoundError | NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
-                context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Skipping service " + serviceName + " implementation " + className + " because of missing dependencies: " + e.getMessage());
-                return null;
+                diagnostics.add("Skipping " + clazz + " because it doesn't match bean requirements");
+                return ServiceCandidates.Candidate.unavailable(disabledConfiguration, diagnostics);
             }
+            return ServiceCandidates.Candidate.available(clazz, diagnostics);
+        } catch (ClassNotFoundException | NoClassDefFoundError | NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            diagnostics.add("Skipping service " + serviceName + " implementation " + className + " because of missing dependencies: " + e.getMessage());
+            return ServiceCandidates.Candidate.unavailable(null, diagnostics);
+        }
+    }
+
+    private Class<?> loadCandidate(ClassLoader cl, String className) throws ClassNotFoundException {
+        try {
+            Class<?> clazz = cl.loadClass(className);
+            context.getAnalyzer().recordClassAvailability(className, true);
             return clazz;
-        });
-        var serviceClasses = new ArrayList<Class<?>>();
-        availableClasses.collect(serviceClasses::add);
-        this.serviceClasses.put(serviceName, serviceClasses);
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            context.getAnalyzer().recordClassAvailability(className, false);
+            throw e;
+        }
     }
 
-    private DeepAnalyzer deepAnalyzerFor(Class<?> clazz, String serviceName) throws ClassNotFoundException {
+    private DeepAnalyzer deepAnalyzerFor(Class<?> clazz, String serviceName, List<String> diagnostics) {
         if (AnnotationMetadataProvider.class.isAssignableFrom(clazz)) {
-            return new AnnotationMetadataAnalyzer(context, metadataProviderPredicate, serviceName);
+            return new AnnotationMetadataAnalyzer(diagnostics, metadataProviderPredicate, serviceName);
         }
         return DeepAnalyzer.DEFAULT;
     }
@@ -236,6 +407,110 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
                                                   Class<?> serviceType,
                                                   TypeSpec.Builder factory);
 
+    /**
+     * Returns a function which emits the class file of a service loader
+     * factory directly, if the generator supports it. Otherwise, the
+     * generated source is compiled.
+     *
+     * @param className the fully qualified name of the factory
+     * @param serviceType the service type
+     * @param implementations the implementations which are not rejected nor disabled
+     * @return the function which emits the class file, or null
+     */
+    @Nullable
+    protected Supplier<byte[]> factoryClassFile(String className, Class<?> serviceType, List<Class<?>> implementations) {
+        return null;
+    }
+
+    /**
+     * Returns the code which creates a supplier of the service implementation
+     * without reflection, that is to say a reference to a public static
+     * {@code provider} method or to a public no-arg constructor. Since the
+     * generated code lives in a different package, this is only possible
+     * if the implementation is accessible from there.
+     *
+     * @param clazz the service implementation
+     * @return the supplier code, or an empty optional if the implementation can only be instantiated reflectively
+     */
+    protected static Optional<CodeBlock> directInstantiationOf(Class<?> clazz) {
+        return directInstantiatorOf(clazz).map(instantiator -> instantiator instanceof Method
+            ? CodeBlock.of("$T::provider", clazz)
+            : CodeBlock.of("$T::new", clazz));
+    }
+
+    /**
+     * Returns the public static {@code provider} method or the public no-arg
+     * constructor which {@link #directInstantiationOf(Class)} references.
+     *
+     * @param clazz the service implementation
+     * @return the method or constructor, or an empty optional if the implementation can only be instantiated reflectively
+     */
+    protected static Optional<Executable> directInstantiatorOf(Class<?> clazz) {
+        if (!isAccessibleFromGeneratedCode(clazz)) {
+            return Optional.empty();
+        }
+        for (Method method : clazz.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if ("provider".equals(method.getName()) && Modifier.isStatic(modifiers) && Modifier.isPublic(modifiers) && method.getParameterCount() == 0) {
+                return Optional.of(method);
+            }
+        }
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            if (constructor.getParameterCount() == 0 && Modifier.isPublic(constructor.getModifiers())) {
+                return Optional.of(constructor);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns an expression which creates an array of the supplied strings.
+     * Array initializers cannot be split, so if the array doesn't fit in a
+     * single method chunk, it is created by a helper method added to the
+     * factory, which fills the array in chunks. Otherwise, the supplied
+     * inline expression is used.
+     *
+     * @param factory the factory type
+     * @param methodName the name of the helper method
+     * @param values the elements of the array
+     * @param inline the expression which creates a small array
+     * @return the array expression
+     */
+    protected static CodeBlock stringArray(TypeSpec.Builder factory, String methodName, List<String> values, CodeBlock inline) {
+        var chunker = new MethodChunker(methodName + "Part", ParameterSpec.builder(String[].class, "values").build()).staticMethods();
+        for (int i = 0; i < values.size(); i++) {
+            chunker.addStatement("values[$L] = $S", i, values.get(i));
+        }
+        if (chunker.isSingleChunk()) {
+            return inline;
+        }
+        factory.addMethod(MethodSpec.methodBuilder(methodName)
+            .addModifiers(PRIVATE, STATIC)
+            .returns(String[].class)
+            .addStatement("$T[] values = new $T[$L]", String.class, String.class, values.size())
+            .addCode(chunker.build(factory))
+            .addStatement("return values")
+            .build());
+        return CodeBlock.of("$N()", methodName);
+    }
+
+    /**
+     * A class can be referenced from another package if it is public,
+     * and if it's nested, if it is a static member of an accessible class.
+     */
+    private static boolean isAccessibleFromGeneratedCode(Class<?> clazz) {
+        if (clazz.isAnonymousClass() || clazz.isLocalClass()) {
+            return false;
+        }
+        for (Class<?> type = clazz; type != null; type = type.getEnclosingClass()) {
+            int modifiers = type.getModifiers();
+            if (!Modifier.isPublic(modifiers) || type.getEnclosingClass() != null && !Modifier.isStatic(modifiers)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private TypeSpec.Builder prepareServiceLoaderType(String serviceName, Class<?> serviceType) {
         String name = factoryNameFor(serviceName);
         TypeSpec.Builder factory = TypeSpec.classBuilder(name)
@@ -249,9 +524,12 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
         return simpleNameOf(serviceName) + "Factory";
     }
 
+    private static ParameterizedTypeName serviceLoaderType() {
+        return ParameterizedTypeName.get(ClassName.get(SoftServiceLoader.StaticServiceLoader.class), WildcardTypeName.subtypeOf(Object.class));
+    }
+
     private void buildOptimization(CodeBlock.Builder body) {
-        ParameterizedTypeName serviceLoaderType = ParameterizedTypeName.get(
-            ClassName.get(SoftServiceLoader.StaticServiceLoader.class), WildcardTypeName.subtypeOf(Object.class));
+        ParameterizedTypeName serviceLoaderType = serviceLoaderType();
         body.addStatement("$T staticServices = new $T()",
             ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), serviceLoaderType),
             ParameterizedTypeName.get(ClassName.get(HashMap.class), ClassName.get(String.class), serviceLoaderType));
@@ -305,12 +583,12 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
     }
 
     private static final class AnnotationMetadataAnalyzer implements DeepAnalyzer {
-        private final AOTContext context;
+        private final List<String> diagnostics;
         private final Predicate<AnnotationMetadataProvider> predicate;
         private final String serviceName;
 
-        private AnnotationMetadataAnalyzer(AOTContext context, Predicate<AnnotationMetadataProvider> predicate, String serviceName) {
-            this.context = context;
+        private AnnotationMetadataAnalyzer(List<String> diagnostics, Predicate<AnnotationMetadataProvider> predicate, String serviceName) {
+            this.diagnostics = diagnostics;
             this.predicate = predicate;
             this.serviceName = serviceName;
         }
@@ -326,14 +604,29 @@ public abstract class AbstractStaticServiceLoaderSourceGenerator extends Abstrac
         }
 
         private boolean skipService(Class<?> clazz, Throwable e) {
-            context.addDiagnostics(SERVICE_LOADING_CATEGORY, "Skipping service " + serviceName + " implementation " + clazz.getName() + " because of missing dependencies:" + e.getMessage());
+            diagnostics.add("Skipping service " + serviceName + " implementation " + clazz.getName() + " because of missing dependencies:" + e.getMessage());
             return false;
         }
     }
 
+    private record PendingCandidate(
+        String serviceName,
+        String className,
+        CompletableFuture<ServiceCandidates.Candidate> result
+    ) {
+    }
+
+    /**
+     * A generated service loader class.
+     *
+     * @param className the fully qualified name of the class
+     * @param typeSpec the type to write
+     * @param classFile the function which emits the class file directly, or null
+     */
     private record GeneratedType(
         String className,
-        TypeSpec typeSpec
+        TypeSpec typeSpec,
+        @Nullable Supplier<byte[]> classFile
     ) {
 
     }
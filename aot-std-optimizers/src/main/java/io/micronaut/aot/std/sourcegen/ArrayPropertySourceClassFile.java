@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen;
+
+import io.micronaut.context.env.PropertySource;
+import io.micronaut.core.util.CollectionUtils;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static io.micronaut.aot.std.sourcegen.ClassFileSupport.invoke;
+import static io.micronaut.aot.std.sourcegen.ClassFileSupport.pushInt;
+import static org.objectweb.asm.Opcodes.AALOAD;
+import static org.objectweb.asm.Opcodes.AASTORE;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ANEWARRAY;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.GETSTATIC;
+import static org.objectweb.asm.Opcodes.IFGE;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.ISTORE;
+import static org.objectweb.asm.Opcodes.PUTSTATIC;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V17;
+
+/**
+ * Emits the class file of a property source which stores its entries in
+ * arrays, as generated by {@link MapPropertySourceGenerator}. Values are
+ * created the way {@link io.micronaut.aot.core.codegen.MapGenerator}
+ * generates them: scalars are boxed, and lists and maps are wrapped into
+ * immutable collections. Values of other types are not supported, in
+ * which case the generated source has to be compiled.
+ */
+final class ArrayPropertySourceClassFile {
+    /**
+     * The estimated size in bytes of the code which stores a key,
+     * or which creates a single value.
+     */
+    private static final int NODE_SIZE = 20;
+    private static final String KEYS = "KEYS";
+    private static final String VALUES = "VALUES";
+    private static final String STRING_ARRAY = Type.getDescriptor(String[].class);
+    private static final String OBJECT_ARRAY = Type.getDescriptor(Object[].class);
+
+    private ArrayPropertySourceClassFile() {
+
+    }
+
+    /**
+     * Emits the class file.
+     *
+     * @param className the binary name of the class
+     * @param name the name of the property source
+     * @param order the order of the property source
+     * @param keys the sorted keys
+     * @param values the values
+     * @return the class file
+     */
+    static byte[] generate(String className, String name, int order, List<String> keys, Map<String, Object> values) {
+        String owner = className.replace('.', '/');
+        ClassWriter cw = ClassFileSupport.newClassWriter();
+        cw.visit(V17, ACC_PUBLIC | ACC_SUPER, owner, null, Type.getInternalName(Object.class), new String[] {Type.getInternalName(PropertySource.class)});
+        ClassFileSupport.visitGeneratedAnnotation(cw);
+        cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, KEYS, STRING_ARRAY, null, null).visitEnd();
+        cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, VALUES, OBJECT_ARRAY, null, null).visitEnd();
+        ClassFileSupport.visitDefaultConstructor(cw, 0);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "getName", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(name);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "get", "(Ljava/lang/String;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(GETSTATIC, owner, KEYS, STRING_ARRAY);
+        mv.visitVarInsn(ALOAD, 1);
+        invoke(mv, INVOKESTATIC, Arrays.class, "binarySearch", Object[].class, Object.class);
+        mv.visitVarInsn(ISTORE, 2);
+        mv.visitVarInsn(ILOAD, 2);
+        Label found = new Label();
+        mv.visitJumpInsn(IFGE, found);
+        mv.visitInsn(ACONST_NULL);
+        mv.visitInsn(ARETURN);
+        mv.visitLabel(found);
+        mv.visitFieldInsn(GETSTATIC, owner, VALUES, OBJECT_ARRAY);
+        mv.visitVarInsn(ILOAD, 2);
+        mv.visitInsn(AALOAD);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "iterator", "()Ljava/util/Iterator;", "()Ljava/util/Iterator<Ljava/lang/String;>;", null);
+        mv.visitCode();
+        mv.visitFieldInsn(GETSTATIC, owner, KEYS, STRING_ARRAY);
+        invoke(mv, INVOKESTATIC, Arrays.class, "asList", Object[].class);
+        invoke(mv, INVOKEINTERFACE, List.class, "iterator");
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "getOrder", "()I", null, null);
+        mv.visitCode();
+        pushInt(mv, order);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        MethodVisitor clinit = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        pushInt(clinit, keys.size());
+        clinit.visitTypeInsn(ANEWARRAY, Type.getInternalName(String.class));
+        clinit.visitFieldInsn(PUTSTATIC, owner, KEYS, STRING_ARRAY);
+        pushInt(clinit, keys.size());
+        clinit.visitTypeInsn(ANEWARRAY, Type.getInternalName(Object.class));
+        clinit.visitFieldInsn(PUTSTATIC, owner, VALUES, OBJECT_ARRAY);
+        var chunks = new ClassFileSupport.StaticChunks(cw, owner, "load");
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Object value = values.get(key);
+            MethodVisitor load = chunks.next(NODE_SIZE * (1 + nodeCount(value)));
+            load.visitFieldInsn(GETSTATIC, owner, KEYS, STRING_ARRAY);
+            pushInt(load, i);
+            load.visitLdcInsn(key);
+            load.visitInsn(AASTORE);
+            load.visitFieldInsn(GETSTATIC, owner, VALUES, OBJECT_ARRAY);
+            pushInt(load, i);
+            pushValue(load, value);
+            load.visitInsn(AASTORE);
+        }
+        chunks.invokeAll(clinit);
+        clinit.visitInsn(RETURN);
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static int nodeCount(Object value) {
+        int count = 1;
+        if (value instanceof List<?> list) {
+            for (Object element : list) {
+                count += nodeCount(element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                count += nodeCount(entry.getKey()) + nodeCount(entry.getValue());
+            }
+        }
+        return count;
+    }
+
+    private static void pushValue(MethodVisitor mv, Object value) {
+        if (value == null) {
+            mv.visitInsn(ACONST_NULL);
+        } else if (value instanceof List<?> list) {
+            if (list.isEmpty()) {
+                invoke(mv, INVOKESTATIC, Collections.class, "emptyList");
+            } else {
+                pushArray(mv, list.toArray());
+                invoke(mv, INVOKESTATIC, Arrays.class, "asList", Object[].class);
+                invoke(mv, INVOKESTATIC, Collections.class, "unmodifiableList", List.class);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            if (map.isEmpty()) {
+                invoke(mv, INVOKESTATIC, Collections.class, "emptyMap");
+            } else {
+                Object[] keysAndValues = new Object[2 * map.size()];
+                int i = 0;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    keysAndValues[i++] = entry.getKey();
+                    keysAndValues[i++] = entry.getValue();
+                }
+                pushArray(mv, keysAndValues);
+                invoke(mv, INVOKESTATIC, CollectionUtils.class, "mapOf", Object[].class);
+                invoke(mv, INVOKESTATIC, Collections.class, "unmodifiableMap", Map.class);
+            }
+        } else if (value instanceof CharSequence) {
+            mv.visitLdcInsn(value.toString());
+        } else if (value instanceof Integer i) {
+            pushInt(mv, i);
+            invoke(mv, INVOKESTATIC, Integer.class, "valueOf", int.class);
+        } else if (value instanceof Long) {
+            mv.visitLdcInsn(value);
+            invoke(mv, INVOKESTATIC, Long.class, "valueOf", long.class);
+        } else if (value instanceof Double) {
+            mv.visitLdcInsn(value);
+            invoke(mv, INVOKESTATIC, Double.class, "valueOf", double.class);
+        } else if (value instanceof Float) {
+            mv.visitLdcInsn(value);
+            invoke(mv, INVOKESTATIC, Float.class, "valueOf", float.class);
+        } else if (value instanceof Short s) {
+            pushInt(mv, s);
+            invoke(mv, INVOKESTATIC, Short.class, "valueOf", short.class);
+        } else if (value instanceof Byte b) {
+            pushInt(mv, b);
+            invoke(mv, INVOKESTATIC, Byte.class, "valueOf", byte.class);
+        } else if (value instanceof Boolean b) {
+            pushInt(mv, b ? 1 : 0);
+            invoke(mv, INVOKESTATIC, Boolean.class, "valueOf", boolean.class);
+        } else {
+            throw new UnsupportedOperationException("Values of type " + value.getClass().getName() + " are not supported");
+        }
+    }
+
+    private static void pushArray(MethodVisitor mv, Object[] elements) {
+        pushInt(mv, elements.length);
+        mv.visitTypeInsn(ANEWARRAY, Type.getInternalName(Object.class));
+        for (int i = 0; i < elements.length; i++) {
+            mv.visitInsn(DUP);
+            pushInt(mv, i);
+            pushValue(mv, elements[i]);
+            mv.visitInsn(AASTORE);
+        }
+    }
+}
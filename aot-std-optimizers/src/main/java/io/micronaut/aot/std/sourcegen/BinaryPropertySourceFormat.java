@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a flattened property map into the binary format read by the
+ * property sources generated in binary mode. All integers are big
+ * endian. The resource consists of:
+ * <ul>
+ *     <li>a header: magic number, version, number of entries, number of strings</li>
+ *     <li>the absolute position of each string</li>
+ *     <li>the entries, sorted by key: index of the key string, absolute position of the value</li>
+ *     <li>the typed values, each starting with a tag byte</li>
+ *     <li>the strings, each prefixed with its length in bytes, encoded in UTF-8</li>
+ * </ul>
+ * Strings are interned, so that keys and values which appear several
+ * times are only stored once.
+ */
+final class BinaryPropertySourceFormat {
+    static final int MAGIC = 0x4D4E4350;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    static final byte NULL = 0;
+    static final byte STRING = 1;
+    static final byte INT = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte FLOAT = 5;
+    static final byte TRUE = 6;
+    static final byte FALSE = 7;
+    static final byte BYTE = 8;
+    static final byte SHORT = 9;
+    static final byte LIST = 10;
+    static final byte MAP = 11;
+
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+    private BinaryPropertySourceFormat() {
+    }
+
+    /**
+     * Encodes the supplied properties.
+     *
+     * @param values the flattened properties
+     * @return the binary representation of the properties
+     */
+    static byte[] encode(Map<String, Object> values) {
+        return new BinaryPropertySourceFormat().doEncode(values);
+    }
+
+    private byte[] doEncode(Map<String, Object> values) {
+        List<String> keys = values.keySet().stream().sorted().toList();
+        keys.forEach(this::intern);
+        var encodedValues = new ByteArrayOutputStream();
+        var valuePositions = new int[keys.size()];
+        try {
+            var valuesOut = new DataOutputStream(encodedValues);
+            for (int i = 0; i < keys.size(); i++) {
+                valuePositions[i] = valuesOut.size();
+                writeValue(valuesOut, values.get(keys.get(i)));
+            }
+            int entriesOffset = HEADER_SIZE + 4 * strings.size();
+            int valuesOffset = entriesOffset + 8 * keys.size();
+            int stringsOffset = valuesOffset + encodedValues.size();
+            var result = new ByteArrayOutputStream(stringsOffset);
+            var out = new DataOutputStream(result);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            out.writeInt(strings.size());
+            List<byte[]> encodedStrings = new ArrayList<>(strings.size());
+            int position = stringsOffset;
+            for (String string : strings.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                encodedStrings.add(bytes);
+                out.writeInt(position);
+                position += 4 + bytes.length;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                out.writeInt(strings.get(keys.get(i)));
+                out.writeInt(valuesOffset + valuePositions[i]);
+            }
+            encodedValues.writeTo(out);
+            for (byte[] bytes : encodedStrings) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+            return result.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int intern(String string) {
+        return strings.computeIfAbsent(string, s -> strings.size());
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof CharSequence string) {
+            out.writeByte(STRING);
+            out.writeInt(intern(string.toString()));
+        } else if (value instanceof Integer number) {
+            out.writeByte(INT);
+            out.writeInt(number);
+        } else if (value instanceof Long number) {
+            out.writeByte(LONG);
+            out.writeLong(number);
+        } else if (value instanceof Double number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(number);
+        } else if (value instanceof Float number) {
+            out.writeByte(FLOAT);
+            out.writeFloat(number);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(bool ? TRUE : FALSE);
+        } else if (value instanceof Byte number) {
+            out.writeByte(BYTE);
+            out.writeByte(number);
+        } else if (value instanceof Short number) {
+            out.writeByte(SHORT);
+            out.writeShort(number);
+        } else if (value instanceof List<?> list) {
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new UnsupportedOperationException("Configuration map contains an entry of type " + value.getClass() + " which is not supported yet. Please file a bug report.");
+        }
+    }
+}
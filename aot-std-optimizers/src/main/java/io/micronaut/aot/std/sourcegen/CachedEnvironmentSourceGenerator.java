@@ -27,7 +27,8 @@ import io.micronaut.core.optim.StaticOptimizations;
  */
 @AOTModule(
     id = CachedEnvironmentSourceGenerator.ID,
-    description = CachedEnvironmentSourceGenerator.DESCRIPTION
+    description = CachedEnvironmentSourceGenerator.DESCRIPTION,
+    threadSafe = true
 )
 public class CachedEnvironmentSourceGenerator extends AbstractCodeGenerator {
     public static final String ID = "cached.environment";
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen;
+
+import io.micronaut.aot.core.codegen.MethodChunker;
+import io.micronaut.core.annotation.Generated;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Helpers shared by the generators which emit class files directly
+ * with ASM, instead of compiling the generated sources with javac.
+ * The emitted classes only reference public types of the classpath,
+ * and are limited to shapes which are simple enough to be written
+ * by hand, for which the generated source is the reference.
+ */
+final class ClassFileSupport {
+    /**
+     * The maximum number of bytes of bytecode in a generated method, which
+     * is kept well below the JVM limit of 64KB, for the same reasons as
+     * the generated sources are split into chunks.
+     */
+    static final int MAX_METHOD_SIZE = MethodChunker.DEFAULT_MAX_CHUNK_SIZE;
+
+    static final Handle LAMBDA_METAFACTORY = new Handle(
+        Opcodes.H_INVOKESTATIC,
+        Type.getInternalName(LambdaMetafactory.class),
+        "metafactory",
+        Type.getMethodDescriptor(
+            Type.getType(CallSite.class),
+            Type.getType(MethodHandles.Lookup.class),
+            Type.getType(String.class),
+            Type.getType(MethodType.class),
+            Type.getType(MethodType.class),
+            Type.getType(MethodHandle.class),
+            Type.getType(MethodType.class)
+        ),
+        false
+    );
+
+    private ClassFileSupport() {
+
+    }
+
+    /**
+     * Creates a class writer which computes the stack map frames. The emitted
+     * methods never merge distinct reference types, so computing frames
+     * doesn't require loading classes.
+     *
+     * @return a class writer
+     */
+    static ClassWriter newClassWriter() {
+        return new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+    }
+
+    /**
+     * Adds the {@link Generated} annotation, which the generated sources carry.
+     *
+     * @param cv the class visitor
+     */
+    static void visitGeneratedAnnotation(ClassVisitor cv) {
+        Retention retention = Generated.class.getAnnotation(Retention.class);
+        RetentionPolicy policy = retention == null ? RetentionPolicy.CLASS : retention.value();
+        if (policy != RetentionPolicy.SOURCE) {
+            cv.visitAnnotation(Type.getDescriptor(Generated.class), policy == RetentionPolicy.RUNTIME).visitEnd();
+        }
+    }
+
+    /**
+     * Adds the inner class attributes which javac writes for the nested
+     * types referenced by a class.
+     *
+     * @param cv the class visitor
+     * @param types the referenced types
+     */
+    static void visitInnerClasses(ClassVisitor cv, Class<?>... types) {
+        for (Class<?> type : types) {
+            Class<?> declaringClass = type.getDeclaringClass();
+            if (declaringClass != null) {
+                cv.visitInnerClass(Type.getInternalName(type), Type.getInternalName(declaringClass), type.getSimpleName(), type.getModifiers());
+            }
+        }
+    }
+
+    /**
+     * Adds a no-arg constructor which calls the constructor of {@link Object}.
+     *
+     * @param cv the class visitor
+     * @param access the access flags of the constructor
+     */
+    static void visitDefaultConstructor(ClassVisitor cv, int access) {
+        MethodVisitor mv = cv.visitMethod(access, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(Object.class), "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Pushes an int constant using the shortest instruction.
+     *
+     * @param mv the method visitor
+     * @param value the constant
+     */
+    static void pushInt(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Invokes a method, which is resolved reflectively so that its
+     * descriptor always matches the classpath.
+     *
+     * @param mv the method visitor
+     * @param opcode the invocation opcode
+     * @param owner the type declaring the method
+     * @param name the name of the method
+     * @param parameterTypes the parameter types of the method
+     */
+    static void invoke(MethodVisitor mv, int opcode, Class<?> owner, String name, Class<?>... parameterTypes) {
+        Method method;
+        try {
+            method = owner.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Unable to find method " + name + " of " + owner.getName(), e);
+        }
+        mv.visitMethodInsn(opcode, Type.getInternalName(owner), name, Type.getMethodDescriptor(method), owner.isInterface());
+    }
+
+    /**
+     * Splits the statements of a static initializer into static methods
+     * of bounded size, the way {@link MethodChunker} does for sources.
+     */
+    static final class StaticChunks {
+        private final ClassVisitor cv;
+        private final String owner;
+        private final String prefix;
+        private int count;
+        private int size;
+        private MethodVisitor current;
+
+        StaticChunks(ClassVisitor cv, String owner, String prefix) {
+            this.cv = cv;
+            this.owner = owner;
+            this.prefix = prefix;
+        }
+
+        /**
+         * Returns the method to which a statement of the supplied
+         * estimated size must be written.
+         *
+         * @param statementSize the estimated size of the statement, in bytes
+         * @return the method visitor
+         */
+        MethodVisitor next(int statementSize) {
+            if (statementSize > MAX_METHOD_SIZE) {
+                throw new UnsupportedOperationException("Statement of " + statementSize + " bytes doesn't fit in a method");
+            }
+            if (current == null || size + statementSize > MAX_METHOD_SIZE) {
+                end();
+                current = cv.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, prefix + count++, "()V", null, null);
+                current.visitCode();
+                size = 0;
+            }
+            size += statementSize;
+            return current;
+        }
+
+        /**
+         * Completes the last chunk and invokes all chunks in order.
+         *
+         * @param clinit the static initializer
+         */
+        void invokeAll(MethodVisitor clinit) {
+            end();
+            for (int i = 0; i < count; i++) {
+                clinit.visitMethodInsn(Opcodes.INVOKESTATIC, owner, prefix + i, "()V", false);
+            }
+        }
+
+        private void end() {
+            if (current != null) {
+                current.visitInsn(Opcodes.RETURN);
+                current.visitMaxs(0, 0);
+                current.visitEnd();
+                current = null;
+            }
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.Optional;
 @AOTModule(
         id = ConstantPropertySourcesSourceGenerator.ID,
         description = ConstantPropertySourcesSourceGenerator.DESCRIPTION,
+        threadSafe = true,
         dependencies = {
                 JitStaticServiceLoaderSourceGenerator.ID,
                 NativeStaticServiceLoaderSourceGenerator.ID
@@ -22,9 +22,7 @@ import io.micronaut.aot.core.AOTModule;
 import io.micronaut.aot.core.codegen.AbstractCodeGenerator;
 import io.micronaut.aot.core.context.ApplicationContextAnalyzer;
 import io.micronaut.context.ApplicationContextBuilder;
-import io.micronaut.context.ApplicationContextConfiguration;
 import io.micronaut.context.ApplicationContextConfigurer;
-import io.micronaut.context.BeanContextConfiguration;
 
 import java.util.Collection;
 import java.util.Set;
@@ -42,7 +40,8 @@ import static javax.lang.model.element.Modifier.PUBLIC;
  */
 @AOTModule(
     id = DeduceEnvironmentSourceGenerator.ID,
-    description = DeduceEnvironmentSourceGenerator.DESCRIPTION
+    description = DeduceEnvironmentSourceGenerator.DESCRIPTION,
+    threadSafe = true
 )
 public class DeduceEnvironmentSourceGenerator extends AbstractCodeGenerator {
     public static final String ID = "deduce.environment";
@@ -53,16 +52,12 @@ public class DeduceEnvironmentSourceGenerator extends AbstractCodeGenerator {
     public void generate(AOTContext context) {
         ApplicationContextAnalyzer analyzer = context.getAnalyzer();
         Set<String> environmentNames = analyzer.getEnvironmentNames();
-        BeanContextConfiguration contextConfiguration = analyzer.getApplicationContext().getContextConfiguration();
-        if (contextConfiguration instanceof ApplicationContextConfiguration applicationContextConfiguration) {
-            boolean deduceEnvironments = applicationContextConfiguration.getDeduceEnvironments().orElse(true);
-            if (deduceEnvironments) {
-                Collection<String> packages = analyzer.getApplicationContext().getEnvironment().getPackages();
-                context.registerGeneratedSourceFile(
-                    context.javaFile(buildApplicationContextConfigurer(environmentNames, packages))
-                );
-                context.registerServiceImplementation(ApplicationContextConfigurer.class, DEDUCED_ENVIRONMENT_CONFIGURER);
-            }
+        if (analyzer.isDeducingEnvironments()) {
+            Collection<String> packages = analyzer.getPackages();
+            context.registerGeneratedSourceFile(
+                context.javaFile(buildApplicationContextConfigurer(environmentNames, packages))
+            );
+            context.registerServiceImplementation(ApplicationContextConfigurer.class, DEDUCED_ENVIRONMENT_CONFIGURER);
         }
     }
 
@@ -17,11 +17,13 @@ package io.micronaut.aot.std.sourcegen;
 
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
 import io.micronaut.aot.core.AOTContext;
 import io.micronaut.aot.core.AOTModule;
 import io.micronaut.aot.core.codegen.AbstractCodeGenerator;
+import io.micronaut.aot.core.codegen.MethodChunker;
 import io.micronaut.context.env.CachedEnvironment;
 import io.micronaut.core.annotation.NonNull;
 import io.micronaut.core.optim.StaticOptimizations;
@@ -34,23 +36,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import static javax.lang.model.element.Modifier.PRIVATE;
-
 /**
  * A code generator which is responsible for precomputing the Micronaut property
  * names from environment variable names at build time.
  */
 @AOTModule(
     id = EnvironmentPropertiesSourceGenerator.ID,
-    description = EnvironmentPropertiesSourceGenerator.DESCRIPTION
+    description = EnvironmentPropertiesSourceGenerator.DESCRIPTION,
+    threadSafe = true
 )
 public class EnvironmentPropertiesSourceGenerator extends AbstractCodeGenerator {
 
     public static final String ID = "precompute.environment.properties";
     public static final String DESCRIPTION = "Precomputes Micronaut configuration property keys from the current environment variables";
 
-    private static final int MAX_METHOD_SIZE = 30_000;
-
     private final Map<String, String> env;
 
     public EnvironmentPropertiesSourceGenerator(Map<String, String> env) {
@@ -69,56 +68,30 @@ public class EnvironmentPropertiesSourceGenerator extends AbstractCodeGenerator
         EnvironmentProperties props = EnvironmentProperties.empty();
         env.keySet().forEach(props::findPropertyNamesForEnvironmentVariable);
 
+        ParameterizedTypeName envType = ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), ParameterizedTypeName.get(List.class, String.class));
         MethodSpec.Builder mainLoadMethodBuilder = MethodSpec.methodBuilder("load")
             .addModifiers(Modifier.PUBLIC)
             .addAnnotation(Override.class)
             .returns(EnvironmentProperties.class)
             .addStatement("$T env = new $T()",
-                ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), ParameterizedTypeName.get(List.class, String.class)),
+                envType,
                 ParameterizedTypeName.get(ClassName.get(HashMap.class), ClassName.get(String.class), ParameterizedTypeName.get(List.class, String.class)));
 
         TypeSpec.Builder generatedTypeBuilder = TypeSpec.classBuilder(className)
             .addModifiers(Modifier.PUBLIC)
             .addSuperinterface(ParameterizedTypeName.get(StaticOptimizations.Loader.class, EnvironmentProperties.class));
 
-        int fixedLineSize = 37;
-        int methodSize = 0;
-        int index = 0;
-
-        MethodSpec.Builder loadMethodBuilder = createMethodBuilder(index);
-
+        var chunker = new MethodChunker("load", ParameterSpec.builder(envType, "env").build());
         for (Map.Entry<String, List<String>> entry : props.asMap().entrySet()) {
             String values = entry.getValue().stream().map(e -> "\"" + e + "\"").collect(Collectors.joining(", "));
-            methodSize += fixedLineSize + entry.getKey().length() + values.length() + 2;
-            if (methodSize > MAX_METHOD_SIZE) {
-                generatedTypeBuilder.addMethod(loadMethodBuilder.build());
-                mainLoadMethodBuilder.addCode("load" + index + "(env);\n");
-                methodSize = 0;
-                index++;
-                loadMethodBuilder = createMethodBuilder(index);
-            }
-            loadMethodBuilder.addStatement("env.put($S, $T.asList($L))", entry.getKey(), Arrays.class, values);
+            chunker.addStatement("env.put($S, $T.asList($L))", entry.getKey(), Arrays.class, values);
         }
 
-        generatedTypeBuilder.addMethod(loadMethodBuilder.build());
-        mainLoadMethodBuilder.addCode("load" + index + "(env);\n")
+        mainLoadMethodBuilder.addCode(chunker.build(generatedTypeBuilder))
             .addStatement("return $T.of(env)", EnvironmentProperties.class);
         generatedTypeBuilder.addMethod(mainLoadMethodBuilder.build());
 
         context.registerGeneratedSourceFile(context.javaFile(generatedTypeBuilder.build()));
         context.registerServiceImplementation(StaticOptimizations.Loader.class, className);
     }
-
-    /**
-     * Creates default inner loader method.
-     *
-     * @param index number on loader method
-     * @return method builder
-     */
-    MethodSpec.Builder createMethodBuilder(int index) {
-        return MethodSpec.methodBuilder("load" + index)
-            .addParameter(ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), ParameterizedTypeName.get(List.class, String.class)),
-                "env")
-            .addModifiers(PRIVATE);
-    }
 }
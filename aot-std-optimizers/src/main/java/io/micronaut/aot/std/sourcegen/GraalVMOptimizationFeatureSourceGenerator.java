@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
 @AOTModule(
     id = GraalVMOptimizationFeatureSourceGenerator.ID,
     description = GraalVMOptimizationFeatureSourceGenerator.DESCRIPTION,
+    threadSafe = true,
     options = {
         @Option(
             key = "service.types",
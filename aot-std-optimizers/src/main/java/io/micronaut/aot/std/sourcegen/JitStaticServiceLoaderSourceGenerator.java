@@ -19,21 +19,40 @@ import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
+import io.micronaut.aot.core.AOTContext;
 import io.micronaut.aot.core.AOTModule;
 import io.micronaut.aot.core.Environments;
 import io.micronaut.aot.core.Option;
 import io.micronaut.aot.core.Runtime;
+import io.micronaut.aot.core.codegen.MethodChunker;
+import io.micronaut.core.annotation.Generated;
+import io.micronaut.core.annotation.NonNull;
 import io.micronaut.core.io.service.SoftServiceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static io.micronaut.aot.core.config.MetadataUtils.findOption;
 import static javax.lang.model.element.Modifier.FINAL;
 import static javax.lang.model.element.Modifier.PRIVATE;
 import static javax.lang.model.element.Modifier.PUBLIC;
@@ -46,6 +65,7 @@ import static javax.lang.model.element.Modifier.STATIC;
 @AOTModule(
     id = JitStaticServiceLoaderSourceGenerator.ID,
     description = AbstractStaticServiceLoaderSourceGenerator.DESCRIPTION,
+    threadSafe = true,
     options = {
         @Option(
             key = "service.types",
@@ -62,10 +82,40 @@ import static javax.lang.model.element.Modifier.STATIC;
             description = "A list of implementation types to include even if they don't match bean requirements (comma separated)",
             sampleValue = "com.Misc,org.Bar"
         ),
+        @Option(
+            key = "serviceloading.discover.types",
+            description = "If set to true, service types loaded by Micronaut are discovered on the classpath, in addition to the configured ones",
+            sampleValue = "false"
+        ),
+        @Option(
+            key = "serviceloading.rejected.types",
+            description = "A list of discovered service types which shouldn't be optimized (comma separated)",
+            sampleValue = "com.Misc,org.Bar"
+        ),
+        @Option(
+            key = "serviceloading.analysis.parallelism",
+            description = "The maximum number of service implementations analyzed concurrently (defaults to the number of available processors)",
+            sampleValue = "4"
+        ),
         @Option(
             key = Environments.POSSIBLE_ENVIRONMENTS_NAMES,
             description = Environments.POSSIBLE_ENVIRONMENTS_DESCRIPTION,
             sampleValue = Environments.POSSIBLE_ENVIRONMENTS_SAMPLE
+        ),
+        @Option(
+            key = "serviceloading.jit.preload",
+            description = "How service implementation classes are loaded in the background before they are requested: common-pool, none, dedicated-pool, virtual-threads or batched",
+            sampleValue = "common-pool"
+        ),
+        @Option(
+            key = "serviceloading.jit.preload.threads",
+            description = "The number of threads used by the dedicated-pool preload strategy",
+            sampleValue = "2"
+        ),
+        @Option(
+            key = "serviceloading.jit.direct.instantiation",
+            description = "If set to true, service implementations are instantiated using constructor references instead of reflection, falling back to reflection for classes which cannot be linked",
+            sampleValue = "false"
         )
     },
     enabledOn = Runtime.JIT,
@@ -73,40 +123,75 @@ import static javax.lang.model.element.Modifier.STATIC;
 )
 public class JitStaticServiceLoaderSourceGenerator extends AbstractStaticServiceLoaderSourceGenerator {
     public static final String ID = "serviceloading.jit";
+    public static final String PRELOAD_STRATEGY = "serviceloading.jit.preload";
+    public static final String PRELOAD_THREADS = "serviceloading.jit.preload.threads";
+    public static final String DIRECT_INSTANTIATION = "serviceloading.jit.direct.instantiation";
+    public static final String PRELOADER_CLASS_NAME = "AotServicePreloader";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JitStaticServiceLoaderSourceGenerator.class);
+    private static final int DEFAULT_PRELOAD_THREADS = 2;
+
+    private PreloadStrategy preloadStrategy;
+    private int preloadThreads;
+    private boolean directInstantiation;
+
+    @Override
+    public void generate(@NonNull AOTContext context) {
+        if (preloadStrategy == null) {
+            preloadStrategy = PreloadStrategy.of(context.getConfiguration().optionalString(findOption(this.getClass(), PRELOAD_STRATEGY).key(), PreloadStrategy.COMMON_POOL.key));
+            preloadThreads = context.getConfiguration().optionalValue(findOption(this.getClass(), PRELOAD_THREADS).key(), value -> value.map(Integer::parseInt).orElse(DEFAULT_PRELOAD_THREADS));
+            directInstantiation = context.getConfiguration().booleanValue(findOption(this.getClass(), DIRECT_INSTANTIATION).key(), false);
+        }
+        super.generate(context);
+        if (preloadStrategy.usesPreloader()) {
+            context.registerGeneratedSourceFile(context.javaFile(generatePreloader()));
+        }
+    }
 
     protected final void generateFindAllMethod(Stream<Class<?>> serviceClasses,
                                                String serviceName,
                                                Class<?> serviceType,
                                                TypeSpec.Builder factory) {
-        List<String> initializers = serviceClasses
+        List<Class<?>> classes = serviceClasses.toList();
+        List<String> initializers = classes.stream()
             .map(Class::getName)
             .sorted()
             .toList();
         ParameterizedTypeName staticDefinitionType = ParameterizedTypeName.get(SoftServiceLoader.StaticDefinition.class, serviceType);
         ParameterizedTypeName serviceTypeClassType = ParameterizedTypeName.get(Class.class, serviceType);
 
-        CodeBlock.Builder fieldInit = CodeBlock.builder()
-            .beginControlFlow("new String[]");
-        for (int i = 0; i < initializers.size(); i++) {
-            String initializer = initializers.get(i);
-            fieldInit.add("$S", initializer);
-            if (i < initializers.size() - 1) {
-                fieldInit.add(",\n");
-            }
-        }
-        fieldInit.endControlFlow();
-
         factory.addField(FieldSpec.builder(String[].class, "SERVICE_TYPES")
             .addModifiers(PRIVATE, STATIC, FINAL)
-            .initializer(fieldInit.build())
+            .initializer(stringArray(factory, "createServiceTypes", initializers, inlineStringArray(initializers)))
             .build());
-        CodeBlock.Builder init = CodeBlock.builder()
-            .addStatement("$T cl = $T.class.getClassLoader()", ClassLoader.class, serviceType)
-            .addStatement("$T pool = $T.commonPool()", ForkJoinPool.class, ForkJoinPool.class);
-        for (String initializer : initializers) {
-            init.addStatement("pool.submit(() -> loadClass(cl, $S))", initializer);
+        switch (preloadStrategy) {
+            case COMMON_POOL -> {
+                var submissions = new MethodChunker("preloadClasses",
+                    ParameterSpec.builder(ClassLoader.class, "cl").build(),
+                    ParameterSpec.builder(ForkJoinPool.class, "pool").build()
+                ).staticMethods();
+                for (String initializer : initializers) {
+                    submissions.addStatement("pool.submit(() -> loadClass(cl, $S))", initializer);
+                }
+                factory.addStaticBlock(CodeBlock.builder()
+                    .addStatement("$T cl = $T.class.getClassLoader()", ClassLoader.class, serviceType)
+                    .addStatement("$T pool = $T.commonPool()", ForkJoinPool.class, ForkJoinPool.class)
+                    .add(submissions.build(factory))
+                    .build());
+            }
+            case NONE -> {
+                // classes are only loaded when the services are requested
+            }
+            default -> {
+                List<String> preloadOrder = inDependencyOrder(classes);
+                CodeBlock names = stringArray(factory, "createPreloadOrder", preloadOrder, CodeBlock.of("new String[] {$L}", preloadOrder.stream()
+                    .map(name -> CodeBlock.of("$S", name))
+                    .collect(CodeBlock.joining(",$W"))));
+                factory.addStaticBlock(CodeBlock.builder()
+                    .addStatement("$T.preload($T.class.getClassLoader(), $L)", preloaderType(), serviceType, names)
+                    .build());
+            }
         }
-        factory.addStaticBlock(init.build());
 
         factory.addMethod(MethodSpec.methodBuilder("loadClass")
             .addModifiers(PRIVATE, STATIC)
@@ -126,15 +211,315 @@ public class JitStaticServiceLoaderSourceGenerator extends AbstractStaticService
             .addParameter(ParameterizedTypeName.get(Predicate.class, String.class), "predicate")
             .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), staticDefinitionType));
         method.addStatement("$T cl = $T.class.getClassLoader()", ClassLoader.class, serviceType);
-        method.addStatement("""
-                return $T.stream(SERVICE_TYPES)
-                .parallel()
-                .filter(predicate::test)
-                .map(s -> loadClass(cl, s))
-                .filter($T::nonNull)
-                .map(c -> $T.of(c.getName(), c))""",
-            Arrays.class, Objects.class, SoftServiceLoader.StaticDefinition.class);
+        if (directInstantiation) {
+            factory.addMethod(generateDefinitionMethod(factory, classes, initializers, staticDefinitionType, serviceTypeClassType));
+            CodeBlock recordUse = preloadStrategy.usesPreloader()
+                ? CodeBlock.of("\n.peek(i -> $T.recordUse(SERVICE_TYPES[i]))", preloaderType())
+                : CodeBlock.of("");
+            method.addStatement("""
+                    return $T.range(0, SERVICE_TYPES.length)
+                    .filter(i -> predicate.test(SERVICE_TYPES[i]))$L
+                    .mapToObj(i -> definition(cl, i))
+                    .filter($T::nonNull)""",
+                IntStream.class, recordUse, Objects.class);
+        } else if (preloadStrategy == PreloadStrategy.COMMON_POOL) {
+            method.addStatement("""
+                    return $T.stream(SERVICE_TYPES)
+                    .parallel()
+                    .filter(predicate::test)
+                    .map(s -> loadClass(cl, s))
+                    .filter($T::nonNull)
+                    .map(c -> $T.of(c.getName(), c))""",
+                Arrays.class, Objects.class, SoftServiceLoader.StaticDefinition.class);
+        } else {
+            // Without the common pool, services are loaded by the calling thread
+            CodeBlock recordUse = preloadStrategy.usesPreloader()
+                ? CodeBlock.of("\n.peek($T::recordUse)", preloaderType())
+                : CodeBlock.of("");
+            method.addStatement("""
+                    return $T.stream(SERVICE_TYPES)
+                    .filter(predicate::test)$L
+                    .map(s -> loadClass(cl, s))
+                    .filter($T::nonNull)
+                    .map(c -> $T.of(c.getName(), c))""",
+                Arrays.class, recordUse, Objects.class, SoftServiceLoader.StaticDefinition.class);
+        }
         factory.addMethod(method.build());
     }
 
+    /**
+     * Generates the method which creates the static definition of the
+     * service implementation at the supplied index, using a constructor
+     * or provider reference when possible. If the implementation cannot
+     * be linked, the definition is created reflectively. When there are
+     * too many implementations for a single method, the cases of the
+     * switch are split into helper methods, each covering a range of
+     * indices.
+     */
+    private static MethodSpec generateDefinitionMethod(TypeSpec.Builder factory,
+                                                       List<Class<?>> classes,
+                                                       List<String> serviceTypes,
+                                                       ParameterizedTypeName staticDefinitionType,
+                                                       ParameterizedTypeName serviceTypeClassType) {
+        var chunks = new ArrayList<CodeBlock.Builder>();
+        var chunkStarts = new ArrayList<Integer>();
+        int chunkSize = 0;
+        for (int i = 0; i < serviceTypes.size(); i++) {
+            String name = serviceTypes.get(i);
+            Optional<CodeBlock> supplier = classes.stream()
+                .filter(clazz -> clazz.getName().equals(name))
+                .findFirst()
+                .flatMap(AbstractStaticServiceLoaderSourceGenerator::directInstantiationOf);
+            if (supplier.isPresent()) {
+                CodeBlock switchCase = CodeBlock.builder()
+                    .add("case $L:\n$>", i)
+                    .addStatement("return $T.of(name, $L)", SoftServiceLoader.StaticDefinition.class, supplier.get())
+                    .add("$<")
+                    .build();
+                int caseSize = switchCase.toString().length();
+                if (chunks.isEmpty() || chunkSize + caseSize > MethodChunker.DEFAULT_MAX_CHUNK_SIZE) {
+                    chunks.add(CodeBlock.builder());
+                    chunkStarts.add(i);
+                    chunkSize = 0;
+                }
+                chunks.get(chunks.size() - 1).add(switchCase);
+                chunkSize += caseSize;
+            }
+        }
+        MethodSpec.Builder method = MethodSpec.methodBuilder("definition")
+            .addModifiers(PRIVATE, STATIC)
+            .returns(staticDefinitionType)
+            .addParameter(ClassLoader.class, "cl")
+            .addParameter(int.class, "index")
+            .addStatement("$T name = SERVICE_TYPES[index]", String.class)
+            .beginControlFlow("try");
+        if (chunks.size() <= 1) {
+            method.beginControlFlow("switch (index)")
+                .addCode(chunks.isEmpty() ? CodeBlock.of("") : chunks.get(0).build())
+                .addCode("default:\n$>")
+                .addStatement("break")
+                .addCode("$<")
+                .endControlFlow();
+        } else {
+            method.addStatement("$T definition", staticDefinitionType);
+            for (int chunk = 0; chunk < chunks.size(); chunk++) {
+                String chunkName = "definition" + chunk;
+                factory.addMethod(MethodSpec.methodBuilder(chunkName)
+                    .addModifiers(PRIVATE, STATIC)
+                    .returns(staticDefinitionType)
+                    .addParameter(String.class, "name")
+                    .addParameter(int.class, "index")
+                    .beginControlFlow("switch (index)")
+                    .addCode(chunks.get(chunk).build())
+                    .addCode("default:\n$>")
+                    .addStatement("return null")
+                    .addCode("$<")
+                    .endControlFlow()
+                    .build());
+                if (chunk == 0) {
+                    method.beginControlFlow("if (index < $L)", chunkStarts.get(1));
+                } else if (chunk < chunks.size() - 1) {
+                    method.nextControlFlow("else if (index < $L)", chunkStarts.get(chunk + 1));
+                } else {
+                    method.nextControlFlow("else");
+                }
+                method.addStatement("definition = $N(name, index)", chunkName);
+            }
+            method.endControlFlow()
+                .beginControlFlow("if (definition != null)")
+                .addStatement("return definition")
+                .endControlFlow();
+        }
+        return method.nextControlFlow("catch ($T e)", LinkageError.class)
+            .addComment("the implementation cannot be linked, fall back to reflection")
+            .endControlFlow()
+            .addStatement("$T clazz = loadClass(cl, name)", serviceTypeClassType)
+            .addStatement("return clazz == null ? null : $T.of(name, clazz)", SoftServiceLoader.StaticDefinition.class)
+            .build();
+    }
+
+    private ClassName preloaderType() {
+        return ClassName.get(context.getPackageName(), PRELOADER_CLASS_NAME);
+    }
+
+    private static CodeBlock inlineStringArray(List<String> values) {
+        CodeBlock.Builder array = CodeBlock.builder()
+            .beginControlFlow("new String[]");
+        for (int i = 0; i < values.size(); i++) {
+            array.add("$S", values.get(i));
+            if (i < values.size() - 1) {
+                array.add(",\n");
+            }
+        }
+        return array.endControlFlow().build();
+    }
+
+    /**
+     * Sorts classes so that the superclasses found in the list are
+     * loaded before their subclasses.
+     */
+    private static List<String> inDependencyOrder(List<Class<?>> classes) {
+        return classes.stream()
+            .sorted(Comparator.<Class<?>>comparingInt(JitStaticServiceLoaderSourceGenerator::hierarchyDepth).thenComparing(Class::getName))
+            .map(Class::getName)
+            .toList();
+    }
+
+    private static int hierarchyDepth(Class<?> clazz) {
+        int depth = 0;
+        for (Class<?> current = clazz.getSuperclass(); current != null; current = current.getSuperclass()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Generates the class which preloads service implementations in the
+     * background and counts how many preloads finished before the
+     * services were requested. The counters are printed when the JVM
+     * exits if the {@code micronaut.aot.preload.report} system property
+     * is set to true.
+     */
+    private TypeSpec generatePreloader() {
+        ClassName preloader = preloaderType();
+        TypeSpec.Builder type = TypeSpec.classBuilder(PRELOADER_CLASS_NAME)
+            .addModifiers(PUBLIC, FINAL)
+            .addAnnotation(Generated.class)
+            .addField(FieldSpec.builder(String.class, "STRATEGY", PRIVATE, STATIC, FINAL).initializer("$S", preloadStrategy.key).build())
+            .addField(FieldSpec.builder(Executor.class, "EXECUTOR", PRIVATE, STATIC, FINAL).initializer("createExecutor()").build())
+            .addField(FieldSpec.builder(ParameterizedTypeName.get(Set.class, String.class), "PRELOADED", PRIVATE, STATIC, FINAL)
+                .initializer("$T.newKeySet()", ConcurrentHashMap.class)
+                .build());
+        for (String counter : List.of("SUBMITTED", "FINISHED_BEFORE_USE", "NOT_FINISHED_BEFORE_USE")) {
+            type.addField(FieldSpec.builder(AtomicInteger.class, counter, PRIVATE, STATIC, FINAL).initializer("new $T()", AtomicInteger.class).build());
+        }
+        type.addStaticBlock(CodeBlock.builder()
+            .beginControlFlow("if ($T.getBoolean($S))", Boolean.class, "micronaut.aot.preload.report")
+            .addStatement("$T.getRuntime().addShutdownHook(new $T(() -> $T.err.println(report())))", java.lang.Runtime.class, Thread.class, System.class)
+            .endControlFlow()
+            .build());
+        type.addMethod(MethodSpec.constructorBuilder().addModifiers(PRIVATE).build());
+        type.addMethod(MethodSpec.methodBuilder("createExecutor")
+            .addModifiers(PRIVATE, STATIC)
+            .returns(Executor.class)
+            .addCode(executorCreation())
+            .build());
+        MethodSpec.Builder preload = MethodSpec.methodBuilder("preload")
+            .addModifiers(PUBLIC, STATIC)
+            .addParameter(ClassLoader.class, "cl")
+            .addParameter(String[].class, "names")
+            .addStatement("SUBMITTED.addAndGet(names.length)");
+        if (preloadStrategy == PreloadStrategy.BATCHED) {
+            preload.addCode(CodeBlock.builder()
+                .beginControlFlow("EXECUTOR.execute(() ->")
+                .beginControlFlow("for (String name : names)")
+                .addStatement("load(cl, name)")
+                .endControlFlow()
+                .endControlFlow(")")
+                .build());
+        } else {
+            preload.beginControlFlow("for (String name : names)")
+                .addStatement("EXECUTOR.execute(() -> load(cl, name))")
+                .endControlFlow();
+        }
+        type.addMethod(preload.build());
+        type.addMethod(MethodSpec.methodBuilder("load")
+            .addModifiers(PRIVATE, STATIC)
+            .addParameter(ClassLoader.class, "cl")
+            .addParameter(String.class, "name")
+            .beginControlFlow("try")
+            .addStatement("$T.forName(name, false, cl)", Class.class)
+            .nextControlFlow("catch ($T e)", Throwable.class)
+            .addComment("failures are reported when the service is loaded")
+            .endControlFlow()
+            .addStatement("PRELOADED.add(name)")
+            .build());
+        type.addMethod(MethodSpec.methodBuilder("recordUse")
+            .addModifiers(PUBLIC, STATIC)
+            .addParameter(String.class, "name")
+            .beginControlFlow("if (PRELOADED.contains(name))")
+            .addStatement("FINISHED_BEFORE_USE.incrementAndGet()")
+            .nextControlFlow("else")
+            .addStatement("NOT_FINISHED_BEFORE_USE.incrementAndGet()")
+            .endControlFlow()
+            .build());
+        type.addMethod(counterGetter("getSubmittedPreloads", "SUBMITTED"));
+        type.addMethod(counterGetter("getPreloadsFinishedBeforeUse", "FINISHED_BEFORE_USE"));
+        type.addMethod(counterGetter("getPreloadsNotFinishedBeforeUse", "NOT_FINISHED_BEFORE_USE"));
+        type.addMethod(MethodSpec.methodBuilder("report")
+            .addModifiers(PUBLIC, STATIC)
+            .returns(String.class)
+            .addStatement("return \"AOT service preloading (\" + STRATEGY + \"): \" + SUBMITTED.get() + \" submitted, \" + FINISHED_BEFORE_USE.get() + \" finished before use, \" + NOT_FINISHED_BEFORE_USE.get() + \" not finished before use\"")
+            .build());
+        LOGGER.debug("Generating {} with preload strategy {}", preloader, preloadStrategy.key);
+        return type.build();
+    }
+
+    private CodeBlock executorCreation() {
+        CodeBlock daemonThreads = CodeBlock.builder()
+            .addStatement("$T count = new $T()", AtomicInteger.class, AtomicInteger.class)
+            .addStatement("""
+                    $T factory = r -> {
+                    $T thread = new $T(r, "aot-preload-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                    }""", ThreadFactory.class, Thread.class, Thread.class)
+            .build();
+        return switch (preloadStrategy) {
+            case DEDICATED_POOL -> CodeBlock.builder()
+                .add(daemonThreads)
+                .addStatement("return $T.newFixedThreadPool($L, factory)", Executors.class, Math.max(1, preloadThreads))
+                .build();
+            case BATCHED -> CodeBlock.builder()
+                .add(daemonThreads)
+                .addStatement("return $T.newSingleThreadExecutor(factory)", Executors.class)
+                .build();
+            // Virtual threads are looked up reflectively since the generated code targets Java 17
+            default -> CodeBlock.builder()
+                .beginControlFlow("try")
+                .addStatement("return ($T) $T.class.getMethod($S).invoke(null)", Executor.class, Executors.class, "newVirtualThreadPerTaskExecutor")
+                .nextControlFlow("catch ($T e)", ReflectiveOperationException.class)
+                .addStatement("return $T.commonPool()", ForkJoinPool.class)
+                .endControlFlow()
+                .build();
+        };
+    }
+
+    private static MethodSpec counterGetter(String name, String counter) {
+        return MethodSpec.methodBuilder(name)
+            .addModifiers(PUBLIC, STATIC)
+            .returns(int.class)
+            .addStatement("return $L.get()", counter)
+            .build();
+    }
+
+    /**
+     * The strategies used to load service implementation classes
+     * before they are requested.
+     */
+    enum PreloadStrategy {
+        COMMON_POOL("common-pool"),
+        NONE("none"),
+        DEDICATED_POOL("dedicated-pool"),
+        VIRTUAL_THREADS("virtual-threads"),
+        BATCHED("batched");
+
+        private final String key;
+
+        PreloadStrategy(String key) {
+            this.key = key;
+        }
+
+        boolean usesPreloader() {
+            return this != COMMON_POOL && this != NONE;
+        }
+
+        static PreloadStrategy of(String key) {
+            return Arrays.stream(values())
+                .filter(strategy -> strategy.key.equals(key.trim().toLowerCase(Locale.ENGLISH)))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown preload strategy '" + key + "'. Possible values: " + Arrays.stream(values()).map(s -> s.key).toList()));
+        }
+    }
+
 }
@@ -15,18 +15,23 @@
  */
 package io.micronaut.aot.std.sourcegen;
 
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.ParameterizedTypeName;
 import io.micronaut.aot.core.AOTContext;
 import io.micronaut.aot.core.AOTModule;
 import io.micronaut.aot.core.Option;
 import io.micronaut.aot.core.codegen.AbstractCodeGenerator;
+import io.micronaut.aot.core.codegen.PerfectHashGenerator;
 import io.micronaut.aot.core.config.MetadataUtils;
+import io.micronaut.aot.core.context.ClasspathIndex;
 import io.micronaut.core.annotation.NonNull;
 import io.micronaut.core.reflect.ClassUtils;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -37,6 +42,7 @@ import java.util.Set;
 @AOTModule(
     id = KnownMissingTypesSourceGenerator.ID,
     description = KnownMissingTypesSourceGenerator.DESCRIPTION,
+    threadSafe = true,
     options = {
         @Option(
             key = "known.missing.types.list",
@@ -50,10 +56,19 @@ public class KnownMissingTypesSourceGenerator extends AbstractCodeGenerator {
     public static final Option OPTION = MetadataUtils.findMetadata(KnownMissingTypesSourceGenerator.class).get().options()[0];
     public static final String DESCRIPTION = "Checks of existence of some types at build time instead of runtime";
 
-    private List<String> findMissingClasses(List<String> classNames) {
+    private static final String LOADER_CLASS_NAME = "KnownMissingTypesOptimizationLoader";
+    private static final String SET_CLASS_NAME = "KnownMissingTypes";
+
+    private List<String> findMissingClasses(AOTContext context, List<String> classNames) {
         var knownMissingClasses = new ArrayList<String>();
         ClassLoader cl = this.getClass().getClassLoader();
+        Optional<ClasspathIndex> classpathIndex = context.getAnalyzer().findSharedState(ClasspathIndex.class);
         for (String name : classNames) {
+            // The index only covers the analyzed classpath: a class it contains is present,
+            // but a class it doesn't contain may still be provided by a parent loader
+            if (classpathIndex.isPresent() && classpathIndex.get().containsClass(name)) {
+                continue;
+            }
             try {
                 cl.loadClass(name);
             } catch (ClassNotFoundException | NoClassDefFoundError e) {
@@ -65,14 +80,34 @@ public class KnownMissingTypesSourceGenerator extends AbstractCodeGenerator {
 
     @Override
     public void generate(@NonNull AOTContext context) {
-        context.registerStaticOptimization("KnownMissingTypesOptimizationLoader", ClassUtils.Optimizations.class, body -> {
-            List<String> classNames = context.getConfiguration().stringList(OPTION.key());
-            body.addStatement("$T knownMissingTypes = new $T()", ParameterizedTypeName.get(Set.class, String.class), ParameterizedTypeName.get(HashSet.class, String.class));
-            for (String knownMissingClass : findMissingClasses(classNames)) {
-                body.addStatement("knownMissingTypes.add($S)", knownMissingClass);
-            }
-            body.addStatement("return new $T(knownMissingTypes)", ClassUtils.Optimizations.class);
-        });
+        List<String> classNames = context.getConfiguration().stringList(OPTION.key());
+        List<String> missingClasses = findMissingClasses(context, classNames);
+        Optional<PerfectHashGenerator> perfectHash = missingClasses.size() >= PerfectHashGenerator.RECOMMENDED_MIN_SIZE
+            ? PerfectHashGenerator.of(missingClasses)
+            : Optional.empty();
+        if (perfectHash.isPresent()) {
+            ClassName knownMissingTypes = ClassName.get(context.getPackageName(), SET_CLASS_NAME);
+            context.registerBuildTimeInit(knownMissingTypes.reflectionName());
+            context.registerGeneratedSourceFile(context.javaFile(perfectHash.get().generateSet(SET_CLASS_NAME)));
+            context.registerStaticOptimization(LOADER_CLASS_NAME, ClassUtils.Optimizations.class, body ->
+                body.addStatement("return new $T(new $T())", ClassUtils.Optimizations.class, knownMissingTypes));
+            return;
+        }
+        // Below the perfect hash threshold the additions always fit in the load method,
+        // and above it a perfect hash can only be missing if class names share a 64-bit hash
+        ParameterizedTypeName setType = ParameterizedTypeName.get(Set.class, String.class);
+        CodeBlock.Builder additions = CodeBlock.builder();
+        for (String knownMissingClass : missingClasses) {
+            additions.addStatement("knownMissingTypes.add($S)", knownMissingClass);
+        }
+        context.registerStaticOptimization(LOADER_CLASS_NAME, ClassUtils.Optimizations.class, body -> body.add(loadMethodBody(setType, additions.build())));
+    }
 
+    private static CodeBlock loadMethodBody(ParameterizedTypeName setType, CodeBlock additions) {
+        return CodeBlock.builder()
+            .addStatement("$T knownMissingTypes = new $T()", setType, ParameterizedTypeName.get(HashSet.class, String.class))
+            .add(additions)
+            .addStatement("return new $T(knownMissingTypes)", ClassUtils.Optimizations.class)
+            .build();
     }
 }
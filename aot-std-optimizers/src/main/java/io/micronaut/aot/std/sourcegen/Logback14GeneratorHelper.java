@@ -47,7 +47,7 @@ import ch.qos.logback.core.spi.LifeCycle;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
-import io.micronaut.aot.core.AOTContext;
+import io.micronaut.context.ApplicationContext;
 import io.micronaut.core.util.StringUtils;
 import org.xml.sax.InputSource;
 
@@ -127,13 +127,13 @@ class Logback14GeneratorHelper {
         }
     }
 
-    static MethodSpec configureMethod(String fileName, AOTContext aotContext) {
+    static MethodSpec configureMethod(String fileName) {
         var joranConfigurator = new JoranConfigurator();
         var context = new LoggerContext();
         joranConfigurator.setContext(context);
         Model model;
         try {
-            URL logbackFile = aotContext.getAnalyzer().getApplicationContext().getClass().getClassLoader().getResource(fileName);
+            URL logbackFile = ApplicationContext.class.getClassLoader().getResource(fileName);
             if (logbackFile == null) {
                 throw new IllegalStateException("Could not find " + fileName + " file on application classpath");
             }
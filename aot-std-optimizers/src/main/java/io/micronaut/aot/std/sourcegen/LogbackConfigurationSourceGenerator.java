@@ -38,7 +38,8 @@ import static io.micronaut.aot.std.sourcegen.Logback14GeneratorHelper.configureM
  */
 @AOTModule(
         id = LogbackConfigurationSourceGenerator.ID,
-        description = LogbackConfigurationSourceGenerator.DESCRIPTION
+        description = LogbackConfigurationSourceGenerator.DESCRIPTION,
+        threadSafe = true
 )
 public class LogbackConfigurationSourceGenerator extends AbstractSingleClassFileGenerator {
     public static final String ID = "logback.xml.to.java";
@@ -56,7 +57,7 @@ public class LogbackConfigurationSourceGenerator extends AbstractSingleClassFile
                 .addModifiers(Modifier.PUBLIC)
                 .addSuperinterface(Configurator.class)
                 .addField(contextField())
-                .addMethod(configureMethod(getLogbackFileName(), getContext()))
+                .addMethod(configureMethod(getLogbackFileName()))
                 .addMethod(setContextMethod())
                 .addMethod(getContextMethod())
                 .addMethod(addStatusMethod())
@@ -15,27 +15,65 @@
  */
 package io.micronaut.aot.std.sourcegen;
 
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
 import io.micronaut.aot.core.AOTModule;
 import io.micronaut.aot.core.Option;
+import io.micronaut.aot.core.Runtime;
 import io.micronaut.aot.core.codegen.AbstractSingleClassFileGenerator;
 import io.micronaut.aot.core.codegen.MapGenerator;
-import io.micronaut.context.env.MapPropertySource;
+import io.micronaut.aot.core.codegen.MethodChunker;
+import io.micronaut.context.env.PropertySource;
 import io.micronaut.core.annotation.Generated;
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.core.order.Ordered;
 import io.micronaut.core.util.StringUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static io.micronaut.aot.std.sourcegen.MapPropertySourceGenerator.BASE_ORDER_OPTION;
+import static io.micronaut.aot.std.sourcegen.MapPropertySourceGenerator.BINARY_THRESHOLD_OPTION;
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
 import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
+import static javax.lang.model.element.Modifier.SYNCHRONIZED;
 
 /**
- * A source generator which generates a map property source with a fixed
- * set of values at build time.
+ * A source generator which generates a property source with a fixed
+ * set of values at build time. The generated property source stores
+ * its keys in a sorted array, and its values, including nested
+ * immutable lists and maps, in an array of the same size.
+ * <p>
+ * Property sources with more entries than the configured binary
+ * threshold are instead written to a binary resource, which is
+ * memory mapped when the application is run from a directory and
+ * decoded lazily, so that large configurations neither bloat the
+ * generated classes nor get fully materialized on startup.
  */
 @AOTModule(
     id = MapPropertySourceGenerator.BASE_ID,
@@ -44,15 +82,22 @@ import static javax.lang.model.element.Modifier.PUBLIC;
             key = BASE_ORDER_OPTION,
             description = "The order of the generated property source",
             sampleValue = "1000"
+        ),
+        @Option(
+            key = BINARY_THRESHOLD_OPTION,
+            description = "The number of entries above which a property source is stored as a binary resource instead of Java code (disabled by default)",
+            sampleValue = "10000"
         )
     }
 )
 public class MapPropertySourceGenerator extends AbstractSingleClassFileGenerator {
     public static final String BASE_ID = "map.property";
     public static final String BASE_ORDER_OPTION = "map.property.order";
+    public static final String BINARY_THRESHOLD_OPTION = "map.property.binary.threshold";
 
     private final String resourceName;
     private final Map<String, Object> values;
+    private Supplier<byte[]> classFile;
 
     public MapPropertySourceGenerator(
         String resourceName,
@@ -69,20 +114,286 @@ public class MapPropertySourceGenerator extends AbstractSingleClassFileGenerator
         int order = getContext().getConfiguration()
             .optionalValue(orderKey, value ->
                 value.map(Integer::parseInt).orElse(Ordered.HIGHEST_PRECEDENCE));
+        int binaryThreshold = getContext().getConfiguration()
+            .optionalValue(BINARY_THRESHOLD_OPTION, value ->
+                value.map(Integer::parseInt).orElse(-1));
         TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(typeName)
             .addModifiers(PUBLIC)
-            .superclass(MapPropertySource.class);
-        var generator = new MapGenerator();
-        typeBuilder.addMethod(MethodSpec.constructorBuilder()
-                .addStatement("super($S, $L)", resourceName, generator.generateMap(typeBuilder, values))
+            .addSuperinterface(PropertySource.class);
+        classFile = null;
+        if (binaryThreshold >= 0 && values.size() > binaryThreshold) {
+            generateBinaryPropertySource(typeBuilder, typeName, order);
+        } else {
+            generateArrayPropertySource(typeBuilder, typeName, order);
+        }
+        typeBuilder.addAnnotation(Generated.class);
+        return javaFile(typeBuilder.build());
+    }
+
+    /**
+     * Returns a function which emits the array property source with ASM.
+     * Binary property sources are always compiled from source.
+     *
+     * @return the function which emits the class file, or null
+     */
+    @Override
+    @Nullable
+    protected Supplier<byte[]> classFile() {
+        return classFile;
+    }
+
+    private void generateArrayPropertySource(TypeSpec.Builder typeBuilder, String typeName, int order) {
+        // Keys are sorted so that lookups can use a binary search
+        List<String> keys = values.keySet().stream().sorted().toList();
+        String className = getContext().getPackageName() + "." + typeName;
+        classFile = () -> ArrayPropertySourceClassFile.generate(className, resourceName, order, keys, values);
+        typeBuilder
+            .addField(FieldSpec.builder(String[].class, "KEYS", PRIVATE, STATIC, FINAL)
+                .initializer("new $T[$L]", String.class, keys.size())
+                .build())
+            .addField(FieldSpec.builder(Object[].class, "VALUES", PRIVATE, STATIC, FINAL)
+                .initializer("new $T[$L]", Object.class, keys.size())
                 .build())
-            .addMethod(MethodSpec.methodBuilder("getOrder")
+            .addMethod(MethodSpec.constructorBuilder().build())
+            .addMethod(getNameMethod())
+            .addMethod(MethodSpec.methodBuilder("get")
                 .addModifiers(PUBLIC)
+                .addAnnotation(Override.class)
+                .addParameter(String.class, "key")
+                .returns(Object.class)
+                .addStatement("int index = $T.binarySearch(KEYS, key)", Arrays.class)
+                .addStatement("return index < 0 ? null : VALUES[index]")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("iterator")
+                .addModifiers(PUBLIC)
+                .addAnnotation(Override.class)
+                .returns(ParameterizedTypeName.get(Iterator.class, String.class))
+                .addStatement("return $T.asList(KEYS).iterator()", Arrays.class)
+                .build())
+            .addMethod(getOrderMethod(order));
+        var generator = new MapGenerator();
+        var chunker = new MethodChunker("load").staticMethods();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            chunker.add(CodeBlock.builder()
+                .addStatement("KEYS[$L] = $S", i, key)
+                .addStatement("VALUES[$L] = $L", i, generator.generateImmutableValue(values.get(key), typeBuilder))
+                .build());
+        }
+        CodeBlock initializer = chunker.build(typeBuilder);
+        if (!initializer.isEmpty()) {
+            typeBuilder.addStaticBlock(initializer);
+        }
+    }
+
+    /**
+     * Generates a property source backed by a binary resource, see
+     * {@link BinaryPropertySourceFormat} for the layout. The resource
+     * is only read on first access, and keys and values are decoded
+     * on demand.
+     */
+    private void generateBinaryPropertySource(TypeSpec.Builder typeBuilder, String typeName, int order) {
+        String packagePath = getContext().getPackageName().replace('.', '/');
+        String resource = typeName + ".bin";
+        byte[] encoded = BinaryPropertySourceFormat.encode(values);
+        getContext().registerGeneratedResource(packagePath + "/" + resource, file -> write(file, encoded));
+        if (getContext().getRuntime() == Runtime.NATIVE) {
+            String pattern = "{ \"resources\": { \"includes\": [ { \"pattern\": \"\\\\Q" + packagePath + "/" + resource + "\\\\E\" } ] } }\n";
+            getContext().registerGeneratedResource(
+                "META-INF/native-image/" + getContext().getPackageName() + "/" + typeName + "/resource-config.json",
+                file -> write(file, pattern.getBytes(StandardCharsets.UTF_8))
+            );
+        }
+        typeBuilder
+            .addField(FieldSpec.builder(String.class, "RESOURCE", PRIVATE, STATIC, FINAL)
+                .initializer("$S", resource)
+                .build())
+            .addField(ByteBuffer.class, "data", PRIVATE)
+            .addField(String[].class, "strings", PRIVATE)
+            .addField(Object[].class, "values", PRIVATE)
+            .addMethod(MethodSpec.constructorBuilder().build())
+            .addMethod(getNameMethod())
+            .addMethod(MethodSpec.methodBuilder("get")
+                .addModifiers(PUBLIC, SYNCHRONIZED)
+                .addAnnotation(Override.class)
+                .addParameter(String.class, "key")
+                .returns(Object.class)
+                .addStatement("data()")
+                .addStatement("int low = 0")
+                .addStatement("int high = values.length - 1")
+                .beginControlFlow("while (low <= high)")
+                .addStatement("int mid = (low + high) >>> 1")
+                .addStatement("int comparison = key(mid).compareTo(key)")
+                .beginControlFlow("if (comparison < 0)")
+                .addStatement("low = mid + 1")
+                .nextControlFlow("else if (comparison > 0)")
+                .addStatement("high = mid - 1")
+                .nextControlFlow("else")
+                .addStatement("return value(mid)")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return null")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("iterator")
+                .addModifiers(PUBLIC, SYNCHRONIZED)
+                .addAnnotation(Override.class)
+                .returns(ParameterizedTypeName.get(Iterator.class, String.class))
+                .addStatement("data()")
+                .addStatement("$T[] keys = new $T[values.length]", String.class, String.class)
+                .beginControlFlow("for (int i = 0; i < keys.length; i++)")
+                .addStatement("keys[i] = key(i)")
+                .endControlFlow()
+                .addStatement("return $T.asList(keys).iterator()", Arrays.class)
+                .build())
+            .addMethod(getOrderMethod(order))
+            .addMethod(MethodSpec.methodBuilder("data")
+                .addModifiers(PRIVATE)
+                .returns(ByteBuffer.class)
+                .beginControlFlow("if (data == null)")
+                .addStatement("$T buffer = load()", ByteBuffer.class)
+                .beginControlFlow("if (buffer.getInt(0) != $L || buffer.getInt(4) != $L)", BinaryPropertySourceFormat.MAGIC, BinaryPropertySourceFormat.VERSION)
+                .addStatement("throw new $T($S + RESOURCE)", IllegalStateException.class, "Unsupported property source format in ")
+                .endControlFlow()
+                .addStatement("values = new $T[buffer.getInt(8)]", Object.class)
+                .addStatement("strings = new $T[buffer.getInt(12)]", String.class)
+                .addStatement("data = buffer")
+                .endControlFlow()
+                .addStatement("return data")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("entry")
+                .addModifiers(PRIVATE)
+                .addParameter(int.class, "index")
                 .returns(int.class)
-                .addStatement("return $L", order)
+                .addStatement("return $L + 4 * strings.length + 8 * index", BinaryPropertySourceFormat.HEADER_SIZE)
                 .build())
-            .addAnnotation(Generated.class);
-        return javaFile(typeBuilder.build());
+            .addMethod(MethodSpec.methodBuilder("key")
+                .addModifiers(PRIVATE)
+                .addParameter(int.class, "index")
+                .returns(String.class)
+                .addStatement("return string(data.getInt(entry(index)))")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("value")
+                .addModifiers(PRIVATE)
+                .addParameter(int.class, "index")
+                .returns(Object.class)
+                .beginControlFlow("if (values[index] == null)")
+                .addStatement("$T in = data.duplicate()", ByteBuffer.class)
+                .addStatement("in.position(data.getInt(entry(index) + 4))")
+                .addStatement("values[index] = readValue(in)")
+                .endControlFlow()
+                .addStatement("return values[index]")
+                .build())
+            .addMethod(MethodSpec.methodBuilder("string")
+                .addModifiers(PRIVATE)
+                .addParameter(int.class, "index")
+                .returns(String.class)
+                .beginControlFlow("if (strings[index] == null)")
+                .addStatement("int position = data.getInt($L + 4 * index)", BinaryPropertySourceFormat.HEADER_SIZE)
+                .addStatement("byte[] bytes = new byte[data.getInt(position)]")
+                .addStatement("$T in = data.duplicate()", ByteBuffer.class)
+                .addStatement("in.position(position + 4)")
+                .addStatement("in.get(bytes)")
+                .addStatement("strings[index] = new $T(bytes, $T.UTF_8)", String.class, StandardCharsets.class)
+                .endControlFlow()
+                .addStatement("return strings[index]")
+                .build())
+            .addMethod(readValueMethod())
+            .addMethod(MethodSpec.methodBuilder("load")
+                .addModifiers(PRIVATE, STATIC)
+                .returns(ByteBuffer.class)
+                .addStatement("$T url = $L.class.getResource(RESOURCE)", URL.class, typeName)
+                .beginControlFlow("if (url == null)")
+                .addStatement("throw new $T($S + RESOURCE)", IllegalStateException.class, "Unable to find property source resource ")
+                .endControlFlow()
+                .beginControlFlow("try")
+                .addComment("Entries of compressed archives cannot be memory mapped")
+                .beginControlFlow("if ($S.equals(url.getProtocol()))", "file")
+                .beginControlFlow("try ($T channel = $T.open($T.get(url.toURI()), $T.READ))", FileChannel.class, FileChannel.class, Paths.class, StandardOpenOption.class)
+                .addStatement("return channel.map($T.MapMode.READ_ONLY, 0, channel.size())", FileChannel.class)
+                .endControlFlow()
+                .endControlFlow()
+                .beginControlFlow("try ($T in = url.openStream())", InputStream.class)
+                .addStatement("return $T.wrap(in.readAllBytes())", ByteBuffer.class)
+                .endControlFlow()
+                .nextControlFlow("catch ($T | $T e)", IOException.class, URISyntaxException.class)
+                .addStatement("throw new $T($S + RESOURCE, e)", IllegalStateException.class, "Unable to read property source resource ")
+                .endControlFlow()
+                .build());
+    }
+
+    private static MethodSpec readValueMethod() {
+        return MethodSpec.methodBuilder("readValue")
+            .addModifiers(PRIVATE)
+            .addParameter(ByteBuffer.class, "in")
+            .returns(Object.class)
+            .addStatement("byte tag = in.get()")
+            .beginControlFlow("switch (tag)")
+            .add("case $L:\n", BinaryPropertySourceFormat.NULL).indent()
+            .addStatement("return null").unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.STRING).indent()
+            .addStatement("return string(in.getInt())").unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.INT).indent()
+            .addStatement("return in.getInt()").unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.LONG).indent()
+            .addStatement("return in.getLong()").unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.DOUBLE).indent()
+            .addStatement("return in.getDouble()").unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.FLOAT).indent()
+            .addStatement("return in.getFloat()").unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.TRUE).indent()
+            .addStatement("return $T.TRUE", Boolean.class).unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.FALSE).indent()
+            .addStatement("return $T.FALSE", Boolean.class).unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.BYTE).indent()
+            .addStatement("return in.get()").unindent()
+            .add("case $L:\n", BinaryPropertySourceFormat.SHORT).indent()
+            .addStatement("return in.getShort()").unindent()
+            .beginControlFlow("case $L:", BinaryPropertySourceFormat.LIST)
+            .addStatement("int size = in.getInt()")
+            .addStatement("$T<$T> list = new $T<>(size)", List.class, Object.class, ArrayList.class)
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("list.add(readValue(in))")
+            .endControlFlow()
+            .addStatement("return $T.unmodifiableList(list)", Collections.class)
+            .endControlFlow()
+            .beginControlFlow("case $L:", BinaryPropertySourceFormat.MAP)
+            .addStatement("int size = in.getInt()")
+            .addStatement("$T<$T, $T> map = new $T<>()", Map.class, Object.class, Object.class, LinkedHashMap.class)
+            .beginControlFlow("for (int i = 0; i < size; i++)")
+            .addStatement("map.put(readValue(in), readValue(in))")
+            .endControlFlow()
+            .addStatement("return $T.unmodifiableMap(map)", Collections.class)
+            .endControlFlow()
+            .add("default:\n").indent()
+            .addStatement("throw new $T($S + tag + $S + RESOURCE)", IllegalStateException.class, "Invalid value type ", " in ").unindent()
+            .endControlFlow()
+            .build();
+    }
+
+    private MethodSpec getNameMethod() {
+        return MethodSpec.methodBuilder("getName")
+            .addModifiers(PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(String.class)
+            .addStatement("return $S", resourceName)
+            .build();
+    }
+
+    private static MethodSpec getOrderMethod(int order) {
+        return MethodSpec.methodBuilder("getOrder")
+            .addModifiers(PUBLIC)
+            .addAnnotation(Override.class)
+            .returns(int.class)
+            .addStatement("return $L", order)
+            .build();
+    }
+
+    private static void write(File file, byte[] bytes) {
+        try {
+            Files.write(file.toPath(), bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private String computeTypeName() {
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen;
+
+import io.micronaut.core.io.service.SoftServiceLoader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static io.micronaut.aot.std.sourcegen.ClassFileSupport.LAMBDA_METAFACTORY;
+import static io.micronaut.aot.std.sourcegen.ClassFileSupport.invoke;
+import static io.micronaut.aot.std.sourcegen.ClassFileSupport.pushInt;
+import static org.objectweb.asm.Opcodes.AALOAD;
+import static org.objectweb.asm.Opcodes.AASTORE;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ANEWARRAY;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ARRAYLENGTH;
+import static org.objectweb.asm.Opcodes.GETSTATIC;
+import static org.objectweb.asm.Opcodes.H_INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.H_NEWINVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.ICONST_0;
+import static org.objectweb.asm.Opcodes.IFEQ;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.PUTSTATIC;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V17;
+
+/**
+ * Emits the class file of a service loader factory, as generated by
+ * {@link NativeStaticServiceLoaderSourceGenerator}. Each implementation
+ * is created by a supplier which references its public static
+ * {@code provider} method or its public no-arg constructor.
+ */
+final class NativeServiceLoaderClassFile {
+    /**
+     * The estimated size in bytes of the code which stores a name
+     * and a definition.
+     */
+    private static final int DEFINITION_SIZE = 32;
+    private static final String NAMES = "NAMES";
+    private static final String DEFINITIONS = "DEFINITIONS";
+    private static final String DEFINITION = "DEFINITION";
+    private static final String STRING_ARRAY = Type.getDescriptor(String[].class);
+    private static final String DEFINITION_TYPE = Type.getDescriptor(SoftServiceLoader.StaticDefinition.class);
+    private static final String DEFINITION_ARRAY = Type.getDescriptor(SoftServiceLoader.StaticDefinition[].class);
+
+    private NativeServiceLoaderClassFile() {
+
+    }
+
+    /**
+     * Emits the class file.
+     *
+     * @param className the binary name of the class
+     * @param serviceType the service type
+     * @param instantiators the provider methods or constructors of the implementations, sorted by implementation name
+     * @return the class file
+     */
+    static byte[] generate(String className, Class<?> serviceType, List<Executable> instantiators) {
+        String owner = className.replace('.', '/');
+        String definitionSignature = "L" + Type.getInternalName(SoftServiceLoader.StaticDefinition.class) + "<" + Type.getDescriptor(serviceType) + ">;";
+        ClassWriter cw = ClassFileSupport.newClassWriter();
+        cw.visit(V17, ACC_PUBLIC | ACC_SUPER, owner,
+            Type.getDescriptor(Object.class) + "L" + Type.getInternalName(SoftServiceLoader.StaticServiceLoader.class) + "<" + Type.getDescriptor(serviceType) + ">;",
+            Type.getInternalName(Object.class),
+            new String[] {Type.getInternalName(SoftServiceLoader.StaticServiceLoader.class)});
+        ClassFileSupport.visitGeneratedAnnotation(cw);
+        ClassFileSupport.visitInnerClasses(cw, SoftServiceLoader.StaticServiceLoader.class, SoftServiceLoader.StaticDefinition.class, MethodHandles.Lookup.class, serviceType);
+        ClassFileSupport.visitInnerClasses(cw, instantiators.stream().map(Executable::getDeclaringClass).toArray(Class<?>[]::new));
+        ClassFileSupport.visitDefaultConstructor(cw, ACC_PUBLIC);
+
+        MethodVisitor findAll = cw.visitMethod(ACC_PUBLIC, "findAll",
+            Type.getMethodDescriptor(Type.getType(Stream.class), Type.getType(Predicate.class)),
+            "(Ljava/util/function/Predicate<Ljava/lang/String;>;)Ljava/util/stream/Stream<" + definitionSignature + ">;",
+            null);
+        findAll.visitCode();
+        if (instantiators.isEmpty()) {
+            invoke(findAll, INVOKESTATIC, Stream.class, "empty");
+            findAll.visitInsn(ARETURN);
+        } else if (instantiators.size() == 1) {
+            Executable instantiator = instantiators.get(0);
+            String name = instantiator.getDeclaringClass().getName();
+            cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, DEFINITION, DEFINITION_TYPE, definitionSignature, null).visitEnd();
+            MethodVisitor clinit = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+            clinit.visitCode();
+            pushDefinition(clinit, instantiator);
+            clinit.visitFieldInsn(PUTSTATIC, owner, DEFINITION, DEFINITION_TYPE);
+            clinit.visitInsn(RETURN);
+            clinit.visitMaxs(0, 0);
+            clinit.visitEnd();
+            findAll.visitVarInsn(ALOAD, 1);
+            findAll.visitLdcInsn(name);
+            invoke(findAll, INVOKEINTERFACE, Predicate.class, "test", Object.class);
+            Label rejected = new Label();
+            findAll.visitJumpInsn(IFEQ, rejected);
+            findAll.visitFieldInsn(GETSTATIC, owner, DEFINITION, DEFINITION_TYPE);
+            invoke(findAll, INVOKESTATIC, Stream.class, "of", Object.class);
+            findAll.visitInsn(ARETURN);
+            findAll.visitLabel(rejected);
+            invoke(findAll, INVOKESTATIC, Stream.class, "empty");
+            findAll.visitInsn(ARETURN);
+        } else {
+            // Definitions are created once, when the factory is initialized at image build time
+            cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, NAMES, STRING_ARRAY, null, null).visitEnd();
+            cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, DEFINITIONS, DEFINITION_ARRAY, "[" + definitionSignature, null).visitEnd();
+            MethodVisitor clinit = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+            clinit.visitCode();
+            pushInt(clinit, instantiators.size());
+            clinit.visitTypeInsn(ANEWARRAY, Type.getInternalName(String.class));
+            clinit.visitFieldInsn(PUTSTATIC, owner, NAMES, STRING_ARRAY);
+            pushInt(clinit, instantiators.size());
+            clinit.visitTypeInsn(ANEWARRAY, Type.getInternalName(SoftServiceLoader.StaticDefinition.class));
+            clinit.visitFieldInsn(PUTSTATIC, owner, DEFINITIONS, DEFINITION_ARRAY);
+            var chunks = new ClassFileSupport.StaticChunks(cw, owner, "createDefinitions");
+            for (int i = 0; i < instantiators.size(); i++) {
+                Executable instantiator = instantiators.get(i);
+                MethodVisitor create = chunks.next(DEFINITION_SIZE);
+                create.visitFieldInsn(GETSTATIC, owner, NAMES, STRING_ARRAY);
+                pushInt(create, i);
+                create.visitLdcInsn(instantiator.getDeclaringClass().getName());
+                create.visitInsn(AASTORE);
+                create.visitFieldInsn(GETSTATIC, owner, DEFINITIONS, DEFINITION_ARRAY);
+                pushInt(create, i);
+                pushDefinition(create, instantiator);
+                create.visitInsn(AASTORE);
+            }
+            chunks.invokeAll(clinit);
+            clinit.visitInsn(RETURN);
+            clinit.visitMaxs(0, 0);
+            clinit.visitEnd();
+
+            // IntStream.range(0, NAMES.length).filter(i -> predicate.test(NAMES[i])).mapToObj(i -> DEFINITIONS[i])
+            String filterDescriptor = Type.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.getType(Predicate.class), Type.INT_TYPE);
+            String mapDescriptor = Type.getMethodDescriptor(Type.getType(SoftServiceLoader.StaticDefinition.class), Type.INT_TYPE);
+            findAll.visitInsn(ICONST_0);
+            findAll.visitFieldInsn(GETSTATIC, owner, NAMES, STRING_ARRAY);
+            findAll.visitInsn(ARRAYLENGTH);
+            invoke(findAll, INVOKESTATIC, IntStream.class, "range", int.class, int.class);
+            findAll.visitVarInsn(ALOAD, 1);
+            findAll.visitInvokeDynamicInsn("test",
+                Type.getMethodDescriptor(Type.getType(IntPredicate.class), Type.getType(Predicate.class)),
+                LAMBDA_METAFACTORY,
+                Type.getType("(I)Z"),
+                new Handle(H_INVOKESTATIC, owner, "lambda$findAll$0", filterDescriptor, false),
+                Type.getType("(I)Z"));
+            invoke(findAll, INVOKEINTERFACE, IntStream.class, "filter", IntPredicate.class);
+            findAll.visitInvokeDynamicInsn("apply",
+                Type.getMethodDescriptor(Type.getType(IntFunction.class)),
+                LAMBDA_METAFACTORY,
+                Type.getType("(I)Ljava/lang/Object;"),
+                new Handle(H_INVOKESTATIC, owner, "lambda$findAll$1", mapDescriptor, false),
+                Type.getMethodType(Type.getType(SoftServiceLoader.StaticDefinition.class), Type.INT_TYPE));
+            invoke(findAll, INVOKEINTERFACE, IntStream.class, "mapToObj", IntFunction.class);
+            findAll.visitInsn(ARETURN);
+
+            MethodVisitor filter = cw.visitMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, "lambda$findAll$0", filterDescriptor, null, null);
+            filter.visitCode();
+            filter.visitVarInsn(ALOAD, 0);
+            filter.visitFieldInsn(GETSTATIC, owner, NAMES, STRING_ARRAY);
+            filter.visitVarInsn(ILOAD, 1);
+            filter.visitInsn(AALOAD);
+            invoke(filter, INVOKEINTERFACE, Predicate.class, "test", Object.class);
+            filter.visitInsn(IRETURN);
+            filter.visitMaxs(0, 0);
+            filter.visitEnd();
+
+            MethodVisitor map = cw.visitMethod(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, "lambda$findAll$1", mapDescriptor, null, null);
+            map.visitCode();
+            map.visitFieldInsn(GETSTATIC, owner, DEFINITIONS, DEFINITION_ARRAY);
+            map.visitVarInsn(ILOAD, 0);
+            map.visitInsn(AALOAD);
+            map.visitInsn(ARETURN);
+            map.visitMaxs(0, 0);
+            map.visitEnd();
+        }
+        findAll.visitMaxs(0, 0);
+        findAll.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Pushes {@code StaticDefinition.of(name, supplier)}, where the supplier
+     * is a method reference to the instantiator.
+     */
+    private static void pushDefinition(MethodVisitor mv, Executable instantiator) {
+        Class<?> implementation = instantiator.getDeclaringClass();
+        mv.visitLdcInsn(implementation.getName());
+        Handle handle;
+        Type instantiatedType;
+        if (instantiator instanceof Method method) {
+            if (method.getReturnType().isPrimitive()) {
+                throw new UnsupportedOperationException("Provider method of " + implementation.getName() + " returns a primitive");
+            }
+            handle = new Handle(H_INVOKESTATIC, Type.getInternalName(implementation), method.getName(), Type.getMethodDescriptor(method), implementation.isInterface());
+            instantiatedType = Type.getMethodType(Type.getType(method.getReturnType()));
+        } else {
+            handle = new Handle(H_NEWINVOKESPECIAL, Type.getInternalName(implementation), "<init>", Type.getConstructorDescriptor((Constructor<?>) instantiator), false);
+            instantiatedType = Type.getMethodType(Type.getType(implementation));
+        }
+        mv.visitInvokeDynamicInsn("get",
+            Type.getMethodDescriptor(Type.getType(Supplier.class)),
+            LAMBDA_METAFACTORY,
+            Type.getType("()Ljava/lang/Object;"),
+            handle,
+            instantiatedType);
+        invoke(mv, INVOKESTATIC, SoftServiceLoader.StaticDefinition.class, "of", String.class, Supplier.class);
+    }
+}
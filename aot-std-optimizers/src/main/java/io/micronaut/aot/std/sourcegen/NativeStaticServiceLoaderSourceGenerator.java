@@ -15,28 +15,36 @@
  */
 package io.micronaut.aot.std.sourcegen;
 
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
 import io.micronaut.aot.core.AOTModule;
 import io.micronaut.aot.core.Environments;
 import io.micronaut.aot.core.Option;
 import io.micronaut.aot.core.Runtime;
+import io.micronaut.aot.core.codegen.MethodChunker;
 import io.micronaut.core.io.service.SoftServiceLoader;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.util.ArrayList;
+import java.lang.reflect.Executable;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
 import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
 
 /**
  * A specialized version of service loader generation which is aimed at
@@ -45,6 +53,7 @@ import static javax.lang.model.element.Modifier.PUBLIC;
 @AOTModule(
     id = NativeStaticServiceLoaderSourceGenerator.ID,
     description = AbstractStaticServiceLoaderSourceGenerator.DESCRIPTION,
+    threadSafe = true,
     options = {
         @Option(
             key = "service.types",
@@ -61,6 +70,21 @@ import static javax.lang.model.element.Modifier.PUBLIC;
             description = "A list of implementation types to include even if they don't match bean requirements (comma separated)",
             sampleValue = "com.Misc,org.Bar"
         ),
+        @Option(
+            key = "serviceloading.discover.types",
+            description = "If set to true, service types loaded by Micronaut are discovered on the classpath, in addition to the configured ones",
+            sampleValue = "false"
+        ),
+        @Option(
+            key = "serviceloading.rejected.types",
+            description = "A list of discovered service types which shouldn't be optimized (comma separated)",
+            sampleValue = "com.Misc,org.Bar"
+        ),
+        @Option(
+            key = "serviceloading.analysis.parallelism",
+            description = "The maximum number of service implementations analyzed concurrently (defaults to the number of available processors)",
+            sampleValue = "4"
+        ),
         @Option(
             key = Environments.POSSIBLE_ENVIRONMENTS_NAMES,
             description = Environments.POSSIBLE_ENVIRONMENTS_DESCRIPTION,
@@ -73,6 +97,25 @@ import static javax.lang.model.element.Modifier.PUBLIC;
 public class NativeStaticServiceLoaderSourceGenerator extends AbstractStaticServiceLoaderSourceGenerator {
     public static final String ID = "serviceloading.native";
 
+    /**
+     * Returns a function which emits the factory with ASM, since it only
+     * consists of tables of names and method references.
+     *
+     * @param className the fully qualified name of the factory
+     * @param serviceType the service type
+     * @param implementations the implementations which are not rejected nor disabled
+     * @return the function which emits the class file
+     */
+    @Override
+    protected final Supplier<byte[]> factoryClassFile(String className, Class<?> serviceType, List<Class<?>> implementations) {
+        List<Executable> instantiators = implementations.stream()
+            .map(AbstractStaticServiceLoaderSourceGenerator::directInstantiatorOf)
+            .flatMap(Optional::stream)
+            .sorted(Comparator.comparing(instantiator -> instantiator.getDeclaringClass().getName()))
+            .toList();
+        return () -> NativeServiceLoaderClassFile.generate(className, serviceType, instantiators);
+    }
+
     protected final void generateFindAllMethod(Stream<Class<?>> serviceClasses,
                                                String serviceName,
                                                Class<?> serviceType,
@@ -86,19 +129,9 @@ public class NativeStaticServiceLoaderSourceGenerator extends AbstractStaticServ
                 this.codeBlock = codeBlock;
             }
         }
-        List<Service> initializers = serviceClasses.map(clazz -> {
-                for (Method method : clazz.getDeclaredMethods()) {
-                    if ("provider".equals(method.getName()) && Modifier.isStatic(method.getModifiers())) {
-                        return new Service(clazz.getName(), CodeBlock.of("$T::provider", clazz));
-                    }
-                }
-                for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
-                    if (constructor.getParameterCount() == 0 && Modifier.isPublic(constructor.getModifiers())) {
-                        return new Service(clazz.getName(), CodeBlock.of("$T::new", clazz));
-                    }
-                }
-                return null;
-            })
+        List<Service> initializers = serviceClasses.map(clazz -> directInstantiationOf(clazz)
+                .map(codeBlock -> new Service(clazz.getName(), codeBlock))
+                .orElse(null))
             .filter(Objects::nonNull)
             .sorted(Comparator.comparing(s -> s.name))
             .toList();
@@ -110,14 +143,49 @@ public class NativeStaticServiceLoaderSourceGenerator extends AbstractStaticServ
             .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), staticDefinitionType));
         if (initializers.isEmpty()) {
             method.addStatement("return $T.empty()", Stream.class);
+        } else if (initializers.size() == 1) {
+            Service service = initializers.get(0);
+            factory.addField(FieldSpec.builder(staticDefinitionType, "DEFINITION", PRIVATE, STATIC, FINAL)
+                .initializer("$T.of($S, $L)", SoftServiceLoader.StaticDefinition.class, service.name, service.codeBlock)
+                .build());
+            method.addStatement("return predicate.test($S) ? $T.of(DEFINITION) : $T.empty()", service.name, Stream.class, Stream.class);
         } else {
-            method.addStatement("$T list = new $T<>()", ParameterizedTypeName.get(ClassName.get(List.class), staticDefinitionType), ArrayList.class);
-            for (Service initializer : initializers) {
-                method.beginControlFlow("if (predicate.test($S))", initializer.name);
-                method.addStatement("list.add($T.of($S, $L))", SoftServiceLoader.StaticDefinition.class, initializer.name, initializer.codeBlock);
-                method.endControlFlow();
+            // Definitions are created once, when the factory is initialized at image build time
+            List<String> names = initializers.stream().map(service -> service.name).toList();
+            factory.addField(FieldSpec.builder(String[].class, "NAMES", PRIVATE, STATIC, FINAL)
+                .initializer(stringArray(factory, "createNames", names, CodeBlock.of("new String[] {$L}", names.stream()
+                    .map(name -> CodeBlock.of("$S", name))
+                    .collect(CodeBlock.joining(",$W")))))
+                .build());
+            ArrayTypeName definitionsType = ArrayTypeName.of(staticDefinitionType);
+            AnnotationSpec unchecked = AnnotationSpec.builder(SuppressWarnings.class).addMember("value", "$S", "unchecked").build();
+            var chunker = new MethodChunker("createDefinitions", ParameterSpec.builder(definitionsType, "definitions").build()).staticMethods();
+            for (int i = 0; i < initializers.size(); i++) {
+                Service service = initializers.get(i);
+                chunker.addStatement("definitions[$L] = $T.of($S, $L)", i, SoftServiceLoader.StaticDefinition.class, service.name, service.codeBlock);
+            }
+            FieldSpec.Builder definitions = FieldSpec.builder(definitionsType, "DEFINITIONS", PRIVATE, STATIC, FINAL);
+            if (chunker.isSingleChunk()) {
+                definitions.addAnnotation(unchecked)
+                    .initializer("new $T[] {$L}", SoftServiceLoader.StaticDefinition.class, initializers.stream()
+                        .map(service -> CodeBlock.of("$T.of($S, $L)", SoftServiceLoader.StaticDefinition.class, service.name, service.codeBlock))
+                        .collect(CodeBlock.joining(",$W")));
+            } else {
+                factory.addMethod(MethodSpec.methodBuilder("createDefinitions")
+                    .addAnnotation(unchecked)
+                    .addModifiers(PRIVATE, STATIC)
+                    .returns(definitionsType)
+                    .addStatement("$T definitions = new $T[$L]", definitionsType, SoftServiceLoader.StaticDefinition.class, initializers.size())
+                    .addCode(chunker.build(factory))
+                    .addStatement("return definitions")
+                    .build());
+                definitions.initializer("createDefinitions()");
             }
-            method.addStatement("return list.stream()");
+            factory.addField(definitions.build());
+            method.addStatement("""
+                    return $T.range(0, NAMES.length)
+                    .filter(i -> predicate.test(NAMES[i]))
+                    .mapToObj(i -> DEFINITIONS[i])""", IntStream.class);
         }
         factory.addMethod(method.build());
     }
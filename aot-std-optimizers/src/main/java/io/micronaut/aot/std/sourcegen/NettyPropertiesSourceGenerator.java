@@ -40,6 +40,7 @@ import static javax.lang.model.element.Modifier.STATIC;
 @AOTModule(
     id = NettyPropertiesSourceGenerator.ID,
     description = NettyPropertiesSourceGenerator.DESCRIPTION,
+    threadSafe = true,
     options = {
         @Option(
             key = NettyPropertiesSourceGenerator.MACHINE_ID,
@@ -34,7 +34,8 @@ import java.util.List;
  */
 @AOTModule(
     id = PublishersSourceGenerator.ID,
-    description = PublishersSourceGenerator.DESCRIPTION
+    description = PublishersSourceGenerator.DESCRIPTION,
+    threadSafe = true
 )
 public class PublishersSourceGenerator extends AbstractCodeGenerator {
     public static final String ID = "scan.reactive.types";
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen;
+
+import io.micronaut.inject.BeanConfiguration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Caches the outcome of the analysis of service implementation candidates,
+ * that is to say loading the candidate classes and checking their bean
+ * requirements. This state is attached to the application context analyzer,
+ * so that when a single optimizer run targets several runtimes, the service
+ * loader generators of each runtime share the results.
+ * <p>
+ * The generators also share the pool which runs the analyses, so that the
+ * configured parallelism bounds the number of analysis threads even when
+ * generators run concurrently. Idle threads are released, which is why the
+ * pool doesn't need to be shut down.
+ */
+final class ServiceCandidates {
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    private final Map<String, CompletableFuture<Candidate>> candidates = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+
+    ServiceCandidates(int parallelism) {
+        int threads = Math.max(1, parallelism);
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new AnalysisThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the analysis of a candidate, scheduling it if it wasn't
+     * requested yet. The analysis runs outside of the cache, so that
+     * slow analyses don't block concurrent lookups of other candidates.
+     *
+     * @param serviceName the service type
+     * @param className the candidate class name
+     * @param analyzer performs the analysis
+     * @return the outcome of the analysis
+     */
+    CompletableFuture<Candidate> analyzeAsync(String serviceName, String className, Supplier<Candidate> analyzer) {
+        String key = serviceName + ":" + className;
+        CompletableFuture<Candidate> result = candidates.get(key);
+        if (result != null) {
+            return result;
+        }
+        var future = new CompletableFuture<Candidate>();
+        result = candidates.putIfAbsent(key, future);
+        if (result != null) {
+            return result;
+        }
+        executor.execute(() -> {
+            try {
+                future.complete(analyzer.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    int getParallelism() {
+        return executor.getMaximumPoolSize();
+    }
+
+    int getLargestPoolSize() {
+        return executor.getLargestPoolSize();
+    }
+
+    /**
+     * The outcome of the analysis of a candidate.
+     *
+     * @param clazz the candidate class, or null if it isn't available
+     * @param disabledConfiguration the bean configuration which the candidate disables, if any
+     * @param diagnostics the diagnostic messages produced by the analysis
+     */
+    record Candidate(Class<?> clazz, BeanConfiguration disabledConfiguration, List<String> diagnostics) {
+        static Candidate available(Class<?> clazz, List<String> diagnostics) {
+            return new Candidate(clazz, null, List.copyOf(diagnostics));
+        }
+
+        static Candidate unavailable(BeanConfiguration disabledConfiguration, List<String> diagnostics) {
+            return new Candidate(null, disabledConfiguration, List.copyOf(diagnostics));
+        }
+
+        boolean isAvailable() {
+            return clazz != null;
+        }
+    }
+
+    private static final class AnalysisThreadFactory implements ThreadFactory {
+        private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            var thread = new Thread(r, "aot-service-analysis-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        }
+    }
+}
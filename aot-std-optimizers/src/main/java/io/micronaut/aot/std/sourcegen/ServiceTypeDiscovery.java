@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen;
+
+import io.micronaut.aot.core.context.ClasspathIndex;
+import io.micronaut.core.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Discovers the service types declared in the {@code META-INF/services}
+ * directories of the analyzed classpath. Discovery reads the classpath
+ * index when one is available, or walks the entries of the analyzed class
+ * loader otherwise, then results are reused, which is why an instance is
+ * shared between the service loader generators of all target runtimes.
+ * The parent loaders, which hold the optimizer itself, are never scanned.
+ * <p>
+ * Whether a service type is loaded through {@link io.micronaut.core.io.service.SoftServiceLoader}
+ * cannot be determined from the service descriptor files. Micronaut
+ * modules load their own service types through it, so only the service
+ * types which belong to the {@code io.micronaut} packages are retained,
+ * except the ones which are known to be loaded differently and the ones
+ * which belong to the optimizer.
+ */
+final class ServiceTypeDiscovery {
+    /**
+     * Service types which are not loaded through the soft service loader
+     * at runtime, or which implementations are generated by the optimizer.
+     */
+    static final Set<String> NOT_SOFT_LOADED_TYPES = Set.of(
+        "io.micronaut.context.ApplicationContextConfigurer",
+        "io.micronaut.core.graal.GraalReflectionConfigurer",
+        "io.micronaut.core.optim.StaticOptimizations$Loader",
+        "io.micronaut.inject.annotation.AnnotationMapper",
+        "io.micronaut.inject.annotation.AnnotationRemapper",
+        "io.micronaut.inject.annotation.AnnotationTransformer",
+        "io.micronaut.inject.visitor.TypeElementVisitor"
+    );
+
+    private static final String SERVICES_DIRECTORY = "META-INF/services/";
+    private static final String MICRONAUT_PACKAGE = "io.micronaut.";
+    private static final String AOT_PACKAGE = "io.micronaut.aot.";
+
+    private final ClassLoader classLoader;
+    private final ClasspathIndex classpathIndex;
+    private Set<String> serviceTypes;
+
+    ServiceTypeDiscovery(ClassLoader classLoader, @Nullable ClasspathIndex classpathIndex) {
+        this.classLoader = classLoader;
+        this.classpathIndex = classpathIndex;
+    }
+
+    /**
+     * Returns the service types which are loaded through the soft service
+     * loader, sorted by name.
+     *
+     * @return the discovered service types
+     */
+    synchronized Set<String> getServiceTypes() {
+        if (serviceTypes == null) {
+            var types = new TreeSet<String>();
+            if (classpathIndex != null) {
+                types.addAll(classpathIndex.getServiceTypes());
+            } else {
+                for (File entry : classpathEntries()) {
+                    collectServiceTypes(entry, types);
+                }
+            }
+            types.removeIf(type -> !isSoftLoaded(type));
+            serviceTypes = Collections.unmodifiableSet(types);
+        }
+        return serviceTypes;
+    }
+
+    private boolean isSoftLoaded(String type) {
+        if (!type.startsWith(MICRONAUT_PACKAGE) || type.startsWith(AOT_PACKAGE) || NOT_SOFT_LOADED_TYPES.contains(type)) {
+            return false;
+        }
+        try {
+            Class.forName(type, false, classLoader);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private List<File> classpathEntries() {
+        var entries = new ArrayList<File>();
+        if (classLoader instanceof URLClassLoader urlClassLoader) {
+            for (URL url : urlClassLoader.getURLs()) {
+                if ("file".equals(url.getProtocol())) {
+                    try {
+                        entries.add(new File(url.toURI()));
+                    } catch (URISyntaxException | IllegalArgumentException e) {
+                        // not a local file
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void collectServiceTypes(File entry, Set<String> types) {
+        if (entry.isDirectory()) {
+            File[] files = new File(entry, SERVICES_DIRECTORY).listFiles(File::isFile);
+            if (files != null) {
+                for (File file : files) {
+                    types.add(file.getName());
+                }
+            }
+        } else if (entry.isFile()) {
+            try (var zip = new ZipFile(entry)) {
+                zip.stream()
+                    .map(ZipEntry::getName)
+                    .filter(name -> name.startsWith(SERVICES_DIRECTORY) && name.length() > SERVICES_DIRECTORY.length())
+                    .map(name -> name.substring(SERVICES_DIRECTORY.length()))
+                    .filter(name -> name.indexOf('/') < 0)
+                    .forEach(types::add);
+            } catch (IOException e) {
+                // not an archive
+            }
+        }
+    }
+}
@@ -37,7 +37,8 @@ import java.util.Optional;
  */
 @AOTModule(
     id = YamlPropertySourceGenerator.ID,
-    description = YamlPropertySourceGenerator.DESCRIPTION
+    description = YamlPropertySourceGenerator.DESCRIPTION,
+    threadSafe = true
 )
 public class YamlPropertySourceGenerator extends AbstractCodeGenerator {
     public static final String ID = "yaml.to.java.config";
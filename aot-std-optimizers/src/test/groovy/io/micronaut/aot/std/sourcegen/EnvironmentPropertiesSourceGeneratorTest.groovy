@@ -49,19 +49,33 @@ import java.util.List;
 import java.util.Map;
 
 public class EnvironmentPropertiesOptimizationLoader implements StaticOptimizations.Loader<EnvironmentProperties> {
-  private void load0(Map<String, List<String>> env) {
-    env.put("MICRONAUT_PORT", Arrays.asList("micronaut.port", "micronaut-port"));
-    env.put("SOME_LONG_ENV_VAR", Arrays.asList("some.long.env.var", "some.long.env-var", "some.long-env.var", "some.long-env-var", "some-long.env.var", "some-long.env-var", "some-long-env.var", "some-long-env-var"));
-  }
-
   @Override
   public EnvironmentProperties load() {
     Map<String, List<String>> env = new HashMap<String, List<String>>();
-    load0(env);
+    env.put("MICRONAUT_PORT", Arrays.asList("micronaut.port", "micronaut-port"));
+    env.put("SOME_LONG_ENV_VAR", Arrays.asList("some.long.env.var", "some.long.env-var", "some.long-env.var", "some.long-env-var", "some-long.env.var", "some-long.env-var", "some-long-env.var", "some-long-env-var"));
     return EnvironmentProperties.of(env);
   }
 }"""
             }
         }
     }
+
+    def "splits large environments into several methods"() {
+        500.times { env["SOME_ENV_VAR_$it".toString()] = 'value' }
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass("EnvironmentPropertiesOptimizationLoader") {
+                containingSources """    load0(env);
+    load1(env);"""
+                containingSources "private void load1(Map<String, List<String>> env) {"
+            }
+            compiles()
+        }
+    }
 }
@@ -15,8 +15,10 @@
  */
 package io.micronaut.aot.std.sourcegen
 
+import com.squareup.javapoet.JavaFile
 import io.micronaut.aot.core.AOTCodeGenerator
 import io.micronaut.aot.core.codegen.AbstractSourceGeneratorSpec
+import io.micronaut.aot.core.codegen.MethodChunker
 
 class JitStaticServiceLoaderSourceGeneratorTest extends AbstractSourceGeneratorSpec {
     @Override
@@ -187,4 +189,139 @@ public class TestServiceWithMoreThanOneImplFactory implements SoftServiceLoader.
             }
         }
     }
+
+    def "can preload service implementations on a dedicated pool"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, TestServiceWithMoreThanOneImpl.name)
+        props.put(JitStaticServiceLoaderSourceGenerator.PRELOAD_STRATEGY, "dedicated-pool")
+        props.put(JitStaticServiceLoaderSourceGenerator.PRELOAD_THREADS, "3")
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass("StaticServicesLoader") {
+                containingSources 'staticServices.put("io.micronaut.aot.std.sourcegen.TestServiceWithMoreThanOneImpl", new TestServiceWithMoreThanOneImplFactory());'
+            }
+            hasClass("TestServiceWithMoreThanOneImplFactory") {
+                containingSources 'AotServicePreloader.preload(TestServiceWithMoreThanOneImpl.class.getClassLoader()'
+                containingSources '"io.micronaut.aot.std.sourcegen.TestServiceImpl",'
+                containingSources '''    return Arrays.stream(SERVICE_TYPES)
+        .filter(predicate::test)
+        .peek(AotServicePreloader::recordUse)
+        .map(s -> loadClass(cl, s))'''
+            }
+            hasClass(JitStaticServiceLoaderSourceGenerator.PRELOADER_CLASS_NAME) {
+                containingSources 'return Executors.newFixedThreadPool(3, factory);'
+                containingSources 'public static int getPreloadsFinishedBeforeUse()'
+            }
+        }
+    }
+
+    def "can disable preloading of service implementations"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, TestServiceWithMoreThanOneImpl.name)
+        props.put(JitStaticServiceLoaderSourceGenerator.PRELOAD_STRATEGY, "none")
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass("StaticServicesLoader") {
+                containingSources 'new TestServiceWithMoreThanOneImplFactory()'
+            }
+            hasClass("TestServiceWithMoreThanOneImplFactory") {
+                containingSources '''    return Arrays.stream(SERVICE_TYPES)
+        .filter(predicate::test)
+        .map(s -> loadClass(cl, s))'''
+            }
+        }
+    }
+
+    def "can instantiate service implementations without reflection"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, TestServiceWithMoreThanOneImpl.name)
+        props.put(JitStaticServiceLoaderSourceGenerator.DIRECT_INSTANTIATION, "true")
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass("StaticServicesLoader") {
+                containingSources 'new TestServiceWithMoreThanOneImplFactory()'
+            }
+            hasClass("TestServiceWithMoreThanOneImplFactory") {
+                containingSources '''    try {
+      switch (index) {
+        case 0:
+          return SoftServiceLoader.StaticDefinition.of(name, TestServiceImpl::new);
+        case 1:
+          return SoftServiceLoader.StaticDefinition.of(name, TestServiceImpl2::new);
+        default:
+          break;
+      }
+    } catch (LinkageError e) {
+      // the implementation cannot be linked, fall back to reflection
+    }
+    Class<TestServiceWithMoreThanOneImpl> clazz = loadClass(cl, name);
+    return clazz == null ? null : SoftServiceLoader.StaticDefinition.of(name, clazz);'''
+                containingSources '''    return IntStream.range(0, SERVICE_TYPES.length)
+        .filter(i -> predicate.test(SERVICE_TYPES[i]))
+        .mapToObj(i -> definition(cl, i))
+        .filter(Objects::nonNull);'''
+            }
+        }
+    }
+
+    def "falls back to reflection for implementations which are not accessible"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, TestServiceWithPackagePrivateImpl.name)
+        props.put(JitStaticServiceLoaderSourceGenerator.DIRECT_INSTANTIATION, "true")
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            hasClass("TestServiceWithPackagePrivateImplFactory") {
+                containingSources '''    "io.micronaut.aot.std.sourcegen.PackagePrivateTestServiceImpl",
+    "io.micronaut.aot.std.sourcegen.TestServiceImpl3"}'''
+                containingSources '''      switch (index) {
+        case 1:
+          return SoftServiceLoader.StaticDefinition.of(name, TestServiceImpl3::new);
+        default:
+          break;
+      }'''
+                doesNotContainSources 'PackagePrivateTestServiceImpl::new'
+            }
+            compiles()
+        }
+    }
+
+    def "generated methods stay below the JIT limit with thousands of implementations (#strategy)"() {
+        def service = LargeServiceFixture.create(testDirectory.resolve("service"), 3000)
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, "")
+        props.put(JitStaticServiceLoaderSourceGenerator.PRELOAD_STRATEGY, strategy)
+        props.put(JitStaticServiceLoaderSourceGenerator.DIRECT_INSTANTIATION, "true")
+        def generator = new JitStaticServiceLoaderSourceGenerator()
+        generator.generate(context)
+        def factory = service.newFactory()
+
+        when:
+        generator.generateFindAllMethod(service.implementations.stream(), service.serviceType.name, service.serviceType, factory)
+        def javaFiles = context.generatedJavaFiles + [JavaFile.builder(packageName, factory.build()).build()]
+        def sizes = service.compileAndMeasure(javaFiles, "${packageName}.ManyServiceFactory")
+
+        then:
+        sizes.keySet().containsAll(['<clinit>', 'createServiceTypes', 'definition', 'definition0', 'definition1', 'findAll'])
+        sizes.keySet().contains(preloadMethod)
+        sizes.values().every { it <= MethodChunker.DEFAULT_MAX_CHUNK_SIZE }
+
+        where:
+        strategy         | preloadMethod
+        'common-pool'    | 'preloadClasses1'
+        'dedicated-pool' | 'createPreloadOrder'
+    }
 }
@@ -17,17 +17,20 @@ package io.micronaut.aot.std.sourcegen
 
 import io.micronaut.aot.core.AOTCodeGenerator
 import io.micronaut.aot.core.codegen.AbstractSourceGeneratorSpec
+import io.micronaut.aot.core.context.ClasspathIndex
+
+import java.nio.file.Files
 
 class KnownMissingTypesSourceGeneratorTest extends AbstractSourceGeneratorSpec {
+    private List<String> types = [
+            'non.existing.ClassName',
+            AOTCodeGenerator.class.name,
+            'another.missing.Clazz'
+    ]
+
     @Override
     AOTCodeGenerator newGenerator() {
-        props.put(KnownMissingTypesSourceGenerator.OPTION.key(),
-                [
-                        'non.existing.ClassName',
-                        AOTCodeGenerator.class.name,
-                        'another.missing.Clazz'
-                ].join(",")
-        )
+        props.put(KnownMissingTypesSourceGenerator.OPTION.key(), types.join(","))
         new KnownMissingTypesSourceGenerator()
     }
 
@@ -61,4 +64,50 @@ public class KnownMissingTypesOptimizationLoader implements StaticOptimizations.
             compiles()
         }
     }
+
+    def "types which are not indexed are looked up in the class loader"() {
+        def indexedDirectory = Files.createDirectories(testDirectory.resolve("indexed"))
+        context.analyzer.getSharedState(ClasspathIndex) {
+            ClasspathIndex.load([indexedDirectory.toFile()], "fingerprint", null)
+        }
+
+        when: "the types are missing from the index, but the parent loader provides one of them"
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass("KnownMissingTypesOptimizationLoader") {
+                containingSources '''    knownMissingTypes.add("non.existing.ClassName");
+    knownMissingTypes.add("another.missing.Clazz");
+    return new ClassUtils.Optimizations(knownMissingTypes);'''
+                doesNotContainSources AOTCodeGenerator.name
+            }
+        }
+    }
+
+    def "generates a perfect hash set for large lists of known missing types"() {
+        types = (0..<500).collect { "some.missing.Type$it".toString() }
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass("KnownMissingTypesOptimizationLoader") {
+                containingSources 'return new ClassUtils.Optimizations(new KnownMissingTypes());'
+            }
+            hasClass("KnownMissingTypes") {
+                containingSources 'public final class KnownMissingTypes extends AbstractSet<String> {'
+                containingSources 'private static final String[] KEYS = new String[500];'
+                containingSources """  static {
+    createTable0();
+    createTable1();"""
+                containingSources 'private static int indexOf(String key) {'
+            }
+            compiles()
+        }
+        context.buildTimeInitClasses.contains('io.micronaut.test.KnownMissingTypes')
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen
+
+import com.squareup.javapoet.ClassName
+import com.squareup.javapoet.JavaFile
+import com.squareup.javapoet.ParameterizedTypeName
+import com.squareup.javapoet.TypeSpec
+import io.micronaut.core.io.service.SoftServiceLoader
+
+import javax.lang.model.element.Modifier
+import javax.tools.ToolProvider
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.spi.ToolProvider as CommandLineTool
+
+/**
+ * A service type with a large number of implementations, which are
+ * compiled on the fly, used to check that the generated service loaders
+ * stay below the method size limits of the JVM.
+ */
+class LargeServiceFixture {
+    final Class<?> serviceType
+    final List<Class<?>> implementations
+    private final Path directory
+    private final Path implementationClasses
+
+    private LargeServiceFixture(Path directory, Path implementationClasses, Class<?> serviceType, List<Class<?>> implementations) {
+        this.directory = directory
+        this.implementationClasses = implementationClasses
+        this.serviceType = serviceType
+        this.implementations = implementations
+    }
+
+    static LargeServiceFixture create(Path directory, int count) {
+        def sources = Files.createDirectories(directory.resolve("implementation-sources/many"))
+        def classes = Files.createDirectories(directory.resolve("implementation-classes"))
+        def files = [sources.resolve("ManyService.java")]
+        Files.writeString(files[0], "package many; public interface ManyService {}")
+        count.times {
+            def file = sources.resolve("ManyServiceImpl${it}.java")
+            Files.writeString(file, "package many; public class ManyServiceImpl$it implements ManyService {}")
+            files << file
+        }
+        compile(classes, [], files)
+        def loader = new URLClassLoader([classes.toUri().toURL()] as URL[], LargeServiceFixture.classLoader)
+        def implementations = (0..<count).collect { loader.loadClass("many.ManyServiceImpl$it") }
+        new LargeServiceFixture(directory, classes, loader.loadClass("many.ManyService"), implementations)
+    }
+
+    TypeSpec.Builder newFactory() {
+        TypeSpec.classBuilder("ManyServiceFactory")
+            .addModifiers(Modifier.PUBLIC)
+            .addSuperinterface(ParameterizedTypeName.get(ClassName.get(SoftServiceLoader.StaticServiceLoader), ClassName.get(serviceType)))
+    }
+
+    /**
+     * Compiles the generated files and returns the size of the bytecode
+     * of each method of the supplied class, that is to say the offset of
+     * its last instruction, which is a one byte return or throw.
+     */
+    Map<String, Integer> compileAndMeasure(List<JavaFile> javaFiles, String className) {
+        def sources = directory.resolve("generated-sources")
+        javaFiles.each { it.writeTo(sources) }
+        def classes = Files.createDirectories(directory.resolve("generated-classes"))
+        def files = Files.walk(sources).filter { it.toString().endsWith(".java") }.toList()
+        compile(classes, [implementationClasses], files)
+        measure(classes.resolve(className.replace('.', '/') + ".class"))
+    }
+
+    /**
+     * Returns the size of the bytecode of each method of a class file
+     * which was emitted directly.
+     */
+    Map<String, Integer> measure(byte[] classFile) {
+        def file = directory.resolve("Emitted.class")
+        Files.write(file, classFile)
+        measure(file)
+    }
+
+    private static Map<String, Integer> measure(Path classFile) {
+        def output = new StringWriter()
+        CommandLineTool.findFirst("javap").get().run(new PrintWriter(output), new PrintWriter(new StringWriter()), "-c", "-p", classFile.toString())
+        def sizes = [:]
+        String method = null
+        output.toString().eachLine { line ->
+            def signature = line =~ /^  \S.*?([\w$]+)\(.*\);$/
+            def instruction = line =~ /^\s+(\d+): [a-z]/
+            if (line == '  static {};') {
+                method = '<clinit>'
+            } else if (signature.find()) {
+                method = signature.group(1)
+            } else if (method != null && instruction.find()) {
+                sizes[method] = (instruction.group(1) as int) + 1
+            }
+        }
+        sizes
+    }
+
+    private static void compile(Path classes, List<Path> classpath, List<Path> files) {
+        def fullClasspath = System.getProperty("java.class.path").split(File.pathSeparator).toList() + classpath*.toString()
+        def errors = new ByteArrayOutputStream()
+        String[] args = ["-nowarn", "-proc:none", "-classpath", fullClasspath.join(File.pathSeparator), "-d", classes.toString()] + files*.toString()
+        if (ToolProvider.systemJavaCompiler.run(null, null, errors, args) != 0) {
+            throw new AssertionError("Compilation failed: $errors")
+        }
+    }
+}
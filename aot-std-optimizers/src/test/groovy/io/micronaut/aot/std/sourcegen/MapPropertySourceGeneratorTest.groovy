@@ -17,6 +17,7 @@ package io.micronaut.aot.std.sourcegen
 
 import io.micronaut.aot.core.AOTCodeGenerator
 import io.micronaut.aot.core.codegen.AbstractSourceGeneratorSpec
+import io.micronaut.context.env.PropertySource
 import io.micronaut.core.order.Ordered
 import spock.lang.Issue
 
@@ -38,23 +39,47 @@ class MapPropertySourceGeneratorTest extends AbstractSourceGeneratorSpec {
             hasClass('TestStaticPropertySource') {
                 withSources """package io.micronaut.test;
 
-import io.micronaut.context.env.MapPropertySource;
+import io.micronaut.context.env.PropertySource;
 import io.micronaut.core.annotation.Generated;
-import java.util.HashMap;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.util.Arrays;
+import java.util.Iterator;
 
 @Generated
-public class TestStaticPropertySource extends MapPropertySource {
+public class TestStaticPropertySource implements PropertySource {
+  private static final String[] KEYS = new String[0];
+
+  private static final Object[] VALUES = new Object[0];
+
   TestStaticPropertySource() {
-    super("test", new HashMap() {{
-        }});
   }
 
+  @Override
+  public String getName() {
+    return "test";
+  }
+
+  @Override
+  public Object get(String key) {
+    int index = Arrays.binarySearch(KEYS, key);
+    return index < 0 ? null : VALUES[index];
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Arrays.asList(KEYS).iterator();
+  }
+
+  @Override
   public int getOrder() {
     return -2147483648;
   }
 }
 """
             }
+            compiles()
         }
     }
 
@@ -68,19 +93,42 @@ public class TestStaticPropertySource extends MapPropertySource {
         assertThatGeneratedSources {
             doesNotCreateInitializer()
             hasClass('TestStaticPropertySource') {
-                withSources """package io.micronaut.test;
+withSources """package io.micronaut.test;
 
-import io.micronaut.context.env.MapPropertySource;
+import io.micronaut.context.env.PropertySource;
 import io.micronaut.core.annotation.Generated;
-import java.util.HashMap;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.util.Arrays;
+import java.util.Iterator;
 
 @Generated
-public class TestStaticPropertySource extends MapPropertySource {
+public class TestStaticPropertySource implements PropertySource {
+  private static final String[] KEYS = new String[0];
+
+  private static final Object[] VALUES = new Object[0];
+
   TestStaticPropertySource() {
-    super("test", new HashMap() {{
-        }});
   }
 
+  @Override
+  public String getName() {
+    return "test";
+  }
+
+  @Override
+  public Object get(String key) {
+    int index = Arrays.binarySearch(KEYS, key);
+    return index < 0 ? null : VALUES[index];
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Arrays.asList(KEYS).iterator();
+  }
+
+  @Override
   public int getOrder() {
     return $order;
   }
@@ -105,25 +153,54 @@ public class TestStaticPropertySource extends MapPropertySource {
             hasClass('TestStaticPropertySource') {
                 withSources """package io.micronaut.test;
 
-import io.micronaut.context.env.MapPropertySource;
+import io.micronaut.context.env.PropertySource;
 import io.micronaut.core.annotation.Generated;
-import java.util.HashMap;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.util.Arrays;
+import java.util.Iterator;
 
 @Generated
-public class TestStaticPropertySource extends MapPropertySource {
+public class TestStaticPropertySource implements PropertySource {
+  private static final String[] KEYS = new String[2];
+
+  private static final Object[] VALUES = new Object[2];
+
+  static {
+    KEYS[0] = "micronaut.port";
+    VALUES[0] = 8080;
+    KEYS[1] = "title";
+    VALUES[1] = "test";
+  }
+
   TestStaticPropertySource() {
-    super("test", new HashMap() {{
-        put("title", "test");
-        put("micronaut.port", 8080);
-        }});
   }
 
+  @Override
+  public String getName() {
+    return "test";
+  }
+
+  @Override
+  public Object get(String key) {
+    int index = Arrays.binarySearch(KEYS, key);
+    return index < 0 ? null : VALUES[index];
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Arrays.asList(KEYS).iterator();
+  }
+
+  @Override
   public int getOrder() {
     return -2147483648;
   }
 }
 """
             }
+            compiles()
         }
     }
 
@@ -136,20 +213,47 @@ public class TestStaticPropertySource extends MapPropertySource {
         assertThatGeneratedSources {
             doesNotCreateInitializer()
             hasClass('TestStaticPropertySource') {
-                withSources """package io.micronaut.test;
+withSources """package io.micronaut.test;
 
-import io.micronaut.context.env.MapPropertySource;
+import io.micronaut.context.env.PropertySource;
 import io.micronaut.core.annotation.Generated;
-import java.util.HashMap;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.util.Arrays;
+import java.util.Iterator;
 
 @Generated
-public class TestStaticPropertySource extends MapPropertySource {
+public class TestStaticPropertySource implements PropertySource {
+  private static final String[] KEYS = new String[1];
+
+  private static final Object[] VALUES = new Object[1];
+
+  static {
+    KEYS[0] = "some.key";
+    VALUES[0] = $literal;
+  }
+
   TestStaticPropertySource() {
-    super("test", new HashMap() {{
-        put("some.key", $literal);
-        }});
   }
 
+  @Override
+  public String getName() {
+    return "test";
+  }
+
+  @Override
+  public Object get(String key) {
+    int index = Arrays.binarySearch(KEYS, key);
+    return index < 0 ? null : VALUES[index];
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Arrays.asList(KEYS).iterator();
+  }
+
+  @Override
   public int getOrder() {
     return -2147483648;
   }
@@ -175,6 +279,215 @@ public class TestStaticPropertySource extends MapPropertySource {
         false                            | false
         Boolean.TRUE                     | true
         Boolean.FALSE                    | false
+        null                             | 'null'
     }
 
+    def "generates nested values as immutable collections"() {
+        when:
+        values['some.list'] = ['a', 1, null]
+        values['some.other.list'] = ['a', 'b']
+        values['some.map'] = [a: 'x', b: [c: true], d: []]
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass('TestStaticPropertySource') {
+withSources """package io.micronaut.test;
+
+import io.micronaut.context.env.PropertySource;
+import io.micronaut.core.annotation.Generated;
+import io.micronaut.core.util.CollectionUtils;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+@Generated
+public class TestStaticPropertySource implements PropertySource {
+  private static final String[] KEYS = new String[3];
+
+  private static final Object[] VALUES = new Object[3];
+
+  static {
+    KEYS[0] = "some.list";
+    VALUES[0] = Collections.unmodifiableList(Arrays.asList("a", 1, null));
+    KEYS[1] = "some.map";
+    VALUES[1] = Collections.unmodifiableMap(CollectionUtils.mapOf("a", "x", "b", Collections.unmodifiableMap(CollectionUtils.mapOf("c", true)), "d", Collections.emptyList()));
+    KEYS[2] = "some.other.list";
+    VALUES[2] = Collections.unmodifiableList(Arrays.asList("a", "b"));
+  }
+
+  TestStaticPropertySource() {
+  }
+
+  @Override
+  public String getName() {
+    return "test";
+  }
+
+  @Override
+  public Object get(String key) {
+    int index = Arrays.binarySearch(KEYS, key);
+    return index < 0 ? null : VALUES[index];
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Arrays.asList(KEYS).iterator();
+  }
+
+  @Override
+  public int getOrder() {
+    return -2147483648;
+  }
+}
+"""
+            }
+            compiles()
+        }
+    }
+
+    def "splits large property sources into several methods"() {
+        1000.times { values["some.configuration.property$it".toString()] = "value $it".toString() }
+        values['large.list'] = (0..<1000).collect { "item $it".toString() }
+
+        when:
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass('TestStaticPropertySource') {
+                containingSources """  static {
+    load0();
+    load1();"""
+                containingSources 'private static void load1() {'
+                containingSources """  private static void load0() {
+    KEYS[0] = "large.list";
+    VALUES[0] = list0();"""
+                containingSources """  private static List<Object> list0() {
+    List<Object> result = new ArrayList<>(1000);
+    list0Part0(result);
+    list0Part1(result);"""
+                containingSources """  private static void list0Part1(List<Object> result) {"""
+                containingSources """    return Collections.unmodifiableList(result);
+  }"""
+            }
+            compiles()
+        }
+    }
+
+    def "stores large property sources in a binary resource"() {
+        when:
+        props.put("map.property.binary.threshold", "2")
+        values.title = 'tést'
+        values["micronaut.port"] = 8080
+        values["micronaut.ratio"] = 0.5d
+        values["micronaut.enabled"] = true
+        values["micronaut.missing"] = null
+        values["micronaut.hosts"] = ['a', 'b', 42]
+        values["micronaut.nested"] = [key: 'value', count: 2L]
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass('TestStaticPropertySource') {
+                containingSources 'private static final String RESOURCE = "TestStaticPropertySource.bin";'
+                containingSources """  @Override
+  public synchronized Object get(String key) {"""
+                doesNotContainSources 'KEYS'
+            }
+            compiles()
+        }
+        resourcesDir.resolve("io/micronaut/test/TestStaticPropertySource.bin").toFile().exists()
+
+        when:
+        def loader = new URLClassLoader([
+            testDirectory.resolve("compiled").toUri().toURL(),
+            resourcesDir.toUri().toURL()
+        ] as URL[], getClass().classLoader)
+        def constructor = loader.loadClass("io.micronaut.test.TestStaticPropertySource").getDeclaredConstructor()
+        constructor.accessible = true
+        PropertySource propertySource = constructor.newInstance() as PropertySource
+
+        then:
+        propertySource.name == 'test'
+        propertySource.toList() == values.keySet().sort()
+        values.every { k, v -> propertySource.get(k) == v }
+        propertySource.get("micronaut.unknown") == null
+    }
+
+    def "emits the class file of array property sources directly"() {
+        when:
+        props.put("map.property.order.test", "42")
+        values['some.string'] = 'hello'
+        values['some.int'] = 1
+        values['some.long'] = 2L
+        values['some.double'] = 1.5d
+        values['some.float'] = 2.5f
+        values['some.boolean'] = true
+        values['some.byte'] = 3 as byte
+        values['some.short'] = 300 as short
+        values['some.null'] = null
+        values['some.list'] = ['a', 1, null, []]
+        values['some.map'] = [a: 'x', b: [c: true], d: [:]]
+        generate()
+        PropertySource propertySource = define(emitClassFile())
+
+        then:
+        propertySource.name == 'test'
+        propertySource.order == 42
+        propertySource.toList() == values.keySet().sort()
+        values.every { k, v -> propertySource.get(k) == v }
+        ['int', 'long', 'double', 'float', 'boolean', 'byte', 'short'].every {
+            propertySource.get("some.$it").class == values["some.$it".toString()].class
+        }
+        propertySource.get('some.unknown') == null
+
+        when:
+        propertySource.get('some.map').b.put('d', false)
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "falls back to compiling the sources of property sources with unsupported values"() {
+        when:
+        values['some.decimal'] = new BigDecimal('1.5')
+        generate()
+        emitClassFile()
+
+        then:
+        thrown(UnsupportedOperationException)
+        assertThatGeneratedSources {
+            compiles()
+        }
+    }
+
+    def "doesn't emit the class file of binary property sources"() {
+        when:
+        props.put("map.property.binary.threshold", "0")
+        values['some.string'] = 'hello'
+        generate()
+
+        then:
+        context.findClassFile(context.generatedJavaFiles.first()).empty
+    }
+
+    private byte[] emitClassFile() {
+        def javaFile = context.generatedJavaFiles.find { it.typeSpec.name == 'TestStaticPropertySource' }
+        context.findClassFile(javaFile).get().get()
+    }
+
+    private static PropertySource define(byte[] classFile) {
+        def constructor = new GroovyClassLoader(MapPropertySourceGeneratorTest.classLoader)
+            .defineClass('io.micronaut.test.TestStaticPropertySource', classFile)
+            .getDeclaredConstructor()
+        constructor.accessible = true
+        constructor.newInstance() as PropertySource
+    }
 }
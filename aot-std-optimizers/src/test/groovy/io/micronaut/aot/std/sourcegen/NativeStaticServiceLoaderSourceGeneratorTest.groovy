@@ -15,8 +15,17 @@
  */
 package io.micronaut.aot.std.sourcegen
 
+import com.squareup.javapoet.JavaFile
 import io.micronaut.aot.core.AOTCodeGenerator
 import io.micronaut.aot.core.codegen.AbstractSourceGeneratorSpec
+import io.micronaut.aot.core.codegen.MethodChunker
+import io.micronaut.aot.core.config.DefaultConfiguration
+import io.micronaut.aot.core.context.ApplicationContextAnalyzer
+import io.micronaut.aot.core.context.ClasspathIndex
+import io.micronaut.aot.core.context.DefaultSourceGenerationContext
+import io.micronaut.core.io.service.SoftServiceLoader
+
+import java.nio.file.Files
 
 class NativeStaticServiceLoaderSourceGeneratorTest extends AbstractSourceGeneratorSpec {
     @Override
@@ -61,20 +70,16 @@ import io.micronaut.aot.std.sourcegen.TestServiceImpl;
 import io.micronaut.core.annotation.Generated;
 import io.micronaut.core.io.service.SoftServiceLoader;
 import java.lang.String;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 @Generated
 public class TestServiceFactory implements SoftServiceLoader.StaticServiceLoader<TestService> {
+  private static final SoftServiceLoader.StaticDefinition<TestService> DEFINITION = SoftServiceLoader.StaticDefinition.of("io.micronaut.aot.std.sourcegen.TestServiceImpl", TestServiceImpl::new);
+
   public Stream<SoftServiceLoader.StaticDefinition<TestService>> findAll(
       Predicate<String> predicate) {
-    List<SoftServiceLoader.StaticDefinition<TestService>> list = new ArrayList<>();
-    if (predicate.test("io.micronaut.aot.std.sourcegen.TestServiceImpl")) {
-      list.add(SoftServiceLoader.StaticDefinition.of("io.micronaut.aot.std.sourcegen.TestServiceImpl", TestServiceImpl::new));
-    }
-    return list.stream();
+    return predicate.test("io.micronaut.aot.std.sourcegen.TestServiceImpl") ? Stream.of(DEFINITION) : Stream.empty();
   }
 }
 """
@@ -119,27 +124,170 @@ import io.micronaut.aot.std.sourcegen.TestServiceWithMoreThanOneImpl;
 import io.micronaut.core.annotation.Generated;
 import io.micronaut.core.io.service.SoftServiceLoader;
 import java.lang.String;
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.SuppressWarnings;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Generated
 public class TestServiceWithMoreThanOneImplFactory implements SoftServiceLoader.StaticServiceLoader<TestServiceWithMoreThanOneImpl> {
+  private static final String[] NAMES = new String[] {"io.micronaut.aot.std.sourcegen.TestServiceImpl",
+      "io.micronaut.aot.std.sourcegen.TestServiceImpl2"};
+
+  @SuppressWarnings("unchecked")
+  private static final SoftServiceLoader.StaticDefinition<TestServiceWithMoreThanOneImpl>[] DEFINITIONS = new SoftServiceLoader.StaticDefinition[] {SoftServiceLoader.StaticDefinition.of("io.micronaut.aot.std.sourcegen.TestServiceImpl", TestServiceImpl::new),
+      SoftServiceLoader.StaticDefinition.of("io.micronaut.aot.std.sourcegen.TestServiceImpl2", TestServiceImpl2::new)};
+
   public Stream<SoftServiceLoader.StaticDefinition<TestServiceWithMoreThanOneImpl>> findAll(
       Predicate<String> predicate) {
-    List<SoftServiceLoader.StaticDefinition<TestServiceWithMoreThanOneImpl>> list = new ArrayList<>();
-    if (predicate.test("io.micronaut.aot.std.sourcegen.TestServiceImpl")) {
-      list.add(SoftServiceLoader.StaticDefinition.of("io.micronaut.aot.std.sourcegen.TestServiceImpl", TestServiceImpl::new));
-    }
-    if (predicate.test("io.micronaut.aot.std.sourcegen.TestServiceImpl2")) {
-      list.add(SoftServiceLoader.StaticDefinition.of("io.micronaut.aot.std.sourcegen.TestServiceImpl2", TestServiceImpl2::new));
-    }
-    return list.stream();
+    return IntStream.range(0, NAMES.length)
+        .filter(i -> predicate.test(NAMES[i]))
+        .mapToObj(i -> DEFINITIONS[i]);
   }
 }
 """
             }
         }
     }
+
+    def "loads implementations which are provided by a parent loader"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, TestService.name)
+        def indexedDirectory = Files.createDirectories(testDirectory.resolve("indexed"))
+        context.analyzer.getSharedState(ClasspathIndex) {
+            ClasspathIndex.load([indexedDirectory.toFile()], "fingerprint", null)
+        }
+
+        when: "the implementation is missing from the index"
+        generate()
+
+        then:
+        assertThatGeneratedSources {
+            doesNotCreateInitializer()
+            hasClass("StaticServicesLoader") {
+                containingSources 'staticServices.put("io.micronaut.aot.std.sourcegen.TestService", new TestServiceFactory());'
+            }
+            hasClass("TestServiceFactory") {
+                containingSources 'SoftServiceLoader.StaticDefinition.of("io.micronaut.aot.std.sourcegen.TestServiceImpl", TestServiceImpl::new)'
+            }
+        }
+    }
+
+    def "analysis parallelism bounds the number of analysis threads"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, serviceTypes)
+        props.put(AbstractStaticServiceLoaderSourceGenerator.ANALYSIS_PARALLELISM, "1")
+
+        when:
+        generate()
+        def candidates = context.analyzer.findSharedState(ServiceCandidates).get()
+
+        then:
+        candidates.parallelism == 1
+        candidates.largestPoolSize == 1
+    }
+
+    def "records the analysis time of each service type"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, serviceTypes)
+
+        when:
+        generate()
+        def analyses = context.timings.timings.findAll { it.phase() == "service analysis" }
+
+        then:
+        analyses*.name() == serviceTypes.split(",") as List
+        analyses.find { it.name() == TestService.name }.durationNanos() > 0
+    }
+
+    def "generated sources don't depend on the analysis parallelism (#parallelism)"() {
+        expect:
+        generateWithParallelism(parallelism) == generateWithParallelism(1)
+
+        where:
+        parallelism << [2, 4, 16]
+    }
+
+    private Map<String, Object> generateWithParallelism(int parallelism) {
+        def properties = new Properties()
+        properties.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, serviceTypes)
+        properties.put(AbstractStaticServiceLoaderSourceGenerator.ANALYSIS_PARALLELISM, String.valueOf(parallelism))
+        def generationContext = new DefaultSourceGenerationContext(
+            packageName,
+            ApplicationContextAnalyzer.create(),
+            new DefaultConfiguration(properties),
+            testDirectory.resolve("parallelism-$parallelism")
+        )
+        newGenerator().generate(generationContext)
+        generationContext.finish()
+        [
+            sources: generationContext.generatedJavaFiles.collectEntries { [it.typeSpec.name, it.toString()] },
+            diagnostics: generationContext.diagnostics
+        ]
+    }
+
+    private static String getServiceTypes() {
+        ([TestService.name, TestServiceWithMoreThanOneImpl.name, TestServiceWithPackagePrivateImpl.name] + AbstractStaticServiceLoaderSourceGenerator.DEFAULT_SERVICE_TYPES_LIST).join(",")
+    }
+
+    def "generated methods stay below the JIT limit with thousands of implementations"() {
+        def service = LargeServiceFixture.create(testDirectory.resolve("service"), 3000)
+        def factory = service.newFactory()
+
+        when:
+        new NativeStaticServiceLoaderSourceGenerator().generateFindAllMethod(service.implementations.stream(), service.serviceType.name, service.serviceType, factory)
+        def sizes = service.compileAndMeasure([JavaFile.builder(packageName, factory.build()).build()], "${packageName}.ManyServiceFactory")
+
+        then:
+        sizes.keySet().containsAll(['<clinit>', 'createNames', 'createNamesPart1', 'createDefinitions', 'createDefinitions1', 'findAll'])
+        sizes.values().every { it <= MethodChunker.DEFAULT_MAX_CHUNK_SIZE }
+    }
+
+    def "emits the class file of factories directly"() {
+        props.put(AbstractStaticServiceLoaderSourceGenerator.SERVICE_TYPES, TestServiceWithMoreThanOneImpl.name)
+
+        when:
+        generate()
+        def javaFile = context.generatedJavaFiles.find { it.typeSpec.name == 'TestServiceWithMoreThanOneImplFactory' }
+        def factory = define("${packageName}.TestServiceWithMoreThanOneImplFactory", context.findClassFile(javaFile).get().get())
+
+        then:
+        factory.findAll { true }.map { it.name }.toList() == [TestServiceImpl.name, TestServiceImpl2.name]
+        factory.findAll { true }.map { it.load().class }.toList() == [TestServiceImpl, TestServiceImpl2]
+        factory.findAll { it == TestServiceImpl2.name }.map { it.load().class }.toList() == [TestServiceImpl2]
+    }
+
+    def "emitted factories only include directly instantiable implementations (#implementations)"() {
+        when:
+        def classFile = new NativeStaticServiceLoaderSourceGenerator().factoryClassFile("${packageName}.Factory", TestService, implementations).get()
+        def factory = define("${packageName}.Factory", classFile)
+
+        then:
+        factory.findAll { true }.map { it.load().class }.toList() == expected
+        factory.findAll { false }.toList() == []
+
+        where:
+        implementations                                    | expected
+        []                                                 | []
+        [PackagePrivateTestServiceImpl]                    | []
+        [TestServiceImpl]                                  | [TestServiceImpl]
+        [TestServiceImpl2, TestServiceImpl]                | [TestServiceImpl, TestServiceImpl2]
+        [TestServiceImpl, PackagePrivateTestServiceImpl]   | [TestServiceImpl]
+    }
+
+    def "emitted methods stay below the JIT limit with thousands of implementations"() {
+        def service = LargeServiceFixture.create(testDirectory.resolve("service"), 3000)
+
+        when:
+        def classFile = new NativeStaticServiceLoaderSourceGenerator().factoryClassFile("${packageName}.ManyServiceFactory", service.serviceType, service.implementations).get()
+        def sizes = service.measure(classFile)
+        def factory = define("${packageName}.ManyServiceFactory", classFile, service.serviceType.classLoader)
+
+        then:
+        sizes.keySet().containsAll(['<clinit>', 'createDefinitions0', 'createDefinitions1', 'findAll'])
+        sizes.values().every { it <= MethodChunker.DEFAULT_MAX_CHUNK_SIZE }
+        factory.findAll { true }.count() == 3000
+        factory.findAll { it == 'many.ManyServiceImpl42' }.map { it.load().class.name }.toList() == ['many.ManyServiceImpl42']
+    }
+
+    private static SoftServiceLoader.StaticServiceLoader<?> define(String className, byte[] classFile, ClassLoader parent = NativeStaticServiceLoaderSourceGeneratorTest.classLoader) {
+        new GroovyClassLoader(parent).defineClass(className, classFile).getConstructor().newInstance() as SoftServiceLoader.StaticServiceLoader<?>
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017-2021 original authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micronaut.aot.std.sourcegen
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ServiceCandidatesTest extends Specification {
+
+    def "analyzes each candidate once without blocking lookups of other candidates"() {
+        def candidates = new ServiceCandidates(2)
+        def release = new CountDownLatch(1)
+        def analyses = new AtomicInteger()
+
+        when: "a slow analysis is pending"
+        def slow = candidates.analyzeAsync("Service", "Slow") {
+            analyses.incrementAndGet()
+            release.await()
+            ServiceCandidates.Candidate.available(String, [])
+        }
+        def again = candidates.analyzeAsync("Service", "Slow") {
+            analyses.incrementAndGet()
+            ServiceCandidates.Candidate.available(String, [])
+        }
+        def fast = candidates.analyzeAsync("Service", "Fast") {
+            ServiceCandidates.Candidate.available(Integer, [])
+        }
+
+        then:
+        again.is(slow)
+        fast.get(10, TimeUnit.SECONDS).clazz() == Integer
+        !slow.done
+
+        when:
+        release.countDown()
+
+        then:
+        slow.get(10, TimeUnit.SECONDS).clazz() == String
+        analyses.get() == 1
+    }
+
+    def "failed analyses complete exceptionally"() {
+        def candidates = new ServiceCandidates(1)
+
+        when:
+        candidates.analyzeAsync("Service", "Broken") {
+            throw new IllegalStateException("boom")
+        }.join()
+
+        then:
+        def e = thrown(Exception)
+        e.cause instanceof IllegalStateException
+    }
+}
@@ -0,0 +1,72 @@
+package io.micronaut.aot.std.sourcegen
+
+import io.micronaut.aot.core.AOTCodeGenerator
+import io.micronaut.aot.core.context.ClasspathIndex
+import io.micronaut.context.env.PropertySourceLoader
+import io.micronaut.core.optim.StaticOptimizations
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class ServiceTypeDiscoveryTest extends Specification {
+    @TempDir
+    Path testDirectory
+
+    def "discovers service types loaded by Micronaut"() {
+        def services = testDirectory.resolve("META-INF/services")
+        Files.createDirectories(services)
+        [PropertySourceLoader.name, StaticOptimizations.Loader.name, "com.acme.Service", "io.micronaut.Missing"].each {
+            Files.writeString(services.resolve(it), "com.acme.Impl")
+        }
+        def loader = new URLClassLoader([testDirectory.toUri().toURL()] as URL[], this.class.classLoader)
+
+        when:
+        def types = new ServiceTypeDiscovery(loader, null).serviceTypes
+
+        then:
+        types.contains(PropertySourceLoader.name)
+        !types.contains(StaticOptimizations.Loader.name)
+        !types.contains("com.acme.Service")
+        !types.contains("io.micronaut.Missing")
+    }
+
+    def "doesn't discover the service types of the optimizer"() {
+        def services = testDirectory.resolve("META-INF/services")
+        Files.createDirectories(services)
+        [PropertySourceLoader.name, AOTCodeGenerator.name].each {
+            Files.writeString(services.resolve(it), "com.acme.Impl")
+        }
+        def loader = new URLClassLoader([testDirectory.toUri().toURL()] as URL[], this.class.classLoader)
+
+        when:
+        def types = new ServiceTypeDiscovery(loader, null).serviceTypes
+
+        then:
+        types == [PropertySourceLoader.name] as Set
+    }
+
+    def "only scans the entries of the analyzed class loader"() {
+        def loader = new URLClassLoader([testDirectory.toUri().toURL()] as URL[], this.class.classLoader)
+
+        expect: "the service descriptors of the parent loaders are ignored"
+        this.class.classLoader.getResource("META-INF/services/${AOTCodeGenerator.name}") != null
+        new ServiceTypeDiscovery(loader, null).serviceTypes.empty
+    }
+
+    def "reads the service types from the classpath index"() {
+        def services = testDirectory.resolve("META-INF/services")
+        Files.createDirectories(services)
+        [PropertySourceLoader.name, AOTCodeGenerator.name, "com.acme.Service"].each {
+            Files.writeString(services.resolve(it), "com.acme.Impl")
+        }
+        def index = ClasspathIndex.load([testDirectory.toFile()], "fingerprint", null)
+
+        when:
+        def types = new ServiceTypeDiscovery(new URLClassLoader([] as URL[], this.class.classLoader), index).serviceTypes
+
+        then:
+        types == [PropertySourceLoader.name] as Set
+    }
+}
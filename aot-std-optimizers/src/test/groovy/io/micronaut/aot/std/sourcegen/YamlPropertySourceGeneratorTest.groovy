@@ -36,82 +36,66 @@ class YamlPropertySourceGeneratorTest extends AbstractSourceGeneratorSpec {
             hasClass("Test_configStaticPropertySource") {
                 withSources """package io.micronaut.test;
 
-import io.micronaut.context.env.MapPropertySource;
+import io.micronaut.context.env.PropertySource;
 import io.micronaut.core.annotation.Generated;
-import java.util.ArrayList;
+import io.micronaut.core.util.CollectionUtils;
+import java.lang.Object;
+import java.lang.Override;
+import java.lang.String;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Iterator;
 
 @Generated
-public class Test_configStaticPropertySource extends MapPropertySource {
-  Test_configStaticPropertySource() {
-    super("test-config", new HashMap() {{
-        put("my.prop1", "val1");
-        put("my.prop2", "val2");
-        put("micronaut.application.name", "demoApp");
-        put("micronaut.server.port", 8181);
-        put("micronaut.server.cors.enabled", true);
-        put("micronaut.security.intercept-url-map", list0());
-        put("otel.exclusions", list6());
-        }});
-  }
-
-  private static List list2() {
-    return Collections.singletonList("isAnonymous()");
-  }
+public class Test_configStaticPropertySource implements PropertySource {
+  private static final String[] KEYS = new String[7];
 
-  private static Map map1() {
-    Map result = new LinkedHashMap<>(3);
-    result.put("pattern", "/api/v1/subscriber/confirm");
-    result.put("http-method", "PATCH");
-    result.put("access", list2());
-    return result;
-  }
+  private static final Object[] VALUES = new Object[7];
 
-  private static List list4() {
-    return Collections.singletonList("isAnonymous()");
+  static {
+    KEYS[0] = "micronaut.application.name";
+    VALUES[0] = "demoApp";
+    KEYS[1] = "micronaut.security.intercept-url-map";
+    VALUES[1] = Collections.unmodifiableList(Arrays.asList(Collections.unmodifiableMap(CollectionUtils.mapOf("pattern", "/api/v1/subscriber/confirm", "http-method", "PATCH", "access", Collections.unmodifiableList(Arrays.asList("isAnonymous()")))), Collections.unmodifiableMap(CollectionUtils.mapOf("pattern", "/api/v1/subscriber/count", "http-method", "GET", "access", Collections.unmodifiableList(Arrays.asList("isAnonymous()")))), Collections.unmodifiableMap(CollectionUtils.mapOf("pattern", "/v1/odata/\$metadata", "http-method", "GET"))));
+    KEYS[2] = "micronaut.server.cors.enabled";
+    VALUES[2] = true;
+    KEYS[3] = "micronaut.server.port";
+    VALUES[3] = 8181;
+    KEYS[4] = "my.prop1";
+    VALUES[4] = "val1";
+    KEYS[5] = "my.prop2";
+    VALUES[5] = "val2";
+    KEYS[6] = "otel.exclusions";
+    VALUES[6] = Collections.unmodifiableList(Arrays.asList("\${my.prop1}", "\${my.prop2}", "fixed-value"));
   }
 
-  private static Map map3() {
-    Map result = new LinkedHashMap<>(3);
-    result.put("pattern", "/api/v1/subscriber/count");
-    result.put("http-method", "GET");
-    result.put("access", list4());
-    return result;
+  Test_configStaticPropertySource() {
   }
 
-  private static Map map5() {
-    Map result = new LinkedHashMap<>(2);
-    result.put("pattern", "/v1/odata/\$metadata");
-    result.put("http-method", "GET");
-    return result;
+  @Override
+  public String getName() {
+    return "test-config";
   }
 
-  private static List list0() {
-    List result = new ArrayList<>(3);
-    result.add(map1());
-    result.add(map3());
-    result.add(map5());
-    return result;
+  @Override
+  public Object get(String key) {
+    int index = Arrays.binarySearch(KEYS, key);
+    return index < 0 ? null : VALUES[index];
   }
 
-  private static List list6() {
-    List result = new ArrayList<>(3);
-    result.add("\${my.prop1}");
-    result.add("\${my.prop2}");
-    result.add("fixed-value");
-    return result;
+  @Override
+  public Iterator<String> iterator() {
+    return Arrays.asList(KEYS).iterator();
   }
 
+  @Override
   public int getOrder() {
     return -2147483648;
   }
 }
 """
             }
+            compiles()
         }
     }
 }